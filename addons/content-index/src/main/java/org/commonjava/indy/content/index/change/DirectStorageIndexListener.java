@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.content.index.change;
+
+import org.commonjava.indy.content.index.ContentIndexManager;
+import org.commonjava.indy.content.index.conf.ContentIndexConfig;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.FileStorageEvent;
+import org.commonjava.maven.galley.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.commonjava.indy.content.ContentManager.STORED_DIRECTLY;
+
+/**
+ * Indexes content that was put in place without going through the content manager (e.g. a zero-copy promotion),
+ * the same way {@link org.commonjava.indy.content.index.IndexingContentManagerDecorator} does for a regular store.
+ */
+@ApplicationScoped
+public class DirectStorageIndexListener
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private ContentIndexManager indexManager;
+
+    @Inject
+    private StoreDataManager storeDataManager;
+
+    @Inject
+    private ContentIndexConfig indexCfg;
+
+    public void onFileStorage( @Observes final FileStorageEvent event )
+    {
+        final EventMetadata eventMetadata = event.getEventMetadata();
+        if ( !indexCfg.isEnabled() || eventMetadata == null || !Boolean.TRUE.equals(
+                eventMetadata.get( STORED_DIRECTLY ) ) )
+        {
+            return;
+        }
+
+        final Transfer transfer = event.getTransfer();
+        final StoreKey key = LocationUtils.getKey( transfer );
+        if ( key == null )
+        {
+            return;
+        }
+
+        logger.trace( "Indexing directly stored: {} in: {}", transfer, key );
+        indexManager.indexTransferIn( transfer, key );
+
+        // the new content may change which member a parent group resolves the path to
+        if ( key.getType() == StoreType.hosted )
+        {
+            final String path = transfer.getPath();
+            final String name = String.format( "ContentIndexDirectStoreDeIndex-store(%s)-path(%s)", key, path );
+            final String context =
+                    String.format( "Class: %s, method: %s, store: %s, path: %s", this.getClass().getName(),
+                                   "onFileStorage", key, path );
+            storeDataManager.asyncGroupAffectedBy( new StoreDataManager.ContextualTask( name, context, () -> {
+                try
+                {
+                    Set<Group> groups = storeDataManager.affectedBy( Collections.singletonList( key ), eventMetadata );
+                    if ( groups != null )
+                    {
+                        groups.forEach( g -> indexManager.deIndexStorePath( g.getKey(), path ) );
+                    }
+                }
+                catch ( IndyDataException e )
+                {
+                    logger.error( String.format( "Failed to get groups which contains: %s for de-indexing. Reason: %s",
+                                                 key, e.getMessage() ), e );
+                }
+            } ) );
+        }
+    }
+}
@@ -19,34 +19,39 @@ import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.FileAppender;
-import org.apache.commons.io.IOUtils;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.subsys.datafile.DataFileManager;
+import org.commonjava.indy.util.StreamingZipWriter;
+import org.commonjava.indy.util.StreamingZipWriter.ZipMember;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MonitorInfo;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import static org.apache.commons.io.IOUtils.toInputStream;
 import static org.apache.commons.lang.StringUtils.join;
@@ -78,6 +83,11 @@ public class DiagnosticsManager
     @Inject
     private IndyObjectMapper serializer;
 
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "diag-zip-reader", threads = 4, priority = 4 )
+    private WeftExecutorService zipReadExecutor;
+
     public String getThreadDumpString()
     {
         Thread[] threads = new Thread[Thread.activeCount()];
@@ -135,58 +145,68 @@ public class DiagnosticsManager
     public File getDiagnosticBundle()
             throws IOException
     {
-        File out = createTempFile( "diags" );
-        Logger rootLogger = (Logger) LoggerFactory.getLogger( "ROOT" );
+        List<ZipMember> members = getDiagnosticBundleMembers();
+        if ( members == null )
+        {
+            return null;
+        }
 
+        File out = createTempFile( "diags" );
         logger.info( "Writing diagnostic bundle to: '{}'", out );
-
-        Appender<ILoggingEvent> appender = rootLogger.getAppender( FILE_LOGGER );
-        if ( appender != null && (appender instanceof FileAppender) )
+        try (OutputStream stream = new FileOutputStream( out ))
         {
-            try(ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( out ) ) )
-            {
-                File dir = new File( ( (FileAppender) appender ).getFile() ).getParentFile();
+            writeZip( members, stream );
+        }
 
-                for ( File f : dir.listFiles( file -> file.getName().endsWith( ".log" ) ) )
-                {
-                    String name = LOGS_DIR + "/" + f.getName();
-                    logger.info( "Adding {} to bundle zip: {}", name, out );
-
-                    zip.putNextEntry( new ZipEntry( name ) );
-                    try(InputStream in = new FileInputStream( f ) )
-                    {
-                        IOUtils.copy( in, zip );
-                    }
-                }
+        return out;
+    }
 
-                logger.info( "Adding thread dump to bundle zip: {}", out );
-                zip.putNextEntry( new ZipEntry( THREAD_DUMP_FILE ) );
-                zip.write( getThreadDumpString().getBytes() );
-                zip.flush();
-                zip.close();
-            }
-        }
-        else
+    /**
+     * @return the log files and a thread dump, as zip members, or null if there's no log file appender to read.
+     */
+    public List<ZipMember> getDiagnosticBundleMembers()
+    {
+        Logger rootLogger = (Logger) LoggerFactory.getLogger( "ROOT" );
+
+        Appender<ILoggingEvent> appender = rootLogger.getAppender( FILE_LOGGER );
+        if ( appender == null || !( appender instanceof FileAppender ) )
         {
             return null;
         }
 
-        return out;
+        List<ZipMember> members = new ArrayList<>();
+        File dir = new File( ( (FileAppender) appender ).getFile() ).getParentFile();
+        for ( File f : dir.listFiles( file -> file.getName().endsWith( ".log" ) ) )
+        {
+            String name = LOGS_DIR + "/" + f.getName();
+            logger.info( "Adding {} to bundle zip", name );
+            members.add( new ZipMember( name, () -> new FileInputStream( f ) ) );
+        }
+
+        logger.info( "Adding thread dump to bundle zip" );
+        members.add( new ZipMember( THREAD_DUMP_FILE,
+                                    () -> new ByteArrayInputStream( getThreadDumpString().getBytes() ) ) );
+
+        return members;
     }
 
     public File getRepoBundle() throws IOException
     {
+        List<ZipMember> members = getRepoBundleMembers();
+
         File out = createTempFile( "repos" );
         logger.info( "Writing repo bundle to: '{}'", out );
-
-        try (ZipOutputStream zip = new ZipOutputStream( new FileOutputStream( out ) ))
+        try (OutputStream stream = new FileOutputStream( out ))
         {
-            zipRepositoryFiles( zip );
+            writeZip( members, stream );
         }
         return out;
     }
 
-    private void zipRepositoryFiles( ZipOutputStream zip ) throws IOException
+    /**
+     * @return the JSON definitions of all the artifact stores, as zip members.
+     */
+    public List<ZipMember> getRepoBundleMembers() throws IOException
     {
         Set<ArtifactStore> stores = null;
         try
@@ -199,15 +219,24 @@ public class DiagnosticsManager
             throw new IOException( e );
         }
 
+        List<ZipMember> members = new ArrayList<>();
         for ( ArtifactStore store : stores )
         {
             String path = Paths.get( REPOS_DIR, store.getPackageType(), store.getType().singularEndpointName(),
                                      store.getName() ).toString();
             logger.debug( "Adding {} to repo zip", path );
-            zip.putNextEntry( new ZipEntry( path ) );
-            String json = serializer.writeValueAsString( store );
-            IOUtils.copy( toInputStream( json ), zip );
+            members.add( new ZipMember( path, () -> toInputStream( serializer.writeValueAsString( store ) ) ) );
         }
+        return members;
+    }
+
+    /**
+     * Write the members as a zip to the given stream, reading them ahead in parallel.
+     */
+    public void writeZip( final List<ZipMember> members, final OutputStream out )
+            throws IOException
+    {
+        new StreamingZipWriter( zipReadExecutor ).write( members, out );
     }
 
     private File createTempFile( String name ) throws IOException
@@ -25,6 +25,7 @@ import org.commonjava.indy.diag.data.DiagnosticsManager;
 import org.commonjava.indy.diag.log.LoggerDTO;
 import org.commonjava.indy.diag.log.LoggerManager;
 import org.commonjava.indy.util.ApplicationHeader;
+import org.commonjava.indy.util.StreamingZipWriter.ZipMember;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +39,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
@@ -89,22 +91,20 @@ public class DiagnosticsResource
     @Produces(application_zip)
     public Response getBundle()
     {
-        try
-        {
-            File bundle = diagnosticsManager.getDiagnosticBundle();
-            Logger logger = LoggerFactory.getLogger( getClass() );
-            logger.info( "Returning diagnostic bundle: {}", bundle );
-
-            return Response.ok( bundle )
-                           .header( ApplicationHeader.content_disposition.key(),
-                                    "attachment; filename=indy-diagnostic-bundle-" + System.currentTimeMillis() + ".zip" )
-                           .build();
-        }
-        catch ( IOException e )
+        List<ZipMember> members = diagnosticsManager.getDiagnosticBundleMembers();
+        if ( members == null )
         {
-            throw new WebApplicationException(
-                    "Cannot retrieve log files, or failed to write logs + thread dump to bundle zip.", e );
+            throw new WebApplicationException( "Cannot retrieve log files for the bundle zip." );
         }
+
+        Logger logger = LoggerFactory.getLogger( getClass() );
+        logger.info( "Streaming diagnostic bundle with {} entries", members.size() );
+
+        StreamingOutput bundle = out -> diagnosticsManager.writeZip( members, out );
+        return Response.ok( bundle )
+                       .header( ApplicationHeader.content_disposition.key(),
+                                "attachment; filename=indy-diagnostic-bundle-" + System.currentTimeMillis() + ".zip" )
+                       .build();
     }
 
     @ApiOperation(
@@ -118,10 +118,11 @@ public class DiagnosticsResource
     {
         try
         {
-            File bundle = diagnosticsManager.getRepoBundle();
+            List<ZipMember> members = diagnosticsManager.getRepoBundleMembers();
             Logger logger = LoggerFactory.getLogger( getClass() );
-            logger.info( "Returning repo bundle: {}", bundle );
+            logger.info( "Streaming repo bundle with {} entries", members.size() );
 
+            StreamingOutput bundle = out -> diagnosticsManager.writeZip( members, out );
             return Response.ok( bundle )
                            .header( ApplicationHeader.content_disposition.key(),
                                     "attachment; filename=indy-repo-bundle-" + System.currentTimeMillis() + ".zip" )
@@ -31,10 +31,26 @@ public class FoloConfig
 
     public static final boolean DEFAULT_ENABLED = true;
 
+    public static final boolean DEFAULT_RECORD_BATCH_ENABLED = false;
+
+    public static final long DEFAULT_RECORD_BATCH_FLUSH_MILLIS = 1000;
+
+    public static final int DEFAULT_RECORD_BATCH_MAX_ENTRIES = 10000;
+
+    public static final boolean DEFAULT_COMPACT_SERIALIZATION_ENABLED = false;
+
     private Boolean enabled;
 
     private Boolean trackGroupContent;
 
+    private Boolean recordBatchEnabled;
+
+    private Long recordBatchFlushMillis;
+
+    private Integer recordBatchMaxEntries;
+
+    private Boolean compactSerializationEnabled;
+
     public FoloConfig()
     {
     }
@@ -71,6 +87,52 @@ public class FoloConfig
         return trackGroupContent;
     }
 
+    public boolean isRecordBatchEnabled()
+    {
+        return recordBatchEnabled == null ? DEFAULT_RECORD_BATCH_ENABLED : recordBatchEnabled;
+    }
+
+    @ConfigName( "record.batch.enabled" )
+    public void setRecordBatchEnabled( final Boolean recordBatchEnabled )
+    {
+        this.recordBatchEnabled = recordBatchEnabled;
+    }
+
+    public long getRecordBatchFlushMillis()
+    {
+        return recordBatchFlushMillis == null ? DEFAULT_RECORD_BATCH_FLUSH_MILLIS : recordBatchFlushMillis;
+    }
+
+    @ConfigName( "record.batch.flush.millis" )
+    public void setRecordBatchFlushMillis( final Long recordBatchFlushMillis )
+    {
+        this.recordBatchFlushMillis = recordBatchFlushMillis;
+    }
+
+    public int getRecordBatchMaxEntries()
+    {
+        return recordBatchMaxEntries == null ? DEFAULT_RECORD_BATCH_MAX_ENTRIES : recordBatchMaxEntries;
+    }
+
+    @ConfigName( "record.batch.max.entries" )
+    public void setRecordBatchMaxEntries( final Integer recordBatchMaxEntries )
+    {
+        this.recordBatchMaxEntries = recordBatchMaxEntries;
+    }
+
+    public boolean isCompactSerializationEnabled()
+    {
+        return compactSerializationEnabled == null ?
+                DEFAULT_COMPACT_SERIALIZATION_ENABLED :
+                compactSerializationEnabled;
+    }
+
+    @ConfigName( "compact.serialization.enabled" )
+    public void setCompactSerializationEnabled( final Boolean compactSerializationEnabled )
+    {
+        this.compactSerializationEnabled = compactSerializationEnabled;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
@@ -37,6 +37,8 @@ import org.commonjava.indy.folo.model.TrackingKey;
 import org.commonjava.indy.model.core.AccessChannel;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.util.ApplicationStatus;
+import org.commonjava.indy.util.StreamingZipWriter;
+import org.commonjava.indy.util.StreamingZipWriter.ZipMember;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.io.checksum.ContentDigest;
 import org.commonjava.maven.galley.io.checksum.TransferMetadata;
@@ -55,6 +57,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -64,10 +67,7 @@ import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
-import static org.apache.commons.io.IOUtils.closeQuietly;
 import static org.apache.commons.io.IOUtils.copy;
 import static org.commonjava.indy.core.ctl.PoolUtils.detectOverloadVoid;
 import static org.commonjava.indy.folo.FoloUtils.backupTrackedContent;
@@ -102,6 +102,11 @@ public class FoloAdminController
     @ExecutorConfig( threads = 50, priority = 4, named = "folo-recalculator", maxLoadFactor = 100, loadSensitive = ExecutorConfig.BooleanLiteral.TRUE )
     private WeftExecutorService recalculationExecutor;
 
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( threads = 8, priority = 4, named = "folo-zip-reader", maxLoadFactor = 100, loadSensitive = ExecutorConfig.BooleanLiteral.TRUE )
+    private WeftExecutorService zipReadExecutor;
+
     protected FoloAdminController()
     {
     }
@@ -115,6 +120,7 @@ public class FoloAdminController
         this.contentManager = contentManager;
         this.contentDigester = contentDigester;
         this.recalculationExecutor = new SingleThreadedExecutorService( "folo-recalculator" );
+        this.zipReadExecutor = new SingleThreadedExecutorService( "folo-zip-reader" );
     }
 
     public TrackedContentDTO seal( final String id, final String baseUrl )
@@ -176,9 +182,33 @@ public class FoloAdminController
             throws IndyWorkflowException
     {
         final TrackingKey tk = new TrackingKey( id );
+        final List<ZipMember> members = getRepositoryZipMembers( id );
 
         File file = filer.getRepositoryZipFile( tk ).getDetachedFile();
         file.getParentFile().mkdirs();
+
+        try (OutputStream stream = new FileOutputStream( file ))
+        {
+            writeZip( members, stream );
+        }
+        catch ( final IOException e )
+        {
+            throw new IndyWorkflowException( "Failed to generate repository zip from tracking record: {}. Reason: {}",
+                                             e, id, e.getMessage() );
+        }
+
+        return file;
+    }
+
+    /**
+     * List the content referenced by a sealed tracking record as zip members, sorted by path. This fails if there's
+     * no such record, so callers streaming the zip can do it before anything is written.
+     */
+    public List<ZipMember> getRepositoryZipMembers( final String id )
+            throws IndyWorkflowException
+    {
+        final TrackingKey tk = new TrackingKey( id );
+
         logger.debug( "Retrieving tracking record for: {}", tk );
         final TrackedContent record = recordManager.get( tk );
         logger.debug( "Got: {}", record );
@@ -192,47 +222,33 @@ public class FoloAdminController
         final Set<String> seenPaths = new HashSet<>();
         final List<Transfer> items = new ArrayList<>();
 
-        addTransfers( record.getUploads(), items, id, seenPaths );
-        addTransfers( record.getDownloads(), items, id, seenPaths );
+        // read the entries straight from the (possibly compact) record, without materializing it in the cache
+        final List<TrackedContentEntry> uploads = new ArrayList<>();
+        final List<TrackedContentEntry> downloads = new ArrayList<>();
+        record.forEachEntry( uploads::add, downloads::add );
+
+        addTransfers( uploads, items, id, seenPaths );
+        addTransfers( downloads, items, id, seenPaths );
 
-        logger.debug( "Retrieved {} files. Creating zip.", items.size() );
+        logger.debug( "Retrieved {} files for zip of: {}", items.size(), id );
 
         Collections.sort( items, ( f, s ) -> f.getPath().compareTo( s.getPath() ) );
 
-        try (ZipOutputStream stream = new ZipOutputStream( new FileOutputStream( file ) ))
-        {
-            for ( final Transfer item : items )
-            {
-                // logger.info( "Adding: {}", item );
-                if ( item != null )
-                {
-                    final String path = item.getPath();
-                    final ZipEntry ze = new ZipEntry( path );
-                    stream.putNextEntry( ze );
-
-                    InputStream itemStream = null;
-                    try
-                    {
-                        itemStream = item.openInputStream();
-                        copy( itemStream, stream );
-                    }
-                    finally
-                    {
-                        closeQuietly( itemStream );
-                    }
-                }
-            }
-        }
-        catch ( final IOException e )
-        {
-            throw new IndyWorkflowException( "Failed to generate repository zip from tracking record: {}. Reason: {}",
-                                             e, id, e.getMessage() );
-        }
+        return items.stream()
+                    .map( item -> new ZipMember( item.getPath(), item::openInputStream ) )
+                    .collect( Collectors.toList() );
+    }
 
-        return file;
+    /**
+     * Write the members as a zip to the given stream, reading them ahead in parallel.
+     */
+    public void writeZip( final List<ZipMember> members, final OutputStream out )
+            throws IOException
+    {
+        new StreamingZipWriter( zipReadExecutor ).write( members, out );
     }
 
-    private void addTransfers( final Set<TrackedContentEntry> entries, final List<Transfer> items,
+    private void addTransfers( final Collection<TrackedContentEntry> entries, final List<Transfer> items,
                                final String trackingId, final Set<String> seenPaths )
             throws IndyWorkflowException
     {
@@ -279,6 +295,12 @@ public class FoloAdminController
         return constructContentDTO( recordManager.get( tk ), baseUrl );
     }
 
+    public TrackedContentDTO getInProgressRecord( final String id, final String baseUrl )
+    {
+        final TrackingKey tk = new TrackingKey( id );
+        return constructContentDTO( recordManager.getInProgressRecord( tk ), baseUrl );
+    }
+
     public void clearRecord( final String id )
             throws FoloContentException
     {
@@ -293,16 +315,9 @@ public class FoloAdminController
             return null;
         }
         final Set<TrackedContentEntryDTO> uploads = new TreeSet<>();
-        for ( TrackedContentEntry entry : content.getUploads() )
-        {
-            uploads.add( constructContentEntryDTO( entry, baseUrl ) );
-        }
-
         final Set<TrackedContentEntryDTO> downloads = new TreeSet<>();
-        for ( TrackedContentEntry entry : content.getDownloads() )
-        {
-            downloads.add( constructContentEntryDTO( entry, baseUrl ) );
-        }
+        content.forEachEntry( entry -> uploads.add( constructContentEntryDTO( entry, baseUrl ) ),
+                              entry -> downloads.add( constructContentEntryDTO( entry, baseUrl ) ) );
         return new TrackedContentDTO( content.getKey(), uploads, downloads );
     }
 
@@ -15,6 +15,7 @@
  */
 package org.commonjava.indy.folo.data;
 
+import org.commonjava.indy.folo.conf.FoloConfig;
 import org.commonjava.indy.folo.data.idxmodel.StoreKeyFieldBridge;
 import org.commonjava.indy.folo.data.idxmodel.TrackedContentEntryTransformer;
 import org.commonjava.indy.folo.model.TrackedContent;
@@ -53,6 +54,9 @@ public class FoloCacheProducer
     @Inject
     private DataFileConfiguration dataConfig;
 
+    @Inject
+    private FoloConfig foloConfig;
+
     @PostConstruct
     public void initIndexing()
     {
@@ -107,6 +111,7 @@ public class FoloCacheProducer
     @ApplicationScoped
     public CacheHandle<TrackingKey, TrackedContent> sealedFoloRecordCacheCfg()
     {
+        TrackedContent.setCompactSerialization( foloConfig.isCompactSerializationEnabled() );
         return cacheProducer.getCache( SEALED_NAME );
     }
 }
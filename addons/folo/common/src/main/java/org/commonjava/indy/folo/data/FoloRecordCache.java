@@ -15,10 +15,17 @@
  */
 package org.commonjava.indy.folo.data;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.Timer;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.folo.change.FoloBackupListener;
 import org.commonjava.indy.folo.change.FoloExpirationWarningListener;
-import org.commonjava.indy.folo.model.StoreEffect;
+import org.commonjava.indy.folo.conf.FoloConfig;
 import org.commonjava.indy.folo.model.TrackedContent;
 import org.commonjava.indy.folo.model.TrackedContentEntry;
 import org.commonjava.indy.folo.model.TrackingKey;
@@ -27,27 +34,72 @@ import org.commonjava.indy.measure.annotation.MetricNamed;
 import org.commonjava.indy.subsys.infinispan.CacheHandle;
 import org.infinispan.Cache;
 import org.infinispan.commons.api.BasicCache;
+import org.infinispan.context.Flag;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryExpired;
+import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryExpiredEvent;
 import org.infinispan.query.Search;
-import org.infinispan.query.dsl.Query;
 import org.infinispan.query.dsl.QueryBuilder;
 import org.infinispan.query.dsl.QueryFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.commonjava.indy.measure.annotation.MetricNamed.DEFAULT;
 
+/**
+ * Tracking records: in-progress entries, one per tracked access, and sealed {@link TrackedContent} records.
+ * <p>
+ * Recording doesn't serialize on the whole cache. Each {@link TrackingKey} maps to one of {@link #LOCK_STRIPES}
+ * read/write locks: recording takes the read lock, so any number of accesses for the same build are recorded in
+ * parallel (entries are merged atomically in the cache), while sealing and deleting take the write lock so no entry
+ * can land in a record that is being sealed or deleted. The time spent waiting for these locks is exposed as metrics.
+ * <p>
+ * If {@link FoloConfig#isRecordBatchEnabled()}, entries are buffered per tracking key, coalescing repeated accesses to
+ * the same path, and written to the in-progress cache in batches.
+ * <p>
+ * Each tracking key also has a running {@link TrackingAggregate} of its in-progress entries, updated as they are
+ * recorded. Sealing swaps that aggregate into the sealed cache instead of querying the in-progress cache, and
+ * in-progress records can be read from it directly. The in-progress cache is node-local, so the aggregates are
+ * authoritative; only entries left in it from before this instance started have to be loaded (once per key) by a query.
+ * Entries the in-progress cache expires or evicts are pruned from their aggregate as well, and an aggregate left empty
+ * is dropped, so records that are never sealed don't stay in memory.
+ * <p>
+ * Sealed records are stored {@link TrackedContent#compacted() compacted}, so they stay small in memory and in the
+ * persistent store until someone asks for their entry sets.
+ */
 @ApplicationScoped
 public class FoloRecordCache
+        implements MetricSet
 {
+    private static final int LOCK_STRIPES = 64;
+
+    private static final String FLUSH_THREAD_NAME = "folo-record-flusher";
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
@@ -59,8 +111,38 @@ public class FoloRecordCache
     @Inject
     private CacheHandle<TrackingKey, TrackedContent> sealedRecordCache;
 
+    @Inject
+    private FoloConfig config;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "folo-expired-entries", threads = 1, priority = 2 )
+    private ExecutorService expiredEntriesExecutor;
+
+    private final ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[LOCK_STRIPES];
+
+    private final Timer recordLockWait = new Timer();
+
+    private final Timer sealLockWait = new Timer();
+
+    private final Map<TrackingKey, Map<TrackedContentEntry, TrackedContentEntry>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong pendingEntries = new AtomicLong();
+
+    private final Map<TrackingKey, TrackingAggregate> aggregates = new ConcurrentHashMap<>();
+
+    // true if the in-progress cache wasn't empty at startup, so new aggregates must be seeded from it
+    private volatile boolean seedAggregates;
+
+    private final LongAdder coalesced = new LongAdder();
+
+    private final LongAdder flushed = new LongAdder();
+
+    private ScheduledExecutorService flusher;
+
     protected FoloRecordCache()
     {
+        initLocks();
     }
 
     @Inject
@@ -72,6 +154,8 @@ public class FoloRecordCache
     @PostConstruct
     private void init()
     {
+        registerExpiryListener();
+
         sealedRecordCache.executeCache( (cache) -> {
             cache.addListener( foloBackupListener );
             return null;
@@ -81,13 +165,73 @@ public class FoloRecordCache
             cache.addListener( expirationWarningListener );
             return null;
         } );
+
+        initAggregates();
+        startFlusher();
+    }
+
+    private void registerExpiryListener()
+    {
+        inProgressRecordCache.executeCache( (cache) -> {
+            cache.addListener( new InProgressExpiryListener() );
+            return null;
+        } );
+    }
+
+    @PreDestroy
+    private void stop()
+    {
+        if ( flusher != null )
+        {
+            flusher.shutdown();
+            flushAll();
+        }
     }
 
     public FoloRecordCache( final Cache<TrackedContentEntry, TrackedContentEntry> inProgressRecordCache,
                             final Cache<TrackingKey, TrackedContent> sealedRecordCache )
+    {
+        this( inProgressRecordCache, sealedRecordCache, null );
+    }
+
+    public FoloRecordCache( final Cache<TrackedContentEntry, TrackedContentEntry> inProgressRecordCache,
+                            final Cache<TrackingKey, TrackedContent> sealedRecordCache, final FoloConfig config )
     {
         this.inProgressRecordCache = new CacheHandle("folo-in-progress", inProgressRecordCache);
         this.sealedRecordCache = new CacheHandle( "folo-sealed", sealedRecordCache );
+        this.config = config;
+        initLocks();
+        registerExpiryListener();
+        initAggregates();
+        startFlusher();
+    }
+
+    private void initLocks()
+    {
+        for ( int i = 0; i < LOCK_STRIPES; i++ )
+        {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private void initAggregates()
+    {
+        seedAggregates = !inProgressRecordCache.executeCache( Cache::isEmpty );
+        if ( seedAggregates )
+        {
+            logger.info( "In-progress tracking entries found at startup. They will be aggregated on first use." );
+        }
+    }
+
+    private void startFlusher()
+    {
+        if ( config != null && config.isRecordBatchEnabled() && flusher == null )
+        {
+            long millis = config.getRecordBatchFlushMillis();
+            flusher = Executors.newSingleThreadScheduledExecutor(
+                    new NamedThreadFactory( FLUSH_THREAD_NAME, new ThreadGroup( FLUSH_THREAD_NAME ), true, 2 ) );
+            flusher.scheduleWithFixedDelay( this::flushAll, millis, millis, TimeUnit.MILLISECONDS );
+        }
     }
 
     /**
@@ -97,70 +241,126 @@ public class FoloRecordCache
      * @return True if a new record was stored, otherwise false
      */
     @Measure
-    public synchronized boolean recordArtifact( final TrackedContentEntry entry )
+    public boolean recordArtifact( final TrackedContentEntry entry )
             throws FoloContentException,IndyWorkflowException
     {
-        if ( sealedRecordCache.containsKey( entry.getTrackingKey() ) )
+        final TrackingKey key = entry.getTrackingKey();
+        if ( sealedRecordCache.containsKey( key ) )
         {
-            throw new FoloContentException( "Tracking record: {} is already sealed!", entry.getTrackingKey() );
+            throw new FoloContentException( "Tracking record: {} is already sealed!", key );
         }
 
-        Logger logger = LoggerFactory.getLogger( getClass() );
         logger.debug( "Adding tracking entry: {}", entry );
-        return inProgressRecordCache.executeCache( (cache)->{
-            TrackedContentEntry existing = cache.get( entry );
-            if ( existing != null )
+        final Boolean overflow = withLock( lockFor( key ).readLock(), recordLockWait, () -> {
+            // a seal may have completed between the check above and taking the lock
+            if ( sealedRecordCache.containsKey( key ) )
             {
-                existing.merge( entry );
-                cache.put( existing, existing );
+                return null;
             }
-            else
+
+            final TrackedContentEntry merged = aggregates.computeIfAbsent( key, this::newAggregate ).add( entry );
+            if ( config != null && config.isRecordBatchEnabled() )
             {
-                cache.put( entry, entry );
+                if ( pending.computeIfAbsent( key, k -> new ConcurrentHashMap<>() ).putIfAbsent( merged, merged ) != null )
+                {
+                    coalesced.increment();
+                    return false;
+                }
+                return pendingEntries.incrementAndGet() > config.getRecordBatchMaxEntries();
             }
 
-            return true;
+            inProgressRecordCache.put( merged, merged );
+            return false;
         } );
+
+        if ( overflow == null )
+        {
+            throw new FoloContentException( "Tracking record: {} is already sealed!", key );
+        }
+
+        if ( overflow )
+        {
+            logger.debug( "Too many buffered tracking entries, flushing: {}", key );
+            withLock( lockFor( key ).writeLock(), sealLockWait, () -> flushPending( key ) );
+        }
+
+        return true;
     }
 
     @Measure
-    public synchronized void delete( final TrackingKey key )
+    public void delete( final TrackingKey key )
     {
-        sealedRecordCache.remove( key );
-        inProgressByTrackingKey( key, (qb, ch)->{
-            qb.build().list().forEach( item -> ch.execute( cache -> cache.remove( item ) ) );
-            return false;
+        withLock( lockFor( key ).writeLock(), sealLockWait, () -> {
+            sealedRecordCache.remove( key );
+            removeInProgress( key );
+            return null;
         } );
     }
 
-    public synchronized void replaceTrackingRecord( final TrackedContent record )
+    public void replaceTrackingRecord( final TrackedContent record )
     {
-        sealedRecordCache.put( record.getKey(), record );
+        sealedRecordCache.put( record.getKey(), record.compacted() );
     }
 
-    public synchronized boolean hasRecord( final TrackingKey key )
+    public boolean hasRecord( final TrackingKey key )
     {
         return hasSealedRecord( key ) || hasInProgressRecord( key );
     }
 
-    public synchronized boolean hasSealedRecord( final TrackingKey key )
+    public boolean hasSealedRecord( final TrackingKey key )
     {
         return sealedRecordCache.containsKey( key );
     }
 
     @Measure
-    public synchronized boolean hasInProgressRecord( final TrackingKey key )
+    public boolean hasInProgressRecord( final TrackingKey key )
     {
-        return !sealedRecordCache.containsKey( key ) && inProgressByTrackingKey( key, (qb, cacheHandle)->qb.build().getResultSize() > 0);
+        if ( sealedRecordCache.containsKey( key ) )
+        {
+            return false;
+        }
+
+        TrackingAggregate aggregate = aggregates.get( key );
+        if ( aggregate != null )
+        {
+            return !aggregate.isEmpty();
+        }
+
+        return seedAggregates && inProgressByTrackingKey( key, ( qb, cacheHandle ) -> qb.build().getResultSize() > 0 );
     }
 
-    public synchronized TrackedContent get( final TrackingKey key )
+    /**
+     * @return a snapshot of the entries recorded so far for an unsealed tracking key, or null if there are none
+     */
+    public TrackedContent getInProgressRecord( final TrackingKey key )
+    {
+        if ( sealedRecordCache.containsKey( key ) )
+        {
+            return null;
+        }
+
+        TrackingAggregate aggregate = aggregates.get( key );
+        if ( aggregate == null )
+        {
+            // don't register an aggregate for a key nobody is recording to
+            aggregate = newAggregate( key );
+        }
+
+        return aggregate.isEmpty() ? null : aggregate.toTrackedContent();
+    }
+
+    public TrackedContent get( final TrackingKey key )
     {
         return sealedRecordCache.get( key );
     }
 
     @Measure
     public TrackedContent seal( final TrackingKey trackingKey )
+    {
+        return withLock( lockFor( trackingKey ).writeLock(), sealLockWait, () -> doSeal( trackingKey ) );
+    }
+
+    private TrackedContent doSeal( final TrackingKey trackingKey )
     {
         TrackedContent record = sealedRecordCache.get( trackingKey );
 
@@ -171,43 +371,36 @@ public class FoloRecordCache
             return record;
         }
 
-        logger.debug( "Listing unsealed tracking record entries for: {}...", trackingKey );
-        return inProgressByTrackingKey( trackingKey, (qb, cacheHandle)-> {
-            Query query = qb.build();
-            List<TrackedContentEntry> results = query.list();
-            TrackedContent created = null;
-            if ( results != null )
-            {
-                logger.debug( "Adding {} entries to record: {}", results.size(), trackingKey );
-                Set<TrackedContentEntry> uploads = new TreeSet<>();
-                Set<TrackedContentEntry> downloads = new TreeSet<>();
-                results.forEach( ( result ) -> {
-                    if ( StoreEffect.DOWNLOAD == result.getEffect() )
-                    {
-                        downloads.add( result );
-                    }
-                    else if ( StoreEffect.UPLOAD == result.getEffect() )
-                    {
-                        uploads.add( result );
-                    }
-                    logger.trace( "Removing in-progress entry: {}", result );
-                    inProgressRecordCache.remove( result );
-                } );
-                created = new TrackedContent( trackingKey, uploads, downloads );
-            }
+        flushPending( trackingKey );
 
-            logger.debug( "Sealing record for: {}", trackingKey );
-            sealedRecordCache.put( trackingKey, created );
-            return created;
-        });
+        TrackingAggregate aggregate = aggregates.remove( trackingKey );
+        if ( aggregate == null )
+        {
+            aggregate = newAggregate( trackingKey );
+        }
+
+        TrackedContent created = aggregate.toTrackedContent();
+        logger.debug( "Sealing record for: {} ({} uploads, {} downloads, {} bytes, {} entries with checksums)",
+                      trackingKey, aggregate.getUploadCount(), aggregate.getDownloadCount(),
+                      aggregate.getTotalSize(), aggregate.getChecksummedCount() );
+        sealedRecordCache.put( trackingKey, created.compacted() );
+        removeEntries( aggregate );
+        return created;
     }
 
     public Set<TrackingKey> getInProgressTrackingKey()
     {
-        return inProgressRecordCache.execute( BasicCache::keySet )
-                                    .stream()
-                                    .map( TrackedContentEntry::getTrackingKey )
-                                    .collect( Collectors.toSet() );
+        Set<TrackingKey> keys = aggregates.entrySet()
+                                          .stream()
+                                          .filter( e -> !e.getValue().isEmpty() )
+                                          .map( Map.Entry::getKey )
+                                          .collect( Collectors.toCollection( HashSet::new ) );
+        if ( seedAggregates )
+        {
+            inProgressRecordCache.execute( BasicCache::keySet )
+                                 .forEach( entry -> keys.add( entry.getTrackingKey() ) );
+        }
+        return keys;
     }
 
     public Set<TrackingKey> getSealedTrackingKey()
@@ -237,6 +430,204 @@ public class FoloRecordCache
 
     public void addSealedRecord( TrackedContent record )
     {
-        sealedRecordCache.put( record.getKey(), record );
+        sealedRecordCache.put( record.getKey(), record.compacted() );
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics()
+    {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put( "record.lock-wait", recordLockWait );
+        metrics.put( "seal.lock-wait", sealLockWait );
+        metrics.put( "batch.pending", (Gauge<Long>) pendingEntries::get );
+        metrics.put( "batch.coalesced", (Gauge<Long>) coalesced::sum );
+        metrics.put( "batch.flushed", (Gauge<Long>) flushed::sum );
+        metrics.put( "aggregates", (Gauge<Integer>) aggregates::size );
+        return metrics;
+    }
+
+    /**
+     * Create the aggregate of a tracking key, loading the entries left in the in-progress cache by a previous instance
+     * if there may be any.
+     */
+    private TrackingAggregate newAggregate( final TrackingKey key )
+    {
+        TrackingAggregate aggregate = new TrackingAggregate( key );
+        if ( seedAggregates )
+        {
+            logger.debug( "Aggregating existing in-progress tracking entries for: {}", key );
+            inProgressByTrackingKey( key, ( qb, cacheHandle ) -> {
+                List<TrackedContentEntry> results = qb.build().list();
+                results.forEach( aggregate::add );
+                return null;
+            } );
+        }
+        return aggregate;
+    }
+
+    /**
+     * Drop the in-progress entries of a tracking key. Callers must hold its write lock.
+     */
+    private void removeInProgress( final TrackingKey key )
+    {
+        Map<TrackedContentEntry, TrackedContentEntry> buffered = pending.remove( key );
+        if ( buffered != null )
+        {
+            pendingEntries.addAndGet( -buffered.size() );
+        }
+
+        TrackingAggregate aggregate = aggregates.remove( key );
+        removeEntries( aggregate == null ? newAggregate( key ) : aggregate );
+    }
+
+    private void removeEntries( final TrackingAggregate aggregate )
+    {
+        Set<TrackedContentEntry> entries = aggregate.getEntries();
+        if ( !entries.isEmpty() )
+        {
+            logger.trace( "Removing {} in-progress entries", entries.size() );
+            inProgressRecordCache.executeCache( (cache) -> {
+                Cache<TrackedContentEntry, TrackedContentEntry> c =
+                        cache.getAdvancedCache().withFlags( Flag.IGNORE_RETURN_VALUES );
+                entries.forEach( c::remove );
+                return null;
+            } );
+        }
+    }
+
+    /**
+     * Write the buffered entries of a tracking key to the in-progress cache. Callers must hold its write lock, so
+     * nothing is added to the buffer meanwhile and the entries are in the cache by the time anyone else can seal.
+     */
+    private boolean flushPending( final TrackingKey key )
+    {
+        Map<TrackedContentEntry, TrackedContentEntry> buffered = pending.remove( key );
+        if ( buffered == null || buffered.isEmpty() )
+        {
+            return false;
+        }
+
+        logger.trace( "Flushing {} buffered tracking entries of: {}", buffered.size(), key );
+        inProgressRecordCache.executeCache( (cache) -> {
+            cache.putAll( buffered );
+            return null;
+        } );
+        pendingEntries.addAndGet( -buffered.size() );
+        flushed.add( buffered.size() );
+        return true;
+    }
+
+    private void flushAll()
+    {
+        for ( TrackingKey key : new HashSet<>( pending.keySet() ) )
+        {
+            try
+            {
+                withLock( lockFor( key ).writeLock(), sealLockWait, () -> flushPending( key ) );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( "Failed to flush buffered tracking entries of: " + key, e );
+            }
+        }
+    }
+
+    /**
+     * Prune entries the in-progress cache dropped from their aggregates. Runs on the expired-entries executor when
+     * there is one (outside of the cache's own locks), inline otherwise.
+     */
+    private void entriesDropped( final Set<TrackedContentEntry> entries )
+    {
+        Runnable prune = () -> entries.stream()
+                                      .collect( Collectors.groupingBy( TrackedContentEntry::getTrackingKey ) )
+                                      .forEach( this::pruneDropped );
+        if ( expiredEntriesExecutor == null )
+        {
+            prune.run();
+            return;
+        }
+
+        try
+        {
+            expiredEntriesExecutor.execute( prune );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            logger.warn( "Cannot prune {} expired tracking entries. Reason: {}", entries.size(), e.getMessage() );
+        }
+    }
+
+    private void pruneDropped( final TrackingKey key, final List<TrackedContentEntry> entries )
+    {
+        final ReentrantReadWriteLock lock = lockFor( key );
+        if ( lock.getReadHoldCount() > 0 )
+        {
+            // this thread is recording to the key, and writes the entry back to the cache once it returns
+            return;
+        }
+
+        withLock( lock.writeLock(), sealLockWait, () -> {
+            TrackingAggregate aggregate = aggregates.get( key );
+            if ( aggregate == null )
+            {
+                return null;
+            }
+
+            // entries recorded again since they were dropped are back in the cache, or waiting in the batch buffer
+            Map<TrackedContentEntry, TrackedContentEntry> buffered = pending.get( key );
+            entries.stream()
+                   .filter( e -> buffered == null || !buffered.containsKey( e ) )
+                   .filter( e -> !inProgressRecordCache.containsKey( e ) )
+                   .forEach( aggregate::remove );
+
+            if ( aggregate.isEmpty() )
+            {
+                logger.debug( "All in-progress entries of: {} expired. Dropping its aggregate.", key );
+                aggregates.remove( key, aggregate );
+            }
+            return null;
+        } );
+    }
+
+    private ReentrantReadWriteLock lockFor( final TrackingKey key )
+    {
+        return locks[( key.hashCode() & Integer.MAX_VALUE ) % LOCK_STRIPES];
+    }
+
+    private <R> R withLock( final Lock lock, final Timer waitTimer, final Supplier<R> action )
+    {
+        long start = System.nanoTime();
+        lock.lock();
+        waitTimer.update( System.nanoTime() - start, TimeUnit.NANOSECONDS );
+        try
+        {
+            return action.get();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Listener
+    public class InProgressExpiryListener
+    {
+        @CacheEntryExpired
+        public void onEntryExpired( final CacheEntryExpiredEvent<TrackedContentEntry, TrackedContentEntry> event )
+        {
+            if ( !event.isPre() )
+            {
+                entriesDropped( Collections.singleton( event.getKey() ) );
+            }
+        }
+
+        @CacheEntriesEvicted
+        public void onEntriesEvicted( final CacheEntriesEvictedEvent<TrackedContentEntry, TrackedContentEntry> event )
+        {
+            if ( !event.isPre() )
+            {
+                entriesDropped( new HashSet<>( event.getEntries().keySet() ) );
+            }
+        }
     }
 }
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.data;
+
+import com.codahale.metrics.MetricRegistry;
+import org.commonjava.indy.folo.conf.FoloConfig;
+import org.commonjava.indy.metrics.MetricSetProvider;
+import org.commonjava.indy.metrics.conf.IndyMetricsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Registers the lock wait timers and write-behind buffer gauges of {@link FoloRecordCache}.
+ */
+@ApplicationScoped
+public class FoloRecordCacheMetricSetProvider
+        implements MetricSetProvider
+{
+    private static final String FOLO_RECORD = "indy.folo.record";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private FoloRecordCache recordCache;
+
+    @Inject
+    private FoloConfig foloConfig;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
+    @Override
+    public void registerMetricSet( final MetricRegistry registry )
+    {
+        if ( foloConfig.isEnabled() )
+        {
+            logger.info( "Adding folo record cache metrics to registry: {}", registry );
+            registry.register( name( metricsConfig.getNodePrefix(), FOLO_RECORD ), recordCache );
+        }
+    }
+}
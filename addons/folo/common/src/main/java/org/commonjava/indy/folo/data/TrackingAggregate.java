@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.data;
+
+import org.commonjava.indy.folo.model.StoreEffect;
+import org.commonjava.indy.folo.model.TrackedContent;
+import org.commonjava.indy.folo.model.TrackedContentEntry;
+import org.commonjava.indy.folo.model.TrackingKey;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running view of the in-progress record of one {@link TrackingKey}: the merged uploads and downloads, plus the totals
+ * of their sizes and of the entries carrying checksums. It's updated as each entry is recorded, so sealing or reporting
+ * on a record doesn't have to query the in-progress cache.
+ * <p>
+ * Entries are merged per (store, channel, path, effect) atomically; the instance kept here is the one written to the
+ * in-progress cache.
+ */
+final class TrackingAggregate
+{
+    private final TrackingKey key;
+
+    private final Map<TrackedContentEntry, TrackedContentEntry> uploads = new ConcurrentHashMap<>();
+
+    private final Map<TrackedContentEntry, TrackedContentEntry> downloads = new ConcurrentHashMap<>();
+
+    // entries with neither effect aren't part of the sealed record, but they still have to be removed when sealing
+    private final Map<TrackedContentEntry, TrackedContentEntry> others = new ConcurrentHashMap<>();
+
+    private final LongAdder totalSize = new LongAdder();
+
+    private final LongAdder checksummed = new LongAdder();
+
+    TrackingAggregate( final TrackingKey key )
+    {
+        this.key = key;
+    }
+
+    /**
+     * Merge the entry into the aggregate.
+     * @return the merged entry, which should be stored in place of the given one
+     */
+    TrackedContentEntry add( final TrackedContentEntry entry )
+    {
+        return entriesOf( entry ).compute( entry, ( k, existing ) -> {
+            if ( existing == null )
+            {
+                count( entry, 1 );
+                return entry;
+            }
+
+            if ( existing != entry )
+            {
+                count( existing, -1 );
+                existing.merge( entry );
+                count( existing, 1 );
+            }
+            return existing;
+        } );
+    }
+
+    /**
+     * Forget an entry the in-progress cache no longer holds.
+     */
+    void remove( final TrackedContentEntry entry )
+    {
+        entriesOf( entry ).computeIfPresent( entry, ( k, existing ) -> {
+            count( existing, -1 );
+            return null;
+        } );
+    }
+
+    Set<TrackedContentEntry> getEntries()
+    {
+        Set<TrackedContentEntry> entries = new HashSet<>( uploads.keySet() );
+        entries.addAll( downloads.keySet() );
+        entries.addAll( others.keySet() );
+        return entries;
+    }
+
+    boolean isEmpty()
+    {
+        return uploads.isEmpty() && downloads.isEmpty() && others.isEmpty();
+    }
+
+    int getUploadCount()
+    {
+        return uploads.size();
+    }
+
+    int getDownloadCount()
+    {
+        return downloads.size();
+    }
+
+    long getTotalSize()
+    {
+        return totalSize.sum();
+    }
+
+    long getChecksummedCount()
+    {
+        return checksummed.sum();
+    }
+
+    /**
+     * @return a record holding sorted copies of the current uploads and downloads
+     */
+    TrackedContent toTrackedContent()
+    {
+        return new TrackedContent( key, new TreeSet<>( uploads.keySet() ), new TreeSet<>( downloads.keySet() ) );
+    }
+
+    private Map<TrackedContentEntry, TrackedContentEntry> entriesOf( final TrackedContentEntry entry )
+    {
+        if ( StoreEffect.DOWNLOAD == entry.getEffect() )
+        {
+            return downloads;
+        }
+        else if ( StoreEffect.UPLOAD == entry.getEffect() )
+        {
+            return uploads;
+        }
+
+        return others;
+    }
+
+    private void count( final TrackedContentEntry entry, final int sign )
+    {
+        if ( entry.getSize() != null )
+        {
+            totalSize.add( sign * entry.getSize() );
+        }
+
+        if ( entry.getMd5() != null || entry.getSha1() != null || entry.getSha256() != null )
+        {
+            checksummed.add( sign );
+        }
+    }
+}
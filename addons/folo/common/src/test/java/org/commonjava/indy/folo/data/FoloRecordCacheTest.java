@@ -15,6 +15,8 @@
  */
 package org.commonjava.indy.folo.data;
 
+import com.codahale.metrics.Gauge;
+import org.commonjava.indy.folo.conf.FoloConfig;
 import org.commonjava.indy.folo.model.StoreEffect;
 import org.commonjava.indy.folo.model.TrackedContent;
 import org.commonjava.indy.folo.model.TrackedContentEntry;
@@ -31,8 +33,16 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -147,6 +157,163 @@ public class FoloRecordCacheTest
         assertThat( cache.get( key ), nullValue() );
     }
 
+    @Test
+    public void batchedRecordingCoalescesEntriesUntilSealed()
+            throws Exception
+    {
+        final FoloConfig config = new FoloConfig();
+        config.setRecordBatchEnabled( true );
+        config.setRecordBatchFlushMillis( 60000L );
+        cache = new FoloRecordCache( inProgress, sealed, config );
+
+        final TrackingKey key = newKey();
+        for ( long size : new long[] { 125L, 126L } )
+        {
+            cache.recordArtifact( new TrackedContentEntry( key, new StoreKey( StoreType.remote, "foo" ),
+                                                           AccessChannel.MAVEN_REPO, "", "/path",
+                                                           StoreEffect.DOWNLOAD, size, "", "", "" ) );
+        }
+
+        assertThat( inProgress.isEmpty(), equalTo( true ) );
+        assertThat( cache.hasInProgressRecord( key ), equalTo( true ) );
+
+        TrackedContent record = cache.seal( key );
+        assertThat( record.getDownloads().size(), equalTo( 1 ) );
+        assertThat( record.getDownloads().iterator().next().getSize(), equalTo( 126L ) );
+        assertThat( cache.hasInProgressRecord( key ), equalTo( false ) );
+    }
+
+    @Test
+    public void inProgressRecordAggregatesEntriesAsRecorded()
+            throws Exception
+    {
+        final TrackingKey key = newKey();
+        assertThat( cache.getInProgressRecord( key ), nullValue() );
+
+        for ( long size : new long[] { 128L, 129L } )
+        {
+            cache.recordArtifact( new TrackedContentEntry( key, new StoreKey( StoreType.remote, "foo" ),
+                                                           AccessChannel.MAVEN_REPO, "", "/path",
+                                                           StoreEffect.DOWNLOAD, size, "", "", "" ) );
+        }
+        cache.recordArtifact( new TrackedContentEntry( key, new StoreKey( StoreType.hosted, "bar" ),
+                                                       AccessChannel.MAVEN_REPO, "", "/other",
+                                                       StoreEffect.UPLOAD, 130L, "", "", "" ) );
+
+        TrackedContent record = cache.getInProgressRecord( key );
+        assertThat( record.getDownloads().size(), equalTo( 1 ) );
+        assertThat( record.getDownloads().iterator().next().getSize(), equalTo( 129L ) );
+        assertThat( record.getUploads().size(), equalTo( 1 ) );
+
+        cache.seal( key );
+        assertThat( cache.getInProgressRecord( key ), nullValue() );
+        assertThat( inProgress.isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void sealIncludesEntriesRecordedBeforeStartup()
+            throws Exception
+    {
+        final TrackingKey key = newKey();
+        final TrackedContentEntry entry =
+                new TrackedContentEntry( key, new StoreKey( StoreType.remote, "foo" ), AccessChannel.MAVEN_REPO, "",
+                                         "/path", StoreEffect.DOWNLOAD, 131L, "", "", "" );
+        inProgress.put( entry, entry );
+
+        cache = new FoloRecordCache( inProgress, sealed );
+        assertThat( cache.hasInProgressRecord( key ), equalTo( true ) );
+
+        TrackedContent record = cache.seal( key );
+        assertThat( record.getDownloads().size(), equalTo( 1 ) );
+        assertThat( inProgress.isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void recordingRacingWithSealNeverLeavesEntriesBehind()
+            throws Exception
+    {
+        final TrackingKey key = newKey();
+        final int threads = 4;
+        final int perThread = 500;
+        final AtomicInteger recorded = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch( threads );
+
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        List<Future<?>> futures = new ArrayList<>();
+        for ( int t = 0; t < threads; t++ )
+        {
+            final int thread = t;
+            futures.add( executor.submit( () -> {
+                started.countDown();
+                for ( int i = 0; i < perThread; i++ )
+                {
+                    try
+                    {
+                        cache.recordArtifact( new TrackedContentEntry( key, new StoreKey( StoreType.remote, "foo" ),
+                                                                       AccessChannel.MAVEN_REPO, "",
+                                                                       "/path/" + thread + "/" + i,
+                                                                       StoreEffect.DOWNLOAD, 1L, "", "", "" ) );
+                        recorded.incrementAndGet();
+                    }
+                    catch ( FoloContentException e )
+                    {
+                        // sealed already
+                    }
+                }
+                return null;
+            } ) );
+        }
+
+        started.await();
+        TrackedContent record = cache.seal( key );
+        for ( Future<?> future : futures )
+        {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat( record.getDownloads().size(), equalTo( recorded.get() ) );
+        assertThat( inProgress.isEmpty(), equalTo( true ) );
+        assertThat( cache.hasInProgressRecord( key ), equalTo( false ) );
+    }
+
+    @Test
+    @SuppressWarnings( "unchecked" )
+    public void expiredInProgressEntriesArePrunedFromTheirAggregate()
+            throws Exception
+    {
+        cacheManager.defineConfiguration( "expiring-in-progress", new ConfigurationBuilder().expiration()
+                                                                                            .lifespan( 200, MILLISECONDS )
+                                                                                            .build() );
+        final Cache<TrackedContentEntry, TrackedContentEntry> expiring =
+                cacheManager.getCache( "expiring-in-progress", true );
+        cache = new FoloRecordCache( expiring, sealed );
+
+        final TrackingKey key = newKey();
+        cache.recordArtifact( new TrackedContentEntry( key, new StoreKey( StoreType.remote, "foo" ),
+                                                       AccessChannel.MAVEN_REPO, "", "/expiring",
+                                                       StoreEffect.DOWNLOAD, 132L, "", "", "" ) );
+        Thread.sleep( 300 );
+        cache.recordArtifact( new TrackedContentEntry( key, new StoreKey( StoreType.remote, "foo" ),
+                                                       AccessChannel.MAVEN_REPO, "", "/fresh",
+                                                       StoreEffect.DOWNLOAD, 133L, "", "", "" ) );
+
+        expiring.getAdvancedCache().getExpirationManager().processExpiration();
+
+        TrackedContent record = cache.getInProgressRecord( key );
+        assertThat( record.getDownloads().size(), equalTo( 1 ) );
+        assertThat( record.getDownloads().iterator().next().getPath(), equalTo( "/fresh" ) );
+
+        Thread.sleep( 300 );
+        expiring.getAdvancedCache().getExpirationManager().processExpiration();
+
+        assertThat( cache.getInProgressRecord( key ), nullValue() );
+        assertThat( ( (Gauge<Integer>) cache.getMetrics().get( "aggregates" ) ).getValue(), equalTo( 0 ) );
+        assertThat( cache.seal( key ).getDownloads().isEmpty(), equalTo( true ) );
+
+        expiring.stop();
+    }
+
     @Test
     public void getRecordReturnsNullIfNoneExists()
             throws Exception
@@ -35,6 +35,7 @@ import org.commonjava.indy.folo.dto.TrackedContentEntryDTO;
 import org.commonjava.indy.folo.dto.TrackingIdsDTO;
 import org.commonjava.indy.model.core.BatchDeleteRequest;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.indy.util.StreamingZipWriter.ZipMember;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +53,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import java.io.File;
 import java.io.IOException;
@@ -132,15 +134,14 @@ public class FoloAdminResource
     @Path( "/{id}/repo/zip" )
     @GET
     @Produces( application_zip )
-    public File getZipRepository( @ApiParam( "User-assigned tracking session key" ) @PathParam( "id" ) String id )
+    public Response getZipRepository( @ApiParam( "User-assigned tracking session key" ) @PathParam( "id" ) String id )
     {
         try
         {
-            File zip = controller.renderRepositoryZip( id );
-            return zip;
-            //
-            //            final Response.ResponseBuilder builder = Response.ok( zip );
-            //            return setInfoHeaders( builder, zip, false, application_zip ).build();
+            // resolve the record first, so a missing one is still a 404 rather than a broken stream
+            final List<ZipMember> members = controller.getRepositoryZipMembers( id );
+            final StreamingOutput zip = out -> controller.writeZip( members, out );
+            return Response.ok( zip ).type( application_zip ).build();
         }
         catch ( IndyWorkflowException e )
         {
@@ -254,6 +255,26 @@ public class FoloAdminResource
         return response;
     }
 
+    @ApiOperation( "Retrieve the entries recorded so far for a tracking record that is not sealed yet" )
+    @ApiResponses( { @ApiResponse( code = 404, message = "No such in-progress tracking record exists." ),
+                           @ApiResponse( code = 200, message = "In-progress tracking record",
+                                         response = TrackedContentDTO.class ), } )
+    @Path( "/{id}/record/in-progress" )
+    @GET
+    public Response getInProgressRecord(
+            @ApiParam( "User-assigned tracking session key" ) final @PathParam( "id" ) String id,
+            @Context final UriInfo uriInfo )
+    {
+        final String baseUrl = uriInfo.getBaseUriBuilder().path( "api" ).build().toString();
+        final TrackedContentDTO record = controller.getInProgressRecord( id, baseUrl );
+        if ( record == null )
+        {
+            return Response.status( Status.NOT_FOUND ).build();
+        }
+
+        return responseHelper.formatOkResponseWithJsonEntity( record );
+    }
+
     @Path( "/{id}/record" )
     @DELETE
     public Response clearRecord( @ApiParam( "User-assigned tracking session key" ) final @PathParam( "id" ) String id )
@@ -21,10 +21,25 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Consumer;
 
+/**
+ * Uploads and downloads of a tracking record.
+ * <p>
+ * Records can be held in the compact encoding of {@link TrackedContentCodec} (see {@link #compacted()}). A compact
+ * record keeps only the encoded bytes until its entry sets are first requested; {@link #forEachEntry(Consumer, Consumer)}
+ * reads the entries without materializing them.
+ * <p>
+ * Records are externalized in the older layout (key followed by the plain entry sets) unless
+ * {@link #setCompactSerialization(boolean)} is switched on, since nodes and tools built before the compact layout
+ * (e.g. the cache-migrator) can't read it. Both layouts are always readable.
+ */
 public class TrackedContent
         implements Externalizable
 {
+    private static final String COMPACT_LAYOUT = "compact";
+
+    private static volatile boolean compactSerialization;
 
     private TrackingKey key;
 
@@ -32,6 +47,8 @@ public class TrackedContent
 
     private Set<TrackedContentEntry> downloads;
 
+    private transient byte[] encoded;
+
     public TrackedContent(){}
 
     public TrackedContent( final TrackingKey key, final Set<TrackedContentEntry> uploads,
@@ -42,6 +59,22 @@ public class TrackedContent
         this.downloads = downloads;
     }
 
+    private TrackedContent( final TrackingKey key, final byte[] encoded )
+    {
+        this.key = key;
+        this.encoded = encoded;
+    }
+
+    public static void setCompactSerialization( final boolean compact )
+    {
+        compactSerialization = compact;
+    }
+
+    public static boolean isCompactSerialization()
+    {
+        return compactSerialization;
+    }
+
     public TrackingKey getKey()
     {
         return key;
@@ -49,14 +82,98 @@ public class TrackedContent
 
     public Set<TrackedContentEntry> getUploads()
     {
+        materialize();
         return uploads;
     }
 
     public Set<TrackedContentEntry> getDownloads()
     {
+        materialize();
         return downloads;
     }
 
+    /**
+     * Hand each upload and each download to the matching consumer (either may be null). A compact record is decoded
+     * entry by entry, and its entry sets are not materialized.
+     */
+    public void forEachEntry( final Consumer<TrackedContentEntry> onUpload,
+                              final Consumer<TrackedContentEntry> onDownload )
+    {
+        final byte[] data;
+        final Set<TrackedContentEntry> ups;
+        final Set<TrackedContentEntry> downs;
+        synchronized ( this )
+        {
+            data = encoded;
+            ups = uploads;
+            downs = downloads;
+        }
+
+        if ( data != null )
+        {
+            try
+            {
+                TrackedContentCodec.decode( data, key, onUpload, onDownload );
+            }
+            catch ( IOException e )
+            {
+                throw new IllegalStateException( "Cannot decode tracked content of: " + key, e );
+            }
+            return;
+        }
+
+        if ( ups != null && onUpload != null )
+        {
+            ups.forEach( onUpload );
+        }
+        if ( downs != null && onDownload != null )
+        {
+            downs.forEach( onDownload );
+        }
+    }
+
+    /**
+     * @return a copy of this record that holds only the compact encoding of its entries, until they're requested
+     */
+    public TrackedContent compacted()
+    {
+        try
+        {
+            return new TrackedContent( key, getEncoded() );
+        }
+        catch ( IOException e )
+        {
+            throw new IllegalStateException( "Cannot encode tracked content of: " + key, e );
+        }
+    }
+
+    private synchronized void materialize()
+    {
+        if ( encoded != null )
+        {
+            final Set<TrackedContentEntry> ups = new HashSet<>();
+            final Set<TrackedContentEntry> downs = new HashSet<>();
+            try
+            {
+                TrackedContentCodec.decode( encoded, key, ups::add, downs::add );
+            }
+            catch ( IOException e )
+            {
+                throw new IllegalStateException( "Cannot decode tracked content of: " + key, e );
+            }
+
+            uploads = ups;
+            downloads = downs;
+            encoded = null;
+        }
+    }
+
+    private synchronized byte[] getEncoded()
+            throws IOException
+    {
+        return encoded != null ? encoded : TrackedContentCodec.encode( key, uploads, downloads );
+    }
+
     @Override
     public boolean equals( Object o )
     {
@@ -85,16 +202,47 @@ public class TrackedContent
     public void writeExternal( ObjectOutput objectOutput )
             throws IOException
     {
+        if ( !compactSerialization )
+        {
+            // copies, so a compact record stays compact
+            final Set<TrackedContentEntry> ups = new HashSet<>();
+            final Set<TrackedContentEntry> downs = new HashSet<>();
+            forEachEntry( ups::add, downs::add );
+
+            objectOutput.writeObject( key );
+            objectOutput.writeObject( ups );
+            objectOutput.writeObject( downs );
+            return;
+        }
+
+        final byte[] data = getEncoded();
+        objectOutput.writeObject( COMPACT_LAYOUT );
         objectOutput.writeObject( key );
-        objectOutput.writeObject( uploads );
-        objectOutput.writeObject( downloads );
+        objectOutput.writeInt( data.length );
+        objectOutput.write( data );
     }
 
     @Override
     public void readExternal( ObjectInput objectInput )
             throws IOException, ClassNotFoundException
     {
-        key = (TrackingKey) objectInput.readObject();
+        final Object first = objectInput.readObject();
+        if ( COMPACT_LAYOUT.equals( first ) )
+        {
+            key = (TrackingKey) objectInput.readObject();
+            final byte[] data = new byte[objectInput.readInt()];
+            objectInput.readFully( data );
+            synchronized ( this )
+            {
+                encoded = data;
+                uploads = null;
+                downloads = null;
+            }
+            return;
+        }
+
+        // older layout: the key followed by the entry sets
+        key = (TrackingKey) first;
         Set<TrackedContentEntry> ups = (Set<TrackedContentEntry>) objectInput.readObject();
         uploads = ups == null ? new HashSet<>() : new HashSet<>( ups );
 
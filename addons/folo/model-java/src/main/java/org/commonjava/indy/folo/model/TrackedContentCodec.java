@@ -0,0 +1,525 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.model;
+
+import org.commonjava.indy.model.core.AccessChannel;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact binary encoding of the uploads and downloads of a {@link TrackedContent}.
+ * <p>
+ * Store keys, access channels, effects and origin URL prefixes are written once in dictionaries and referenced by
+ * index. An origin URL ending with the entry path is stored as a prefix reference only. Paths are front-coded against
+ * the previous entry (entries of sealed records are sorted by store key and path, so consecutive paths share long
+ * prefixes), hex checksums are stored as raw bytes, and indexes and timestamps as variable-length deltas. The result
+ * is deflated.
+ * <p>
+ * Entries are decoded one at a time, so callers can visit a record without materializing its entry sets.
+ */
+final class TrackedContentCodec
+{
+    static final int FORMAT_VERSION = 1;
+
+    private static final int HAS_PATH = 1;
+
+    private static final int HAS_ORIGIN = 1 << 1;
+
+    private static final int ORIGIN_IS_PREFIX = 1 << 2;
+
+    private static final int HAS_SIZE = 1 << 3;
+
+    private static final int HAS_TIMESTAMPS = 1 << 4;
+
+    private static final int OTHER_TRACKING_KEY = 1 << 5;
+
+    private static final int NULL_TRACKING_KEY = 1 << 6;
+
+    private static final int CHECKSUM_NULL = 0;
+
+    private static final int CHECKSUM_BINARY = 1;
+
+    private static final int CHECKSUM_TEXT = 2;
+
+    private TrackedContentCodec()
+    {
+    }
+
+    static byte[] encode( final TrackingKey key, final Set<TrackedContentEntry> uploads,
+                          final Set<TrackedContentEntry> downloads )
+            throws IOException
+    {
+        final Dictionary<StoreKey> storeKeys = new Dictionary<>();
+        final Dictionary<String> names = new Dictionary<>();
+        final Dictionary<String> origins = new Dictionary<>();
+
+        final ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+        final DataOutputStream entries = new DataOutputStream( entryBytes );
+        final State state = new State();
+        writeSection( entries, key, uploads, storeKeys, names, origins, state );
+        writeSection( entries, key, downloads, storeKeys, names, origins, state );
+        entries.flush();
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream( entryBytes.size() / 2 + 16 );
+        baos.write( FORMAT_VERSION );
+
+        final Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+        try
+        {
+            final DataOutputStream out = new DataOutputStream( new DeflaterOutputStream( baos, deflater ) );
+            writeVarLong( out, storeKeys.values.size() );
+            for ( StoreKey sk : storeKeys.values )
+            {
+                out.writeBoolean( sk != null );
+                if ( sk != null )
+                {
+                    writeString( out, sk.getPackageType() );
+                    writeString( out, sk.getType().name() );
+                    writeString( out, sk.getName() );
+                }
+            }
+
+            writeStrings( out, names.values );
+            writeStrings( out, origins.values );
+
+            entryBytes.writeTo( out );
+            out.close();
+        }
+        finally
+        {
+            deflater.end();
+        }
+
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decode the entries one by one, handing each upload and download to the matching consumer (either may be null to
+     * skip that section).
+     */
+    static void decode( final byte[] encoded, final TrackingKey key, final Consumer<TrackedContentEntry> onUpload,
+                        final Consumer<TrackedContentEntry> onDownload )
+            throws IOException
+    {
+        if ( encoded[0] != FORMAT_VERSION )
+        {
+            throw new IOException( "Unsupported tracked content encoding version: " + encoded[0] );
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new InflaterInputStream( new ByteArrayInputStream( encoded, 1, encoded.length - 1 ) ) ))
+        {
+            final int storeKeyCount = (int) readVarLong( in );
+            final StoreKey[] storeKeys = new StoreKey[storeKeyCount];
+            for ( int i = 0; i < storeKeyCount; i++ )
+            {
+                if ( !in.readBoolean() )
+                {
+                    continue;
+                }
+
+                String packageType = readString( in );
+                StoreType type = StoreType.get( readString( in ) );
+                storeKeys[i] = new StoreKey( packageType, type, readString( in ) );
+            }
+
+            final String[] names = readStrings( in );
+            final String[] origins = readStrings( in );
+
+            final State state = new State();
+            readSection( in, key, storeKeys, names, origins, state, onUpload );
+            readSection( in, key, storeKeys, names, origins, state, onDownload );
+        }
+    }
+
+    private static void writeSection( final DataOutput out, final TrackingKey key,
+                                      final Set<TrackedContentEntry> entries, final Dictionary<StoreKey> storeKeys,
+                                      final Dictionary<String> names, final Dictionary<String> origins,
+                                      final State state )
+            throws IOException
+    {
+        if ( entries == null )
+        {
+            writeVarLong( out, 0 );
+            return;
+        }
+
+        writeVarLong( out, entries.size() + 1 );
+        for ( TrackedContentEntry entry : entries )
+        {
+            final String path = entry.getPath();
+            final String origin = entry.getOriginUrl();
+            final String relativePath = path == null ? null : ( path.startsWith( "/" ) ? path.substring( 1 ) : path );
+            final boolean originIsPrefix = origin != null && relativePath != null && !relativePath.isEmpty()
+                    && origin.endsWith( relativePath );
+
+            int flags = 0;
+            flags |= path != null ? HAS_PATH : 0;
+            flags |= origin != null ? HAS_ORIGIN : 0;
+            flags |= originIsPrefix ? ORIGIN_IS_PREFIX : 0;
+            flags |= entry.getSize() != null ? HAS_SIZE : 0;
+            flags |= entry.getTimestamps() != null ? HAS_TIMESTAMPS : 0;
+            if ( entry.getTrackingKey() == null )
+            {
+                flags |= NULL_TRACKING_KEY;
+            }
+            else if ( !entry.getTrackingKey().equals( key ) )
+            {
+                flags |= OTHER_TRACKING_KEY;
+            }
+            out.writeByte( flags );
+
+            out.writeByte( checksumMode( entry.getMd5() ) | checksumMode( entry.getSha1() ) << 2
+                                   | checksumMode( entry.getSha256() ) << 4 );
+
+            if ( ( flags & OTHER_TRACKING_KEY ) != 0 )
+            {
+                writeString( out, entry.getTrackingKey().getId() );
+            }
+
+            writeVarLong( out, storeKeys.indexOf( entry.getStoreKey() ) );
+            writeVarLong( out, names.indexOf( entry.getAccessChannel() == null ? null : entry.getAccessChannel().name() ) );
+            writeVarLong( out, names.indexOf( entry.getEffect() == null ? null : entry.getEffect().name() ) );
+
+            if ( path != null )
+            {
+                final byte[] bytes = path.getBytes( StandardCharsets.UTF_8 );
+                final int shared = sharedPrefix( state.previousPath, bytes );
+                writeVarLong( out, shared );
+                writeVarLong( out, bytes.length - shared );
+                out.write( bytes, shared, bytes.length - shared );
+                state.previousPath = bytes;
+            }
+
+            if ( origin != null )
+            {
+                writeVarLong( out, origins.indexOf(
+                        originIsPrefix ? origin.substring( 0, origin.length() - relativePath.length() ) : origin ) );
+            }
+
+            writeChecksum( out, entry.getMd5() );
+            writeChecksum( out, entry.getSha1() );
+            writeChecksum( out, entry.getSha256() );
+
+            if ( entry.getSize() != null )
+            {
+                writeVarLong( out, zigZag( entry.getSize() ) );
+            }
+
+            writeVarLong( out, zigZag( entry.getIndex() - state.previousIndex ) );
+            state.previousIndex = entry.getIndex();
+
+            if ( entry.getTimestamps() != null )
+            {
+                final long[] timestamps = entry.getTimestamps().stream().mapToLong( Long::longValue ).sorted().toArray();
+                writeVarLong( out, timestamps.length );
+                long previous = entry.getIndex();
+                for ( long ts : timestamps )
+                {
+                    writeVarLong( out, zigZag( ts - previous ) );
+                    previous = ts;
+                }
+            }
+        }
+    }
+
+    private static void readSection( final DataInput in, final TrackingKey key, final StoreKey[] storeKeys,
+                                     final String[] names, final String[] origins, final State state,
+                                     final Consumer<TrackedContentEntry> consumer )
+            throws IOException
+    {
+        final long count = readVarLong( in ) - 1;
+        for ( long i = 0; i < count; i++ )
+        {
+            final int flags = in.readUnsignedByte();
+            final int checksumModes = in.readUnsignedByte();
+
+            TrackingKey trackingKey = key;
+            if ( ( flags & NULL_TRACKING_KEY ) != 0 )
+            {
+                trackingKey = null;
+            }
+            else if ( ( flags & OTHER_TRACKING_KEY ) != 0 )
+            {
+                trackingKey = new TrackingKey( readString( in ) );
+            }
+
+            final StoreKey storeKey = storeKeys[(int) readVarLong( in )];
+            final String channel = names[(int) readVarLong( in )];
+            final String effect = names[(int) readVarLong( in )];
+
+            String path = null;
+            if ( ( flags & HAS_PATH ) != 0 )
+            {
+                final int shared = (int) readVarLong( in );
+                final int suffix = (int) readVarLong( in );
+                final byte[] bytes = Arrays.copyOf( state.previousPath, shared + suffix );
+                in.readFully( bytes, shared, suffix );
+                state.previousPath = bytes;
+                path = new String( bytes, StandardCharsets.UTF_8 );
+            }
+
+            String origin = null;
+            if ( ( flags & HAS_ORIGIN ) != 0 )
+            {
+                origin = origins[(int) readVarLong( in )];
+                if ( ( flags & ORIGIN_IS_PREFIX ) != 0 )
+                {
+                    origin = origin + ( path.startsWith( "/" ) ? path.substring( 1 ) : path );
+                }
+            }
+
+            final String md5 = readChecksum( in, checksumModes & 3 );
+            final String sha1 = readChecksum( in, checksumModes >> 2 & 3 );
+            final String sha256 = readChecksum( in, checksumModes >> 4 & 3 );
+
+            final Long size = ( flags & HAS_SIZE ) != 0 ? unZigZag( readVarLong( in ) ) : null;
+
+            final long index = state.previousIndex + unZigZag( readVarLong( in ) );
+            state.previousIndex = index;
+
+            Set<Long> timestamps = null;
+            if ( ( flags & HAS_TIMESTAMPS ) != 0 )
+            {
+                final int tsCount = (int) readVarLong( in );
+                timestamps = new HashSet<>( tsCount * 2 );
+                long previous = index;
+                for ( int t = 0; t < tsCount; t++ )
+                {
+                    previous += unZigZag( readVarLong( in ) );
+                    timestamps.add( previous );
+                }
+            }
+
+            if ( consumer != null )
+            {
+                TrackedContentEntry entry = new TrackedContentEntry( trackingKey, storeKey,
+                                                                     channel == null ? null : AccessChannel.valueOf( channel ),
+                                                                     origin, path,
+                                                                     effect == null ? null : StoreEffect.valueOf( effect ),
+                                                                     size, md5, sha1, sha256 );
+                entry.setIndex( index );
+                entry.setTimestamps( timestamps );
+                consumer.accept( entry );
+            }
+        }
+    }
+
+    private static int checksumMode( final String checksum )
+    {
+        if ( checksum == null )
+        {
+            return CHECKSUM_NULL;
+        }
+
+        if ( checksum.length() % 2 != 0 || checksum.length() > 2 * 255 )
+        {
+            return CHECKSUM_TEXT;
+        }
+
+        for ( int i = 0; i < checksum.length(); i++ )
+        {
+            char c = checksum.charAt( i );
+            if ( ( c < '0' || c > '9' ) && ( c < 'a' || c > 'f' ) )
+            {
+                return CHECKSUM_TEXT;
+            }
+        }
+
+        return CHECKSUM_BINARY;
+    }
+
+    private static void writeChecksum( final DataOutput out, final String checksum )
+            throws IOException
+    {
+        switch ( checksumMode( checksum ) )
+        {
+            case CHECKSUM_BINARY:
+            {
+                out.writeByte( checksum.length() / 2 );
+                for ( int i = 0; i < checksum.length(); i += 2 )
+                {
+                    out.writeByte( Character.digit( checksum.charAt( i ), 16 ) << 4
+                                           | Character.digit( checksum.charAt( i + 1 ), 16 ) );
+                }
+                break;
+            }
+            case CHECKSUM_TEXT:
+            {
+                writeString( out, checksum );
+                break;
+            }
+            default:
+        }
+    }
+
+    private static String readChecksum( final DataInput in, final int mode )
+            throws IOException
+    {
+        switch ( mode )
+        {
+            case CHECKSUM_BINARY:
+            {
+                final int length = in.readUnsignedByte();
+                final char[] hex = new char[length * 2];
+                for ( int i = 0; i < length; i++ )
+                {
+                    final int b = in.readUnsignedByte();
+                    hex[2 * i] = Character.forDigit( b >> 4, 16 );
+                    hex[2 * i + 1] = Character.forDigit( b & 0xf, 16 );
+                }
+                return new String( hex );
+            }
+            case CHECKSUM_TEXT:
+            {
+                return readString( in );
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static int sharedPrefix( final byte[] previous, final byte[] current )
+    {
+        final int max = Math.min( previous.length, current.length );
+        int i = 0;
+        while ( i < max && previous[i] == current[i] )
+        {
+            i++;
+        }
+        return i;
+    }
+
+    private static void writeStrings( final DataOutput out, final List<String> values )
+            throws IOException
+    {
+        writeVarLong( out, values.size() );
+        for ( String value : values )
+        {
+            out.writeBoolean( value != null );
+            if ( value != null )
+            {
+                writeString( out, value );
+            }
+        }
+    }
+
+    private static String[] readStrings( final DataInput in )
+            throws IOException
+    {
+        final String[] values = new String[(int) readVarLong( in )];
+        for ( int i = 0; i < values.length; i++ )
+        {
+            values[i] = in.readBoolean() ? readString( in ) : null;
+        }
+        return values;
+    }
+
+    private static void writeString( final DataOutput out, final String value )
+            throws IOException
+    {
+        final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+        writeVarLong( out, bytes.length );
+        out.write( bytes );
+    }
+
+    private static String readString( final DataInput in )
+            throws IOException
+    {
+        final byte[] bytes = new byte[(int) readVarLong( in )];
+        in.readFully( bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    private static void writeVarLong( final DataOutput out, long value )
+            throws IOException
+    {
+        while ( ( value & ~0x7FL ) != 0 )
+        {
+            out.writeByte( (int) ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        out.writeByte( (int) value );
+    }
+
+    private static long readVarLong( final DataInput in )
+            throws IOException
+    {
+        long value = 0;
+        for ( int shift = 0; shift < 64; shift += 7 )
+        {
+            final int b = in.readUnsignedByte();
+            value |= (long) ( b & 0x7F ) << shift;
+            if ( ( b & 0x80 ) == 0 )
+            {
+                return value;
+            }
+        }
+        throw new IOException( "Malformed variable-length number in tracked content" );
+    }
+
+    private static long zigZag( final long value )
+    {
+        return ( value << 1 ) ^ ( value >> 63 );
+    }
+
+    private static long unZigZag( final long value )
+    {
+        return ( value >>> 1 ) ^ -( value & 1 );
+    }
+
+    private static final class State
+    {
+        private byte[] previousPath = new byte[0];
+
+        private long previousIndex;
+    }
+
+    private static final class Dictionary<T>
+    {
+        private final Map<T, Integer> indexes = new LinkedHashMap<>();
+
+        private final List<T> values = new ArrayList<>();
+
+        private int indexOf( final T value )
+        {
+            return indexes.computeIfAbsent( value, v -> {
+                values.add( v );
+                return values.size() - 1;
+            } );
+        }
+    }
+}
@@ -139,6 +139,11 @@ public class TrackedContentEntry
         return index;
     }
 
+    void setIndex( final long index )
+    {
+        this.index = index;
+    }
+
     public void setStoreKey( StoreKey storeKey )
     {
         this.storeKey = storeKey;
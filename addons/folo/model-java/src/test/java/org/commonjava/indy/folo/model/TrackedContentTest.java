@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.folo.model;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.commonjava.indy.folo.model.StoreEffect.DOWNLOAD;
+import static org.commonjava.indy.folo.model.StoreEffect.UPLOAD;
+import static org.commonjava.indy.model.core.AccessChannel.MAVEN_REPO;
+import static org.commonjava.indy.model.core.StoreType.hosted;
+import static org.commonjava.indy.model.core.StoreType.remote;
+import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_MAVEN;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TrackedContentTest
+{
+    private final TrackingKey key = new TrackingKey( "test-key" );
+
+    @Before
+    public void compactSerialization()
+    {
+        TrackedContent.setCompactSerialization( true );
+    }
+
+    @After
+    public void legacySerialization()
+    {
+        TrackedContent.setCompactSerialization( false );
+    }
+
+    @Test
+    public void externalizeCompact_readAllFields()
+            throws Exception
+    {
+        TrackedContent in = newContent( 200 );
+
+        TrackedContent out = roundTrip( in );
+
+        assertEntries( out.getUploads(), in.getUploads() );
+        assertEntries( out.getDownloads(), in.getDownloads() );
+    }
+
+    @Test
+    public void forEachEntryDecodesWithoutMaterializing()
+            throws Exception
+    {
+        TrackedContent in = newContent( 50 );
+        TrackedContent out = roundTrip( in );
+
+        Set<TrackedContentEntry> uploads = new HashSet<>();
+        Set<TrackedContentEntry> downloads = new HashSet<>();
+        out.forEachEntry( uploads::add, downloads::add );
+
+        assertEntries( uploads, in.getUploads() );
+        assertEntries( downloads, in.getDownloads() );
+    }
+
+    @Test
+    public void compactLayoutIsMuchSmallerThanEntrySets()
+            throws Exception
+    {
+        TrackedContent in = newContent( 2000 );
+
+        ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream( legacy ))
+        {
+            oos.writeObject( in.getKey() );
+            oos.writeObject( in.getUploads() );
+            oos.writeObject( in.getDownloads() );
+        }
+
+        int compact = serialize( in ).length;
+        assertTrue( "compact: " + compact + ", legacy: " + legacy.size(), compact * 4 < legacy.size() );
+    }
+
+    @Test
+    public void writeOlderLayoutByDefault()
+            throws Exception
+    {
+        TrackedContent.setCompactSerialization( false );
+        TrackedContent original = newContent( 10 );
+        TrackedContent in = original.compacted();
+
+        // what a reader of the older layout does
+        try (ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( serialize( in ) ) ))
+        {
+            assertThat( ois.readObject(), equalTo( key ) );
+            assertThat( ( (Set<?>) ois.readObject() ).size(), equalTo( 1 ) );
+            assertThat( ( (Set<?>) ois.readObject() ).size(), equalTo( 10 ) );
+        }
+
+        TrackedContent out = roundTrip( in );
+        assertEntries( out.getUploads(), original.getUploads() );
+        assertEntries( out.getDownloads(), original.getDownloads() );
+    }
+
+    @Test
+    public void readOlderLayout()
+            throws Exception
+    {
+        TrackedContent in = newContent( 10 );
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream( baos ))
+        {
+            oos.writeObject( in.getKey() );
+            oos.writeObject( in.getUploads() );
+            oos.writeObject( in.getDownloads() );
+        }
+
+        TrackedContent out = new TrackedContent();
+        try (ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( baos.toByteArray() ) ))
+        {
+            out.readExternal( ois );
+        }
+
+        assertThat( out.getKey(), equalTo( key ) );
+        assertThat( out.getUploads().size(), equalTo( in.getUploads().size() ) );
+        assertThat( out.getDownloads().size(), equalTo( in.getDownloads().size() ) );
+    }
+
+    private TrackedContent newContent( final int count )
+    {
+        Set<TrackedContentEntry> uploads = new TreeSet<>();
+        Set<TrackedContentEntry> downloads = new TreeSet<>();
+        StoreKey central = new StoreKey( PKG_TYPE_MAVEN, remote, "central" );
+        StoreKey build = new StoreKey( PKG_TYPE_MAVEN, hosted, "build-1234" );
+        for ( int i = 0; i < count; i++ )
+        {
+            String path = String.format( "/org/commonjava/indy/module-%d/1.%d/module-%d-1.%d.jar", i % 7, i, i % 7, i );
+            downloads.add( new TrackedContentEntry( key, central, MAVEN_REPO,
+                                                    "http://repo.maven.apache.org/maven2" + path, path, DOWNLOAD,
+                                                    (long) i * 1024, hex( i, 32 ), hex( i, 40 ), hex( i, 64 ) ) );
+            if ( i % 10 == 0 )
+            {
+                uploads.add( new TrackedContentEntry( key, build, MAVEN_REPO, null, path, UPLOAD, null,
+                                                      "not-a-digest", i % 20 == 0 ? null : "", "ABCDEF" ) );
+            }
+        }
+        return new TrackedContent( key, uploads, downloads );
+    }
+
+    private String hex( final int seed, final int length )
+    {
+        StringBuilder sb = new StringBuilder();
+        while ( sb.length() < length )
+        {
+            sb.append( Integer.toHexString( ( seed + 1 ) * 0x9E3779B1 + sb.length() ) );
+        }
+        return sb.substring( 0, length );
+    }
+
+    private TrackedContent roundTrip( final TrackedContent in )
+            throws IOException, ClassNotFoundException
+    {
+        TrackedContent out = new TrackedContent();
+        try (ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( serialize( in ) ) ))
+        {
+            out.readExternal( ois );
+        }
+        assertThat( out.getKey(), equalTo( in.getKey() ) );
+        return out;
+    }
+
+    private byte[] serialize( final TrackedContent content )
+            throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream( baos ))
+        {
+            content.writeExternal( oos );
+        }
+        return baos.toByteArray();
+    }
+
+    private void assertEntries( final Set<TrackedContentEntry> actual, final Set<TrackedContentEntry> expected )
+    {
+        assertThat( actual.size(), equalTo( expected.size() ) );
+
+        List<TrackedContentEntry> sorted = new ArrayList<>( new TreeSet<>( actual ) );
+        int i = 0;
+        for ( TrackedContentEntry e : expected )
+        {
+            TrackedContentEntry a = sorted.get( i++ );
+            assertThat( a, equalTo( e ) );
+            assertThat( a.getTrackingKey(), equalTo( e.getTrackingKey() ) );
+            assertThat( a.getOriginUrl(), equalTo( e.getOriginUrl() ) );
+            assertThat( a.getSize(), equalTo( e.getSize() ) );
+            assertThat( a.getMd5(), equalTo( e.getMd5() ) );
+            assertThat( a.getSha1(), equalTo( e.getSha1() ) );
+            assertThat( a.getSha256(), equalTo( e.getSha256() ) );
+            assertThat( a.getIndex(), equalTo( e.getIndex() ) );
+            assertThat( a.getTimestamps(), equalTo( e.getTimestamps() ) );
+        }
+    }
+}
@@ -44,6 +44,12 @@ public class HttproxConfig
 
     private static final int DEFAULT_MITM_SO_TIMEOUT_MINUTES = 30;
 
+    private static final boolean DEFAULT_MITM_SSLENGINE_ENABLED = false;
+
+    private static final int DEFAULT_MITM_CERT_CACHE_SIZE = 1000;
+
+    private static final boolean DEFAULT_MITM_CERT_PREWARM_ENABLED = true;
+
     private String proxyRealm;
 
     private Boolean enabled;
@@ -68,6 +74,12 @@ public class HttproxConfig
 
     private Integer MITMSoTimeoutMinutes;
 
+    private Boolean MITMSSLEngineEnabled;
+
+    private Integer MITMCertCacheSize;
+
+    private Boolean MITMCertPrewarmEnabled;
+
     public TrackingType getTrackingType()
     {
         return TrackingType.valueOf( trackingType == null ? DEFAULT_TRACKING_TYPE : trackingType.toUpperCase() );
@@ -218,4 +230,37 @@ public class HttproxConfig
     {
         this.MITMSoTimeoutMinutes = MITMSoTimeoutMinutes;
     }
+
+    public boolean isMITMSSLEngineEnabled()
+    {
+        return MITMSSLEngineEnabled == null ? DEFAULT_MITM_SSLENGINE_ENABLED : MITMSSLEngineEnabled;
+    }
+
+    @ConfigName( "MITM.sslengine.enabled" )
+    public void setMITMSSLEngineEnabled( Boolean MITMSSLEngineEnabled )
+    {
+        this.MITMSSLEngineEnabled = MITMSSLEngineEnabled;
+    }
+
+    public int getMITMCertCacheSize()
+    {
+        return MITMCertCacheSize == null ? DEFAULT_MITM_CERT_CACHE_SIZE : MITMCertCacheSize;
+    }
+
+    @ConfigName( "MITM.cert.cache.size" )
+    public void setMITMCertCacheSize( Integer MITMCertCacheSize )
+    {
+        this.MITMCertCacheSize = MITMCertCacheSize;
+    }
+
+    public boolean isMITMCertPrewarmEnabled()
+    {
+        return MITMCertPrewarmEnabled == null ? DEFAULT_MITM_CERT_PREWARM_ENABLED : MITMCertPrewarmEnabled;
+    }
+
+    @ConfigName( "MITM.cert.prewarm.enabled" )
+    public void setMITMCertPrewarmEnabled( Boolean MITMCertPrewarmEnabled )
+    {
+        this.MITMCertPrewarmEnabled = MITMCertPrewarmEnabled;
+    }
 }
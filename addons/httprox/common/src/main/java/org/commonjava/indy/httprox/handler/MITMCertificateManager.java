@@ -0,0 +1,526 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
+import org.commonjava.indy.action.IndyLifecycleException;
+import org.commonjava.indy.action.StartupAction;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.httprox.conf.HttproxConfig;
+import org.commonjava.indy.httprox.util.CertificateAndKeys;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.subsys.datafile.DataFileManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static org.commonjava.cdi.util.weft.ExecutorConfig.BooleanLiteral.FALSE;
+import static org.commonjava.indy.httprox.util.CertUtils.createKeyStore;
+import static org.commonjava.indy.httprox.util.CertUtils.createSignedCertificateAndKey;
+import static org.commonjava.indy.httprox.util.CertUtils.getPrivateKey;
+import static org.commonjava.indy.httprox.util.CertUtils.loadX509Certificate;
+
+/**
+ * Provides the SSL contexts the MITM proxy presents to clients, one per target host, with a certificate signed by the
+ * MITM CA.
+ * <ul>
+ *     <li>The CA key and certificate are loaded once.</li>
+ *     <li>Contexts are kept in a LRU cache bounded by <code>MITM.cert.cache.size</code>. Concurrent requests for the
+ *     same new host wait for a single generation.</li>
+ *     <li>Generated host keystores are saved under the data dir, so they survive restarts. A saved keystore is only
+ *     reused if its certificate is still valid and was issued by the current CA. The files are only readable by the
+ *     owner, and the least recently used ones are deleted once there are more than <code>MITM.cert.cache.size</code>
+ *     of them.</li>
+ *     <li>At startup and when remote repositories are stored, certificates for the https hosts of remote repositories
+ *     are generated in the background, so the first CONNECT to them doesn't pay for the key generation.</li>
+ * </ul>
+ */
+@ApplicationScoped
+public class MITMCertificateManager
+        implements StartupAction
+{
+    static final String CERT_CACHE_DIR = "httprox/mitm-certs";
+
+    private static final String KEYSTORE_EXT = ".ks";
+
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString( "rw-------" );
+
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIR = PosixFilePermissions.fromString( "rwx------" );
+
+    private static final char[] KEYSTORE_PASSWORD = "password".toCharArray(); // keystore password can not be null
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private HttproxConfig config;
+
+    @Inject
+    private StoreDataManager storeManager;
+
+    @Inject
+    private DataFileManager dataFileManager;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "mitm-cert-generator", threads = 2, priority = 3, loadSensitive = FALSE )
+    private WeftExecutorService generatorExecutor;
+
+    private Map<String, CompletableFuture<SSLContext>> contexts;
+
+    private volatile CertificateAuthority ca;
+
+    protected MITMCertificateManager()
+    {
+    }
+
+    public MITMCertificateManager( final HttproxConfig config, final StoreDataManager storeManager,
+                                   final DataFileManager dataFileManager, final WeftExecutorService generatorExecutor )
+    {
+        this.config = config;
+        this.storeManager = storeManager;
+        this.dataFileManager = dataFileManager;
+        this.generatorExecutor = generatorExecutor;
+    }
+
+    /**
+     * Get the SSL context for the host, generating (or loading) its certificate on the calling thread if it isn't
+     * cached or being generated already.
+     */
+    public SSLContext getSSLContext( final String host )
+            throws Exception
+    {
+        CompletableFuture<SSLContext> future = new CompletableFuture<>();
+        CompletableFuture<SSLContext> existing;
+        synchronized ( this )
+        {
+            existing = getContexts().putIfAbsent( host, future );
+        }
+
+        if ( existing != null )
+        {
+            try
+            {
+                return existing.get();
+            }
+            catch ( ExecutionException e )
+            {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+
+        try
+        {
+            SSLContext context = createSSLContext( host );
+            future.complete( context );
+            return context;
+        }
+        catch ( Exception | Error e )
+        {
+            synchronized ( this )
+            {
+                getContexts().remove( host, future );
+            }
+            future.completeExceptionally( e );
+            throw e;
+        }
+    }
+
+    /**
+     * Generate the certificates of the given hosts in the background.
+     */
+    public void prewarm( final Set<String> hosts )
+    {
+        hosts.forEach( host -> generatorExecutor.execute( () -> {
+            try
+            {
+                getSSLContext( host );
+            }
+            catch ( Exception e )
+            {
+                logger.warn( "Failed to pre-generate MITM certificate for: {}. Reason: {}", host, e.getMessage() );
+            }
+        } ) );
+    }
+
+    @Override
+    public void start()
+            throws IndyLifecycleException
+    {
+        if ( !isPrewarmEnabled() )
+        {
+            return;
+        }
+
+        try
+        {
+            Set<String> hosts = storeManager.streamArtifactStores()
+                                            .filter( s -> s instanceof RemoteRepository )
+                                            .map( s -> getHttpsHost( (RemoteRepository) s ) )
+                                            .filter( host -> host != null )
+                                            .collect( Collectors.toSet() );
+
+            logger.info( "Pre-generating MITM certificates for {} remote repository hosts", hosts.size() );
+            prewarm( hosts );
+        }
+        catch ( IndyDataException e )
+        {
+            logger.warn( "Failed to list remote repositories for MITM certificate pre-generation. Reason: {}",
+                         e.getMessage() );
+        }
+    }
+
+    public void onStoreUpdate( @Observes final ArtifactStorePostUpdateEvent event )
+    {
+        if ( !isPrewarmEnabled() )
+        {
+            return;
+        }
+
+        Set<String> hosts = event.getChanges()
+                                 .stream()
+                                 .filter( s -> s instanceof RemoteRepository )
+                                 .map( s -> getHttpsHost( (RemoteRepository) s ) )
+                                 .filter( host -> host != null && !isCached( host ) )
+                                 .collect( Collectors.toSet() );
+        if ( !hosts.isEmpty() )
+        {
+            prewarm( hosts );
+        }
+    }
+
+    @Override
+    public String getId()
+    {
+        return "httprox-mitm-certificates";
+    }
+
+    @Override
+    public int getStartupPriority()
+    {
+        return 10;
+    }
+
+    private boolean isPrewarmEnabled()
+    {
+        return config.isEnabled() && config.isMITMEnabled() && config.isMITMCertPrewarmEnabled();
+    }
+
+    private synchronized boolean isCached( final String host )
+    {
+        return getContexts().containsKey( host );
+    }
+
+    private Map<String, CompletableFuture<SSLContext>> getContexts()
+    {
+        if ( contexts == null )
+        {
+            final int maxSize = config.getMITMCertCacheSize();
+            contexts = new LinkedHashMap<String, CompletableFuture<SSLContext>>( 16, 0.75f, true )
+            {
+                @Override
+                protected boolean removeEldestEntry( final Map.Entry<String, CompletableFuture<SSLContext>> eldest )
+                {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        return contexts;
+    }
+
+    private SSLContext createSSLContext( final String host )
+            throws Exception
+    {
+        final KeyStore ks = getKeyStore( host );
+        final KeyManagerFactory kmf = KeyManagerFactory.getInstance( KeyManagerFactory.getDefaultAlgorithm() );
+        kmf.init( ks, KEYSTORE_PASSWORD );
+
+        final SSLContext sc = SSLContext.getInstance( "TLS" );
+        sc.init( kmf.getKeyManagers(), null, null );
+        return sc;
+    }
+
+    private KeyStore getKeyStore( final String host )
+            throws Exception
+    {
+        final CertificateAuthority ca = getCertificateAuthority();
+        final File file = getKeyStoreFile( host );
+
+        KeyStore ks = loadKeyStore( file, host, ca );
+        if ( ks != null )
+        {
+            logger.debug( "Using saved MITM certificate for: {}", host );
+            return ks;
+        }
+
+        long start = System.currentTimeMillis();
+        String dn = config.getMITMDNTemplate().replace( "<host>", host ); // e.g., "CN=<host>, O=Test Org"
+
+        CertificateAndKeys certificateAndKeys = createSignedCertificateAndKey( dn, ca.certificate, ca.key, false );
+        Certificate signedCertificate = certificateAndKeys.getCertificate();
+        logger.debug( "Create signed cert:\n" + signedCertificate.toString() );
+
+        ks = createKeyStore();
+        ks.setKeyEntry( host, certificateAndKeys.getPrivateKey(), KEYSTORE_PASSWORD,
+                        new Certificate[] { signedCertificate, ca.certificate } );
+
+        logger.info( "Generated MITM certificate for: {} in {}ms", host, System.currentTimeMillis() - start );
+        saveKeyStore( file, ks );
+        return ks;
+    }
+
+    private CertificateAuthority getCertificateAuthority()
+            throws Exception
+    {
+        CertificateAuthority result = ca;
+        if ( result == null )
+        {
+            synchronized ( this )
+            {
+                result = ca;
+                if ( result == null )
+                {
+                    PrivateKey key = getPrivateKey( config.getMITMCAKey() );
+                    X509Certificate certificate = loadX509Certificate( new File( config.getMITMCACert() ) );
+                    ca = result = new CertificateAuthority( key, certificate );
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the saved keystore, or null if there is none or it can't be reused
+     */
+    private KeyStore loadKeyStore( final File file, final String host, final CertificateAuthority ca )
+    {
+        if ( file == null || !file.isFile() )
+        {
+            return null;
+        }
+
+        try (InputStream in = new FileInputStream( file ))
+        {
+            KeyStore ks = KeyStore.getInstance( KeyStore.getDefaultType() );
+            ks.load( in, KEYSTORE_PASSWORD );
+
+            Certificate[] chain = ks.getCertificateChain( host );
+            if ( chain == null || chain.length < 2 || !ca.certificate.equals( chain[1] ) )
+            {
+                logger.debug( "Saved MITM certificate for: {} wasn't issued by the current CA", host );
+                return null;
+            }
+
+            X509Certificate certificate = (X509Certificate) chain[0];
+            certificate.checkValidity();
+            certificate.verify( ca.certificate.getPublicKey() );
+
+            // the modification time tracks the last use, so pruning drops the least recently used keystores
+            file.setLastModified( System.currentTimeMillis() );
+            return ks;
+        }
+        catch ( IOException | GeneralSecurityException | ClassCastException e )
+        {
+            logger.debug( "Cannot reuse saved MITM certificate: {}. Reason: {}", file, e.getMessage() );
+            return null;
+        }
+    }
+
+    private void saveKeyStore( final File file, final KeyStore ks )
+    {
+        if ( file == null )
+        {
+            return;
+        }
+
+        try
+        {
+            createOwnerOnlyDir( file.getParentFile().toPath() );
+            Path tmp = new File( file.getPath() + ".tmp" ).toPath();
+            Files.deleteIfExists( tmp );
+            createOwnerOnlyFile( tmp );
+            try (OutputStream out = Files.newOutputStream( tmp ))
+            {
+                ks.store( out, KEYSTORE_PASSWORD );
+            }
+            Files.move( tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch ( IOException | GeneralSecurityException e )
+        {
+            logger.warn( "Failed to save MITM certificate: {}. Reason: {}", file, e.getMessage() );
+            return;
+        }
+
+        pruneKeyStores( file.getParentFile() );
+    }
+
+    /**
+     * Delete the least recently used keystores beyond <code>MITM.cert.cache.size</code>, so the directory doesn't grow
+     * with every host ever CONNECTed to.
+     */
+    private synchronized void pruneKeyStores( final File dir )
+    {
+        File[] files = dir.listFiles( ( d, name ) -> name.endsWith( KEYSTORE_EXT ) );
+        int excess = files == null ? 0 : files.length - config.getMITMCertCacheSize();
+        if ( excess <= 0 )
+        {
+            return;
+        }
+
+        Arrays.sort( files, Comparator.comparingLong( File::lastModified ) );
+        for ( int i = 0; i < excess; i++ )
+        {
+            if ( !files[i].delete() && files[i].exists() )
+            {
+                logger.warn( "Failed to delete MITM certificate: {}", files[i] );
+            }
+        }
+
+        logger.debug( "Pruned {} saved MITM certificates", excess );
+    }
+
+    private static void createOwnerOnlyDir( final Path dir )
+            throws IOException
+    {
+        if ( Files.isDirectory( dir ) )
+        {
+            return;
+        }
+
+        if ( isPosix() )
+        {
+            Files.createDirectories( dir, asAttribute( OWNER_ONLY_DIR ) );
+        }
+        else
+        {
+            Files.createDirectories( dir );
+            restrictToOwner( dir.toFile() );
+        }
+    }
+
+    private static void createOwnerOnlyFile( final Path file )
+            throws IOException
+    {
+        if ( isPosix() )
+        {
+            Files.createFile( file, asAttribute( OWNER_ONLY_FILE ) );
+        }
+        else
+        {
+            Files.createFile( file );
+            restrictToOwner( file.toFile() );
+        }
+    }
+
+    private static boolean isPosix()
+    {
+        return FileSystems.getDefault().supportedFileAttributeViews().contains( "posix" );
+    }
+
+    private static FileAttribute<Set<PosixFilePermission>> asAttribute( final Set<PosixFilePermission> permissions )
+    {
+        return PosixFilePermissions.asFileAttribute( permissions );
+    }
+
+    private static void restrictToOwner( final File file )
+    {
+        file.setReadable( false, false );
+        file.setWritable( false, false );
+        file.setReadable( true, true );
+        file.setWritable( true, true );
+    }
+
+    private File getKeyStoreFile( final String host )
+    {
+        if ( dataFileManager == null )
+        {
+            return null;
+        }
+
+        // host names can't contain anything else, but they come from the CONNECT request line
+        String name = host.toLowerCase().replaceAll( "[^a-z0-9.\\-]", "_" );
+        return dataFileManager.getDataFile( CERT_CACHE_DIR, name + KEYSTORE_EXT ).getDetachedFile();
+    }
+
+    private static String getHttpsHost( final RemoteRepository repository )
+    {
+        String url = repository.getUrl();
+        if ( url == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            URL u = new URL( url );
+            return "https".equalsIgnoreCase( u.getProtocol() ) ? u.getHost() : null;
+        }
+        catch ( MalformedURLException e )
+        {
+            return null;
+        }
+    }
+
+    private static final class CertificateAuthority
+    {
+        private final PrivateKey key;
+
+        private final X509Certificate certificate;
+
+        private CertificateAuthority( final PrivateKey key, final X509Certificate certificate )
+        {
+            this.key = key;
+            this.certificate = certificate;
+        }
+    }
+}
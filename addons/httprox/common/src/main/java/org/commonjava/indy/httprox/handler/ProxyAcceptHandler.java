@@ -97,6 +97,12 @@ public class ProxyAcceptHandler
     @Inject
     private ProxyTransfersExecutor proxyExecutor;
 
+    @Inject
+    private MITMCertificateManager certificateManager;
+
+    @Inject
+    private ProxyTunnelRelay tunnelRelay;
+
     protected ProxyAcceptHandler()
     {
     }
@@ -105,7 +111,8 @@ public class ProxyAcceptHandler
                                KeycloakProxyAuthenticator proxyAuthenticator, CacheProvider cacheProvider,
                                ScriptEngine scriptEngine, MDCManager mdcManager,
                                IndyMetricsConfig metricsConfig, MetricRegistry metricRegistry,
-                               CacheProducer cacheProducer, ProxyTransfersExecutor executor )
+                               CacheProducer cacheProducer, ProxyTransfersExecutor executor,
+                               MITMCertificateManager certificateManager, ProxyTunnelRelay tunnelRelay )
     {
         this.config = config;
         this.storeManager = storeManager;
@@ -118,6 +125,8 @@ public class ProxyAcceptHandler
         this.metricRegistry = metricRegistry;
         this.cacheProducer = cacheProducer;
         this.proxyExecutor = executor;
+        this.certificateManager = certificateManager;
+        this.tunnelRelay = tunnelRelay;
     }
 
     public ProxyRepositoryCreator createRepoCreator()
@@ -180,7 +189,8 @@ public class ProxyAcceptHandler
                         new ProxyResponseWriter( config, storeManager, contentController, proxyAuthenticator,
                                                  cacheProvider, mdcManager, creator, accepted,
                                                  metricsConfig, metricRegistry, sliMetricSet, cacheProducer, start,
-                                                 proxyExecutor.getExecutor() );
+                                                 proxyExecutor.getExecutor(), certificateManager,
+                                                 tunnelRelay );
 
         logger.debug( "Setting writer: {}", writer );
         sink.getWriteSetter().set( writer );
@@ -0,0 +1,680 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import org.commonjava.indy.core.ctl.ContentController;
+import org.commonjava.indy.httprox.conf.HttproxConfig;
+import org.commonjava.indy.httprox.util.HttpConduitWrapper;
+import org.commonjava.indy.httprox.util.OutputStreamSinkChannel;
+import org.commonjava.indy.httprox.util.ProxyMeter;
+import org.commonjava.indy.httprox.util.ProxyResponseHelper;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.subsys.http.util.UserPass;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xnio.conduits.ConduitStreamSinkChannel;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.FINISHED;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_TASK;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_WRAP;
+import static javax.ws.rs.HttpMethod.GET;
+import static javax.ws.rs.HttpMethod.HEAD;
+import static org.commonjava.indy.httprox.util.ChannelUtils.DEFAULT_READ_BUF_SIZE;
+import static org.commonjava.indy.httprox.util.HttpProxyConstants.GET_METHOD;
+
+/**
+ * MITM for a CONNECT request without a loopback server: TLS is terminated with an {@link SSLEngine} directly on the
+ * client connection. {@link ProxyRequestReader} feeds the raw client bytes to {@link #receive(byte[])} on the XNIO IO
+ * thread, which only queues them. Everything that may block (creating the SSL context for the host, the delegated
+ * handshake tasks, waiting for the client to drain its sink channel) runs on the tunnel / MITM executor: the queued
+ * bytes are unwrapped there by one task at a time, and the decrypted request is served there too, with its response
+ * encrypted straight into the client sink channel. When the sink channel is full, the writing thread waits for its
+ * write listener instead of polling it.
+ * <p>
+ * Like {@link ProxyMITMSSLServer}, one GET / HEAD request is served per connection, then the connection is closed.
+ * The network and application buffers are allocated once per connection and only grow if the engine asks for it.
+ */
+public class ProxyMITMSSLEngine
+{
+    private static final String HEAD_END = "\r\n\r\n";
+
+    private static final int MAX_REQUEST_HEAD_SIZE = 64 * 1024;
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate( 0 );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final String host;
+
+    private final int port;
+
+    private final String trackingId;
+
+    private final UserPass proxyUserPass;
+
+    private final ProxyResponseHelper proxyResponseHelper;
+
+    private final ContentController contentController;
+
+    private final CacheProvider cacheProvider;
+
+    private final HttproxConfig config;
+
+    private final ProxyMeter meterTemplate;
+
+    private final ConduitStreamSinkChannel sinkChannel;
+
+    private final ExecutorService executor;
+
+    private final MITMCertificateManager certificateManager;
+
+    private final Object wrapLock = new Object();
+
+    private final AtomicBoolean closed = new AtomicBoolean( false );
+
+    // client bytes received on the IO thread and not handed to the engine yet, guarded by itself
+    private final Deque<byte[]> received = new ArrayDeque<>();
+
+    // true while a drain task is scheduled or running, guarded by received
+    private boolean draining;
+
+    private final Object writableSignal = new Object();
+
+    // set by the sink write listener, guarded by writableSignal
+    private boolean writable;
+
+    private volatile SSLEngine engine;
+
+    // the fields below are only touched by the drain task
+
+    private ByteBuffer netIn; // encrypted client bytes not unwrapped yet, in write mode
+
+    private ByteBuffer appIn; // decrypted request head, in write mode
+
+    private long handshakeStartNanos;
+
+    private boolean handshakeDone;
+
+    private boolean dispatched;
+
+    private ByteBuffer netOut; // guarded by wrapLock
+
+    public ProxyMITMSSLEngine( String host, int port, String trackingId, UserPass proxyUserPass,
+                               ProxyResponseHelper proxyResponseHelper, ContentController contentController,
+                               CacheProvider cacheProvider, HttproxConfig config, ProxyMeter meterTemplate,
+                               ConduitStreamSinkChannel sinkChannel, ExecutorService executor,
+                               MITMCertificateManager certificateManager )
+    {
+        this.host = host;
+        this.port = port;
+        this.trackingId = trackingId;
+        this.proxyUserPass = proxyUserPass;
+        this.proxyResponseHelper = proxyResponseHelper;
+        this.contentController = contentController;
+        this.cacheProvider = cacheProvider;
+        this.config = config;
+        this.meterTemplate = meterTemplate;
+        this.sinkChannel = sinkChannel;
+        this.executor = executor;
+        this.certificateManager = certificateManager;
+    }
+
+    /**
+     * Take over the client sink channel and create the engine for the target host on the executor, so the certificate
+     * generation doesn't hold up the IO thread. If that fails, the connection is closed before the handshake.
+     */
+    public void start()
+    {
+        sinkChannel.getWriteSetter().set( c -> {
+            c.suspendWrites();
+            synchronized ( writableSignal )
+            {
+                writable = true;
+                writableSignal.notifyAll();
+            }
+        } );
+
+        synchronized ( received )
+        {
+            draining = true;
+        }
+        schedule( this::drain );
+    }
+
+    /**
+     * Feed bytes read from the client. Called on the IO thread; the bytes are unwrapped on the executor.
+     */
+    public void receive( byte[] bytes )
+    {
+        if ( closed.get() )
+        {
+            return;
+        }
+
+        synchronized ( received )
+        {
+            received.add( bytes );
+            if ( draining )
+            {
+                return;
+            }
+            draining = true;
+        }
+        schedule( this::drain );
+    }
+
+    public void close()
+    {
+        if ( !closed.compareAndSet( false, true ) )
+        {
+            return;
+        }
+
+        synchronized ( writableSignal )
+        {
+            writableSignal.notifyAll();
+        }
+
+        try
+        {
+            // close_notify may have to wait for the client, so it isn't sent from the IO thread
+            executor.execute( this::closeSession );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            logger.debug( "Cannot send close_notify to client for {}: {}", host, e.toString() );
+            closeSinkChannel();
+        }
+    }
+
+    private void schedule( Runnable task )
+    {
+        try
+        {
+            executor.execute( task );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            logger.warn( "MITM SSL engine for {} cannot be scheduled: {}", host, e.toString() );
+            close();
+        }
+    }
+
+    /**
+     * Hand the queued client bytes to the engine, until there are no more. Only one drain task runs at a time.
+     */
+    private void drain()
+    {
+        try
+        {
+            if ( engine == null )
+            {
+                createEngine();
+            }
+
+            while ( !closed.get() )
+            {
+                byte[] bytes;
+                synchronized ( received )
+                {
+                    bytes = received.poll();
+                    if ( bytes == null )
+                    {
+                        draining = false;
+                        return;
+                    }
+                }
+
+                netIn = ensureRemaining( netIn, bytes.length );
+                netIn.put( bytes );
+                unwrap();
+            }
+        }
+        catch ( Exception e )
+        {
+            if ( !handshakeDone )
+            {
+                meterTemplate.reportMITMHandshakeFailure();
+            }
+            logger.debug( "MITM SSL engine for {} failed: {}", host, e.toString() );
+            close();
+        }
+
+        synchronized ( received )
+        {
+            draining = false;
+            received.clear();
+        }
+    }
+
+    private void createEngine() throws Exception
+    {
+        SSLContext sslContext = certificateManager.getSSLContext( host );
+        SSLEngine engine = sslContext.createSSLEngine( host, port );
+        engine.setUseClientMode( false );
+
+        netIn = ByteBuffer.allocate( engine.getSession().getPacketBufferSize() );
+        appIn = ByteBuffer.allocate( engine.getSession().getApplicationBufferSize() );
+        synchronized ( wrapLock )
+        {
+            netOut = ByteBuffer.allocate( engine.getSession().getPacketBufferSize() );
+        }
+        this.engine = engine;
+
+        meterTemplate.reportMITMConnectionOpened();
+        handshakeStartNanos = System.nanoTime();
+        engine.beginHandshake();
+        logger.debug( "MITM SSL engine started for {}:{}", host, port );
+    }
+
+    private void closeSession()
+    {
+        try
+        {
+            synchronized ( wrapLock )
+            {
+                if ( engine != null )
+                {
+                    meterTemplate.reportMITMConnectionClosed();
+                    engine.closeOutbound();
+                    wrap( EMPTY, false ); // close_notify
+                    flushToClient( false );
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Failed to send close_notify to client: {}", e.toString() );
+        }
+
+        closeSinkChannel();
+        logger.debug( "MITM SSL engine closed for {}:{}", host, port );
+    }
+
+    private void closeSinkChannel()
+    {
+        try
+        {
+            sinkChannel.shutdownWrites();
+            sinkChannel.flush();
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Failed to shutdown sink channel: {}", e.toString() );
+        }
+        finally
+        {
+            try
+            {
+                sinkChannel.close();
+            }
+            catch ( IOException e )
+            {
+                logger.debug( "Failed to close sink channel: {}", e.toString() );
+            }
+        }
+    }
+
+    private void unwrap() throws IOException
+    {
+        netIn.flip();
+        try
+        {
+            while ( !closed.get() && netIn.hasRemaining() )
+            {
+                SSLEngineResult result = engine.unwrap( netIn, appIn );
+                switch ( result.getStatus() )
+                {
+                    case BUFFER_OVERFLOW:
+                    {
+                        appIn = ensureRemaining( appIn, engine.getSession().getApplicationBufferSize() );
+                        continue;
+                    }
+                    case CLOSED:
+                    {
+                        logger.debug( "Client closed the TLS session" );
+                        close();
+                        return;
+                    }
+                    default:
+                }
+
+                boolean advanced = advanceHandshake( result.getHandshakeStatus() );
+
+                if ( appIn.position() > 0 )
+                {
+                    onRequestData();
+                }
+
+                if ( result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW
+                        || ( result.bytesConsumed() == 0 && result.bytesProduced() == 0 && !advanced ) )
+                {
+                    break; // wait for more client data
+                }
+            }
+        }
+        finally
+        {
+            netIn.compact();
+        }
+    }
+
+    /**
+     * Run delegated tasks (on the drain task's thread) and send handshake data until the engine needs more client data,
+     * or is done.
+     *
+     * @return true if the handshake made any progress
+     */
+    private boolean advanceHandshake( HandshakeStatus status ) throws IOException
+    {
+        boolean advanced = false;
+        HandshakeStatus hs = status;
+        while ( true )
+        {
+            if ( hs == FINISHED )
+            {
+                onHandshakeFinished();
+                hs = engine.getHandshakeStatus();
+                advanced = true;
+            }
+            else if ( hs == NEED_TASK )
+            {
+                Runnable task;
+                while ( ( task = engine.getDelegatedTask() ) != null )
+                {
+                    task.run();
+                }
+                hs = engine.getHandshakeStatus();
+                advanced = true;
+            }
+            else if ( hs == NEED_WRAP )
+            {
+                synchronized ( wrapLock )
+                {
+                    hs = wrap( EMPTY, true );
+                }
+                advanced = true;
+            }
+            else
+            {
+                return advanced;
+            }
+        }
+    }
+
+    private void onHandshakeFinished()
+    {
+        if ( !handshakeDone )
+        {
+            handshakeDone = true;
+            long elapsed = System.nanoTime() - handshakeStartNanos;
+            meterTemplate.reportMITMHandshake( elapsed );
+            logger.debug( "MITM handshake with client for {} finished in {}ms", host, elapsed / 1000000 );
+        }
+    }
+
+    /**
+     * Encrypt src into the client sink channel. Callers hold wrapLock.
+     */
+    private HandshakeStatus wrap( ByteBuffer src, boolean abortOnClose ) throws IOException
+    {
+        HandshakeStatus hs;
+        SSLEngineResult.Status status;
+        do
+        {
+            netOut.clear();
+            SSLEngineResult result = engine.wrap( src, netOut );
+            status = result.getStatus();
+            hs = result.getHandshakeStatus();
+            if ( status == SSLEngineResult.Status.BUFFER_OVERFLOW )
+            {
+                netOut = ByteBuffer.allocate( netOut.capacity() + engine.getSession().getPacketBufferSize() );
+                continue;
+            }
+
+            netOut.flip();
+            writeToClient( netOut, abortOnClose );
+        }
+        while ( status != SSLEngineResult.Status.CLOSED && ( src.hasRemaining()
+                || status == SSLEngineResult.Status.BUFFER_OVERFLOW ) );
+
+        return hs;
+    }
+
+    private void writeToClient( ByteBuffer buf, boolean abortOnClose ) throws IOException
+    {
+        while ( buf.hasRemaining() )
+        {
+            sinkChannel.write( buf );
+            if ( buf.hasRemaining() )
+            {
+                awaitWritable( abortOnClose );
+            }
+        }
+    }
+
+    private void flushToClient( boolean abortOnClose ) throws IOException
+    {
+        while ( !sinkChannel.flush() )
+        {
+            awaitWritable( abortOnClose );
+        }
+    }
+
+    /**
+     * Wait for the sink channel write listener to report the channel writable again. Never called on the IO thread,
+     * which runs the listener.
+     *
+     * @param abortOnClose give up once the connection is closed, which is what everybody but the close_notify wants
+     */
+    private void awaitWritable( boolean abortOnClose ) throws IOException
+    {
+        long timeout = TimeUnit.MINUTES.toMillis( config.getMITMSoTimeoutMinutes() );
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized ( writableSignal )
+        {
+            writable = false;
+            sinkChannel.resumeWrites();
+            try
+            {
+                while ( !writable )
+                {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if ( !sinkChannel.isOpen() || ( abortOnClose && closed.get() ) )
+                    {
+                        throw new IOException( "MITM connection closed" );
+                    }
+                    if ( remaining <= 0 )
+                    {
+                        throw new IOException( "Client did not read for " + timeout + "ms" );
+                    }
+                    writableSignal.wait( remaining );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException( "Interrupted waiting for the client to read" );
+            }
+        }
+    }
+
+    /**
+     * Collect the decrypted request head. Once it's complete, serve it on the executor. Anything sent after the head
+     * is ignored, the same as in {@link ProxyMITMSSLServer}.
+     */
+    private void onRequestData()
+    {
+        if ( dispatched )
+        {
+            appIn.clear();
+            return;
+        }
+
+        String head = new String( appIn.array(), 0, appIn.position(), StandardCharsets.ISO_8859_1 );
+        int end = head.indexOf( HEAD_END );
+        if ( end < 0 )
+        {
+            if ( appIn.position() > MAX_REQUEST_HEAD_SIZE )
+            {
+                logger.debug( "MITM request head too large, size: {}", appIn.position() );
+                close();
+            }
+            return;
+        }
+
+        dispatched = true;
+        appIn.clear();
+
+        logger.debug( "Request:\n{}", head );
+
+        String method = null;
+        String path = null;
+        String requestLine = null;
+        for ( String line : head.substring( 0, end ).split( "\r\n" ) )
+        {
+            if ( line.startsWith( GET ) || line.startsWith( HEAD ) ) // only care about GET/HEAD
+            {
+                String[] toks = line.split( "\\s+" );
+                method = toks[0];
+                path = toks[1];
+                requestLine = line;
+                break;
+            }
+        }
+
+        if ( path == null )
+        {
+            logger.debug( "MITM SSL engine failed to get request from client" );
+            close();
+            return;
+        }
+
+        final String m = method;
+        final String p = path;
+        final String r = requestLine;
+        executor.execute( () -> {
+            ProxyMeter meter = meterTemplate.copy( System.nanoTime(), m, r );
+            try
+            {
+                transferRemote( m, p, meter );
+            }
+            catch ( Exception e )
+            {
+                logger.error( "Transfer remote failed", e );
+            }
+            finally
+            {
+                meter.reportResponseSummary();
+                close();
+            }
+        } );
+    }
+
+    private void transferRemote( String method, String path, final ProxyMeter meter ) throws Exception
+    {
+        URI uri = new URI( "https", null, host, port, path, null, null );
+        URL remoteUrl = uri.toURL();
+        logger.debug( "Requesting remote URL: {}", remoteUrl.toString() );
+
+        ArtifactStore store = proxyResponseHelper.getArtifactStore( trackingId, remoteUrl );
+        try (BufferedOutputStream out = new BufferedOutputStream( new EngineOutputStream(), DEFAULT_READ_BUF_SIZE ))
+        {
+            HttpConduitWrapper http =
+                            new HttpConduitWrapper( new OutputStreamSinkChannel( out ), null, contentController,
+                                                    cacheProvider );
+            proxyResponseHelper.transfer( http, store, remoteUrl.getPath(), GET_METHOD.equals( method ),
+                                          proxyUserPass, meter );
+            out.flush();
+            http.close();
+        }
+    }
+
+    private static ByteBuffer ensureRemaining( ByteBuffer buffer, int size )
+    {
+        if ( buffer.remaining() >= size )
+        {
+            return buffer;
+        }
+
+        ByteBuffer larger = ByteBuffer.allocate( buffer.position() + size );
+        buffer.flip();
+        larger.put( buffer );
+        return larger;
+    }
+
+    /**
+     * Response output, encrypted with the engine and written to the client sink channel.
+     */
+    private final class EngineOutputStream
+            extends OutputStream
+    {
+        @Override
+        public void write( int b ) throws IOException
+        {
+            write( new byte[] { (byte) b }, 0, 1 );
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) throws IOException
+        {
+            if ( closed.get() )
+            {
+                throw new IOException( "MITM connection closed" );
+            }
+
+            synchronized ( wrapLock )
+            {
+                wrap( ByteBuffer.wrap( b, off, len ), true );
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            synchronized ( wrapLock )
+            {
+                flushToClient( true );
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            // the connection is closed by the engine once the response is done
+        }
+    }
+}
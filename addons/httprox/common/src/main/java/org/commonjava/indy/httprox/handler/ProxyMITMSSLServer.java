@@ -20,7 +20,6 @@ import org.apache.http.RequestLine;
 import org.apache.http.message.BasicRequestLine;
 import org.commonjava.indy.core.ctl.ContentController;
 import org.commonjava.indy.httprox.conf.HttproxConfig;
-import org.commonjava.indy.httprox.util.CertificateAndKeys;
 import org.commonjava.indy.httprox.util.HttpConduitWrapper;
 import org.commonjava.indy.httprox.util.ProxyMeter;
 import org.commonjava.indy.httprox.util.ProxyResponseHelper;
@@ -31,11 +30,8 @@ import org.commonjava.maven.galley.spi.cache.CacheProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.net.ssl.KeyManagerFactory;
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocketFactory;
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -46,26 +42,15 @@ import java.net.Socket;
 import java.net.URI;
 import java.net.URL;
 import java.nio.channels.SocketChannel;
-import java.security.KeyStore;
-import java.security.PrivateKey;
-import java.security.cert.Certificate;
-import java.security.cert.X509Certificate;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import static java.lang.Integer.parseInt;
 import static javax.ws.rs.HttpMethod.GET;
 import static javax.ws.rs.HttpMethod.HEAD;
 import static org.commonjava.propulsor.boot.PortFinder.findOpenPort;
-import static org.commonjava.indy.httprox.util.CertUtils.createKeyStore;
-import static org.commonjava.indy.httprox.util.CertUtils.createSignedCertificateAndKey;
-import static org.commonjava.indy.httprox.util.CertUtils.getPrivateKey;
-import static org.commonjava.indy.httprox.util.CertUtils.loadX509Certificate;
 import static org.commonjava.indy.httprox.util.HttpProxyConstants.GET_METHOD;
 
 /**
@@ -104,11 +89,14 @@ public class ProxyMITMSSLServer implements Runnable
 
     private final ProxyResponseHelper proxyResponseHelper;
 
+    private final MITMCertificateManager certificateManager;
+
     private volatile boolean isCancelled = false;
 
     public ProxyMITMSSLServer( String host, int port, String trackingId, UserPass proxyUserPass,
                                ProxyResponseHelper proxyResponseHelper, ContentController contentController,
-                               CacheProvider cacheProvider, HttproxConfig config, final ProxyMeter meterTemplate )
+                               CacheProvider cacheProvider, HttproxConfig config, final ProxyMeter meterTemplate,
+                               MITMCertificateManager certificateManager )
     {
         this.host = host;
         this.port = port;
@@ -119,6 +107,7 @@ public class ProxyMITMSSLServer implements Runnable
         this.cacheProvider = cacheProvider;
         this.config = config;
         this.meterTemplate = meterTemplate;
+        this.certificateManager = certificateManager;
     }
 
     @Override
@@ -136,58 +125,12 @@ public class ProxyMITMSSLServer implements Runnable
 
     private volatile boolean started;
 
-    private char[] keystorePassword = "password".toCharArray(); // keystore password can not be null
-
-    // TODO: What are the memory footprint implications of this? It seems like these will never be purged.
-    private static Map<String, HostContext> hostContextMap = new ConcurrentHashMap(); // cache keystore and socket factory, key: hostname
-
     /**
-     * Generate the keystore on-the-fly and initiate SSL socket factory.
+     * Get the SSL server socket factory presenting a certificate for the host, signed by the MITM CA.
      */
     private SSLServerSocketFactory getSSLServerSocketFactory( String host ) throws Exception
     {
-        AtomicReference<Exception> err = new AtomicReference<>();
-        HostContext context = hostContextMap.computeIfAbsent( host, (k) -> {
-           try
-           {
-               final KeyStore ks = getKeyStore(k);
-               final KeyManagerFactory kmf = KeyManagerFactory.getInstance( KeyManagerFactory.getDefaultAlgorithm() );
-               kmf.init( ks, keystorePassword );
-
-               final SSLContext sc = SSLContext.getInstance( "TLS" );
-               sc.init( kmf.getKeyManagers(), null, null );
-               final SSLServerSocketFactory factory = sc.getServerSocketFactory();
-               return new HostContext(ks, factory);
-           }
-           catch ( Exception e )
-           {
-               err.set( e );
-           }
-           return null;
-        } );
-        if ( context == null || err.get() != null )
-        {
-            throw err.get();
-        }
-
-        return context.getSslSocketFactory();
-    }
-
-    private KeyStore getKeyStore( String host ) throws Exception
-    {
-        PrivateKey caKey = getPrivateKey( config.getMITMCAKey() );
-        X509Certificate caCert = loadX509Certificate( new File( config.getMITMCACert() ));
-
-        String dn = config.getMITMDNTemplate().replace( "<host>", host ); // e.g., "CN=<host>, O=Test Org"
-
-        CertificateAndKeys certificateAndKeys = createSignedCertificateAndKey( dn, caCert, caKey, false );
-        Certificate signedCertificate = certificateAndKeys.getCertificate();
-        logger.debug( "Create signed cert:\n" + signedCertificate.toString() );
-
-        KeyStore ks = createKeyStore();
-        String alias = host;
-        ks.setKeyEntry( alias, certificateAndKeys.getPrivateKey(), keystorePassword, new Certificate[] { signedCertificate, caCert } );
-        return ks;
+        return certificateManager.getSSLContext( host ).getServerSocketFactory();
     }
 
     private void execute() throws Exception
@@ -343,20 +286,4 @@ public class ProxyMITMSSLServer implements Runnable
         isCancelled = true;
         logger.debug( "MITM server timed out waiting for response creation" );
     }
-
-    class HostContext{
-       private KeyStore keystore;
-       private SSLServerSocketFactory sslSocketFactory;
-       HostContext(KeyStore ks, SSLServerSocketFactory factory){
-          keystore = ks;
-          sslSocketFactory = factory;
-       }
-      KeyStore getKeystore() {
-         return keystore;
-      }
-      SSLServerSocketFactory getSslSocketFactory() {
-         return sslSocketFactory;
-      }
-       
-    }
 }
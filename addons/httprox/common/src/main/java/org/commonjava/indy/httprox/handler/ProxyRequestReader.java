@@ -69,6 +69,8 @@ public final class ProxyRequestReader
 
     private ProxySSLTunnel sslTunnel;
 
+    private ProxyMITMSSLEngine mitmEngine;
+
     private List<Character> lastFour = new ArrayList<>();
 
     public ProxyRequestReader( final ProxyResponseWriter writer, final ConduitStreamSinkChannel sinkChannel )
@@ -90,11 +92,22 @@ public final class ProxyRequestReader
             if ( read <= 0 )
             {
                 logger.debug( "Reads: {} ", read );
+                if ( read < 0 && mitmEngine != null )
+                {
+                    mitmEngine.close();
+                }
                 return;
             }
 
             byte[] bytes = bReq.toByteArray();
 
+            if ( mitmEngine != null )
+            {
+                logger.trace( "Send to MITM SSL engine, size: {}", bytes.length );
+                mitmEngine.receive( bytes );
+                return;
+            }
+
             if ( sslTunnel != null )
             {
                 logger.debug( "Send to ssl tunnel, {}, bytes:\n\n {}\n", new String( bytes ), Hex.encodeHexString( bytes ) );
@@ -161,6 +174,11 @@ public final class ProxyRequestReader
         this.sslTunnel = sslTunnel;
     }
 
+    public void setProxyMITMSSLEngine( ProxyMITMSSLEngine mitmEngine )
+    {
+        this.mitmEngine = mitmEngine;
+    }
+
     private void directTo( ProxySSLTunnel sslTunnel ) throws IOException
     {
         byte[] bytes = bReq.toByteArray();
@@ -96,6 +96,8 @@ public final class ProxyResponseWriter
 
     private ProxySSLTunnel sslTunnel;
 
+    private ProxyMITMSSLEngine mitmEngine;
+
     private boolean directed = false;
 
     private final CacheHandle<String, Boolean> proxyAuthCache;
@@ -130,6 +132,10 @@ public final class ProxyResponseWriter
 
     private final WeftExecutorService tunnelAndMITMExecutor;
 
+    private final MITMCertificateManager certificateManager;
+
+    private final ProxyTunnelRelay tunnelRelay;
+
     private boolean summaryReported;
 
     // run short-living tunnels and MITM servers
@@ -141,7 +147,8 @@ public final class ProxyResponseWriter
                                 final StreamConnection accepted, final IndyMetricsConfig metricsConfig,
                                 final MetricRegistry metricRegistry, final GoldenSignalsMetricSet sliMetricSet,
                                 final CacheProducer cacheProducer,
-                                final long start, final WeftExecutorService executor )
+                                final long start, final WeftExecutorService executor,
+                                final MITMCertificateManager certificateManager, final ProxyTunnelRelay tunnelRelay )
     {
         this.config = config;
         this.contentController = contentController;
@@ -159,6 +166,8 @@ public final class ProxyResponseWriter
         this.cls = ClassUtils.getAbbreviatedName( getClass().getName(), 1 ); // e.g., foo.bar.ClassA -> f.b.ClassA
         this.proxyAuthCache = cacheProducer.getCache( HTTP_PROXY_AUTH_CACHE );
         this.tunnelAndMITMExecutor = executor;
+        this.certificateManager = certificateManager;
+        this.tunnelRelay = tunnelRelay;
     }
 
     public void setProxyRequestReader( ProxyRequestReader proxyRequestReader )
@@ -196,7 +205,8 @@ public final class ProxyResponseWriter
 
         ProxyMeter meter =
                 new ProxyMeter( httpRequest.getRequestLine().getMethod(), httpRequest.getRequestLine().toString(),
-                                startNanos, sliMetricSet, restLogger, peerAddress );
+                                startNanos, sliMetricSet, restLogger, peerAddress, metricRegistry,
+                                metricsConfig == null ? null : metricsConfig.getNodePrefix() );
         try
         {
             HttpConduitWrapper http = new HttpConduitWrapper( sinkChannel, httpRequest, contentController, cacheProvider );
@@ -236,6 +246,11 @@ public final class ProxyResponseWriter
                     logger.trace( "Close ssl tunnel" );
                     sslTunnel.close();
                 }
+                if ( mitmEngine != null )
+                {
+                    logger.trace( "Close MITM SSL engine" );
+                    mitmEngine.close();
+                }
             } );
 
             logger.debug( "\n\n\n>>>>>>> Handle write\n\n\n" );
@@ -345,6 +360,24 @@ public final class ProxyResponseWriter
 
                                     directed = true;
 
+                                    if ( config.isMITMSSLEngineEnabled() )
+                                    {
+                                        // Terminate TLS on this connection. The engine takes over the sink channel
+                                        // and prepares the host certificate on the executor. Client input is handed
+                                        // by the reader to the engine, which serves the request and writes the
+                                        // response back to the client itself.
+                                        mitmEngine = new ProxyMITMSSLEngine( host, port, trackingId, proxyUserPass,
+                                                                             proxyResponseHelper, contentController,
+                                                                             cacheProvider, config, meter, sinkChannel,
+                                                                             tunnelAndMITMExecutor, certificateManager );
+                                        mitmEngine.start();
+                                        proxyRequestReader.setProxyMITMSSLEngine( mitmEngine );
+
+                                        http.writeStatus( ApplicationStatus.OK );
+                                        http.writeHeader( "Status", "200 OK\n" );
+                                        break;
+                                    }
+
                                     // After this, the proxy simply opens a plain socket to the target server and relays
                                     // everything between the initial client and the target server (including the TLS handshake).
 
@@ -353,7 +386,8 @@ public final class ProxyResponseWriter
                                     ProxyMITMSSLServer svr =
                                             new ProxyMITMSSLServer( host, port, trackingId, proxyUserPass,
                                                                     proxyResponseHelper, contentController,
-                                                                    cacheProvider, config, meter );
+                                                                    cacheProvider, config, meter,
+                                                                    certificateManager );
                                     tunnelAndMITMExecutor.submit( svr );
                                     socketChannel = svr.getSocketChannel();
 
@@ -365,8 +399,9 @@ public final class ProxyResponseWriter
                                         break;
                                     }
 
-                                    sslTunnel = new ProxySSLTunnel( sinkChannel, socketChannel, config );
-                                    tunnelAndMITMExecutor.submit( sslTunnel );
+                                    sslTunnel = new ProxySSLTunnel( sinkChannel, sourceChannel, socketChannel, config,
+                                                                    tunnelRelay );
+                                    sslTunnel.start();
                                     proxyRequestReader.setProxySSLTunnel( sslTunnel ); // client input will be directed to target socket
 
                                     // When all is ready, send the 200 to client. Client send the SSL handshake to reader,
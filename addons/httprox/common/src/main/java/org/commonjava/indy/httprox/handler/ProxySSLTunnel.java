@@ -16,229 +16,355 @@
 package org.commonjava.indy.httprox.handler;
 
 import org.commonjava.indy.httprox.conf.HttproxConfig;
-import org.commonjava.indy.httprox.util.ChannelUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xnio.ByteBufferPool;
 import org.xnio.conduits.ConduitStreamSinkChannel;
+import org.xnio.conduits.ConduitStreamSourceChannel;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.TimeUnit;
-
-import static org.commonjava.indy.httprox.util.ChannelUtils.DEFAULT_READ_BUF_SIZE;
-import static org.commonjava.indy.httprox.util.ChannelUtils.flush;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * Relays the bytes between the client sink channel and the target socket channel. The target channel is non-blocking
+ * and pumped by the shared {@link ProxyTunnelRelay}, through buffers borrowed from {@link ByteBufferPool}. When the
+ * client can't keep up, reading from the target stops until the sink channel is writable again. Likewise, when the
+ * target can't keep up, reading from the client stops until the bytes queued for the target are mostly flushed.
+ * <p>
  * Created by ruhan on 9/6/18.
  */
-public class ProxySSLTunnel implements Runnable
+public class ProxySSLTunnel
 {
-    private final Logger logger = LoggerFactory.getLogger( getClass() );
+    private static final ByteBufferPool BUFFER_POOL = ByteBufferPool.LARGE_DIRECT;
 
-    //private volatile Selector selector; // selecting READ events for target channel
+    // client reads are suspended once this many buffers are queued for the target, and resumed at half of it
+    private static final int MAX_QUEUED_TO_TARGET = 16;
 
-    //private static final long SELECTOR_TIMEOUT = 60 * 1000; // 60 seconds
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final ConduitStreamSinkChannel sinkChannel;
 
-    private final SocketChannel socketChannel;
+    private final ConduitStreamSourceChannel sourceChannel;
 
-    private volatile boolean closed;
+    private final SocketChannel socketChannel;
 
     private final HttproxConfig config;
 
-    public ProxySSLTunnel( ConduitStreamSinkChannel sinkChannel, SocketChannel socketChannel, HttproxConfig config )
+    private final ProxyTunnelRelay relay;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    // target -> client bytes not yet accepted by the sink channel, only touched by the relay thread
+    private ByteBuffer toClient;
+
+    // client -> target bytes not yet accepted by the target channel, guarded by itself
+    private final Deque<ByteBuffer> toTarget = new ArrayDeque<>();
+
+    // guarded by toTarget
+    private boolean clientReadsSuspended;
+
+    private SelectionKey key;
+
+    private boolean targetDone;
+
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    private long total;
+
+    public ProxySSLTunnel( ConduitStreamSinkChannel sinkChannel, ConduitStreamSourceChannel sourceChannel,
+                           SocketChannel socketChannel, HttproxConfig config, ProxyTunnelRelay relay )
     {
         this.sinkChannel = sinkChannel;
+        this.sourceChannel = sourceChannel;
         this.socketChannel = socketChannel;
         this.config = config;
+        this.relay = relay;
     }
 
-    @Override
-    public void run()
+    public void start() throws IOException
     {
-        try
-        {
-            pipeTargetToSinkChannel( sinkChannel, socketChannel );
-        }
-        catch ( Exception e )
-        {
-            logger.error( "Pipe to sink channel failed", e );
-        }
+        socketChannel.configureBlocking( false );
+        sinkChannel.getWriteSetter().set( c -> {
+            c.suspendWrites();
+            relay.execute( this::writeToClient );
+        } );
+
+        relay.register( this );
     }
 
-    private void pipeTargetToSinkChannel( ConduitStreamSinkChannel sinkChannel, SocketChannel targetChannel )
-                    throws IOException
+    /**
+     * Called by the relay on its own thread.
+     */
+    void register( Selector selector ) throws IOException
     {
-        targetChannel.socket().setSoTimeout( (int) TimeUnit.MINUTES.toMillis( config.getMITMSoTimeoutMinutes() ) );
-        InputStream inStream = new BufferedInputStream( targetChannel.socket().getInputStream() );
-        ReadableByteChannel wrappedChannel = Channels.newChannel( inStream );
-
-        ByteBuffer byteBuffer = ByteBuffer.allocate( DEFAULT_READ_BUF_SIZE );
+        if ( closed.get() )
+        {
+            return;
+        }
 
-        int total = 0;
-        while ( true )
+        int ops = SelectionKey.OP_READ;
+        synchronized ( toTarget )
         {
-            if ( closed )
+            if ( !toTarget.isEmpty() )
             {
-                logger.debug( "Tunnel closed" );
-                break;
+                ops |= SelectionKey.OP_WRITE;
             }
+        }
 
-            int read = -1;
-            try
-            {
-                read = wrappedChannel.read( byteBuffer );
-            }
-            catch ( IOException e )
+        key = socketChannel.register( selector, ops, this );
+    }
+
+    /**
+     * Called by the relay on its own thread.
+     */
+    void onSelected( SelectionKey key )
+    {
+        try
+        {
+            if ( key.isWritable() )
             {
-                logger.debug( "Read target channel breaks, {}", e.toString() );
-                break;
+                flushToTarget();
             }
 
-            if ( read <= 0 )
+            if ( key.isValid() && key.isReadable() )
             {
-                logger.debug( "Read breaks, read: {}", read );
-                break;
+                readFromTarget();
             }
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Tunnel relay breaks, {}", e.toString() );
+            finish();
+        }
+    }
 
-            //limit is set to current position and position is set to zero
-            byteBuffer.flip();
-
-            //final byte[] bytes = new byte[byteBuffer.limit()];
-            //byteBuffer.get( bytes );
+    boolean isIdle( long now )
+    {
+        return now - lastActivity > TimeUnit.MINUTES.toMillis( config.getMITMSoTimeoutMinutes() );
+    }
 
-            logger.debug( "Write to sink channel, size: {}", byteBuffer.limit() );
-            ChannelUtils.write( sinkChannel, byteBuffer );
-            sinkChannel.flush();
-            byteBuffer.clear();
+    void timeout()
+    {
+        logger.debug( "Tunnel idle for more than {} minutes, closing", config.getMITMSoTimeoutMinutes() );
+        relay.execute( this::finish );
+    }
 
-            total += read;
+    private void readFromTarget() throws IOException
+    {
+        ByteBuffer buf = BUFFER_POOL.allocate();
+        int read = socketChannel.read( buf );
+        if ( read <= 0 )
+        {
+            ByteBufferPool.free( buf );
+            if ( read < 0 )
+            {
+                logger.debug( "Target channel closed" );
+                targetDone = true;
+                key.interestOps( key.interestOps() & ~SelectionKey.OP_READ );
+                writeToClient();
+            }
+            return;
         }
 
-        logger.debug( "Write to sink channel complete, transferred: {}", total );
-
-        flush( sinkChannel );
-        sinkChannel.shutdownWrites();
-        sinkChannel.close();
-
-        closed = true;
+        lastActivity = System.currentTimeMillis();
+        total += read;
+        relay.transferred( read );
 
+        buf.flip();
+        toClient = buf;
+        writeToClient();
     }
 
-/*
-    private void pipeTargetToSinkChannel( ConduitStreamSinkChannel sinkChannel, SocketChannel targetChannel )
-                    throws IOException
+    private void writeToClient()
     {
-        logger.trace( "Start target to sink channel pipe" );
-        selector = Selector.open();
-
-        targetChannel.configureBlocking( false );
-        targetChannel.register( selector, SelectionKey.OP_READ );
+        if ( closed.get() )
+        {
+            return;
+        }
 
-        breakPipe:
-        while ( true )
+        try
         {
-            if ( closed )
+            if ( toClient != null )
             {
-                break;
-            }
+                sinkChannel.write( toClient );
+                if ( toClient.hasRemaining() || !sinkChannel.flush() )
+                {
+                    // the client is slower than the target; stop reading until the sink channel drains
+                    key.interestOps( key.interestOps() & ~SelectionKey.OP_READ );
+                    sinkChannel.resumeWrites();
+                    return;
+                }
 
-            logger.trace( "Select on target channel" );
-            int readyChannels = selector.select( SELECTOR_TIMEOUT );
+                ByteBufferPool.free( toClient );
+                toClient = null;
+            }
 
-            logger.trace( "Select returns, {} ready channels", readyChannels );
-            if ( readyChannels == 0 || !selector.isOpen() )
+            if ( targetDone )
             {
-                logger.trace( "No ready channel or selector closed, break" );
-                break;
+                finish();
             }
+            else
+            {
+                key.interestOps( key.interestOps() | SelectionKey.OP_READ );
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Write to sink channel breaks, {}", e.toString() );
+            finish();
+        }
+    }
 
-            Set<SelectionKey> selectedKeys = selector.selectedKeys();
-            Iterator<SelectionKey> iterator = selectedKeys.iterator();
-            while ( iterator.hasNext() )
+    private void flushToTarget() throws IOException
+    {
+        synchronized ( toTarget )
+        {
+            ByteBuffer buf;
+            while ( ( buf = toTarget.peek() ) != null )
             {
-                SelectionKey key = iterator.next();
-                if ( key.isReadable() )
+                socketChannel.write( buf );
+                if ( buf.hasRemaining() )
+                {
+                    return;
+                }
+
+                ByteBufferPool.free( toTarget.poll() );
+                if ( clientReadsSuspended && toTarget.size() <= MAX_QUEUED_TO_TARGET / 2 )
                 {
-                    logger.trace( "Read from target channel" );
-                    byte[] bytes;
-                    try
-                    {
-                        bytes = doRead( (SocketChannel) key.channel() );
-                    }
-                    catch ( IOException e )
-                    {
-                        if ( e.getMessage().contains( "Connection reset by peer" ) )
-                        {
-                            logger.warn( e.getMessage() );
-                            break breakPipe;
-                        }
-                        else
-                        {
-                            throw e;
-                        }
-                    }
-
-                    logger.trace( "Read done, write to sink channel, bytes: {}", bytes.length );
-                    if ( bytes.length > 0 && sinkChannel.isOpen() )
-                    {
-                        sinkChannel.write( ByteBuffer.wrap( bytes ) );
-                    }
-                    else
-                    {
-                        // read 0 or -1 means the other side have closed the socket
-                        logger.debug( "Peer closed socket" );
-                        break breakPipe;
-                    }
+                    logger.trace( "Target caught up, resume reading from client" );
+                    clientReadsSuspended = false;
+                    sourceChannel.resumeReads();
                 }
-                iterator.remove();
             }
+
+            key.interestOps( key.interestOps() & ~SelectionKey.OP_WRITE );
         }
     }
 
-    private byte[] doRead( SocketChannel channel ) throws IOException
+    /**
+     * Write client bytes to the target. Whatever the target channel doesn't accept right away is copied to pooled
+     * buffers and written by the relay once the channel is writable. If too much is queued, reading from the client
+     * is suspended until the relay has flushed it.
+     */
+    public void write( byte[] bytes ) throws IOException
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        lastActivity = System.currentTimeMillis();
+        relay.transferred( bytes.length );
 
-        ByteBuffer buf = ByteBuffer.allocate( DEFAULT_READ_BUF_SIZE );
-        int read = -1;
-        while ( ( read = channel.read( buf ) ) > 0 )
+        ByteBuffer src = ByteBuffer.wrap( bytes );
+        synchronized ( toTarget )
         {
-            buf.flip();
-            final byte[] bbuf = new byte[buf.limit()];
-            buf.get( bbuf );
-            bos.write( bbuf );
+            if ( toTarget.isEmpty() )
+            {
+                socketChannel.write( src );
+                if ( !src.hasRemaining() )
+                {
+                    return;
+                }
+            }
+
+            while ( src.hasRemaining() )
+            {
+                ByteBuffer buf = BUFFER_POOL.allocate();
+                int len = Math.min( buf.remaining(), src.remaining() );
+                ByteBuffer slice = src.slice();
+                slice.limit( len );
+                buf.put( slice );
+                src.position( src.position() + len );
+                buf.flip();
+                toTarget.add( buf );
+            }
+
+            if ( !clientReadsSuspended && toTarget.size() >= MAX_QUEUED_TO_TARGET )
+            {
+                logger.trace( "Target is slower than the client, suspend reading from client" );
+                clientReadsSuspended = true;
+                sourceChannel.suspendReads();
+            }
         }
-        return bos.toByteArray();
+
+        relay.execute( () -> {
+            if ( key != null && key.isValid() )
+            {
+                key.interestOps( key.interestOps() | SelectionKey.OP_WRITE );
+            }
+        } );
     }
-*/
 
-    public void write( byte[] bytes ) throws IOException
+    /**
+     * The target is done (or broken); close the client side too.
+     */
+    private void finish()
     {
-        socketChannel.write( ByteBuffer.wrap( bytes ) );
+        if ( closed.get() )
+        {
+            return;
+        }
+
+        logger.debug( "Write to sink channel complete, transferred: {}", total );
+        try
+        {
+            sinkChannel.shutdownWrites();
+            sinkChannel.flush();
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Shutdown sink channel failed, {}", e.toString() );
+        }
+        finally
+        {
+            try
+            {
+                sinkChannel.close();
+            }
+            catch ( IOException e )
+            {
+                logger.debug( "Close sink channel failed, {}", e.toString() );
+            }
+            close();
+        }
     }
 
     public void close()
     {
+        if ( !closed.compareAndSet( false, true ) )
+        {
+            return;
+        }
+
+        relay.unregister( this );
         try
         {
-            //selector.close(); // wake it up to complete the tunnel
             socketChannel.close();
         }
         catch ( IOException e )
         {
-            logger.error( "Close tunnel selector failed", e );
+            logger.error( "Close tunnel target channel failed", e );
+        }
+
+        // pooled buffers go back from the relay thread, which owns toClient
+        relay.execute( this::release );
+    }
+
+    private void release()
+    {
+        if ( toClient != null )
+        {
+            ByteBufferPool.free( toClient );
+            toClient = null;
+        }
+
+        synchronized ( toTarget )
+        {
+            toTarget.forEach( ByteBufferPool::free );
+            toTarget.clear();
         }
     }
 }
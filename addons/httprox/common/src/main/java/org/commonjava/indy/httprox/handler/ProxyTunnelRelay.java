@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox.handler;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
+import org.commonjava.cdi.util.weft.WeftManaged;
+import org.commonjava.indy.metrics.conf.IndyMetricsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.commonjava.cdi.util.weft.ExecutorConfig.BooleanLiteral.FALSE;
+
+/**
+ * Pumps the bytes of all {@link ProxySSLTunnel}s from a single selector thread, instead of one blocking thread per
+ * tunnel. Tunnel state is only touched from the relay thread; other threads hand work over with {@link #execute}.
+ */
+@ApplicationScoped
+public class ProxyTunnelRelay
+{
+    private static final String RELAY_THREAD_NAME = "httprox-tunnel-relay";
+
+    private static final String ACTIVE_TUNNELS = "httprox.tunnel.active";
+
+    private static final String TUNNEL_BYTES = "httprox.tunnel.bytes";
+
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+
+    private static final long IDLE_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis( 10 );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
+    // runs the relay loop, which never returns while the relay is running
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = RELAY_THREAD_NAME, threads = 1, priority = 7, loadSensitive = FALSE )
+    private ExecutorService relayExecutor;
+
+    // only set when not managed by the container, so we shut it down ourselves
+    private ExecutorService ownExecutor;
+
+    private final Set<ProxySSLTunnel> tunnels = ConcurrentHashMap.newKeySet();
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private Meter bytesMeter;
+
+    private volatile Selector selector;
+
+    private volatile boolean running;
+
+    protected ProxyTunnelRelay()
+    {
+    }
+
+    public ProxyTunnelRelay( final MetricRegistry metricRegistry, final IndyMetricsConfig metricsConfig )
+    {
+        this.metricRegistry = metricRegistry;
+        this.metricsConfig = metricsConfig;
+        this.ownExecutor = Executors.newSingleThreadExecutor(
+                new NamedThreadFactory( RELAY_THREAD_NAME, new ThreadGroup( RELAY_THREAD_NAME ), true, 7 ) );
+        this.relayExecutor = ownExecutor;
+        init();
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        if ( metricRegistry != null && metricsConfig != null )
+        {
+            String prefix = metricsConfig.getNodePrefix();
+            metricRegistry.register( name( prefix, ACTIVE_TUNNELS ), (Gauge<Integer>) tunnels::size );
+            bytesMeter = metricRegistry.meter( name( prefix, TUNNEL_BYTES ) );
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop()
+    {
+        running = false;
+        if ( selector != null )
+        {
+            tunnels.forEach( ProxySSLTunnel::close );
+            selector.wakeup();
+        }
+
+        if ( ownExecutor != null )
+        {
+            ownExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Start relaying the tunnel. The target channel must already be non-blocking.
+     */
+    void register( final ProxySSLTunnel tunnel ) throws IOException
+    {
+        final Selector selector = getSelector();
+        tunnels.add( tunnel );
+        execute( () -> {
+            try
+            {
+                tunnel.register( selector );
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Failed to register tunnel: {}. Reason: {}", tunnel, e.getMessage() );
+                tunnel.close();
+            }
+        } );
+    }
+
+    void unregister( final ProxySSLTunnel tunnel )
+    {
+        tunnels.remove( tunnel );
+    }
+
+    /**
+     * Run the task on the relay thread.
+     */
+    void execute( final Runnable task )
+    {
+        tasks.add( task );
+        Selector s = selector;
+        if ( s != null )
+        {
+            s.wakeup();
+        }
+    }
+
+    void transferred( final long bytes )
+    {
+        if ( bytesMeter != null )
+        {
+            bytesMeter.mark( bytes );
+        }
+    }
+
+    private synchronized Selector getSelector() throws IOException
+    {
+        if ( selector == null )
+        {
+            selector = Selector.open();
+            running = true;
+
+            relayExecutor.execute( this::run );
+        }
+
+        return selector;
+    }
+
+    private void run()
+    {
+        long lastIdleCheck = System.currentTimeMillis();
+        while ( running )
+        {
+            try
+            {
+                selector.select( SELECT_TIMEOUT_MILLIS );
+
+                Runnable task;
+                while ( ( task = tasks.poll() ) != null )
+                {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while ( keys.hasNext() )
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if ( key.isValid() )
+                    {
+                        ( (ProxySSLTunnel) key.attachment() ).onSelected( key );
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if ( now - lastIdleCheck > IDLE_CHECK_INTERVAL_MILLIS )
+                {
+                    lastIdleCheck = now;
+                    tunnels.stream().filter( t -> t.isIdle( now ) ).forEach( ProxySSLTunnel::timeout );
+                }
+            }
+            catch ( IOException | RuntimeException e )
+            {
+                logger.error( "Tunnel relay failure", e );
+            }
+        }
+
+        try
+        {
+            selector.close();
+        }
+        catch ( IOException e )
+        {
+            logger.debug( "Failed to close tunnel relay selector: {}", e.toString() );
+        }
+    }
+}
@@ -15,12 +15,15 @@
  */
 package org.commonjava.indy.httprox.util;
 
+import com.codahale.metrics.MetricRegistry;
 import org.commonjava.indy.sli.metrics.GoldenSignalsMetricSet;
 import org.slf4j.Logger;
 import org.commonjava.indy.metrics.RequestContextHelper;
 
 import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static java.lang.Integer.parseInt;
 import static org.commonjava.indy.metrics.RequestContextHelper.HTTP_METHOD;
 import static org.commonjava.indy.metrics.RequestContextHelper.HTTP_STATUS;
@@ -33,6 +36,14 @@ import static org.commonjava.indy.metrics.TrafficClassifierConstants.FN_CONTENT_
 
 public class ProxyMeter
 {
+    private static final String MITM_CONNECTIONS = "httprox.mitm.connections";
+
+    private static final String MITM_ACTIVE_CONNECTIONS = "httprox.mitm.connections.active";
+
+    private static final String MITM_HANDSHAKE = "httprox.mitm.handshake";
+
+    private static final String MITM_HANDSHAKE_FAILURES = "httprox.mitm.handshake.failures";
+
     private boolean summaryReported;
 
     private final String method;
@@ -47,8 +58,21 @@ public class ProxyMeter
 
     private final SocketAddress peerAddress;
 
+    private final MetricRegistry metricRegistry;
+
+    private final String metricPrefix;
+
     public ProxyMeter( final String method, final String requestLine, final long startNanos, final GoldenSignalsMetricSet sliMetricSet, final Logger restLogger,
                        final SocketAddress peerAddress )
+    {
+        this( method, requestLine, startNanos, sliMetricSet, restLogger, peerAddress, null, null );
+    }
+
+    /**
+     * @param metricRegistry registry for the MITM connection / handshake metrics, or null to skip them
+     */
+    public ProxyMeter( final String method, final String requestLine, final long startNanos, final GoldenSignalsMetricSet sliMetricSet, final Logger restLogger,
+                       final SocketAddress peerAddress, final MetricRegistry metricRegistry, final String metricPrefix )
     {
         this.method = method;
         this.requestLine = requestLine;
@@ -56,6 +80,8 @@ public class ProxyMeter
         this.sliMetricSet = sliMetricSet;
         this.restLogger = restLogger;
         this.peerAddress = peerAddress;
+        this.metricRegistry = metricRegistry;
+        this.metricPrefix = metricPrefix;
     }
 
     public void reportResponseSummary()
@@ -98,6 +124,40 @@ public class ProxyMeter
 
     public ProxyMeter copy( final long startNanos, final String method, final String requestLine )
     {
-        return new ProxyMeter( method, requestLine, startNanos, sliMetricSet, restLogger, peerAddress );
+        return new ProxyMeter( method, requestLine, startNanos, sliMetricSet, restLogger, peerAddress, metricRegistry,
+                               metricPrefix );
+    }
+
+    public void reportMITMConnectionOpened()
+    {
+        if ( metricRegistry != null )
+        {
+            metricRegistry.meter( name( metricPrefix, MITM_CONNECTIONS ) ).mark();
+            metricRegistry.counter( name( metricPrefix, MITM_ACTIVE_CONNECTIONS ) ).inc();
+        }
+    }
+
+    public void reportMITMConnectionClosed()
+    {
+        if ( metricRegistry != null )
+        {
+            metricRegistry.counter( name( metricPrefix, MITM_ACTIVE_CONNECTIONS ) ).dec();
+        }
+    }
+
+    public void reportMITMHandshake( final long handshakeNanos )
+    {
+        if ( metricRegistry != null )
+        {
+            metricRegistry.timer( name( metricPrefix, MITM_HANDSHAKE ) ).update( handshakeNanos, TimeUnit.NANOSECONDS );
+        }
+    }
+
+    public void reportMITMHandshakeFailure()
+    {
+        if ( metricRegistry != null )
+        {
+            metricRegistry.meter( name( metricPrefix, MITM_HANDSHAKE_FAILURES ) ).mark();
+        }
     }
 }
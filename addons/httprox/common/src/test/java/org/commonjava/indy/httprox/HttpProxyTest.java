@@ -46,8 +46,10 @@ import org.commonjava.indy.core.content.DefaultDownloadManager;
 import org.commonjava.indy.core.ctl.ContentController;
 import org.commonjava.indy.core.inject.ExpiringMemoryNotFoundCache;
 import org.commonjava.indy.httprox.conf.HttproxConfig;
+import org.commonjava.indy.httprox.handler.MITMCertificateManager;
 import org.commonjava.indy.httprox.handler.ProxyAcceptHandler;
 import org.commonjava.indy.httprox.handler.ProxyTransfersExecutor;
+import org.commonjava.indy.httprox.handler.ProxyTunnelRelay;
 import org.commonjava.indy.httprox.keycloak.KeycloakProxyAuthenticator;
 import org.commonjava.indy.mem.data.MemoryStoreDataManager;
 import org.commonjava.indy.model.core.RemoteRepository;
@@ -209,11 +211,14 @@ public class HttpProxyTest
               new PoolWeftExecutorService( "test-mitm-transfers", (ThreadPoolExecutor) Executors.newCachedThreadPool(), 2, 10f, false,null, null );
         ProxyTransfersExecutor handler = new ProxyTransfersExecutor( transferService );
 
+        MITMCertificateManager certificateManager =
+                new MITMCertificateManager( config, storeManager, dfm, transferService );
+
         proxy = new HttpProxy( config, bootOpts,
                                new ProxyAcceptHandler( config, storeManager, contentController, auth, core.getCache(),
                                                        scriptEngine, new MDCManager(), null, null,
                                                        new CacheProducer( null, cacheManager, null ),
-                                                       handler ) );
+                                                       handler, certificateManager, new ProxyTunnelRelay( null, null ) ) );
         proxy.start();
     }
 
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox;
+
+import org.commonjava.indy.httprox.conf.HttproxConfig;
+import org.commonjava.indy.httprox.handler.MITMCertificateManager;
+import org.commonjava.indy.subsys.datafile.DataFileManager;
+import org.commonjava.indy.subsys.datafile.change.DataFileEventManager;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class MITMCertificateManagerTest
+{
+    private static final String HOST = "repo.example.com";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private HttproxConfig config;
+
+    private DataFileManager dataFileManager;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        config = new HttproxConfig();
+        config.setMITMCAKey( "src/test/resources/ca.der" );
+        config.setMITMCACert( "src/test/resources/ca.crt" );
+        config.setMITMDNTemplate( "CN=<host>, O=Test Org" );
+
+        dataFileManager = new DataFileManager( temp.newFolder(), new DataFileEventManager() );
+    }
+
+    @Test
+    public void contextIsCachedPerHost()
+            throws Exception
+    {
+        MITMCertificateManager manager = new MITMCertificateManager( config, null, dataFileManager, null );
+
+        SSLContext context = manager.getSSLContext( HOST );
+        assertThat( manager.getSSLContext( HOST ), sameInstance( context ) );
+        assertThat( manager.getSSLContext( "other.example.com" ), not( sameInstance( context ) ) );
+    }
+
+    @Test
+    public void savedCertificateIsReusedAfterRestart()
+            throws Exception
+    {
+        new MITMCertificateManager( config, null, dataFileManager, null ).getSSLContext( HOST );
+
+        File saved = dataFileManager.getDataFile( "httprox/mitm-certs", HOST + ".ks" ).getDetachedFile();
+        assertTrue( saved.isFile() );
+        Certificate generated = readCertificate( saved );
+
+        new MITMCertificateManager( config, null, dataFileManager, null ).getSSLContext( HOST );
+        assertThat( readCertificate( saved ), equalTo( generated ) );
+    }
+
+    @Test
+    public void cacheIsBounded()
+            throws Exception
+    {
+        config.setMITMCertCacheSize( 1 );
+        MITMCertificateManager manager = new MITMCertificateManager( config, null, dataFileManager, null );
+
+        SSLContext context = manager.getSSLContext( HOST );
+        manager.getSSLContext( "other.example.com" );
+
+        assertThat( manager.getSSLContext( HOST ), not( sameInstance( context ) ) );
+    }
+
+    @Test
+    public void savedCertificatesArePrunedLeastRecentlyUsedFirst()
+            throws Exception
+    {
+        config.setMITMCertCacheSize( 2 );
+        new MITMCertificateManager( config, null, dataFileManager, null ).getSSLContext( HOST );
+        File saved = savedFile( HOST );
+        saved.setLastModified( System.currentTimeMillis() - 60000 );
+
+        new MITMCertificateManager( config, null, dataFileManager, null ).getSSLContext( "old.example.com" );
+        File old = savedFile( "old.example.com" );
+        old.setLastModified( System.currentTimeMillis() - 120000 );
+
+        // a restarted manager reuses the saved HOST keystore, which makes it the most recently used one
+        new MITMCertificateManager( config, null, dataFileManager, null ).getSSLContext( HOST );
+        new MITMCertificateManager( config, null, dataFileManager, null ).getSSLContext( "new.example.com" );
+
+        assertTrue( saved.isFile() );
+        assertFalse( old.exists() );
+        assertTrue( savedFile( "new.example.com" ).isFile() );
+        assertThat( saved.getParentFile().listFiles().length, equalTo( 2 ) );
+    }
+
+    @Test
+    public void savedCertificateIsOnlyReadableByOwner()
+            throws Exception
+    {
+        assumeTrue( FileSystems.getDefault().supportedFileAttributeViews().contains( "posix" ) );
+
+        new MITMCertificateManager( config, null, dataFileManager, null ).getSSLContext( HOST );
+
+        File saved = savedFile( HOST );
+        assertThat( PosixFilePermissions.toString( Files.getPosixFilePermissions( saved.toPath() ) ),
+                    equalTo( "rw-------" ) );
+        assertThat( PosixFilePermissions.toString( Files.getPosixFilePermissions( saved.getParentFile().toPath() ) ),
+                    equalTo( "rwx------" ) );
+    }
+
+    private File savedFile( String host )
+    {
+        return dataFileManager.getDataFile( "httprox/mitm-certs", host + ".ks" ).getDetachedFile();
+    }
+
+    private Certificate readCertificate( File file )
+            throws Exception
+    {
+        try (InputStream in = new FileInputStream( file ))
+        {
+            KeyStore ks = KeyStore.getInstance( KeyStore.getDefaultType() );
+            ks.load( in, "password".toCharArray() );
+            return ks.getCertificate( HOST );
+        }
+    }
+}
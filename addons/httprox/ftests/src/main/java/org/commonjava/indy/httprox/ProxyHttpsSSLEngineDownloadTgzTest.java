@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.httprox;
+
+/**
+ * Same download as {@link ProxyHttpsDownloadTgzTest} with the MITM SSL engine. The response is much larger than the
+ * client sink channel can take at once, so the engine has to wait for the client to drain it.
+ */
+public class ProxyHttpsSSLEngineDownloadTgzTest
+                extends ProxyHttpsDownloadTgzTest
+{
+    @Override
+    protected String getAdditionalHttproxConfig()
+    {
+        return super.getAdditionalHttproxConfig() + "\nMITM.sslengine.enabled=true";
+    }
+}
@@ -24,6 +24,8 @@ import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Set;
 
 @ApplicationScoped
@@ -47,4 +49,15 @@ public class MetadataStoreContentAction
         cacheManager.remove( store.getKey(), path );
         affectedGroups.forEach( group -> cacheManager.remove( group.getKey(), path ) );
     }
+
+    @Override
+    public void clearStoreContent( Collection<String> paths, ArtifactStore store, Set<Group> affectedGroups,
+                                   boolean clearOriginPath )
+    {
+        logger.debug( "Clearing metadata cache, paths: {}, store: {}, affected: {}", paths.size(), store.getKey(),
+                      affectedGroups );
+        Set<String> pathSet = paths instanceof Set ? (Set<String>) paths : new HashSet<>( paths );
+        cacheManager.remove( store.getKey(), pathSet );
+        affectedGroups.forEach( group -> cacheManager.remove( group.getKey(), pathSet ) );
+    }
 }
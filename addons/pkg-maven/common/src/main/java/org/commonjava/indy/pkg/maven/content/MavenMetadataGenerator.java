@@ -73,6 +73,7 @@ import java.io.OutputStream;
 import java.io.StringReader;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -125,6 +126,8 @@ public class MavenMetadataGenerator
 
     private static final String CLASSIFIER = "classifier";
 
+    private static final String PROVIDER_CONTRIBUTOR = "metadata-providers";
+
     @Inject
     private MetadataCacheManager cacheManager;
 
@@ -184,6 +187,18 @@ public class MavenMetadataGenerator
         start();
     }
 
+    public MavenMetadataGenerator( final DirectContentAccess fileManager, final StoreDataManager storeManager,
+                                   final XMLInfrastructure xml, final TypeMapper typeMapper,
+                                   final MavenMetadataMerger merger, final GroupMergeHelper mergeHelper,
+                                   final NotFoundCache nfc, WeftExecutorService mavenMDGeneratorService,
+                                   final MetadataCacheManager cacheManager,
+                                   final MergedContentAction... mergedContentActions )
+    {
+        this( fileManager, storeManager, xml, typeMapper, merger, mergeHelper, nfc, mavenMDGeneratorService,
+              mergedContentActions );
+        this.cacheManager = cacheManager;
+    }
+
     @PostConstruct
     public void start()
     {
@@ -386,7 +401,10 @@ public class MavenMetadataGenerator
             {
                 logger.debug( "Start metadata generation for metadata file {} in group {}", path, group );
                 List<StoreKey> contributing = new ArrayList<>();
-                final Metadata md = generateGroupMetadata( group, members, contributing, path );
+                Map<String, Set<String>> versionContributors = new HashMap<>();
+                AtomicReference<MetadataInfo> basedOn = new AtomicReference<>();
+                final Metadata md = generateGroupMetadata( group, members, contributing, versionContributors, basedOn,
+                                                           path );
                 if ( md != null )
                 {
                     final Versioning versioning = md.getVersioning();
@@ -416,7 +434,18 @@ public class MavenMetadataGenerator
                         eventMetadata.set( GROUP_METADATA_GENERATED, true );
                         MetadataInfo info = new MetadataInfo( md );
                         info.setMetadataMergeInfo( mergeInfo );
-                        putToMetadataCache( group.getKey(), mergePath, info );
+                        info.setVersionContributors( versionContributors );
+                        if ( basedOn.get() == null )
+                        {
+                            putToMetadataCache( group.getKey(), mergePath, info );
+                        }
+                        else if ( !cacheManager.replace( new MetadataKey( group.getKey(), mergePath ), basedOn.get(),
+                                                         info ) )
+                        {
+                            // a member changed again while merging, the next read will merge it
+                            logger.debug( "Cached metadata of {}:{} changed while merging, not replacing it",
+                                          group.getKey(), mergePath );
+                        }
                     }
                     catch ( final IOException e )
                     {
@@ -509,12 +538,18 @@ public class MavenMetadataGenerator
      * 2. read cached from member hosted repos and try to download from member remote repos
      * 3. generate by member hosted repos (list dir trying to find version directories)
      *
+     * If the cached group metadata has stale members (see {@link MetadataMergeListener}), only those are merged again.
+     *
      * @param group
      * @param members concrete store in group
+     * @param versionContributors filled with the contributors of each version, see {@link MetadataInfo}
+     * @param basedOn set to the cached group metadata the result was built from, if any
      * @param path
      */
     private Metadata generateGroupMetadata( final Group group, final List<ArtifactStore> members,
-                                            final List<StoreKey> contributingMembers, final String path )
+                                            final List<StoreKey> contributingMembers,
+                                            final Map<String, Set<String>> versionContributors,
+                                            final AtomicReference<MetadataInfo> basedOn, final String path )
             throws IndyWorkflowException
     {
 
@@ -530,11 +565,30 @@ public class MavenMetadataGenerator
             toMergePath = normalize( normalize( parentPath( toMergePath ) ), MavenMetadataMerger.METADATA_NAME );
         }
 
-        Metadata meta = getMetaFromCache( group.getKey(), toMergePath );
-
-        if ( meta != null )
+        MetadataInfo cached = getMetaInfoFromCache( group.getKey(), toMergePath );
+        if ( cached != null )
         {
-            return meta;
+            basedOn.set( cached );
+            if ( cached.getStaleContributors().isEmpty() )
+            {
+                if ( cached.getVersionContributors() != null )
+                {
+                    versionContributors.putAll( cached.getVersionContributors() );
+                }
+                return cached.getMetadata();
+            }
+
+            Metadata remerged = remergeStale( group, members, cached, toMergePath, contributingMembers,
+                                              versionContributors );
+            if ( remerged != null )
+            {
+                return remerged;
+            }
+
+            logger.debug( "Cannot merge stale members of {}:{} incrementally, merging all members", group.getKey(),
+                          toMergePath );
+            contributingMembers.clear();
+            versionContributors.clear();
         }
 
         Metadata master = new Metadata();
@@ -543,21 +597,24 @@ public class MavenMetadataGenerator
         MetadataIncrementalResult incrementalResult =
                 new MetadataIncrementalResult( new HashSet<>( members ), Collections.emptySet(), master );
 
-        incrementalResult = mergeMissing( group, incrementalResult, toMergePath, "cached", this::retrieveCached );
+        incrementalResult = mergeMissing( group, incrementalResult, toMergePath, versionContributors, "cached",
+                                          this::retrieveCached );
 
         contributingMembers.addAll( incrementalResult.merged );
 
-        incrementalResult = mergeMissing( group, incrementalResult, toMergePath, "downloaded", this::downloadMissing );
+        incrementalResult = mergeMissing( group, incrementalResult, toMergePath, versionContributors, "downloaded",
+                                          this::downloadMissing );
 
         contributingMembers.addAll( incrementalResult.merged );
 
-        incrementalResult = mergeMissing( group, incrementalResult, toMergePath, "generated", this::generateMissing );
+        incrementalResult = mergeMissing( group, incrementalResult, toMergePath, versionContributors, "generated",
+                                          this::generateMissing );
 
         contributingMembers.addAll( incrementalResult.merged );
 
         if ( metadataProviders != null )
         {
-            master = mergeProviderMetadata( group, incrementalResult.result, toMergePath );
+            master = mergeProviderMetadata( group, incrementalResult.result, toMergePath, versionContributors );
         }
         else
         {
@@ -601,6 +658,155 @@ public class MavenMetadataGenerator
         return null;
     }
 
+    /**
+     * Take the contributions of the stale members out of a copy of the cached group metadata and merge their current
+     * metadata in again. The other members are left alone.
+     *
+     * @return the updated metadata, or null if it has to be merged from all members
+     */
+    private Metadata remergeStale( final Group group, final List<ArtifactStore> members, final MetadataInfo cached,
+                                   final String toMergePath, final List<StoreKey> contributingMembers,
+                                   final Map<String, Set<String>> versionContributors )
+    {
+        if ( !cached.isIncrementallyMergeable() )
+        {
+            return null;
+        }
+
+        final Set<String> stale = cached.getStaleContributors();
+        logger.debug( "Merging stale members of {}:{} incrementally: {}", group.getKey(), toMergePath, stale );
+
+        final Map<StoreKey, Metadata> staleMetadata = new HashMap<>();
+        for ( ArtifactStore member : members )
+        {
+            if ( !stale.contains( member.getKey().toString() ) )
+            {
+                continue;
+            }
+
+            Metadata memberMeta = getMemberMetadata( member, toMergePath );
+            if ( memberMeta != null )
+            {
+                putToMetadataCache( member.getKey(), toMergePath, new MetadataInfo( memberMeta ) );
+                staleMetadata.put( member.getKey(), memberMeta );
+            }
+        }
+
+        return mergeIncrementally( group, members, cached, staleMetadata, toMergePath, contributingMembers,
+                                   versionContributors );
+    }
+
+    /**
+     * Merge the current metadata of the stale members (missing if they don't have any anymore) into a copy of the
+     * cached group metadata, after taking out the versions only they contributed. Latest and release are computed
+     * again from the resulting version list, since the ones in the cached metadata may have been taken out.
+     *
+     * @return the updated metadata, or null if it has to be merged from all members
+     */
+    Metadata mergeIncrementally( final Group group, final List<ArtifactStore> members, final MetadataInfo cached,
+                                 final Map<StoreKey, Metadata> staleMetadata, final String toMergePath,
+                                 final List<StoreKey> contributingMembers,
+                                 final Map<String, Set<String>> versionContributors )
+    {
+        final Set<String> stale = cached.getStaleContributors();
+        final Metadata master = cached.getMetadata().clone();
+        final List<String> versions = master.getVersioning().getVersions();
+
+        final Map<String, Set<String>> contributors = new HashMap<>();
+        cached.getVersionContributors().forEach( ( version, keys ) -> {
+            Set<String> remaining = new HashSet<>( keys );
+            remaining.removeAll( stale );
+            if ( remaining.isEmpty() )
+            {
+                versions.remove( version );
+            }
+            else
+            {
+                contributors.put( version, remaining );
+            }
+        } );
+
+        for ( ArtifactStore member : members )
+        {
+            Metadata memberMeta = staleMetadata.get( member.getKey() );
+            if ( memberMeta == null || !stale.contains( member.getKey().toString() ) )
+            {
+                continue;
+            }
+
+            Versioning memberVersioning = memberMeta.getVersioning();
+            if ( memberVersioning != null && ( memberVersioning.getSnapshot() != null
+                            || !memberVersioning.getSnapshotVersions().isEmpty() ) || !memberMeta.getPlugins()
+                                                                                                 .isEmpty() )
+            {
+                return null;
+            }
+
+            merger.merge( master, memberMeta, group, toMergePath );
+            addContribution( contributors, member.getKey().toString(), memberMeta );
+        }
+
+        if ( versions.isEmpty() )
+        {
+            return null;
+        }
+
+        // same latest and release as a full merge
+        merger.sortVersions( master );
+        if ( master.getVersioning().getVersions().isEmpty() )
+        {
+            return null;
+        }
+
+        final Set<String> contributorKeys = new HashSet<>();
+        contributors.values().forEach( contributorKeys::addAll );
+        members.stream()
+               .filter( member -> contributorKeys.contains( member.getKey().toString() ) )
+               .forEach( member -> contributingMembers.add( member.getKey() ) );
+
+        versionContributors.putAll( contributors );
+        return master;
+    }
+
+    /**
+     * Get the metadata of a single member the same way a full merge does: cached, downloaded or generated.
+     */
+    private Metadata getMemberMetadata( final ArtifactStore store, final String toMergePath )
+    {
+        List<BiFunction<ArtifactStore, String, Callable<MetadataResult>>> sources =
+                Arrays.asList( this::retrieveCached, this::downloadMissing, this::generateMissing );
+        for ( BiFunction<ArtifactStore, String, Callable<MetadataResult>> source : sources )
+        {
+            try
+            {
+                MetadataResult mr = source.apply( store, toMergePath ).call();
+                if ( mr != null && !mr.missing )
+                {
+                    return mr.metadata;
+                }
+            }
+            catch ( Exception e )
+            {
+                logger.error( String.format( "Failed to get member metadata: %s:%s. Reason: %s", store.getKey(),
+                                             toMergePath, e.getMessage() ), e );
+            }
+        }
+
+        return null;
+    }
+
+    private void addContribution( final Map<String, Set<String>> versionContributors, final String contributor,
+                                  final Metadata metadata )
+    {
+        Versioning versioning = metadata.getVersioning();
+        if ( versioning != null && versioning.getVersions() != null )
+        {
+            versioning.getVersions()
+                      .forEach( v -> versionContributors.computeIfAbsent( v, k -> new HashSet<>() )
+                                                        .add( contributor ) );
+        }
+    }
+
     private void putToMetadataCache( StoreKey key, String toMergePath, MetadataInfo meta )
     {
         cacheManager.put( new MetadataKey( key, toMergePath ), meta );
@@ -708,7 +914,9 @@ public class MavenMetadataGenerator
 
     private MetadataIncrementalResult mergeMissing( final Group group,
                                                     final MetadataIncrementalResult incrementalResult,
-                                                    final String toMergePath, String description,
+                                                    final String toMergePath,
+                                                    final Map<String, Set<String>> versionContributors,
+                                                    String description,
                                                     BiFunction<ArtifactStore, String, Callable<MetadataResult>> func )
             throws IndyWorkflowException
     {
@@ -738,6 +946,7 @@ public class MavenMetadataGenerator
                     {
                         included.add( mr.store.getKey() );
                         merger.merge( master, mr.metadata, group, toMergePath );
+                        addContribution( versionContributors, mr.store.getKey().toString(), mr.metadata );
                         putToMetadataCache( mr.store.getKey(), toMergePath, new MetadataInfo( mr.metadata ) );
                     }
                 }
@@ -756,7 +965,8 @@ public class MavenMetadataGenerator
     }
 
     private Metadata mergeProviderMetadata( final Group group, final Metadata master,
-                                                             final String toMergePath )
+                                                             final String toMergePath,
+                                                             final Map<String, Set<String>> versionContributors )
             throws IndyWorkflowException
     {
 
@@ -787,6 +997,8 @@ public class MavenMetadataGenerator
                 if ( metadata != null )
                 {
                     merger.merge( master, metadata, group, toMergePath );
+                    // providers aren't members, so their versions are never taken out by an incremental merge
+                    addContribution( versionContributors, PROVIDER_CONTRIBUTOR, metadata );
                 }
             } );
         }
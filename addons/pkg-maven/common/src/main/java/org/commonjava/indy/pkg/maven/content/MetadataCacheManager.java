@@ -30,6 +30,7 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @ApplicationScoped
@@ -92,6 +93,53 @@ public class MetadataCacheManager
         metadataCache.remove( metadataKey );
     }
 
+    /**
+     * Record that a member's metadata changed, so the merged group metadata only needs that member's contribution
+     * merged again. If the group metadata can't be merged incrementally, it's removed instead.
+     */
+    public void markStale( MetadataKey groupMetadataKey, StoreKey member )
+    {
+        MetadataInfo updated = metadataCache.executeCache( cache -> cache.computeIfPresent( groupMetadataKey, ( k, info ) -> {
+            if ( !info.isIncrementallyMergeable() )
+            {
+                return null;
+            }
+
+            MetadataInfo copy = new MetadataInfo( info );
+            copy.addStaleContributor( member.toString() );
+            copy.setGeneration( info.getGeneration() + 1 );
+            return copy;
+        } ) );
+
+        if ( updated == null )
+        {
+            metadataKeyCache.remove( groupMetadataKey );
+        }
+    }
+
+    /**
+     * Replace cached group metadata with the result of a merge based on it, unless it changed (e.g. a member was
+     * marked stale again) or was removed meanwhile. Then the cached entry is left alone for the next read to merge.
+     *
+     * @return whether the entry was replaced
+     */
+    public boolean replace( MetadataKey groupMetadataKey, MetadataInfo basedOn, MetadataInfo metadataInfo )
+    {
+        metadataInfo.setGeneration( basedOn.getGeneration() + 1 );
+        AtomicBoolean replaced = new AtomicBoolean( false );
+        metadataCache.executeCache( cache -> cache.computeIfPresent( groupMetadataKey, ( k, info ) -> {
+            if ( info.getGeneration() != basedOn.getGeneration() )
+            {
+                return info;
+            }
+
+            replaced.set( true );
+            return metadataInfo;
+        } ) );
+
+        return replaced.get();
+    }
+
     public void removeAll( StoreKey key )
     {
         getMatches( key ).forEach( k -> remove( k ) );
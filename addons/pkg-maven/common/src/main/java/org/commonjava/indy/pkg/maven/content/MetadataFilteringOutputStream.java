@@ -0,0 +1,551 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.commonjava.atlas.maven.ident.util.SnapshotUtils;
+import org.commonjava.indy.metrics.IndyMetricsManager;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.util.IdempotentCloseOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Filters snapshot or release versions out of a maven-metadata.xml while it's being written, without buffering the
+ * document. It tokenizes the bytes into markup and text as they arrive: everything is passed straight through except
+ * <ul>
+ *     <li><code>&lt;version&gt;</code> elements inside <code>&lt;versions&gt;</code>, which are dropped (with the
+ *     whitespace before them) when their version isn't allowed</li>
+ *     <li><code>&lt;latest&gt;</code>, which is replaced by the last allowed version when it isn't allowed itself</li>
+ *     <li><code>&lt;release&gt;</code>, which is emptied when releases aren't allowed</li>
+ *     <li>the contents of <code>&lt;snapshot&gt;</code> and <code>&lt;snapshotVersions&gt;</code>, which are dropped
+ *     when snapshots aren't allowed</li>
+ * </ul>
+ * Only a prohibited <code>&lt;latest&gt;</code> that comes before <code>&lt;versions&gt;</code> (the usual order) makes
+ * it hold back the output in between, because the replacement isn't known until the versions have been seen.
+ */
+public class MetadataFilteringOutputStream
+        extends IdempotentCloseOutputStream
+{
+    private static final String TIMER = "io.maven.metadata.out.filter";
+
+    private static final byte[] VERSIONS = bytes( "versions" );
+
+    private static final byte[] VERSION = bytes( "version" );
+
+    private static final byte[] VERSIONING = bytes( "versioning" );
+
+    private static final byte[] LATEST = bytes( "latest" );
+
+    private static final byte[] RELEASE = bytes( "release" );
+
+    private static final byte[] SNAPSHOT = bytes( "snapshot" );
+
+    private static final byte[] SNAPSHOT_VERSIONS = bytes( "snapshotVersions" );
+
+    private static final byte[] EMPTY_RELEASE = bytes( "<release></release>" );
+
+    private static final byte[] COMMENT_START = bytes( "<!--" );
+
+    private static final byte[] COMMENT_END = bytes( "-->" );
+
+    private static final byte[] CDATA_START = bytes( "<![CDATA[" );
+
+    private static final byte[] CDATA_END = bytes( "]]>" );
+
+    private enum State
+    {
+        TEXT, TAG, COMMENT, CDATA
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( this.getClass() );
+
+    private final boolean allowsSnapshots;
+
+    private final boolean allowsReleases;
+
+    private final Transfer transfer;
+
+    private final IndyMetricsManager metricsManager;
+
+    private final byte[] single = new byte[1];
+
+    private State state = State.TEXT;
+
+    // the markup being read, from '<' up to the closing '>' (or the end of the comment / CDATA section)
+    private final Buffer markup = new Buffer();
+
+    private byte quote;
+
+    private boolean inVersions;
+
+    private boolean versionsSeen;
+
+    private String lastAllowedVersion;
+
+    // whitespace between the elements of <versions>, dropped along with the next <version> if that's filtered out
+    private final Buffer pendingWhitespace = new Buffer();
+
+    // element being collected before deciding what to write: a <version>, <latest> or <release>
+    private byte[] captureName;
+
+    private final Buffer capture = new Buffer();
+
+    private int captureTextStart;
+
+    private int captureTextEnd;
+
+    // element whose content is dropped: <snapshot> or <snapshotVersions>
+    private byte[] suppressName;
+
+    // output held back while a prohibited <latest> waits for the versions
+    private Buffer held;
+
+    private boolean finished;
+
+    private long filterNanos;
+
+    public MetadataFilteringOutputStream( final OutputStream stream, final boolean allowsSnapshots,
+                                          final boolean allowsReleases, final Transfer transfer,
+                                          final IndyMetricsManager metricsManager )
+    {
+        super( stream );
+        this.allowsSnapshots = allowsSnapshots;
+        this.allowsReleases = allowsReleases;
+        this.transfer = transfer;
+        this.metricsManager = metricsManager;
+    }
+
+    @Override
+    public void write( final int b )
+            throws IOException
+    {
+        single[0] = (byte) b;
+        write( single, 0, 1 );
+    }
+
+    @Override
+    public void write( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        long start = System.nanoTime();
+        try
+        {
+            process( b, off, off + len );
+        }
+        finally
+        {
+            filterNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        try
+        {
+            finish();
+        }
+        finally
+        {
+            super.close();
+        }
+    }
+
+    private void process( final byte[] b, final int off, final int end )
+            throws IOException
+    {
+        int i = off;
+        while ( i < end )
+        {
+            switch ( state )
+            {
+                case TEXT:
+                {
+                    int lt = i;
+                    while ( lt < end && b[lt] != '<' )
+                    {
+                        lt++;
+                    }
+
+                    text( b, i, lt - i );
+                    if ( lt < end )
+                    {
+                        markup.reset();
+                        markup.write( '<' );
+                        quote = 0;
+                        state = State.TAG;
+                    }
+                    i = lt + 1;
+                    break;
+                }
+                case TAG:
+                {
+                    byte c = b[i++];
+                    markup.write( c );
+                    if ( quote != 0 )
+                    {
+                        if ( c == quote )
+                        {
+                            quote = 0;
+                        }
+                    }
+                    else if ( c == '"' || c == '\'' )
+                    {
+                        quote = c;
+                    }
+                    else if ( c == '>' )
+                    {
+                        state = State.TEXT;
+                        tag();
+                    }
+                    else if ( markup.size() == COMMENT_START.length && markup.endsWith( COMMENT_START ) )
+                    {
+                        state = State.COMMENT;
+                    }
+                    else if ( markup.size() == CDATA_START.length && markup.endsWith( CDATA_START ) )
+                    {
+                        state = State.CDATA;
+                    }
+                    break;
+                }
+                default:
+                {
+                    // comments and CDATA sections are handled as text, once complete
+                    markup.write( b[i++] );
+                    if ( markup.endsWith( state == State.COMMENT ? COMMENT_END : CDATA_END ) )
+                    {
+                        state = State.TEXT;
+                        text( markup.buffer(), 0, markup.size() );
+                    }
+                }
+            }
+        }
+    }
+
+    private void text( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        if ( len == 0 || suppressName != null )
+        {
+            return;
+        }
+
+        if ( captureName != null )
+        {
+            capture.write( b, off, len );
+        }
+        else if ( inVersions && isWhitespace( b, off, len ) )
+        {
+            pendingWhitespace.write( b, off, len );
+        }
+        else
+        {
+            flushWhitespace();
+            emit( b, off, len );
+        }
+    }
+
+    private void tag()
+            throws IOException
+    {
+        final byte[] tag = markup.buffer();
+        final int length = markup.size();
+        final boolean end = length > 1 && tag[1] == '/';
+        final boolean empty = length > 2 && tag[length - 2] == '/';
+        final int nameStart = end ? 2 : 1;
+
+        if ( suppressName != null )
+        {
+            if ( end && nameIs( suppressName, nameStart ) )
+            {
+                suppressName = null;
+                emit( tag, 0, length );
+            }
+            return;
+        }
+
+        if ( captureName != null )
+        {
+            if ( end && nameIs( captureName, nameStart ) )
+            {
+                captureTextEnd = capture.size();
+                capture.write( tag, 0, length );
+                finishCapture();
+            }
+            else
+            {
+                capture.write( tag, 0, length );
+            }
+            return;
+        }
+
+        if ( end )
+        {
+            flushWhitespace();
+            if ( nameIs( VERSIONS, nameStart ) )
+            {
+                inVersions = false;
+                versionsSeen = true;
+            }
+
+            emit( tag, 0, length );
+
+            if ( held != null && ( nameIs( VERSIONS, nameStart ) || nameIs( VERSIONING, nameStart ) ) )
+            {
+                releaseHeld();
+            }
+            return;
+        }
+
+        if ( !empty && ( ( inVersions && nameIs( VERSION, nameStart ) ) || nameIs( LATEST, nameStart ) || (
+                !allowsReleases && nameIs( RELEASE, nameStart ) ) ) )
+        {
+            captureName = inVersions && nameIs( VERSION, nameStart ) ? VERSION : nameIs( LATEST, nameStart ) ?
+                    LATEST :
+                    RELEASE;
+            capture.reset();
+            if ( captureName == VERSION )
+            {
+                capture.write( pendingWhitespace.buffer(), 0, pendingWhitespace.size() );
+                pendingWhitespace.reset();
+            }
+            else
+            {
+                flushWhitespace();
+            }
+            capture.write( tag, 0, length );
+            captureTextStart = capture.size();
+            return;
+        }
+
+        flushWhitespace();
+        emit( tag, 0, length );
+
+        if ( !empty )
+        {
+            if ( nameIs( VERSIONS, nameStart ) )
+            {
+                inVersions = true;
+            }
+            else if ( !allowsSnapshots && ( nameIs( SNAPSHOT, nameStart ) || nameIs( SNAPSHOT_VERSIONS,
+                                                                                     nameStart ) ) )
+            {
+                logger.debug( "FILTER: Suppressing prohibited snapshot fields from: {}", transfer );
+                suppressName = nameIs( SNAPSHOT, nameStart ) ? SNAPSHOT : SNAPSHOT_VERSIONS;
+            }
+        }
+    }
+
+    private void finishCapture()
+            throws IOException
+    {
+        final byte[] name = captureName;
+        final String value =
+                new String( capture.buffer(), captureTextStart, captureTextEnd - captureTextStart, UTF_8 ).trim();
+        captureName = null;
+
+        if ( name == VERSION )
+        {
+            final boolean isSnapshot = SnapshotUtils.isSnapshotVersion( value );
+            if ( !allowsSnapshots && isSnapshot || !allowsReleases && !isSnapshot )
+            {
+                logger.debug( "FILTER: Removing prohibited version: {} from: {}", value, transfer );
+                return;
+            }
+
+            lastAllowedVersion = value;
+        }
+        else if ( name == LATEST )
+        {
+            final boolean isSnapshot = value.endsWith( "-SNAPSHOT" );
+            if ( !value.isEmpty() && ( !allowsSnapshots && isSnapshot || !allowsReleases && !isSnapshot ) )
+            {
+                logger.debug( "FILTER: Recalculating LATEST version; supplied value is prohibited: {} from: {}",
+                              value, transfer );
+                if ( versionsSeen )
+                {
+                    emitLatest();
+                }
+                else
+                {
+                    held = new Buffer();
+                }
+                return;
+            }
+        }
+        else if ( !value.isEmpty() )
+        {
+            logger.debug( "FILTER: Suppressing prohibited release fields from: {}", transfer );
+            emit( EMPTY_RELEASE, 0, EMPTY_RELEASE.length );
+            return;
+        }
+
+        emit( capture.buffer(), 0, capture.size() );
+    }
+
+    private void releaseHeld()
+            throws IOException
+    {
+        final Buffer h = held;
+        held = null;
+        emitLatest();
+        emit( h.buffer(), 0, h.size() );
+    }
+
+    private void emitLatest()
+            throws IOException
+    {
+        final byte[] latest =
+                bytes( "<latest>" + ( lastAllowedVersion == null ? "" : lastAllowedVersion ) + "</latest>" );
+        emit( latest, 0, latest.length );
+    }
+
+    private void finish()
+            throws IOException
+    {
+        if ( finished )
+        {
+            return;
+        }
+
+        finished = true;
+
+        // anything incomplete is written out as it is
+        if ( captureName != null )
+        {
+            captureName = null;
+            emit( capture.buffer(), 0, capture.size() );
+        }
+        if ( state != State.TEXT )
+        {
+            state = State.TEXT;
+            emit( markup.buffer(), 0, markup.size() );
+        }
+        flushWhitespace();
+        if ( held != null )
+        {
+            releaseHeld();
+        }
+
+        if ( metricsManager != null )
+        {
+            metricsManager.getMetricRegistry().timer( TIMER ).update( filterNanos, NANOSECONDS );
+        }
+    }
+
+    private void flushWhitespace()
+            throws IOException
+    {
+        if ( pendingWhitespace.size() > 0 )
+        {
+            emit( pendingWhitespace.buffer(), 0, pendingWhitespace.size() );
+            pendingWhitespace.reset();
+        }
+    }
+
+    private void emit( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        if ( held != null )
+        {
+            held.write( b, off, len );
+        }
+        else
+        {
+            out.write( b, off, len );
+        }
+    }
+
+    private boolean nameIs( final byte[] name, final int start )
+    {
+        final byte[] tag = markup.buffer();
+        final int end = start + name.length;
+        if ( end >= markup.size() )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < name.length; i++ )
+        {
+            if ( tag[start + i] != name[i] )
+            {
+                return false;
+            }
+        }
+
+        final byte next = tag[end];
+        return next == '>' || next == '/' || Character.isWhitespace( next );
+    }
+
+    private static boolean isWhitespace( final byte[] b, final int off, final int len )
+    {
+        for ( int i = off; i < off + len; i++ )
+        {
+            if ( !Character.isWhitespace( b[i] ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] bytes( final String s )
+    {
+        return s.getBytes( UTF_8 );
+    }
+
+    /**
+     * {@link ByteArrayOutputStream} that exposes its buffer, so it can be read without copying.
+     */
+    private static final class Buffer
+            extends ByteArrayOutputStream
+    {
+        private Buffer()
+        {
+            super( 64 );
+        }
+
+        byte[] buffer()
+        {
+            return buf;
+        }
+
+        boolean endsWith( final byte[] suffix )
+        {
+            if ( count < suffix.length )
+            {
+                return false;
+            }
+
+            for ( int i = 0; i < suffix.length; i++ )
+            {
+                if ( buf[count - suffix.length + i] != suffix[i] )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -16,8 +16,14 @@
 package org.commonjava.indy.pkg.maven.content;
 
 import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Used to bind group metadata and its metadata merge info together for caching easily
@@ -29,11 +35,39 @@ public class MetadataInfo
 
     private String metadataMergeInfo;
 
+    // group metadata only: version -> contributors (member store keys, or metadata providers) listing it
+    private Map<String, Set<String>> versionContributors;
+
+    // group metadata only: members whose metadata changed since the versions were merged
+    private Set<String> staleContributors;
+
+    // bumped on each change of a cached entry, so a merge based on an older entry doesn't replace a newer one
+    private long generation;
+
     public MetadataInfo( final Metadata metadata )
     {
         this.metadata = metadata;
     }
 
+    /**
+     * Copy the merge info and contributor bookkeeping, but not the metadata itself, which is never changed in place.
+     */
+    public MetadataInfo( final MetadataInfo other )
+    {
+        this.metadata = other.metadata;
+        this.metadataMergeInfo = other.metadataMergeInfo;
+        this.generation = other.generation;
+        if ( other.versionContributors != null )
+        {
+            this.versionContributors = new HashMap<>();
+            other.versionContributors.forEach( ( v, c ) -> this.versionContributors.put( v, new HashSet<>( c ) ) );
+        }
+        if ( other.staleContributors != null )
+        {
+            this.staleContributors = new HashSet<>( other.staleContributors );
+        }
+    }
+
     public Metadata getMetadata()
     {
         return metadata;
@@ -53,4 +87,54 @@ public class MetadataInfo
     {
         this.metadataMergeInfo = metadataMergeInfo;
     }
+
+    public Map<String, Set<String>> getVersionContributors()
+    {
+        return versionContributors;
+    }
+
+    public void setVersionContributors( Map<String, Set<String>> versionContributors )
+    {
+        this.versionContributors = versionContributors;
+    }
+
+    public long getGeneration()
+    {
+        return generation;
+    }
+
+    public void setGeneration( long generation )
+    {
+        this.generation = generation;
+    }
+
+    public Set<String> getStaleContributors()
+    {
+        return staleContributors == null ? Collections.emptySet() : staleContributors;
+    }
+
+    public void addStaleContributor( String contributor )
+    {
+        if ( staleContributors == null )
+        {
+            staleContributors = new HashSet<>();
+        }
+        staleContributors.add( contributor );
+    }
+
+    /**
+     * Whether a change in one member can be merged without redoing the others. This is only tracked for version
+     * listings (GA level metadata); snapshot and plugin metadata is always merged in full.
+     */
+    public boolean isIncrementallyMergeable()
+    {
+        if ( versionContributors == null || metadata == null || metadata.getVersioning() == null )
+        {
+            return false;
+        }
+
+        Versioning versioning = metadata.getVersioning();
+        return versioning.getSnapshot() == null && versioning.getSnapshotVersions().isEmpty()
+                        && metadata.getPlugins().isEmpty();
+    }
 }
@@ -15,11 +15,13 @@
  */
 package org.commonjava.indy.pkg.maven.content;
 
+import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.content.DirectContentAccess;
 import org.commonjava.indy.content.MergedContentAction;
 import org.commonjava.indy.measure.annotation.Measure;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,6 +33,8 @@ import java.util.Set;
  * This listener will do these tasks:
  * <ul>
  *     <li>When the metadata file changed of a member in a group, delete correspond cache of that file path of the member and group (cascaded)</li>
+ *     <li>If incremental merging is enabled, the group cache is kept and the member is marked as stale in it instead, so
+ *     only that member's metadata is merged again</li>
  * </ul>
  */
 @ApplicationScoped
@@ -45,6 +49,9 @@ public class MetadataMergeListener
     @Inject
     private MetadataCacheManager cacheManager;
 
+    @Inject
+    private IndyConfiguration indyConfiguration;
+
     /**
      * Will clear the both merge path and merge info file of member and group contains that member(cascaded)
      * if that path of file changed in the member of #originatingStore
@@ -55,8 +62,20 @@ public class MetadataMergeListener
     {
         logger.debug( "Clear merged path {}, origin: {}, affected: {}", path, originatingStore, affectedGroups );
         cacheManager.remove( new MetadataKey( originatingStore.getKey(), path ) );
+
+        // a group's own metadata changing (e.g. its membership) affects everything merged in it
+        final boolean incremental = indyConfiguration.isMetadataIncrementalMergeEnabled()
+                        && originatingStore.getType() != StoreType.group;
         affectedGroups.forEach( group -> {
-            cacheManager.remove( new MetadataKey( group.getKey(), path ) );
+            MetadataKey key = new MetadataKey( group.getKey(), path );
+            if ( incremental )
+            {
+                cacheManager.markStale( key, originatingStore.getKey() );
+            }
+            else
+            {
+                cacheManager.remove( key );
+            }
         } );
     }
 
@@ -149,16 +149,36 @@ public class MavenMetadataMerger
             versioning.setVersions(
                     versionObjects.stream().map( SingleVersion::renderStandard ).collect( Collectors.toList() ) );
 
-            if ( versionObjects.size() > 0 )
+            resetLatestAndRelease( versioning );
+        }
+    }
+
+    /**
+     * Latest is the highest version, release the highest one that isn't a snapshot (none if they all are). The
+     * versions must already be sorted.
+     *
+     * @return false if no version is left to compute them from
+     */
+    public boolean resetLatestAndRelease( final Versioning versioning )
+    {
+        final List<String> versions = versioning.getVersions();
+        if ( versions == null || versions.isEmpty() )
+        {
+            return false;
+        }
+
+        versioning.setLatest( versions.get( versions.size() - 1 ) );
+
+        String release = null;
+        for ( int i = versions.size() - 1; i >= 0 && release == null; i-- )
+        {
+            if ( !versions.get( i ).endsWith( LOCAL_SNAPSHOT_VERSION_PART ) )
             {
-                String latest = versionObjects.get( versionObjects.size() - 1 ).renderStandard();
-                versioning.setLatest( latest );
-                if ( !latest.endsWith( LOCAL_SNAPSHOT_VERSION_PART ) )
-                {
-                    versioning.setRelease( latest );
-                }
+                release = versions.get( i );
             }
         }
+        versioning.setRelease( release );
+        return true;
     }
 
 }
@@ -16,6 +16,9 @@
 package org.commonjava.indy.pkg.maven.content;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Snapshot;
+import org.apache.maven.artifact.repository.metadata.Versioning;
 import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
 import org.commonjava.cdi.util.weft.WeftExecutorService;
 import org.commonjava.indy.audit.ChangeSummary;
@@ -28,7 +31,11 @@ import org.commonjava.indy.core.content.DefaultDownloadManager;
 import org.commonjava.indy.core.content.group.GroupMergeHelper;
 import org.commonjava.indy.core.inject.ExpiringMemoryNotFoundCache;
 import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
 import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger;
 import org.commonjava.indy.util.LocationUtils;
@@ -57,14 +64,21 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
@@ -82,6 +96,16 @@ public class MavenMetadataGeneratorTest
 
     private final ChangeSummary summary = new ChangeSummary( "test-user", "test" );
 
+    private static final String PATH = "org/group/artifact/maven-metadata.xml";
+
+    private final HostedRepository h1 = new HostedRepository( MAVEN_PKG_KEY, "h1" );
+
+    private final HostedRepository h2 = new HostedRepository( MAVEN_PKG_KEY, "h2" );
+
+    private final Group group = new Group( MAVEN_PKG_KEY, "g", h1.getKey(), h2.getKey() );
+
+    private final List<ArtifactStore> members = Arrays.asList( h1, h2 );
+
     @Before
     public void setup()
         throws Exception
@@ -255,6 +279,120 @@ public class MavenMetadataGeneratorTest
         }
     }
 
+    @Test
+    public void mergeIncrementally_StaleMemberAddedVersion()
+        throws Exception
+    {
+        // h1 lists 1.0, h2 lists 1.1; h2 then gets 1.2
+        final MetadataInfo cached = groupMetadata( "1.0", "1.1" );
+        contribution( cached, h1, "1.0" );
+        contribution( cached, h2, "1.1" );
+        cached.addStaleContributor( h2.getKey().toString() );
+
+        final List<StoreKey> contributing = new ArrayList<>();
+        final Map<String, Set<String>> contributors = new HashMap<>();
+        final Metadata merged = generator.mergeIncrementally( group, members, cached, Collections.singletonMap(
+                h2.getKey(), memberMetadata( "1.1", "1.2" ) ), PATH, contributing, contributors );
+
+        assertThat( merged, notNullValue() );
+        assertThat( merged.getVersioning().getVersions(), equalTo( Arrays.asList( "1.0", "1.1", "1.2" ) ) );
+        assertThat( merged.getVersioning().getLatest(), equalTo( "1.2" ) );
+        assertThat( merged.getVersioning().getRelease(), equalTo( "1.2" ) );
+        assertThat( contributors.get( "1.2" ), equalTo( Collections.singleton( h2.getKey().toString() ) ) );
+        assertThat( new HashSet<>( contributing ), equalTo( new HashSet<>( Arrays.asList( h1.getKey(), h2.getKey() ) ) ) );
+
+        // the cached metadata is never changed in place
+        assertThat( cached.getMetadata().getVersioning().getVersions(), equalTo( Arrays.asList( "1.0", "1.1" ) ) );
+    }
+
+    @Test
+    public void mergeIncrementally_StaleMemberRemovedVersion()
+        throws Exception
+    {
+        // 1.0 is listed by both members, 1.1 only by h2, which then drops both
+        final MetadataInfo cached = groupMetadata( "1.0", "1.1" );
+        contribution( cached, h1, "1.0" );
+        contribution( cached, h2, "1.0", "1.1" );
+        cached.addStaleContributor( h2.getKey().toString() );
+
+        final List<StoreKey> contributing = new ArrayList<>();
+        final Map<String, Set<String>> contributors = new HashMap<>();
+        final Metadata merged = generator.mergeIncrementally( group, members, cached,
+                                                              Collections.<StoreKey, Metadata>emptyMap(), PATH,
+                                                              contributing, contributors );
+
+        assertThat( merged, notNullValue() );
+        assertThat( merged.getVersioning().getVersions(), equalTo( Collections.singletonList( "1.0" ) ) );
+        assertThat( merged.getVersioning().getLatest(), equalTo( "1.0" ) );
+        assertThat( merged.getVersioning().getRelease(), equalTo( "1.0" ) );
+        assertThat( contributors.get( "1.0" ), equalTo( Collections.singleton( h1.getKey().toString() ) ) );
+        assertThat( contributing, equalTo( Collections.singletonList( h1.getKey() ) ) );
+    }
+
+    @Test
+    public void mergeIncrementally_StaleRemergeRecomputesReleaseWhenLatestIsSnapshot()
+        throws Exception
+    {
+        // the release (1.1) only came from h2, which doesn't have it anymore; the latest is a snapshot
+        final MetadataInfo cached = groupMetadata( "1.0", "1.1", "2.0-SNAPSHOT" );
+        cached.getMetadata().getVersioning().setLatest( "2.0-SNAPSHOT" );
+        cached.getMetadata().getVersioning().setRelease( "1.1" );
+        contribution( cached, h1, "1.0", "2.0-SNAPSHOT" );
+        contribution( cached, h2, "1.1" );
+        cached.addStaleContributor( h2.getKey().toString() );
+
+        final Metadata merged = generator.mergeIncrementally( group, members, cached, Collections.singletonMap(
+                h2.getKey(), memberMetadata( "0.9" ) ), PATH, new ArrayList<>(), new HashMap<>() );
+
+        assertThat( merged, notNullValue() );
+        assertThat( merged.getVersioning().getVersions(), equalTo( Arrays.asList( "0.9", "1.0", "2.0-SNAPSHOT" ) ) );
+        assertThat( merged.getVersioning().getLatest(), equalTo( "2.0-SNAPSHOT" ) );
+        assertThat( merged.getVersioning().getRelease(), equalTo( "1.0" ) );
+    }
+
+    @Test
+    public void mergeIncrementally_StaleMemberWithSnapshotMetadataNeedsFullMerge()
+        throws Exception
+    {
+        final MetadataInfo cached = groupMetadata( "1.0" );
+        contribution( cached, h1, "1.0" );
+        cached.addStaleContributor( h1.getKey().toString() );
+
+        final Metadata snapshot = memberMetadata( "1.0" );
+        snapshot.getVersioning().setSnapshot( new Snapshot() );
+
+        assertThat( generator.mergeIncrementally( group, members, cached,
+                                                  Collections.singletonMap( h1.getKey(), snapshot ), PATH,
+                                                  new ArrayList<>(), new HashMap<>() ), nullValue() );
+    }
+
+    private MetadataInfo groupMetadata( final String... versions )
+    {
+        final MetadataInfo info = new MetadataInfo( memberMetadata( versions ) );
+        info.setVersionContributors( new HashMap<>() );
+        return info;
+    }
+
+    private void contribution( final MetadataInfo info, final ArtifactStore member, final String... versions )
+    {
+        for ( String v : versions )
+        {
+            info.getVersionContributors().computeIfAbsent( v, k -> new HashSet<>() ).add( member.getKey().toString() );
+        }
+    }
+
+    private Metadata memberMetadata( final String... versions )
+    {
+        final Metadata metadata = new Metadata();
+        metadata.setGroupId( "org.group" );
+        metadata.setArtifactId( "artifact" );
+        final Versioning versioning = new Versioning();
+        versioning.setVersions( new ArrayList<>( Arrays.asList( versions ) ) );
+        versioning.setLatest( versions[versions.length - 1] );
+        metadata.setVersioning( versioning );
+        return metadata;
+    }
+
     private StoreResource setupVersionsStructureWith2Versions()
         throws Exception
     {
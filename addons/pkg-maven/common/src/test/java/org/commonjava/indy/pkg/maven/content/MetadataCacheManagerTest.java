@@ -15,6 +15,8 @@
  */
 package org.commonjava.indy.pkg.maven.content;
 
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.subsys.infinispan.CacheHandle;
 import org.commonjava.indy.subsys.infinispan.CacheProducer;
@@ -24,11 +26,16 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 public class MetadataCacheManagerTest
@@ -85,6 +92,53 @@ public class MetadataCacheManagerTest
         assertNotNull( ret );
     }
 
+    @Test
+    public void replaceOnlyIfNotChangedMeanwhile() throws Exception
+    {
+        StoreKey member = StoreKey.fromString( "maven:hosted:member" );
+        MetadataKey key = new MetadataKey( StoreKey.fromString( "maven:group:test" ), "org/foo/bar/maven-metadata.xml" );
+        metadataCacheManager.put( key, groupInfo( "1.0" ) );
+
+        metadataCacheManager.markStale( key, member );
+        MetadataInfo basedOn = metadataCacheManager.get( key );
+        assertThat( basedOn.getStaleContributors().contains( member.toString() ), equalTo( true ) );
+
+        // the member changes again while the stale entry is being merged
+        metadataCacheManager.markStale( key, member );
+        assertFalse( metadataCacheManager.replace( key, basedOn, groupInfo( "1.0", "1.1" ) ) );
+        assertThat( metadataCacheManager.get( key ).getStaleContributors().contains( member.toString() ),
+                    equalTo( true ) );
+
+        basedOn = metadataCacheManager.get( key );
+        MetadataInfo merged = groupInfo( "1.0", "1.1" );
+        assertTrue( metadataCacheManager.replace( key, basedOn, merged ) );
+        assertThat( metadataCacheManager.get( key ).getStaleContributors().isEmpty(), equalTo( true ) );
+        assertThat( metadataCacheManager.get( key ).getMetadata().getVersioning().getVersions().size(),
+                    equalTo( 2 ) );
+
+        // removed (e.g. group membership changed) while merging: don't bring it back
+        basedOn = metadataCacheManager.get( key );
+        metadataCacheManager.remove( key );
+        assertFalse( metadataCacheManager.replace( key, basedOn, groupInfo( "1.0" ) ) );
+        assertNull( metadataCacheManager.get( key ) );
+    }
+
+    private MetadataInfo groupInfo( String... versions )
+    {
+        Metadata metadata = new Metadata();
+        Versioning versioning = new Versioning();
+        Set<String> contributors = Collections.singleton( "maven:hosted:member" );
+        MetadataInfo info = new MetadataInfo( metadata );
+        info.setVersionContributors( new HashMap<>() );
+        for ( String v : versions )
+        {
+            versioning.addVersion( v );
+            info.getVersionContributors().put( v, new HashSet<>( contributors ) );
+        }
+        metadata.setVersioning( versioning );
+        return info;
+    }
+
     @After
     public void tearDown() throws Exception
     {
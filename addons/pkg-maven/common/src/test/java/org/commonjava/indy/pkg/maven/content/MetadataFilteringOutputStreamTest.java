@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MetadataFilteringOutputStreamTest
+{
+    // @formatter:off
+    private static final String METADATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<metadata>\n"
+        + "  <groupId>org.foo</groupId>\n"
+        + "  <artifactId>bar</artifactId>\n"
+        + "  <versioning>\n"
+        + "    <latest>1.3-SNAPSHOT</latest>\n"
+        + "    <release>1.2</release>\n"
+        + "    <versions>\n"
+        + "      <version>1.1</version>\n"
+        + "      <version>1.1-SNAPSHOT</version>\n"
+        + "      <version>1.2</version>\n"
+        + "      <version>1.3-SNAPSHOT</version>\n"
+        + "    </versions>\n"
+        + "  </versioning>\n"
+        + "</metadata>\n";
+    // @formatter:on
+
+    @Test
+    public void dropSnapshotsAndRecalculateLatest()
+            throws Exception
+    {
+        // @formatter:off
+        final String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<metadata>\n"
+            + "  <groupId>org.foo</groupId>\n"
+            + "  <artifactId>bar</artifactId>\n"
+            + "  <versioning>\n"
+            + "    <latest>1.2</latest>\n"
+            + "    <release>1.2</release>\n"
+            + "    <versions>\n"
+            + "      <version>1.1</version>\n"
+            + "      <version>1.2</version>\n"
+            + "    </versions>\n"
+            + "  </versioning>\n"
+            + "</metadata>\n";
+        // @formatter:on
+
+        assertThat( filter( METADATA, false, true, 1 ), equalTo( expected ) );
+        assertThat( filter( METADATA, false, true, 7 ), equalTo( expected ) );
+        assertThat( filter( METADATA, false, true, 8192 ), equalTo( expected ) );
+    }
+
+    @Test
+    public void dropReleasesAndSuppressRelease()
+            throws Exception
+    {
+        // @formatter:off
+        final String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<metadata>\n"
+            + "  <groupId>org.foo</groupId>\n"
+            + "  <artifactId>bar</artifactId>\n"
+            + "  <versioning>\n"
+            + "    <latest>1.3-SNAPSHOT</latest>\n"
+            + "    <release></release>\n"
+            + "    <versions>\n"
+            + "      <version>1.1-SNAPSHOT</version>\n"
+            + "      <version>1.3-SNAPSHOT</version>\n"
+            + "    </versions>\n"
+            + "  </versioning>\n"
+            + "</metadata>\n";
+        // @formatter:on
+
+        assertThat( filter( METADATA, true, false, 3 ), equalTo( expected ) );
+    }
+
+    @Test
+    public void emptySnapshotFieldsWhenSnapshotsNotAllowed()
+            throws Exception
+    {
+        final String metadata = "<metadata><version>1.0-SNAPSHOT</version><versioning>"
+                + "<snapshot><timestamp>20200101.000000</timestamp><buildNumber>1</buildNumber></snapshot>"
+                + "<snapshotVersions><snapshotVersion><extension>jar</extension></snapshotVersion></snapshotVersions>"
+                + "</versioning></metadata>";
+
+        final String expected = "<metadata><version>1.0-SNAPSHOT</version><versioning>"
+                + "<snapshot></snapshot><snapshotVersions></snapshotVersions></versioning></metadata>";
+
+        assertThat( filter( metadata, false, true, 5 ), equalTo( expected ) );
+    }
+
+    private String filter( final String metadata, final boolean allowsSnapshots, final boolean allowsReleases,
+                           final int chunk )
+            throws Exception
+    {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] bytes = metadata.getBytes( UTF_8 );
+        try (OutputStream out = new MetadataFilteringOutputStream( result, allowsSnapshots, allowsReleases, null,
+                                                                   null ))
+        {
+            for ( int i = 0; i < bytes.length; i += chunk )
+            {
+                out.write( bytes, i, Math.min( chunk, bytes.length - i ) );
+            }
+        }
+        return new String( result.toByteArray(), UTF_8 );
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MavenMetadataMergerSortVersionsTest
+{
+    @Test
+    public void releaseIsHighestNonSnapshotEvenIfLatestIsSnapshot()
+    {
+        Metadata metadata = metadata( "1.1", "2.0-SNAPSHOT", "1.0" );
+        metadata.getVersioning().setRelease( "1.0" );
+
+        new MavenMetadataMerger().sortVersions( metadata );
+
+        Versioning versioning = metadata.getVersioning();
+        assertThat( versioning.getVersions(), equalTo( Arrays.asList( "1.0", "1.1", "2.0-SNAPSHOT" ) ) );
+        assertThat( versioning.getLatest(), equalTo( "2.0-SNAPSHOT" ) );
+        assertThat( versioning.getRelease(), equalTo( "1.1" ) );
+    }
+
+    @Test
+    public void noReleaseIfAllVersionsAreSnapshots()
+    {
+        Metadata metadata = metadata( "1.0-SNAPSHOT", "1.1-SNAPSHOT" );
+        metadata.getVersioning().setRelease( "0.9" );
+
+        new MavenMetadataMerger().sortVersions( metadata );
+
+        assertThat( metadata.getVersioning().getLatest(), equalTo( "1.1-SNAPSHOT" ) );
+        assertThat( metadata.getVersioning().getRelease(), nullValue() );
+    }
+
+    private static Metadata metadata( final String... versions )
+    {
+        Versioning versioning = new Versioning();
+        versioning.setVersions( Arrays.asList( versions ) );
+
+        Metadata metadata = new Metadata();
+        metadata.setVersioning( versioning );
+        return metadata;
+    }
+}
@@ -69,12 +69,7 @@ public class DecoratorUtils
 
             int nextQuote = raw.indexOf( "\"", quote + 1 );
 
-            String url = raw.substring( quote + 1, nextQuote );
-            String path = getPath( url );
-            if ( path != null )
-            {
-                url = UrlUtils.buildUrl( contextURL, path );
-            }
+            String url = maskTarballUrl( raw.substring( quote + 1, nextQuote ), contextURL );
             final String value = "\"" + url + "\"";
             sb.append( value );
             raw = raw.substring( nextQuote + 1 );
@@ -83,6 +78,20 @@ public class DecoratorUtils
         return sb.toString();
     }
 
+    /**
+     * Replace a single tarball url with its context url, or return it as is if it can't be parsed.
+     */
+    public static String maskTarballUrl( String url, String contextURL )
+            throws IOException
+    {
+        String path = getPath( url );
+        if ( path != null )
+        {
+            return UrlUtils.buildUrl( contextURL, path );
+        }
+        return url;
+    }
+
     private static String getPath( String url )
     {
         URL url1;
@@ -15,8 +15,6 @@
  */
 package org.commonjava.indy.pkg.npm.content;
 
-import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.Timer;
 import org.commonjava.indy.metrics.IndyMetricsManager;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.galley.KeyedLocation;
@@ -24,22 +22,17 @@ import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.io.AbstractTransferDecorator;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.Transfer;
-import org.commonjava.maven.galley.util.IdempotentCloseInputStream;
 import org.commonjava.maven.galley.util.UrlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.io.ByteArrayOutputStream;
-import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.commonjava.indy.content.ContentManager.ENTRY_POINT_BASE_URI;
 import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
-import static org.commonjava.indy.pkg.npm.content.DecoratorUtils.updatePackageJson;
 import static org.jsoup.helper.StringUtil.isBlank;
 
 @ApplicationScoped
@@ -88,105 +81,6 @@ public class NPMPackageMaskingTransferDecorator
         StoreKey key = keyedLocation.getKey();
         String contextURL = UrlUtils.buildUrl( baseURI, key.getType().name(), key.getName() );
         logger.debug( "Use contextURL: {}", contextURL );
-        return new PackageMaskingInputStream( stream, contextURL, metricsManager );
+        return new TarballMaskingInputStream( stream, contextURL, metricsManager );
     }
-
-    private static class PackageMaskingInputStream
-            extends IdempotentCloseInputStream
-    {
-        private static final String TIMER = "io.npm.metadata.in.filter";
-
-        final Logger logger = LoggerFactory.getLogger( this.getClass() );
-
-        int position;
-
-        private String contextURL;
-
-        private IndyMetricsManager metricsManager;
-
-        private byte[] bytes;
-
-        boolean masked;
-
-        private PackageMaskingInputStream( final InputStream stream, final String contextURL,
-                                           final IndyMetricsManager metricsManager )
-        {
-            super( stream );
-            this.contextURL = contextURL;
-            this.metricsManager = metricsManager;
-        }
-
-        @Override
-        public synchronized int read() throws IOException
-        {
-            if ( !masked )
-            {
-                mask( contextURL );
-            }
-            if ( position < bytes.length )
-            {
-                return bytes[position++];
-            }
-            return -1;
-        }
-
-        @Override
-        public synchronized int read( byte[] b, int off, int len ) throws IOException
-        {
-            if ( !masked )
-            {
-                mask( contextURL );
-            }
-            if ( position >= bytes.length )
-            {
-                return -1;
-            }
-            int read = 0;
-            for ( int i = 0; i < len; i++ )
-            {
-                if ( position < bytes.length )
-                {
-                    b[off + i] = bytes[position++];
-                    read++;
-                }
-                else
-                {
-                    break;
-                }
-            }
-            return read;
-        }
-
-        private void mask( String contextURL ) throws IOException
-        {
-            Timer.Context timer = metricsManager == null ? null : metricsManager.startTimer( TIMER );
-            try
-            {
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                int read;
-                while ( ( read = super.read() ) >= 0 )
-                {
-                    bos.write( read );
-                }
-                byte[] rawBytes = bos.toByteArray();
-                String raw = new String( rawBytes, UTF_8 );
-
-                logger.trace( "Mask for raw:\n{}", raw );
-
-                String s = updatePackageJson( raw, contextURL );
-
-                logger.trace( "Masked:\n{}", s );
-                bytes = s.getBytes();
-                masked = true;
-            }
-            finally
-            {
-                if ( timer != null )
-                {
-                    metricsManager.stopTimer( TIMER );
-                }
-            }
-        }
-    }
-
 }
@@ -0,0 +1,438 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.commonjava.indy.metrics.IndyMetricsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.commonjava.indy.pkg.npm.content.DecoratorUtils.maskTarballUrl;
+import static org.commonjava.indy.pkg.npm.content.DecoratorUtils.updatePackageJson;
+
+/**
+ * Streaming version of {@link DecoratorUtils#updatePackageJson(String, String)}. The package.json is tokenized by a
+ * Jackson parser as it is read, and the raw bytes are copied through untouched except for the values of
+ * <code>dist.tarball</code> fields, so the output keeps the original formatting. Only the bytes the parser has read
+ * ahead (plus the current token) are held in memory, instead of the whole document.
+ * <p>
+ * If the content isn't valid JSON, or the parser can't report byte offsets (non UTF-8 input), the rest of the content
+ * is buffered and masked by {@link DecoratorUtils#updatePackageJson(String, String)} as before.
+ */
+public class TarballMaskingInputStream
+        extends InputStream
+{
+    private static final String TIMER = "io.npm.metadata.in.filter";
+
+    private static final String DIST = "dist";
+
+    private static final String TARBALL = "tarball";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final JsonFactory JSON_FACTORY =
+            new JsonFactory().disable( JsonParser.Feature.AUTO_CLOSE_SOURCE );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final InputStream source;
+
+    private final String contextURL;
+
+    private final IndyMetricsManager metricsManager;
+
+    private final RecordingInputStream recording;
+
+    // raw bytes read by the parser and not yet copied to the output; window.start is at offset windowOffset
+    private final ByteBuffer window = new ByteBuffer();
+
+    private final ByteBuffer pending = new ByteBuffer();
+
+    private long windowOffset;
+
+    private JsonParser parser;
+
+    private boolean finished;
+
+    private boolean closed;
+
+    private long maskingNanos;
+
+    public TarballMaskingInputStream( final InputStream source, final String contextURL,
+                                      final IndyMetricsManager metricsManager )
+    {
+        this.source = source;
+        this.contextURL = contextURL;
+        this.metricsManager = metricsManager;
+        this.recording = new RecordingInputStream( source );
+    }
+
+    @Override
+    public int read()
+            throws IOException
+    {
+        if ( !ensurePending() )
+        {
+            return -1;
+        }
+
+        return pending.take() & 0xff;
+    }
+
+    @Override
+    public int read( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        if ( len == 0 )
+        {
+            return 0;
+        }
+
+        if ( !ensurePending() )
+        {
+            return -1;
+        }
+
+        return pending.take( b, off, len );
+    }
+
+    @Override
+    public int available()
+    {
+        return pending.size();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+
+        closed = true;
+        try
+        {
+            if ( parser != null )
+            {
+                parser.close();
+            }
+        }
+        finally
+        {
+            source.close();
+            if ( metricsManager != null )
+            {
+                metricsManager.getMetricRegistry().timer( TIMER ).update( maskingNanos, NANOSECONDS );
+            }
+        }
+    }
+
+    private boolean ensurePending()
+            throws IOException
+    {
+        if ( pending.size() > 0 )
+        {
+            return true;
+        }
+
+        long start = System.nanoTime();
+        try
+        {
+            while ( pending.size() == 0 && !finished )
+            {
+                advance();
+            }
+        }
+        finally
+        {
+            maskingNanos += System.nanoTime() - start;
+        }
+
+        return pending.size() > 0;
+    }
+
+    /**
+     * Move the parser one token forward and copy whatever raw bytes became final to the output.
+     */
+    private void advance()
+            throws IOException
+    {
+        JsonToken token;
+        long offset;
+        String tarball = null;
+        try
+        {
+            if ( parser == null )
+            {
+                parser = JSON_FACTORY.createParser( recording );
+            }
+
+            token = parser.nextToken();
+            if ( token == JsonToken.VALUE_STRING && isDistTarball() )
+            {
+                tarball = parser.getText();
+            }
+            offset = parser.getCurrentLocation().getByteOffset();
+        }
+        catch ( JsonProcessingException e )
+        {
+            fallback( e.getOriginalMessage() );
+            return;
+        }
+
+        if ( token == null )
+        {
+            emit( window.size() );
+            finished = true;
+        }
+        else if ( offset < 0 )
+        {
+            fallback( "no byte offsets available" );
+        }
+        else if ( tarball != null )
+        {
+            // offset is right after the closing quote now the whole string has been read
+            int end = (int) ( offset - windowOffset );
+            int quote = openingQuote( end - 1 );
+
+            emit( quote );
+            byte[] masked = JsonStringEncoder.getInstance().quoteAsUTF8( maskTarballUrl( tarball, contextURL ) );
+            pending.append( '"' );
+            pending.append( masked, 0, masked.length );
+            pending.append( '"' );
+            discard( end - quote );
+        }
+        else if ( !isDistTarball() )
+        {
+            // the parser may have peeked into the next value already, but that can't be a tarball we rewrite
+            emit( (int) ( offset - windowOffset ) );
+        }
+        // otherwise this is the dist.tarball field name: hold everything back until its value is read
+    }
+
+    private boolean isDistTarball()
+    {
+        JsonStreamContext ctx = parser.getParsingContext();
+        JsonStreamContext parent = ctx.getParent();
+        return ctx.inObject() && TARBALL.equals( ctx.getCurrentName() ) && parent != null && DIST.equals(
+                parent.getCurrentName() );
+    }
+
+    /**
+     * Find the opening quote of the string whose closing quote is at the given window index. Any quote inside the
+     * string is escaped, so it's the first quote going backward that isn't preceded by an odd number of backslashes.
+     */
+    private int openingQuote( final int closing )
+    {
+        for ( int i = closing - 1; i >= 0; i-- )
+        {
+            if ( window.get( i ) == '"' )
+            {
+                int backslashes = 0;
+                while ( i - backslashes > 0 && window.get( i - backslashes - 1 ) == '\\' )
+                {
+                    backslashes++;
+                }
+
+                if ( backslashes % 2 == 0 )
+                {
+                    return i;
+                }
+            }
+        }
+
+        throw new IllegalStateException( "Cannot find the start of the tarball value" );
+    }
+
+    private void fallback( final String reason )
+            throws IOException
+    {
+        logger.debug( "Cannot stream package.json ({}), masking the rest of it in memory", reason );
+
+        // drain the source through the recording stream, so everything not yet copied ends up in the window
+        byte[] buf = new byte[BUFFER_SIZE];
+        while ( recording.read( buf, 0, buf.length ) >= 0 )
+        {
+        }
+
+        String rest = window.toString( UTF_8 );
+        byte[] masked = updatePackageJson( rest, contextURL ).getBytes( UTF_8 );
+        pending.append( masked, 0, masked.length );
+        discard( window.size() );
+        finished = true;
+    }
+
+    private void emit( final int length )
+    {
+        if ( length > 0 )
+        {
+            pending.append( window, length );
+            discard( length );
+        }
+    }
+
+    private void discard( final int length )
+    {
+        window.skip( length );
+        windowOffset += length;
+    }
+
+    /**
+     * Keeps a copy of everything the parser reads, so the raw bytes can be copied through.
+     */
+    private final class RecordingInputStream
+            extends FilterInputStream
+    {
+        private RecordingInputStream( final InputStream in )
+        {
+            super( in );
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            int b = super.read();
+            if ( b >= 0 )
+            {
+                window.append( (byte) b );
+            }
+            return b;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len )
+                throws IOException
+        {
+            int read = super.read( b, off, len );
+            if ( read > 0 )
+            {
+                window.append( b, off, read );
+            }
+            return read;
+        }
+
+        @Override
+        public void close()
+        {
+            // closed along with the masking stream
+        }
+    }
+
+    /**
+     * Growable byte queue: append at the end, take / skip from the front.
+     */
+    private static final class ByteBuffer
+    {
+        private byte[] buf = new byte[BUFFER_SIZE];
+
+        private int start;
+
+        private int end;
+
+        int size()
+        {
+            return end - start;
+        }
+
+        byte get( final int index )
+        {
+            return buf[start + index];
+        }
+
+        void append( final int b )
+        {
+            ensureCapacity( 1 );
+            buf[end++] = (byte) b;
+        }
+
+        void append( final byte[] b, final int off, final int len )
+        {
+            ensureCapacity( len );
+            System.arraycopy( b, off, buf, end, len );
+            end += len;
+        }
+
+        void append( final ByteBuffer other, final int len )
+        {
+            append( other.buf, other.start, len );
+        }
+
+        byte take()
+        {
+            byte b = buf[start];
+            skip( 1 );
+            return b;
+        }
+
+        int take( final byte[] b, final int off, final int len )
+        {
+            int n = Math.min( len, size() );
+            System.arraycopy( buf, start, b, off, n );
+            skip( n );
+            return n;
+        }
+
+        void skip( final int len )
+        {
+            start += len;
+            if ( start == end )
+            {
+                start = end = 0;
+            }
+        }
+
+        String toString( final Charset charset )
+        {
+            return new String( buf, start, size(), charset );
+        }
+
+        private void ensureCapacity( final int len )
+        {
+            if ( end + len <= buf.length )
+            {
+                return;
+            }
+
+            int size = size();
+            if ( size + len <= buf.length / 2 )
+            {
+                System.arraycopy( buf, start, buf, 0, size );
+            }
+            else
+            {
+                buf = Arrays.copyOfRange( buf, start, start + Math.max( buf.length * 2, size + len ) );
+            }
+            start = 0;
+            end = size;
+        }
+    }
+}
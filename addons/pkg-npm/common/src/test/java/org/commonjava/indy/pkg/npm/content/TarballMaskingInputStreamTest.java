@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.commonjava.indy.pkg.npm.content.DecoratorUtils.updatePackageJson;
+import static org.junit.Assert.assertEquals;
+
+public class TarballMaskingInputStreamTest
+{
+    private static final String CONTEXT_URL = "http://localhost/api/content/npm/group/test";
+
+    @Test
+    public void sameResultAsInMemoryMasking() throws Exception
+    {
+        for ( String resource : new String[] { "metadata/package-1.json", "metadata/package-tar-fs.json" } )
+        {
+            byte[] raw = IOUtils.toByteArray( getResourceAsStream( resource ) );
+            String expected = updatePackageJson( new String( raw, UTF_8 ), CONTEXT_URL );
+
+            assertEquals( resource, expected, readByteByByte( raw ) );
+            assertEquals( resource, expected, IOUtils.toString(
+                    new TarballMaskingInputStream( new ByteArrayInputStream( raw ), CONTEXT_URL, null ), UTF_8 ) );
+        }
+    }
+
+    @Test
+    public void onlyRewriteDistTarball() throws Exception
+    {
+        String raw = "{\"tarball\": \"https://registry.npmjs.org/a/-/a-1.0.tgz\",\n"
+                + " \"readme\": \"see \\\"tarball\\\": \\\"https://registry.npmjs.org/a/-/a-1.0.tgz\\\"\",\n"
+                + " \"dist\" : { \"tarball\" :\t\"https://registry.npmjs.org/a/-/a-1.0.tgz\" } }";
+
+        String expected = "{\"tarball\": \"https://registry.npmjs.org/a/-/a-1.0.tgz\",\n"
+                + " \"readme\": \"see \\\"tarball\\\": \\\"https://registry.npmjs.org/a/-/a-1.0.tgz\\\"\",\n"
+                + " \"dist\" : { \"tarball\" :\t\"" + CONTEXT_URL + "/a/-/a-1.0.tgz\" } }";
+
+        assertEquals( expected, readByteByByte( raw.getBytes( UTF_8 ) ) );
+    }
+
+    @Test
+    public void fallBackToInMemoryMaskingForInvalidJson() throws Exception
+    {
+        String raw = "\"versions\": {\n  \"dist\": {\n    \"tarball\": \"http://registry.npmjs.org/jquery/-/jquery-1.5.1.tgz\"\n  }\n}";
+
+        assertEquals( updatePackageJson( raw, CONTEXT_URL ), readByteByByte( raw.getBytes( UTF_8 ) ) );
+    }
+
+    private String readByteByByte( final byte[] raw ) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new TarballMaskingInputStream( new ByteArrayInputStream( raw ), CONTEXT_URL, null ))
+        {
+            int b;
+            while ( ( b = in.read() ) >= 0 )
+            {
+                out.write( b );
+            }
+        }
+        return new String( out.toByteArray(), UTF_8 );
+    }
+
+    private InputStream getResourceAsStream( String path )
+    {
+        return getClass().getClassLoader().getResourceAsStream( path );
+    }
+}
@@ -39,12 +39,23 @@ public class PromoteConfig
 
     private static final String AUTOLOCK_HOSTED_REPOS = "autolock.hosted.repos";
 
+    private static final String PATHS_CONCURRENCY_PARAM = "paths.concurrency";
+
+    private static final String PATHS_ZERO_COPY_PARAM = "paths.zero.copy.enabled";
+
     public static final long DEFAULT_LOCK_TIMEOUT_SECONDS = 30;
 
     public static final boolean DEFAULT_AUTOLOCK = true;
 
     public static final boolean DEFAULT_ENABLED = true;
 
+    /**
+     * 0 means use every core thread of the promotion-transfers pool.
+     */
+    public static final int DEFAULT_PATHS_CONCURRENCY = 0;
+
+    public static final boolean DEFAULT_PATHS_ZERO_COPY = true;
+
     private String basedir;
 
     private Boolean enabled;
@@ -53,6 +64,10 @@ public class PromoteConfig
 
     private Long lockTimeoutSeconds;
 
+    private Integer pathsConcurrency;
+
+    private Boolean pathsZeroCopyEnabled;
+
     public PromoteConfig()
     {
     }
@@ -117,6 +132,28 @@ public class PromoteConfig
         this.lockTimeoutSeconds = lockTimeoutSeconds;
     }
 
+    public Integer getPathsConcurrency()
+    {
+        return pathsConcurrency == null ? DEFAULT_PATHS_CONCURRENCY : pathsConcurrency;
+    }
+
+    @ConfigName( PromoteConfig.PATHS_CONCURRENCY_PARAM )
+    public void setPathsConcurrency( Integer pathsConcurrency )
+    {
+        this.pathsConcurrency = pathsConcurrency;
+    }
+
+    public boolean isPathsZeroCopyEnabled()
+    {
+        return pathsZeroCopyEnabled == null ? DEFAULT_PATHS_ZERO_COPY : pathsZeroCopyEnabled;
+    }
+
+    @ConfigName( PromoteConfig.PATHS_ZERO_COPY_PARAM )
+    public void setPathsZeroCopyEnabled( Boolean pathsZeroCopyEnabled )
+    {
+        this.pathsZeroCopyEnabled = pathsZeroCopyEnabled;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
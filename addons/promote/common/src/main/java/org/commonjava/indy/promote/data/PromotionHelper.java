@@ -134,6 +134,11 @@ public class PromotionHelper
         pathGauges.update( total, result );
     }
 
+    public void updatePathPromoteThroughput( long bytesPerSecond, long filesPerSecond )
+    {
+        pathGauges.updateThroughput( bytesPerSecond, filesPerSecond );
+    }
+
     public List<Transfer> getTransfersForPaths( final StoreKey source, final Set<String> paths )
                     throws IndyWorkflowException
     {
@@ -63,16 +63,18 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import static java.util.Collections.emptySet;
@@ -87,8 +89,6 @@ import static org.commonjava.indy.model.core.StoreType.hosted;
 import static org.commonjava.indy.promote.data.PromotionHelper.throwProperException;
 import static org.commonjava.indy.promote.data.PromotionHelper.timeInMillSeconds;
 import static org.commonjava.indy.promote.data.PromotionHelper.timeInSeconds;
-import static org.commonjava.indy.promote.util.Batcher.batch;
-import static org.commonjava.indy.promote.util.Batcher.getParalleledBatchSize;
 import static org.commonjava.maven.galley.model.TransferOperation.UPLOAD;
 
 /**
@@ -163,6 +163,9 @@ public class PromotionManager
     @Inject
     private PromotionHelper promotionHelper;
 
+    @Inject
+    private ZeroCopyHelper zeroCopyHelper;
+
     protected PromotionManager()
     {
     }
@@ -760,6 +763,11 @@ public class PromotionManager
 
         final ArtifactStore targetStore = checkResult.targetStore;
 
+        // sharing the source file with the target is only safe if nothing can overwrite it in place
+        final ArtifactStore sourceStore = checkResult.sourceStore;
+        final boolean linkable = sourceStore != null && sourceStore.getType() == hosted && ( request.isPurgeSource()
+                        || storeManager.isReadonly( sourceStore ) );
+
         StoreKey targetKey = targetStore.getKey();
         logger.info( "Run promotion from: {} to: {}, paths: {}", request.getSource(), targetKey, pending );
         Set<Group> affectedGroups;
@@ -778,18 +786,27 @@ public class PromotionManager
         DrainingExecutorCompletionService<Set<PathTransferResult>> svc =
                         new DrainingExecutorCompletionService<>( transferService );
 
-        int corePoolSize = transferService.getCorePoolSize();
         int size = contents.size();
-        int batchSize = getParalleledBatchSize( size, corePoolSize );
-        logger.info( "Execute parallel on collection, size: {}, batch: {}", size, batchSize );
-        Collection<Collection<Transfer>> batches = batch( contents, batchSize );
+        int workers = getPathPromotionWorkers( size );
+        logger.info( "Execute parallel on collection, size: {}, workers: {}", size, workers );
+
+        // Workers share one queue ordered largest first, so the big files start right away and the small ones fill in
+        // around them instead of a few huge files holding up a single fixed batch.
+        final Queue<SizedTransfer> queue = largestFirst( contents );
+        final LongAdder promotedBytes = new LongAdder();
+        final long transferBegin = System.currentTimeMillis();
 
         final List<String> errors = new ArrayList<>();
 
         try
         {
-            detectOverloadVoid( () -> batches.forEach(
-                            batch -> svc.submit( newPathPromotionsJob( batch, targetStore, request, affectedGroups ) ) ) );
+            detectOverloadVoid( () -> {
+                for ( int i = 0; i < workers; i++ )
+                {
+                    svc.submit( newPathPromotionsWorker( queue, targetStore, request, affectedGroups, linkable,
+                                                         promotedBytes ) );
+                }
+            } );
         }
         catch ( IndyWorkflowException e )
         {
@@ -831,6 +848,8 @@ public class PromotionManager
             }
         } );
 
+        logThroughput( request, completed.size(), promotedBytes.sum(), transferBegin );
+
         PathsPromoteResult result;
         if ( !errors.isEmpty() )
         {
@@ -863,19 +882,71 @@ public class PromotionManager
         return result;
     }
 
-    private Callable<Set<PathTransferResult>> newPathPromotionsJob( final Collection<Transfer> transfers,
-                                                                    final ArtifactStore tgt,
-                                                                    final PathsPromoteRequest request,
-                                                                    final Set<Group> affectedGroups )
+    /**
+     * Number of workers a path promotion gets: the configured budget, capped by the core size of the transfer pool and
+     * by the number of paths.
+     */
+    private int getPathPromotionWorkers( final int size )
+    {
+        int workers = transferService.getCorePoolSize();
+        int budget = config.getPathsConcurrency();
+        if ( budget > 0 && ( workers <= 0 || budget < workers ) )
+        {
+            workers = budget;
+        }
+
+        return Math.max( 1, Math.min( workers, size ) );
+    }
+
+    static Queue<SizedTransfer> largestFirst( final List<Transfer> contents )
+    {
+        final List<SizedTransfer> sized = new ArrayList<>( contents.size() );
+        contents.forEach( transfer -> sized.add( new SizedTransfer( transfer ) ) );
+        sized.sort( ( t1, t2 ) -> Long.compare( t2.size, t1.size ) );
+        return new ConcurrentLinkedQueue<>( sized );
+    }
+
+    /**
+     * A worker promoting paths from the shared queue until it is empty. A path that fails with an exception is
+     * recorded as an error result, like any other failed path, so the paths this worker already promoted are still
+     * reported and can be rolled back.
+     */
+    private Callable<Set<PathTransferResult>> newPathPromotionsWorker( final Queue<SizedTransfer> queue,
+                                                                       final ArtifactStore tgt,
+                                                                       final PathsPromoteRequest request,
+                                                                       final Set<Group> affectedGroups,
+                                                                       final boolean linkable,
+                                                                       final LongAdder promotedBytes )
     {
         return () -> {
             Set<String> pathsForMDC = new HashSet<>();
             Set<PathTransferResult> results = new HashSet<>();
-            for ( Transfer transfer : transfers )
+            SizedTransfer next;
+            while ( ( next = queue.poll() ) != null )
             {
-                pathsForMDC.add( transfer.getPath() );
+                if ( next.transfer != null )
+                {
+                    pathsForMDC.add( next.transfer.getPath() );
+                }
+
+                PathTransferResult ret;
+                try
+                {
+                    ret = doPathTransfer( next.transfer, tgt, request, affectedGroups, linkable );
+                }
+                catch ( IndyWorkflowException | RuntimeException e )
+                {
+                    String path = next.transfer == null ? "" : next.transfer.getPath();
+                    String msg = String.format( "Failed to promote: %s. Error: %s", path, e.getMessage() );
+                    logger.error( msg, e );
+                    ret = new PathTransferResult( path );
+                    ret.error = msg;
+                }
 
-                PathTransferResult ret = doPathTransfer( transfer, tgt, request, affectedGroups );
+                if ( ret.error == null && !ret.skipped && next.size > 0 )
+                {
+                    promotedBytes.add( next.size );
+                }
                 results.add( ret );
             }
             RequestContextHelper.setContext( PROMOTION_CONTENT_PATH, pathsForMDC.toString() );
@@ -883,8 +954,34 @@ public class PromotionManager
         };
     }
 
+    private boolean zeroCopy( final Transfer transfer, final Transfer target, final ArtifactStore tgt,
+                              final boolean linkable, final EventMetadata eventMetadata )
+            throws IOException, IndyWorkflowException
+    {
+        if ( zeroCopyHelper == null || !config.isPathsZeroCopyEnabled() )
+        {
+            return false;
+        }
+
+        return zeroCopyHelper.copy( transfer, target, tgt, linkable, eventMetadata );
+    }
+
+    private void logThroughput( final PathsPromoteRequest request, final int files, final long bytes,
+                                final long transferBegin )
+    {
+        long elapsed = Math.max( 1, System.currentTimeMillis() - transferBegin );
+        long bytesPerSecond = bytes * 1000 / elapsed;
+        long filesPerSecond = files * 1000L / elapsed;
+
+        logger.info( "Promotion throughput, promotionId: {}, files: {}, bytes: {}, timeInMillis: {}, bytesPerSecond: {}, "
+                             + "filesPerSecond: {}", request.getPromotionId(), files, bytes, elapsed, bytesPerSecond,
+                     filesPerSecond );
+        promotionHelper.updatePathPromoteThroughput( bytesPerSecond, filesPerSecond );
+    }
+
     private PathTransferResult doPathTransfer( Transfer transfer, final ArtifactStore tgt,
-                                               final PathsPromoteRequest request, final Set<Group> affectedGroups )
+                                               final PathsPromoteRequest request, final Set<Group> affectedGroups,
+                                               final boolean linkable )
                     throws IndyWorkflowException
     {
         logger.debug( "Do path transfer, transfer: {}, target: {}", transfer, tgt );
@@ -985,9 +1082,15 @@ public class PromotionManager
         eventMetadata.set( AFFECTED_GROUPS, new ValuePipe<Set>( affectedGroups ) );
         eventMetadata.set( TARGET_STORE, tgt );
 
-        try (InputStream stream = transfer.openInputStream( true ))
+        try
         {
-            contentManager.store( tgt, path, stream, UPLOAD, eventMetadata );
+            if ( !zeroCopy( transfer, target, tgt, linkable, eventMetadata ) )
+            {
+                try (InputStream stream = transfer.openInputStream( true ))
+                {
+                    contentManager.store( tgt, path, stream, UPLOAD, eventMetadata );
+                }
+            }
         }
         catch ( final IOException e )
         {
@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.promote.data;
+
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.content.ContentDigester;
+import org.commonjava.indy.content.ContentManager;
+import org.commonjava.indy.core.change.event.IndyFileEventManager;
+import org.commonjava.indy.core.content.ContentGeneratorManager;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.spi.pkg.ContentAdvisor;
+import org.commonjava.indy.spi.pkg.ContentQuality;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.cache.pathmapped.PathMappedCacheProvider;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.FileStorageEvent;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.spi.cache.CacheProvider;
+import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.commonjava.indy.content.ContentManager.STORED_DIRECTLY;
+import static org.commonjava.maven.galley.model.TransferOperation.UPLOAD;
+
+/**
+ * Promotes a file without streaming its content through Indy, when source and target share the same storage.
+ * <ul>
+ *     <li>With path-mapped storage, the target gets a second path reference to the physical file of the source.</li>
+ *     <li>With file-based storage, the target is a hard link to the source file if the source can't change anymore,
+ *     otherwise a {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} copy.</li>
+ * </ul>
+ * Since the content is identical, the cached checksums of the source are reused for the target. Afterwards the same
+ * content generator callbacks and NFC clearing (target and affected groups) as a regular store run, and the storage
+ * event is fired with {@link ContentManager#STORED_DIRECTLY}, so the store decorators (e.g. content index) can catch
+ * up.
+ */
+@ApplicationScoped
+public class ZeroCopyHelper
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private CacheProvider cacheProvider;
+
+    @Inject
+    private ContentDigester contentDigester;
+
+    @Inject
+    private ContentGeneratorManager contentGeneratorManager;
+
+    @Inject
+    private IndyFileEventManager fileEventManager;
+
+    @Inject
+    private NotFoundCache nfc;
+
+    @Inject
+    private StoreDataManager storeManager;
+
+    @Inject
+    private Instance<ContentAdvisor> contentAdvisors;
+
+    protected ZeroCopyHelper()
+    {
+    }
+
+    public ZeroCopyHelper( final CacheProvider cacheProvider, final ContentDigester contentDigester,
+                           final ContentGeneratorManager contentGeneratorManager,
+                           final IndyFileEventManager fileEventManager, final NotFoundCache nfc,
+                           final StoreDataManager storeManager, final Instance<ContentAdvisor> contentAdvisors )
+    {
+        this.cacheProvider = cacheProvider;
+        this.contentDigester = contentDigester;
+        this.contentGeneratorManager = contentGeneratorManager;
+        this.fileEventManager = fileEventManager;
+        this.nfc = nfc;
+        this.storeManager = storeManager;
+        this.contentAdvisors = contentAdvisors;
+    }
+
+    /**
+     * @param linkable whether the source content can't be overwritten anymore, so sharing its inode is safe
+     * @return false if the fast path doesn't apply. The caller should store the content the regular way then.
+     */
+    public boolean copy( final Transfer source, final Transfer target, final ArtifactStore tgt, final boolean linkable,
+                         final EventMetadata eventMetadata )
+            throws IOException, IndyWorkflowException
+    {
+        if ( target == null || !( tgt instanceof HostedRepository ) || !isAllowed( (HostedRepository) tgt,
+                                                                                  target.getPath() ) )
+        {
+            return false;
+        }
+
+        if ( cacheProvider instanceof PathMappedCacheProvider )
+        {
+            cacheProvider.copy( source.getResource(), target.getResource() );
+        }
+        else if ( !copyFile( source.getDetachedFile(), target.getDetachedFile(), linkable ) )
+        {
+            return false;
+        }
+
+        TransferMetadata metadata = contentDigester.getContentMetadata( source );
+        if ( metadata != null )
+        {
+            contentDigester.addMetadata( target, metadata );
+        }
+        else
+        {
+            contentDigester.removeMetadata( target );
+        }
+
+        contentGeneratorManager.handleContentStorage( tgt, target.getPath(), target, eventMetadata );
+        clearNFCEntries( tgt, target, eventMetadata );
+
+        eventMetadata.set( STORED_DIRECTLY, true );
+        fileEventManager.fire( new FileStorageEvent( UPLOAD, target, eventMetadata ) );
+        return true;
+    }
+
+    /**
+     * Same as a regular store: the target entry right away, the affected groups in the background.
+     */
+    private void clearNFCEntries( final ArtifactStore tgt, final Transfer target, final EventMetadata eventMetadata )
+    {
+        nfc.clearMissing( target.getResource() );
+
+        final String path = target.getPath();
+        final String name = String.format( "ZeroCopyNFCClean-store(%s)-path(%s)", tgt.getKey(), path );
+        final String context =
+                String.format( "Class: %s, method: %s, store: %s, path: %s", getClass().getName(), "copy",
+                               tgt.getKey(), path );
+        storeManager.asyncGroupAffectedBy( new StoreDataManager.ContextualTask( name, context, () -> {
+            try
+            {
+                storeManager.affectedBy( Collections.singletonList( tgt.getKey() ), eventMetadata )
+                            .forEach( g -> nfc.clearMissing(
+                                    new ConcreteResource( LocationUtils.toLocation( g ), path ) ) );
+            }
+            catch ( IndyDataException e )
+            {
+                logger.error( String.format( "Failed to clear NFC entries affected by promotion of: %s to: %s. "
+                                                     + "Reason: %s", path, tgt.getKey(), e.getMessage() ), e );
+            }
+        } ) );
+    }
+
+    private boolean copyFile( final File from, final File to, final boolean linkable )
+            throws IOException
+    {
+        if ( from == null || to == null || !from.isFile() )
+        {
+            return false;
+        }
+
+        final Path source = from.toPath();
+        final Path target = to.toPath();
+        Files.createDirectories( target.getParent() );
+
+        if ( linkable )
+        {
+            try
+            {
+                Files.createLink( target, source );
+                return true;
+            }
+            catch ( FileAlreadyExistsException e )
+            {
+                throw e;
+            }
+            catch ( UnsupportedOperationException | FileSystemException e )
+            {
+                logger.debug( "Cannot link: {} to: {}, copying it instead. Reason: {}", target, source,
+                              e.getMessage() );
+            }
+        }
+
+        final Path tmp = Files.createTempFile( target.getParent(), ".promote-", ".tmp" );
+        try
+        {
+            try (FileChannel in = FileChannel.open( source, READ ); FileChannel out = FileChannel.open( tmp, WRITE ))
+            {
+                final long size = in.size();
+                long position = 0;
+                while ( position < size )
+                {
+                    position += in.transferTo( position, size - position, out );
+                }
+            }
+
+            // no REPLACE_EXISTING: a concurrent store of the same path wins, as it would for a regular upload
+            Files.move( tmp, target );
+        }
+        finally
+        {
+            Files.deleteIfExists( tmp );
+        }
+
+        return true;
+    }
+
+    private boolean isAllowed( final HostedRepository deploy, final String path )
+    {
+        if ( deploy.isAllowReleases() && deploy.isAllowSnapshots() )
+        {
+            return true;
+        }
+
+        ContentQuality quality = null;
+        if ( contentAdvisors != null )
+        {
+            for ( ContentAdvisor advisor : contentAdvisors )
+            {
+                if ( advisor != null )
+                {
+                    quality = advisor.getContentQuality( path );
+                    break;
+                }
+            }
+        }
+
+        // let the regular store report whatever the deploy point doesn't accept
+        if ( quality == ContentQuality.SNAPSHOT )
+        {
+            return deploy.isAllowSnapshots();
+        }
+        return quality == ContentQuality.METADATA || deploy.isAllowReleases();
+    }
+}
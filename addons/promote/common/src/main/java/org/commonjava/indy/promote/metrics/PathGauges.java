@@ -25,6 +25,7 @@ import javax.inject.Inject;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @ApplicationScoped
 public class PathGauges
@@ -38,6 +39,10 @@ public class PathGauges
 
     private AtomicInteger skipped = new AtomicInteger();
 
+    private AtomicLong bytesPerSecond = new AtomicLong();
+
+    private AtomicLong filesPerSecond = new AtomicLong();
+
     public PathGauges()
     {
     }
@@ -54,6 +59,8 @@ public class PathGauges
         gauges.put( "total", () -> getTotal() );
         gauges.put( "completed", () -> getCompleted() );
         gauges.put( "skipped", () -> getSkipped() );
+        gauges.put( "bytes-per-second", () -> (int) Math.min( Integer.MAX_VALUE, getBytesPerSecond() ) );
+        gauges.put( "files-per-second", () -> (int) Math.min( Integer.MAX_VALUE, getFilesPerSecond() ) );
         metricsManager.addGauges( this.getClass(), "last", gauges );
     }
 
@@ -72,6 +79,16 @@ public class PathGauges
         return skipped.get();
     }
 
+    public long getBytesPerSecond()
+    {
+        return bytesPerSecond.get();
+    }
+
+    public long getFilesPerSecond()
+    {
+        return filesPerSecond.get();
+    }
+
     public void setTotal( int total )
     {
         this.total.set( total );
@@ -93,4 +110,10 @@ public class PathGauges
         setCompleted( result.getCompletedPaths().size() );
         setSkipped( result.getSkippedPaths().size() );
     }
+
+    public void updateThroughput( long bytesPerSecond, long filesPerSecond )
+    {
+        this.bytesPerSecond.set( bytesPerSecond );
+        this.filesPerSecond.set( filesPerSecond );
+    }
 }
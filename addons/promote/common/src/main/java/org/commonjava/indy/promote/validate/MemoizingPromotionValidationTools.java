@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.promote.validate;
+
+import org.commonjava.atlas.maven.ident.ref.ArtifactRef;
+import org.commonjava.atlas.maven.ident.ref.ProjectVersionRef;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.maven.galley.maven.GalleyMavenException;
+import org.commonjava.maven.galley.maven.model.view.MavenPomView;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.Transfer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+
+/**
+ * {@link PromotionValidationTools} for a single validation request. Its rules run in parallel and mostly look at the
+ * same files, so the expensive lookups are memoized for the lifetime of the request. Concurrent callers asking for the
+ * same thing wait for the first one instead of loading it again. Failures aren't kept, the next caller retries.
+ * <p>
+ * Not a CDI bean: it is only created through {@link PromotionValidationTools#forRequest()}.
+ */
+class MemoizingPromotionValidationTools
+        extends PromotionValidationTools
+{
+    private final Map<List<Object>, FutureTask<Object>> memo = new ConcurrentHashMap<>();
+
+    MemoizingPromotionValidationTools( final PromotionValidationTools tools )
+    {
+        super( tools );
+    }
+
+    @Override
+    public PromotionValidationTools forRequest()
+    {
+        return this;
+    }
+
+    @Override
+    public ArtifactRef getArtifact( final String path )
+    {
+        return memoize( () -> super.getArtifact( path ), "artifact", path );
+    }
+
+    @Override
+    public MavenPomView read( final ProjectVersionRef ref, final Transfer pom, final List<? extends Location> locations,
+                              final String... activeProfileLocations )
+            throws GalleyMavenException
+    {
+        return memoize( () -> super.read( ref, pom, locations, activeProfileLocations ), "read", ref, resourceOf( pom ),
+                        urisOf( locations ), listOf( activeProfileLocations ) );
+    }
+
+    @Override
+    public MavenPomView readLocalPom( final ProjectVersionRef ref, final Transfer transfer,
+                                      final String... activeProfileIds )
+            throws GalleyMavenException
+    {
+        return memoize( () -> super.readLocalPom( ref, transfer, activeProfileIds ), "readLocalPom", ref,
+                        resourceOf( transfer ), listOf( activeProfileIds ) );
+    }
+
+    @Override
+    public Transfer getTransfer( final StoreKey storeKey, final String path )
+            throws IndyWorkflowException
+    {
+        return memoize( () -> super.getTransfer( storeKey, path ), "transfer", storeKey, path );
+    }
+
+    @Override
+    public Transfer getTransfer( final ArtifactStore store, final String path )
+            throws IndyWorkflowException
+    {
+        return memoize( () -> super.getTransfer( store, path ), "transfer", store.getKey(), path );
+    }
+
+    @Override
+    public Transfer retrieve( final ArtifactStore store, final String path )
+            throws IndyWorkflowException
+    {
+        return memoize( () -> super.retrieve( store, path ), "retrieve", store.getKey(), path );
+    }
+
+    @Override
+    public boolean exists( final StoreKey storeKey, final String path )
+            throws IndyWorkflowException, IndyDataException
+    {
+        ArtifactStore store = getArtifactStore( storeKey );
+        if ( store == null )
+        {
+            throw new IndyDataException( "Artifact store with key " + storeKey + " was not found." );
+        }
+        return exists( store, path );
+    }
+
+    @Override
+    public boolean exists( final ArtifactStore store, final String path )
+            throws IndyWorkflowException
+    {
+        return memoize( () -> super.exists( store, path ), "exists", store.getKey(), path );
+    }
+
+    @Override
+    public ArtifactStore getArtifactStore( final StoreKey key )
+            throws IndyDataException
+    {
+        return memoize( () -> super.getArtifactStore( key ), "store", key );
+    }
+
+    private static String resourceOf( final Transfer transfer )
+    {
+        return transfer == null ? null : transfer.getLocation().getUri() + "#" + transfer.getPath();
+    }
+
+    private static List<String> urisOf( final List<? extends Location> locations )
+    {
+        return locations == null ? null : locations.stream().map( Location::getUri ).collect( Collectors.toList() );
+    }
+
+    private static List<String> listOf( final String... values )
+    {
+        return values == null ? null : Arrays.asList( values );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private <T, E extends Exception> T memoize( final Loader<T, E> loader, final Object... key )
+            throws E
+    {
+        final List<Object> memoKey = Arrays.asList( key );
+        FutureTask<Object> task = memo.get( memoKey );
+        if ( task == null )
+        {
+            FutureTask<Object> created = new FutureTask<>( loader::load );
+            task = memo.putIfAbsent( memoKey, created );
+            if ( task == null )
+            {
+                task = created;
+                created.run();
+            }
+        }
+
+        boolean interrupted = false;
+        try
+        {
+            while ( true )
+            {
+                try
+                {
+                    return (T) task.get();
+                }
+                catch ( InterruptedException e )
+                {
+                    interrupted = true;
+                }
+                catch ( ExecutionException e )
+                {
+                    memo.remove( memoKey, task );
+
+                    Throwable cause = e.getCause();
+                    if ( cause instanceof RuntimeException )
+                    {
+                        throw (RuntimeException) cause;
+                    }
+                    if ( cause instanceof Error )
+                    {
+                        throw (Error) cause;
+                    }
+                    throw (E) cause;
+                }
+            }
+        }
+        finally
+        {
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Loader<T, E extends Exception>
+    {
+        T load()
+                throws E;
+    }
+}
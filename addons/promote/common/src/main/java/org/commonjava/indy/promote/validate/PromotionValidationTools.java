@@ -154,6 +154,29 @@ public class PromotionValidationTools
         this.promoteConfig = config;
     }
 
+    PromotionValidationTools( final PromotionValidationTools tools )
+    {
+        this.contentManager = tools.contentManager;
+        this.storeDataManager = tools.storeDataManager;
+        this.pomReader = tools.pomReader;
+        this.metadataReader = tools.metadataReader;
+        this.modelProcessor = tools.modelProcessor;
+        this.typeMapper = tools.typeMapper;
+        this.transferManager = tools.transferManager;
+        this.contentDigester = tools.contentDigester;
+        this.ruleParallelExecutor = tools.ruleParallelExecutor;
+        this.promoteConfig = tools.promoteConfig;
+    }
+
+    /**
+     * Tools for the rules of one validation request. Parsed POMs, transfers, exists() results and store lookups are
+     * memoized, so rules checking the same files don't read and parse them again.
+     */
+    public PromotionValidationTools forRequest()
+    {
+        return new MemoizingPromotionValidationTools( this );
+    }
+
     public StoreKey[] getValidationStoreKeys( final ValidationRequest request )
             throws PromotionValidationException
     {
@@ -271,8 +294,7 @@ public class PromotionValidationTools
         locations.add( transfer.getLocation() );
         addLocations( locations, extraLocations );
 
-        MavenPomView pomView =
-                pomReader.read( artifactRef.asProjectVersionRef(), transfer, locations, MavenPomView.ALL_PROFILES );
+        MavenPomView pomView = read( artifactRef.asProjectVersionRef(), transfer, locations, MavenPomView.ALL_PROFILES );
 
         try
         {
@@ -313,7 +335,7 @@ public class PromotionValidationTools
         locations.add( transfer.getLocation() );
         addLocations( locations, extraLocations );
 
-        return pomReader.read( artifactRef.asProjectVersionRef(), transfer, locations, MavenPomView.ALL_PROFILES );
+        return read( artifactRef.asProjectVersionRef(), transfer, locations, MavenPomView.ALL_PROFILES );
     }
 
     @Measure
@@ -329,7 +351,7 @@ public class PromotionValidationTools
 
         Transfer transfer = retrieve( request.getSourceRepository(), path );
 
-        return pomReader.readLocalPom( artifactRef.asProjectVersionRef(), transfer, MavenPomView.ALL_PROFILES );
+        return readLocalPom( artifactRef.asProjectVersionRef(), transfer, MavenPomView.ALL_PROFILES );
     }
 
     public ArtifactRef getArtifact( final String path )
@@ -154,7 +154,8 @@ public class PromotionValidator
             if ( ruleNames != null && !ruleNames.isEmpty() )
             {
                 final ArtifactStore store = getRequestStore( request, baseUrl );
-                final ValidationRequest req = new ValidationRequest( request, set, validationTools, store );
+                final ValidationRequest req =
+                        new ValidationRequest( request, set, validationTools.forRequest(), store );
                 try
                 {
                     DrainingExecutorCompletionService<Exception> svc =
@@ -193,6 +194,9 @@ public class PromotionValidator
                         }
                     } );
 
+                    logger.info( "Promotion validation rule timings (ms), rule-set: {}, timings: {}", set.getName(),
+                                 result.getRuleTimings() );
+
                     if ( !errors.isEmpty() )
                     {
                         throw new PromotionValidationException( format( "Failed to do promotion validation: \n\n%s", join( errors, "\n" ) ) );
@@ -261,48 +265,63 @@ public class PromotionValidator
         if ( rule != null )
         {
             logger.debug( "Running promotion validation rule: {}", rule.getName() );
-            String error = null;
-            if ( metricsManager != null )
+            long begin = System.currentTimeMillis();
+            try
             {
-                AtomicReference<Exception> ex = new AtomicReference<>();
-                error = metricsManager.wrapWithStandardMetrics( () -> {
-                    try
-                    {
-                        return rule.getRule().validate( req );
-                    }
-                    catch ( Exception e )
-                    {
-                        ex.set( e );
-                        return null;
-                    }
-                }, () -> getMetricName( rule.getName() ) );
-
-                if ( ex.get() != null )
-                {
-                    throwException( ex.get(), rule, request );
-                }
+                runValidationRule( rule, req, result, request );
             }
-            else
+            finally
             {
+                result.addRuleTiming( rule.getName(), System.currentTimeMillis() - begin );
+            }
+        }
+    }
+
+    private void runValidationRule( final ValidationRuleMapping rule, final ValidationRequest req,
+                                    final ValidationResult result, final PromoteRequest request )
+            throws PromotionValidationException
+    {
+        String error = null;
+        if ( metricsManager != null )
+        {
+            AtomicReference<Exception> ex = new AtomicReference<>();
+            error = metricsManager.wrapWithStandardMetrics( () -> {
                 try
                 {
-                    error = rule.getRule().validate( req );
+                    return rule.getRule().validate( req );
                 }
                 catch ( Exception e )
                 {
-                    throwException( e, rule, request );
+                    ex.set( e );
+                    return null;
                 }
-            }
+            }, () -> getMetricName( rule.getName() ) );
 
-            if ( StringUtils.isNotEmpty( error ) )
+            if ( ex.get() != null )
             {
-                logger.debug( "{} failed with error: {}", rule.getName(), error );
-                result.addValidatorError( rule.getName(), error );
+                throwException( ex.get(), rule, request );
             }
-            else
+        }
+        else
+        {
+            try
             {
-                logger.debug( "{} succeeded", rule.getName() );
+                error = rule.getRule().validate( req );
             }
+            catch ( Exception e )
+            {
+                throwException( e, rule, request );
+            }
+        }
+
+        if ( StringUtils.isNotEmpty( error ) )
+        {
+            logger.debug( "{} failed with error: {}", rule.getName(), error );
+            result.addValidatorError( rule.getName(), error );
+        }
+        else
+        {
+            logger.debug( "{} succeeded", rule.getName() );
         }
     }
 
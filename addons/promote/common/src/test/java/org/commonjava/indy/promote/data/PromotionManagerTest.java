@@ -37,6 +37,7 @@ import org.commonjava.indy.core.inject.ExpiringMemoryNotFoundCache;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.HostedRepository;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.promote.conf.PromoteConfig;
@@ -75,7 +76,11 @@ import org.junit.rules.TemporaryFolder;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -124,6 +129,10 @@ public class PromotionManagerTest
 
     private SpecialPathManager specialPathManager;
 
+    private PromoteConfig config;
+
+    private volatile String failingTargetPath;
+
     @BeforeClass
     public static void setupClass()
     {
@@ -167,7 +176,20 @@ public class PromotionManagerTest
 
         contentManager = new DefaultContentManager( storeManager, downloadManager, new IndyObjectMapper( true ),
                                                     specialPathManager, new MemoryNotFoundCache(),
-                                                    contentDigester, new ContentGeneratorManager() );
+                                                    contentDigester, new ContentGeneratorManager() )
+        {
+            @Override
+            public Transfer store( final ArtifactStore store, final String path, final InputStream stream,
+                                   final TransferOperation op, final EventMetadata eventMetadata )
+                    throws IndyWorkflowException
+            {
+                if ( target != null && store.getKey().equals( target.getKey() ) && path.equals( failingTargetPath ) )
+                {
+                    throw new IndyWorkflowException( "Failing store of: {}", path );
+                }
+                return super.store( store, path, stream, op, eventMetadata );
+            }
+        };
 
         dataManager = new DataFileManager( temp.newFolder( "data" ), new DataFileEventManager() );
         validationsManager = new PromoteValidationsManager( dataManager, new PromoteConfig(),
@@ -178,7 +200,7 @@ public class PromotionManagerTest
                         new PoolWeftExecutorService( "test-validate-executor", (ThreadPoolExecutor) Executors.newCachedThreadPool(), 2, 10f, false,null, null );
         MavenModelProcessor modelProcessor = new MavenModelProcessor();
 
-        PromoteConfig config = new PromoteConfig();
+        config = new PromoteConfig();
         validator = new PromotionValidator( validationsManager,
                                             new PromotionValidationTools( contentManager, storeManager,
                                                                           galleyParts.getPomReader(),
@@ -619,6 +641,58 @@ public class PromotionManagerTest
     }
 
 
+    /**
+     * A path failing with an exception (rather than an error result) must not lose the paths the same worker already
+     * promoted: they are still rolled back.
+     */
+    @Test
+    public void rollback_TransferThrows_PromoteFailedAndCompletedPathsRolledBack() throws Exception
+    {
+        prepareHostedRepos();
+
+        // largest first, so the single worker promotes the first path before the second one fails
+        contentManager.store( source, first, new ByteArrayInputStream( "This is a much larger test".getBytes() ),
+                              TransferOperation.UPLOAD, new EventMetadata() );
+        contentManager.store( source, second, new ByteArrayInputStream( "This is a test".getBytes() ),
+                              TransferOperation.UPLOAD, new EventMetadata() );
+
+        config.setPathsConcurrency( 1 );
+        failingTargetPath = second;
+
+        PathsPromoteResult result =
+                manager.promotePaths( new PathsPromoteRequest( source.getKey(), target.getKey() ), FAKE_BASE_URL );
+
+        assertThat( result.getError(), notNullValue() );
+        assertThat( result.getError().contains( "second/path" ), equalTo( true ) );
+        assertThat( result.getPendingPaths().size(), equalTo( 2 ) );
+        assertThat( result.getCompletedPaths().size(), equalTo( 0 ) );
+
+        verifyExistence( false, false, true, true );
+    }
+
+    @Test
+    public void largestFirst_OrdersBySizeDescending() throws Exception
+    {
+        prepareHostedRepos();
+
+        List<Transfer> contents = new ArrayList<>();
+        for ( String content : Arrays.asList( "medium content", "s", "the largest content of all" ) )
+        {
+            contents.add( contentManager.store( source, "/" + content.length(),
+                                                new ByteArrayInputStream( content.getBytes() ),
+                                                TransferOperation.UPLOAD, new EventMetadata() ) );
+        }
+        contents.add( null );
+
+        Queue<SizedTransfer> queue = PromotionManager.largestFirst( contents );
+
+        assertThat( queue.poll().size, equalTo( 26L ) );
+        assertThat( queue.poll().size, equalTo( 14L ) );
+        assertThat( queue.poll().size, equalTo( 1L ) );
+        assertThat( queue.poll().transfer, nullValue() );
+        assertThat( queue.isEmpty(), equalTo( true ) );
+    }
+
     private HostedRepository source, target;
 
     private final String first = "/first/path";
@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.promote.data;
+
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.content.DownloadManager;
+import org.commonjava.indy.content.IndyLocationExpander;
+import org.commonjava.indy.core.change.event.IndyFileEventManager;
+import org.commonjava.indy.core.content.ContentGeneratorManager;
+import org.commonjava.indy.core.content.DefaultContentDigester;
+import org.commonjava.indy.core.content.DefaultDirectContentAccess;
+import org.commonjava.indy.core.content.DefaultDownloadManager;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.commonjava.indy.test.fixture.core.MockContentAdvisor;
+import org.commonjava.indy.test.fixture.core.MockInstance;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.commonjava.maven.galley.testing.maven.GalleyMavenFixture;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ZeroCopyHelperTest
+{
+    private static final String PATH = "org/foo/bar/1.0/bar-1.0.jar";
+
+    private static final String CONTENT = "This is a test";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static Cache<String, TransferMetadata> contentMetadata;
+
+    private StoreDataManager storeManager;
+
+    private DownloadManager downloadManager;
+
+    private MemoryNotFoundCache nfc;
+
+    private ZeroCopyHelper helper;
+
+    private HostedRepository source;
+
+    private HostedRepository target;
+
+    private Group group;
+
+    @BeforeClass
+    public static void setupClass()
+    {
+        contentMetadata = new DefaultCacheManager( new ConfigurationBuilder().simpleCache( true ).build() ).getCache(
+                "content-metadata", true );
+    }
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        contentMetadata.clear();
+
+        GalleyMavenFixture galleyParts = new GalleyMavenFixture( true, temp );
+        galleyParts.initMissingComponents();
+
+        storeManager = new MemoryStoreDataManager( true );
+        nfc = new MemoryNotFoundCache();
+
+        WeftExecutorService rescanService =
+                new PoolWeftExecutorService( "test-rescan-executor", (ThreadPoolExecutor) Executors.newCachedThreadPool(),
+                                             2, 10f, false, null, null );
+        downloadManager = new DefaultDownloadManager( storeManager, galleyParts.getTransferManager(),
+                                                      new IndyLocationExpander( storeManager ),
+                                                      new MockInstance<>( new MockContentAdvisor() ), nfc,
+                                                      rescanService );
+
+        WeftExecutorService contentAccessService =
+                new PoolWeftExecutorService( "test-content-access-executor",
+                                             (ThreadPoolExecutor) Executors.newCachedThreadPool(), 2, 10f, false, null,
+                                             null );
+        DefaultContentDigester contentDigester =
+                new DefaultContentDigester( new DefaultDirectContentAccess( downloadManager, contentAccessService ),
+                                            new CacheHandle<>( "content-metadata", contentMetadata ) );
+
+        helper = new ZeroCopyHelper( galleyParts.getCache(), contentDigester, new ContentGeneratorManager(),
+                                     new IndyFileEventManager(), nfc, storeManager,
+                                     new MockInstance<>( new MockContentAdvisor() ) );
+
+        ChangeSummary summary = new ChangeSummary( ChangeSummary.SYSTEM_USER, "test setup" );
+        source = new HostedRepository( MAVEN_PKG_KEY, "source" );
+        target = new HostedRepository( MAVEN_PKG_KEY, "target" );
+        group = new Group( MAVEN_PKG_KEY, "group", target.getKey() );
+        storeManager.storeArtifactStore( source, summary, false, true, new EventMetadata() );
+        storeManager.storeArtifactStore( target, summary, false, true, new EventMetadata() );
+        storeManager.storeArtifactStore( group, summary, false, true, new EventMetadata() );
+
+        downloadManager.store( source, PATH, new ByteArrayInputStream( CONTENT.getBytes() ), TransferOperation.UPLOAD,
+                               new EventMetadata() );
+    }
+
+    @Test
+    public void linkableSourceIsHardLinked()
+            throws Exception
+    {
+        Transfer from = downloadManager.getStorageReference( source, PATH );
+        Transfer to = downloadManager.getStorageReference( target, PATH );
+
+        assertTrue( helper.copy( from, to, target, true, new EventMetadata() ) );
+
+        Path sourceFile = from.getDetachedFile().toPath();
+        Path targetFile = to.getDetachedFile().toPath();
+        assertTrue( Files.isSameFile( sourceFile, targetFile ) );
+        assertThat( new String( Files.readAllBytes( targetFile ) ), equalTo( CONTENT ) );
+    }
+
+    @Test
+    public void otherSourceIsCopied()
+            throws Exception
+    {
+        Transfer from = downloadManager.getStorageReference( source, PATH );
+        Transfer to = downloadManager.getStorageReference( target, PATH );
+
+        assertTrue( helper.copy( from, to, target, false, new EventMetadata() ) );
+
+        Path sourceFile = from.getDetachedFile().toPath();
+        Path targetFile = to.getDetachedFile().toPath();
+        assertFalse( Files.isSameFile( sourceFile, targetFile ) );
+        assertThat( new String( Files.readAllBytes( targetFile ) ), equalTo( CONTENT ) );
+
+        // overwriting the source in place must not show through the target
+        Files.write( sourceFile, "changed".getBytes() );
+        assertThat( new String( Files.readAllBytes( targetFile ) ), equalTo( CONTENT ) );
+    }
+
+    @Test
+    public void nfcIsClearedForTargetAndAffectedGroups()
+            throws Exception
+    {
+        ConcreteResource targetResource = new ConcreteResource( LocationUtils.toLocation( target ), PATH );
+        ConcreteResource groupResource = new ConcreteResource( LocationUtils.toLocation( group ), PATH );
+        nfc.addMissing( targetResource );
+        nfc.addMissing( groupResource );
+
+        assertTrue( helper.copy( downloadManager.getStorageReference( source, PATH ),
+                                 downloadManager.getStorageReference( target, PATH ), target, true,
+                                 new EventMetadata() ) );
+
+        assertFalse( nfc.isMissing( targetResource ) );
+
+        // the affected groups are cleared in the background, like for a regular store
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( nfc.isMissing( groupResource ) && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 20 );
+        }
+        assertFalse( nfc.isMissing( groupResource ) );
+    }
+}
@@ -27,6 +27,8 @@ import java.util.concurrent.ThreadPoolExecutor;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class PromotionValidationToolsTest
@@ -88,6 +90,23 @@ public class PromotionValidationToolsTest
         verifyIt( errors );
     }
 
+    @Test
+    public void requestToolsMemoizeLookups()
+    {
+        PromotionValidationTools tools =
+                        new PromotionValidationTools( null, null, null, null, null, null, null, null,
+                                                      (ThreadPoolExecutor) Executors.newFixedThreadPool( 1 ),
+                                                      new PromoteConfig() );
+
+        String path = "org/foo/bar/1.0/bar-1.0.pom";
+        assertThat( tools.getArtifact( path ), not( sameInstance( tools.getArtifact( path ) ) ) );
+
+        PromotionValidationTools requestTools = tools.forRequest();
+        assertThat( requestTools.getArtifact( path ), sameInstance( requestTools.getArtifact( path ) ) );
+        assertThat( requestTools.getArtifact( path ), equalTo( tools.getArtifact( path ) ) );
+        assertThat( tools.forRequest(), not( sameInstance( requestTools ) ) );
+    }
+
     private void verifyIt( List<String> errors )
     {
         assertThat( errors.size(), equalTo( 3 ) );
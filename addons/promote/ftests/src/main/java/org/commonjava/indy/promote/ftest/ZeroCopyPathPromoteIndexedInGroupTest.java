@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.promote.ftest;
+
+import org.commonjava.indy.client.core.IndyClientException;
+import org.commonjava.indy.client.core.IndyClientModule;
+import org.commonjava.indy.ftest.core.AbstractContentManagementTest;
+import org.commonjava.indy.ftest.core.category.EventDependent;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.promote.client.IndyPromoteClientModule;
+import org.commonjava.indy.promote.model.PathsPromoteRequest;
+import org.commonjava.indy.promote.model.PathsPromoteResult;
+import org.commonjava.indy.test.fixture.core.CoreServerFixture;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Check that content promoted by-path through the zero-copy fast path is indexed and visible through the groups
+ * containing the target, just like content stored through the content manager.
+ * <br/>
+ * GIVEN:
+ * <ul>
+ *     <li>Zero-copy path promotion and authoritative content indexes enabled</li>
+ *     <li>HostedRepositories A and B, B containing path P</li>
+ *     <li>Group G with HostedRepository member A</li>
+ *     <li>Request for path P in Group G results in 404, NFC entry creation</li>
+ * </ul>
+ * <br/>
+ * WHEN:
+ * <ul>
+ *     <li>HostedRepository B is promoted by-path to HostedRepository A</li>
+ * </ul>
+ * <br/>
+ * THEN:
+ * <ul>
+ *     <li>Path P is available from HostedRepository A and Group G with the promoted content</li>
+ * </ul>
+ */
+public class ZeroCopyPathPromoteIndexedInGroupTest
+        extends AbstractContentManagementTest
+{
+    private static final String PATH = "/org/foo/bar/1/bar-1.pom";
+
+    /* @formatter:off */
+    private static final String POM_CONTENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<project>\n" +
+        "  <modelVersion>4.0.0</modelVersion>\n" +
+        "  <groupId>org.foo</groupId>\n" +
+        "  <artifactId>bar</artifactId>\n" +
+        "  <version>1</version>\n" +
+        "  <packaging>pom</packaging>\n" +
+        "</project>\n";
+    /* @formatter:on */
+
+    private Group g;
+
+    private HostedRepository a;
+
+    private HostedRepository b;
+
+    private final IndyPromoteClientModule promote = new IndyPromoteClientModule();
+
+    @Before
+    public void setupRepos()
+            throws IndyClientException
+    {
+        String message = "test setup";
+
+        a = client.stores().create( new HostedRepository( MAVEN_PKG_KEY, "A" ), message, HostedRepository.class );
+        b = client.stores().create( new HostedRepository( MAVEN_PKG_KEY, "B" ), message, HostedRepository.class );
+        g = client.stores().create( new Group( MAVEN_PKG_KEY, "G", a.getKey() ), message, Group.class );
+
+        client.content().store( b.getKey(), PATH, new ByteArrayInputStream( POM_CONTENT.getBytes() ) );
+    }
+
+    @Test
+    @Category( EventDependent.class )
+    public void run()
+            throws Exception
+    {
+        try (InputStream stream = client.content().get( g.getKey(), PATH ))
+        {
+            assertThat( "Path should not yet be available from group!", stream, nullValue() );
+        }
+
+        PathsPromoteResult response = promote.promoteByPath( new PathsPromoteRequest( b.getKey(), a.getKey(), PATH ) );
+
+        assertThat( response.getError(), nullValue() );
+        assertThat( response.getCompletedPaths(), notNullValue() );
+        assertThat( response.getCompletedPaths().contains( PATH ), equalTo( true ) );
+
+        waitForEventPropagation();
+
+        assertContent( a, PATH, POM_CONTENT );
+        assertContent( g, PATH, POM_CONTENT );
+    }
+
+    @Override
+    protected void initTestConfig( CoreServerFixture fixture )
+            throws IOException
+    {
+        super.initTestConfig( fixture );
+        writeConfigFile( "conf.d/promote.conf", "[promote]\npaths.zero.copy.enabled=true" );
+        writeConfigFile( "conf.d/content-index.conf", "[content-index]\nenabled=true\nsupport.authoritative.indexes=true" );
+    }
+
+    @Override
+    protected Collection<IndyClientModule> getAdditionalClientModules()
+    {
+        return Collections.singleton( promote );
+    }
+
+    @Override
+    protected boolean createStandardTestStructures()
+    {
+        return false;
+    }
+}
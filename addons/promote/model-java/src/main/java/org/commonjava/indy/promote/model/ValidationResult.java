@@ -34,7 +34,10 @@ public class ValidationResult
     @ApiModelProperty( "Name of validation rule-set applied" )
     private String ruleSet;
 
-    public void addValidatorError( String validatorName, String message )
+    @ApiModelProperty( "Mapping of rule name to its execution time, in milliseconds" )
+    private Map<String, Long> ruleTimings = new HashMap<>();
+
+    public synchronized void addValidatorError( String validatorName, String message )
     {
         valid = false;
         validatorErrors.put( validatorName, message );
@@ -60,6 +63,21 @@ public class ValidationResult
         this.validatorErrors = validatorErrors;
     }
 
+    public synchronized void addRuleTiming( String validatorName, long millis )
+    {
+        ruleTimings.put( validatorName, millis );
+    }
+
+    public Map<String, Long> getRuleTimings()
+    {
+        return ruleTimings;
+    }
+
+    public void setRuleTimings( Map<String, Long> ruleTimings )
+    {
+        this.ruleTimings = ruleTimings;
+    }
+
     public void setRuleSet( String ruleSet )
     {
         this.ruleSet = ruleSet;
@@ -114,6 +132,7 @@ public class ValidationResult
                 "valid=" + valid +
                 ", validatorErrors=" + validatorErrors +
                 ", ruleSet='" + ruleSet + '\'' +
+                ", ruleTimings=" + ruleTimings +
                 '}';
     }
 }
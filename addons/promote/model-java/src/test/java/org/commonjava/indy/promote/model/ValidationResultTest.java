@@ -62,6 +62,17 @@ public class ValidationResultTest
         } );
     }
 
+    @Test
+    public void jsonRoundTrip_RuleTimings()
+            throws IOException
+    {
+        ValidationResult in = new ValidationResult();
+        in.setRuleSet( "some-rules.json" );
+        in.addRuleTiming( "my-validator.groovy", 42L );
+
+        assertRoundTrip( in, ( out ) -> assertThat( out.getRuleTimings().get( "my-validator.groovy" ), equalTo( 42L ) ) );
+    }
+
     private void assertRoundTrip( ValidationResult in, Consumer<ValidationResult> extraAssertions )
             throws IOException
     {
@@ -62,6 +62,16 @@ public class DefaultIndyConfiguration
 
     public static final String DEFAULT_DISPOSABLE_STORE_PATTERN = ".*test.*";
 
+    public static final int DEFAULT_GROUP_SPECULATIVE_RETRIEVAL_WIDTH = 0; // disabled
+
+    public static final int DEFAULT_REMOTE_URL_ADDRESS_CACHE_SECONDS = 600; // 10 minutes
+
+    public static final Boolean DEFAULT_NFC_BLOOM_FILTER_ENABLED = false;
+
+    public static final int DEFAULT_NFC_MEMORY_MAX_ENTRIES = 1000000;
+
+    public static final Boolean DEFAULT_METADATA_INCREMENTAL_MERGE_ENABLED = false;
+
     private Integer passthroughTimeoutSeconds;
 
     private Integer notFoundCacheTimeoutSeconds;
@@ -72,6 +82,12 @@ public class DefaultIndyConfiguration
 
     private String nfcProvider;
 
+    private Boolean nfcBloomFilterEnabled;
+
+    private Integer nfcMemoryMaxEntries;
+
+    private Boolean metadataIncrementalMergeEnabled;
+
     private Integer nfcExpirationSweepMinutes;
 
     private Integer nfcMaxResultSetSize;
@@ -102,6 +118,10 @@ public class DefaultIndyConfiguration
 
     private String disposableStorePattern;
 
+    private Integer groupSpeculativeRetrievalWidth;
+
+    private Integer remoteUrlAddressCacheSeconds;
+
     public DefaultIndyConfiguration()
     {
     }
@@ -167,6 +187,44 @@ public class DefaultIndyConfiguration
         this.nfcProvider = nfcProvider;
     }
 
+    @Override
+    public boolean isNfcBloomFilterEnabled()
+    {
+        return nfcBloomFilterEnabled == null ? DEFAULT_NFC_BLOOM_FILTER_ENABLED : nfcBloomFilterEnabled;
+    }
+
+    @ConfigName( "nfc.bloom.filter.enabled" )
+    public void setNfcBloomFilterEnabled( Boolean nfcBloomFilterEnabled )
+    {
+        this.nfcBloomFilterEnabled = nfcBloomFilterEnabled;
+    }
+
+    @Override
+    public int getNfcMemoryMaxEntries()
+    {
+        return nfcMemoryMaxEntries == null ? DEFAULT_NFC_MEMORY_MAX_ENTRIES : nfcMemoryMaxEntries;
+    }
+
+    @ConfigName( "nfc.memory.max.entries" )
+    public void setNfcMemoryMaxEntries( final Integer nfcMemoryMaxEntries )
+    {
+        this.nfcMemoryMaxEntries = nfcMemoryMaxEntries;
+    }
+
+    @Override
+    public boolean isMetadataIncrementalMergeEnabled()
+    {
+        return metadataIncrementalMergeEnabled == null ?
+                        DEFAULT_METADATA_INCREMENTAL_MERGE_ENABLED :
+                        metadataIncrementalMergeEnabled;
+    }
+
+    @ConfigName( "metadata.merge.incremental" )
+    public void setMetadataIncrementalMergeEnabled( final Boolean metadataIncrementalMergeEnabled )
+    {
+        this.metadataIncrementalMergeEnabled = metadataIncrementalMergeEnabled;
+    }
+
     @ConfigName( "nfc.timeout" )
     public void setNotFoundCacheTimeoutSeconds( final int seconds )
     {
@@ -385,6 +443,34 @@ public class DefaultIndyConfiguration
         return gaCacheStorePattern;
     }
 
+    @Override
+    public int getGroupSpeculativeRetrievalWidth()
+    {
+        return groupSpeculativeRetrievalWidth == null ?
+                DEFAULT_GROUP_SPECULATIVE_RETRIEVAL_WIDTH :
+                groupSpeculativeRetrievalWidth;
+    }
+
+    @ConfigName( "group.speculative.retrieval.width" )
+    public void setGroupSpeculativeRetrievalWidth( Integer groupSpeculativeRetrievalWidth )
+    {
+        this.groupSpeculativeRetrievalWidth = groupSpeculativeRetrievalWidth;
+    }
+
+    @Override
+    public int getRemoteUrlAddressCacheSeconds()
+    {
+        return remoteUrlAddressCacheSeconds == null ?
+                DEFAULT_REMOTE_URL_ADDRESS_CACHE_SECONDS :
+                remoteUrlAddressCacheSeconds;
+    }
+
+    @ConfigName( "remote.url.address.cache.seconds" )
+    public void setRemoteUrlAddressCacheSeconds( Integer remoteUrlAddressCacheSeconds )
+    {
+        this.remoteUrlAddressCacheSeconds = remoteUrlAddressCacheSeconds;
+    }
+
     @ConfigName( "standalone" )
     public void setStandalone( Boolean standalone )
     {
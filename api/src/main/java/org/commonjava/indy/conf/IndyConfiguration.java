@@ -25,6 +25,8 @@ public interface IndyConfiguration
 
     String PROP_NODE_ID = "indy.node.id";
 
+    String SPECULATIVE_RETRIEVAL_WIDTH_METADATA = "speculative_retrieval_width";
+
     /**
      * Retrieve the node identifier to be used when deploying in a clustered context.
      */
@@ -93,6 +95,27 @@ public interface IndyConfiguration
 
     String getNfcProvider(); // ispn or cassandra (default)
 
+    /**
+     * Put a per-location bloom filter in front of the NFC provider, so paths that were never recorded as missing are
+     * answered without a cache lookup. Ignored if the NFC is shared with other nodes.
+     * @since 2.3.0
+     */
+    boolean isNfcBloomFilterEnabled();
+
+    /**
+     * Maximum number of entries kept by the in-memory NFC. Least recently used entries are evicted past it; 0 or less
+     * means unbounded.
+     * @since 2.3.0
+     */
+    int getNfcMemoryMaxEntries();
+
+    /**
+     * When a member's maven-metadata.xml changes, merge only that member again into the cached group metadata, rather
+     * than dropping the group metadata and merging every member.
+     * @since 2.3.0
+     */
+    boolean isMetadataIncrementalMergeEnabled();
+
     /**
      * Let indy run standalone local mode, which will not enable cassandra path mapped storage
      * @return
@@ -111,4 +134,20 @@ public interface IndyConfiguration
      * @since 2.1.0
      */
     int getFileSystemContainingBatchSize();
+
+    /**
+     * Number of group members whose existence is probed ahead (in parallel) while retrieving from a group. Members
+     * are still consulted in group order; the probes only let known misses be skipped without a round trip. Zero
+     * disables speculative retrieval. Groups can override this with the
+     * {@link #SPECULATIVE_RETRIEVAL_WIDTH_METADATA} store metadata.
+     * @since 2.3.0
+     */
+    int getGroupSpeculativeRetrievalWidth();
+
+    /**
+     * How long resolved host addresses are reused when looking up remote repositories by URL. Resolution happens in
+     * the background, never on the request thread. Zero disables matching remote repositories by IP address.
+     * @since 2.3.0
+     */
+    int getRemoteUrlAddressCacheSeconds();
 }
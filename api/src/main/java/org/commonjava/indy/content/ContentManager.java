@@ -43,6 +43,13 @@ public interface ContentManager
 
     String SUPPRESS_EVENTS = "suppress-events";
 
+    /**
+     * Set (to true) in the {@link EventMetadata} of a storage event for content put in place without calling
+     * {@link #store(ArtifactStore, String, InputStream, TransferOperation, EventMetadata)}, e.g. a zero-copy promotion.
+     * Whatever normally decorates the store call (indexing, etc.) has to react to the event instead.
+     */
+    String STORED_DIRECTLY = "stored-directly";
+
     /**
      * Retrieve the content at the given path from the first store possible, then return then return the transfer that references the content without 
      * iterating any farther.
@@ -41,4 +41,17 @@ public interface GroupRepositoryFilter
      */
     List<ArtifactStore> filter( String path, Group group, List<ArtifactStore> concreteStores );
 
+    /**
+     * Key of the class of paths this filter treats alike, e.g. whether the path matches some pattern. If the filter
+     * returns a key, its result for a group is cached under that key and reused for other paths with the same key,
+     * until the group membership changes.
+     *
+     * @return the key, or null if the result depends on anything but the group members and the key (e.g. on the
+     * repository content), so it must not be cached
+     */
+    default String getResultCacheKey( String path, Group group )
+    {
+        return null;
+    }
+
 }
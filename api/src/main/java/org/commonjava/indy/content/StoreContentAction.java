@@ -18,6 +18,7 @@ package org.commonjava.indy.content;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
 
+import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -26,4 +27,14 @@ import java.util.Set;
 public interface StoreContentAction
 {
     void clearStoreContent( String path, ArtifactStore store, Set<Group> affectedGroups, boolean clearOriginPath );
+
+    /**
+     * Batch variant, for callers clearing many paths of the same store at once. Implementations should override it when
+     * they can do better than one call per path.
+     */
+    default void clearStoreContent( Collection<String> paths, ArtifactStore store, Set<Group> affectedGroups,
+                                    boolean clearOriginPath )
+    {
+        paths.forEach( path -> clearStoreContent( path, store, affectedGroups, clearOriginPath ) );
+    }
 }
@@ -91,6 +91,10 @@ public interface ArtifactStoreQuery<T extends ArtifactStore>
     List<RemoteRepository> getRemoteRepositoryByUrl( String url )
             throws IndyDataException;
 
+    /**
+     * @return the concrete stores of the group and its nested groups, in resolution order. The list may be shared
+     * between callers and must not be modified.
+     */
     List<ArtifactStore> getOrderedConcreteStoresInGroup( String groupName )
             throws IndyDataException;
 
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-request cumulative timings (in milliseconds) and call counts of measured operations, stored under
+ * {@link RequestContextHelper#CUMULATIVE_TIMINGS} in the thread context.
+ * <p>
+ * Operations are addressed by a slot, which is assigned to a metric name once per JVM by {@link #slot(String)}, so
+ * accumulating only adds to primitive arrays instead of merging boxed values into maps.
+ */
+public final class CumulativeTimings
+{
+    private static final int INITIAL_SLOTS = 32;
+
+    private static final Map<String, Integer> SLOTS = new ConcurrentHashMap<>();
+
+    private static volatile String[] names = new String[INITIAL_SLOTS];
+
+    private double[] timings = new double[INITIAL_SLOTS];
+
+    private int[] counts = new int[INITIAL_SLOTS];
+
+    /**
+     * @return the slot of the metric name, assigning it on first use.
+     */
+    public static int slot( final String name )
+    {
+        Integer slot = SLOTS.get( name );
+        return slot != null ? slot : register( name );
+    }
+
+    private static synchronized int register( final String name )
+    {
+        Integer slot = SLOTS.get( name );
+        if ( slot != null )
+        {
+            return slot;
+        }
+
+        int next = SLOTS.size();
+        if ( next >= names.length )
+        {
+            names = Arrays.copyOf( names, names.length * 2 );
+        }
+
+        names[next] = name;
+        SLOTS.put( name, next );
+        return next;
+    }
+
+    /**
+     * The same instance may be shared by the threads serving a request, hence the synchronization.
+     */
+    public synchronized void add( final int slot, final double elapsed )
+    {
+        if ( slot >= counts.length )
+        {
+            int size = Math.max( slot + 1, counts.length * 2 );
+            timings = Arrays.copyOf( timings, size );
+            counts = Arrays.copyOf( counts, size );
+        }
+
+        timings[slot] += elapsed;
+        counts[slot]++;
+    }
+
+    public synchronized void forEach( final Visitor visitor )
+    {
+        final String[] slotNames = names;
+        for ( int i = 0; i < counts.length; i++ )
+        {
+            if ( counts[i] > 0 )
+            {
+                visitor.visit( slotNames[i], timings[i], counts[i] );
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Visitor
+    {
+        void visit( String name, double timing, int count );
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a zip straight to an output stream (typically a JAX-RS StreamingOutput), so the client gets the first bytes
+ * while the rest is still being read, and nothing is staged on disk.
+ * <p>
+ * Members are read ahead in parallel on the given executor, at most {@code readAhead} members at a time, each buffered
+ * up to {@code maxBufferedBytes}. A member larger than that is not held in memory: its prefetch only warms it up, and
+ * it's streamed from a fresh {@link ZipMember#open()} when its turn comes. Every stream is opened and closed on the
+ * same thread, so members guarded by thread-owned locks (e.g. Galley transfers) are safe to use.
+ * <p>
+ * If the executor refuses a read-ahead (e.g. a load-sensitive pool that is overloaded), the member is read on the
+ * writing thread instead. If writing fails or the client goes away, read-aheads still running stop at their next
+ * chunk.
+ * <p>
+ * Entries are written in the order given.
+ */
+public final class StreamingZipWriter
+{
+    public static final int DEFAULT_READ_AHEAD = 8;
+
+    public static final int DEFAULT_MAX_BUFFERED_BYTES = 4 * 1024 * 1024;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Executor executor;
+
+    private final int readAhead;
+
+    private final int maxBufferedBytes;
+
+    public StreamingZipWriter( final Executor executor )
+    {
+        this( executor, DEFAULT_READ_AHEAD, DEFAULT_MAX_BUFFERED_BYTES );
+    }
+
+    public StreamingZipWriter( final Executor executor, final int readAhead, final int maxBufferedBytes )
+    {
+        this.executor = executor;
+        this.readAhead = Math.max( 1, readAhead );
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    /**
+     * Opens the content of one zip entry. Returning null skips the entry.
+     */
+    @FunctionalInterface
+    public interface StreamOpener
+    {
+        InputStream open()
+                throws IOException;
+    }
+
+    public static final class ZipMember
+    {
+        private final String name;
+
+        private final StreamOpener opener;
+
+        public ZipMember( final String name, final StreamOpener opener )
+        {
+            this.name = name;
+            this.opener = opener;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public InputStream open()
+                throws IOException
+        {
+            return opener.open();
+        }
+    }
+
+    /**
+     * Write the members as a zip to the given stream. The stream is finished but left open.
+     */
+    public void write( final Iterable<ZipMember> members, final OutputStream out )
+            throws IOException
+    {
+        final Iterator<ZipMember> it = members.iterator();
+        final Deque<CompletableFuture<Prefetched>> window = new ArrayDeque<>( readAhead );
+        final AtomicBoolean finished = new AtomicBoolean();
+        final ZipOutputStream zip = new ZipOutputStream( out );
+        try
+        {
+            while ( window.size() < readAhead && it.hasNext() )
+            {
+                window.add( prefetch( it.next(), finished ) );
+            }
+
+            final byte[] buf = new byte[COPY_BUFFER_SIZE];
+            while ( !window.isEmpty() )
+            {
+                final Prefetched member = await( window.poll() );
+                if ( it.hasNext() )
+                {
+                    window.add( prefetch( it.next(), finished ) );
+                }
+
+                if ( member.missing )
+                {
+                    logger.debug( "Skipping zip entry with no content: {}", member.member.getName() );
+                    continue;
+                }
+
+                zip.putNextEntry( new ZipEntry( member.member.getName() ) );
+                if ( member.content != null )
+                {
+                    zip.write( member.content, 0, member.length );
+                }
+                else
+                {
+                    logger.trace( "Streaming oversized zip entry: {}", member.member.getName() );
+                    try (InputStream in = member.member.open())
+                    {
+                        if ( in != null )
+                        {
+                            int read;
+                            while ( ( read = in.read( buf ) ) > -1 )
+                            {
+                                zip.write( buf, 0, read );
+                            }
+                        }
+                    }
+                }
+                zip.closeEntry();
+            }
+
+            zip.finish();
+            zip.flush();
+        }
+        finally
+        {
+            // don't leave read-ahead tasks running for a zip nobody will write. Cancelling only drops the ones not
+            // started yet; running ones see the flag at their next chunk.
+            finished.set( true );
+            window.forEach( f -> f.cancel( false ) );
+        }
+    }
+
+    private CompletableFuture<Prefetched> prefetch( final ZipMember member, final AtomicBoolean finished )
+    {
+        try
+        {
+            return CompletableFuture.supplyAsync( () -> {
+                try
+                {
+                    return read( member, finished );
+                }
+                catch ( IOException e )
+                {
+                    throw new CompletionException( e );
+                }
+            }, executor );
+        }
+        catch ( RuntimeException e )
+        {
+            // the executor refused the task (e.g. overloaded); read it on this thread rather than fail the zip
+            logger.debug( "Read-ahead of zip entry: {} refused ({}), reading it inline", member.getName(),
+                          e.toString() );
+
+            final CompletableFuture<Prefetched> inline = new CompletableFuture<>();
+            try
+            {
+                inline.complete( read( member, finished ) );
+            }
+            catch ( IOException | RuntimeException error )
+            {
+                inline.completeExceptionally( error );
+            }
+            return inline;
+        }
+    }
+
+    private Prefetched read( final ZipMember member, final AtomicBoolean finished )
+            throws IOException
+    {
+        if ( finished.get() )
+        {
+            throw new InterruptedIOException( "Zip writing stopped before reading: " + member.getName() );
+        }
+
+        try (InputStream in = member.open())
+        {
+            if ( in == null )
+            {
+                return new Prefetched( member, null, 0, true );
+            }
+
+            final int chunk = Math.min( COPY_BUFFER_SIZE, maxBufferedBytes + 1 );
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream( chunk );
+            final byte[] buf = new byte[chunk];
+            int read;
+            while ( ( read = in.read( buf ) ) > -1 )
+            {
+                if ( finished.get() )
+                {
+                    throw new InterruptedIOException( "Zip writing stopped while reading: " + member.getName() );
+                }
+
+                baos.write( buf, 0, read );
+                if ( baos.size() > maxBufferedBytes )
+                {
+                    return new Prefetched( member, null, 0, false );
+                }
+            }
+
+            return new Prefetched( member, baos.toByteArray(), baos.size(), false );
+        }
+    }
+
+    private Prefetched await( final CompletableFuture<Prefetched> future )
+            throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while reading ahead zip entries" );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            throw new IOException( "Failed to read zip entry content: " + cause.getMessage(), cause );
+        }
+    }
+
+    private static final class Prefetched
+    {
+        private final ZipMember member;
+
+        private final byte[] content;
+
+        private final int length;
+
+        private final boolean missing;
+
+        private Prefetched( final ZipMember member, final byte[] content, final int length, final boolean missing )
+        {
+            this.member = member;
+            this.content = content;
+            this.length = length;
+            this.missing = missing;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.util;
+
+import org.commonjava.indy.util.StreamingZipWriter.ZipMember;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class StreamingZipWriterTest
+{
+    private final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+    @After
+    public void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void writesEntriesInOrderWithBufferedAndOversizedMembers()
+            throws Exception
+    {
+        Map<String, byte[]> expected = new LinkedHashMap<>();
+        List<ZipMember> members = new ArrayList<>();
+        Random random = new Random( 42 );
+        for ( int i = 0; i < 40; i++ )
+        {
+            byte[] content = new byte[i % 5 == 0 ? 300000 : random.nextInt( 5000 )];
+            random.nextBytes( content );
+            expected.put( "entry-" + i, content );
+            members.add( new ZipMember( "entry-" + i, () -> new ByteArrayInputStream( content ) ) );
+        }
+        members.add( new ZipMember( "missing", () -> null ) );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StreamingZipWriter( executor, 4, 100000 ).write( members, out );
+
+        List<String> names = new ArrayList<>( expected.keySet() );
+        int count = 0;
+        try (ZipInputStream zip = new ZipInputStream( new ByteArrayInputStream( out.toByteArray() ) ))
+        {
+            ZipEntry entry;
+            while ( ( entry = zip.getNextEntry() ) != null )
+            {
+                String name = names.get( count++ );
+                assertThat( entry.getName(), equalTo( name ) );
+
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buf = new byte[4096];
+                int read;
+                while ( ( read = zip.read( buf ) ) > -1 )
+                {
+                    content.write( buf, 0, read );
+                }
+                assertThat( Arrays.equals( content.toByteArray(), expected.get( name ) ), equalTo( true ) );
+            }
+        }
+
+        assertThat( count, equalTo( expected.size() ) );
+    }
+
+    @Test
+    public void readsInlineWhenExecutorRefusesReadAhead()
+            throws Exception
+    {
+        List<ZipMember> members = new ArrayList<>();
+        for ( int i = 0; i < 10; i++ )
+        {
+            members.add( new ZipMember( "entry-" + i, () -> new ByteArrayInputStream( new byte[100] ) ) );
+        }
+
+        Executor overloaded = r -> {
+            throw new RejectedExecutionException( "overloaded" );
+        };
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StreamingZipWriter( overloaded ).write( members, out );
+
+        int count = 0;
+        try (ZipInputStream zip = new ZipInputStream( new ByteArrayInputStream( out.toByteArray() ) ))
+        {
+            while ( zip.getNextEntry() != null )
+            {
+                count++;
+            }
+        }
+        assertThat( count, equalTo( 10 ) );
+    }
+
+    @Test
+    public void failedWriteStopsRunningReadAhead()
+            throws Exception
+    {
+        final CountDownLatch reading = new CountDownLatch( 1 );
+        final CountDownLatch closed = new CountDownLatch( 1 );
+
+        List<ZipMember> members = new ArrayList<>();
+        members.add( new ZipMember( "first", () -> new ByteArrayInputStream( new byte[10] ) ) );
+        members.add( new ZipMember( "endless", () -> new InputStream()
+        {
+            @Override
+            public int read()
+            {
+                reading.countDown();
+                return 0;
+            }
+
+            @Override
+            public void close()
+            {
+                closed.countDown();
+            }
+        } ) );
+
+        OutputStream brokenClient = new OutputStream()
+        {
+            @Override
+            public void write( int b )
+                    throws IOException
+            {
+                // fail once the read-ahead of the second member is running
+                try
+                {
+                    reading.await( 5, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException( "client went away" );
+            }
+        };
+
+        try
+        {
+            new StreamingZipWriter( executor, 4, Integer.MAX_VALUE - 1 ).write( members, brokenClient );
+            fail( "Expected the write failure to propagate" );
+        }
+        catch ( IOException e )
+        {
+            assertThat( e.getMessage(), equalTo( "client went away" ) );
+        }
+
+        assertThat( closed.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+    }
+
+    @Test
+    public void failureReadingMemberFailsTheZip()
+            throws Exception
+    {
+        List<ZipMember> members = new ArrayList<>();
+        members.add( new ZipMember( "good", () -> new ByteArrayInputStream( new byte[10] ) ) );
+        members.add( new ZipMember( "bad", () -> {
+            throw new IOException( "boom" );
+        } ) );
+
+        try
+        {
+            new StreamingZipWriter( executor ).write( members, new ByteArrayOutputStream() );
+            fail( "Expected the failure to read a member to propagate" );
+        }
+        catch ( IOException e )
+        {
+            assertThat( e.getMessage(), equalTo( "boom" ) );
+        }
+    }
+}
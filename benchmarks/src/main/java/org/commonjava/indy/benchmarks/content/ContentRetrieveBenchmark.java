@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.benchmarks.content;
+
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.benchmarks.fixture.BenchmarkContentFixture;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.core.content.ContentGeneratorManager;
+import org.commonjava.indy.core.content.DefaultContentDigester;
+import org.commonjava.indy.core.content.DefaultContentManager;
+import org.commonjava.indy.core.content.group.GroupRepositoryFilterManager;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
+import org.commonjava.maven.galley.model.Transfer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+
+/**
+ * Measures {@link DefaultContentManager#retrieve} for a hosted repository, a remote repository and a group whose only
+ * member holding the path is a remote repository at the end of the innermost of depth nested groups. Remote content
+ * comes from the stand-in transport on first access and from the local cache afterwards, which is the steady state
+ * for hot artifacts.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ContentRetrieveBenchmark
+{
+    private static final String PATH = "org/foo/bar/1.0/bar-1.0.pom";
+
+    private static final String CONTENT = "<project><groupId>org.foo</groupId><artifactId>bar</artifactId></project>";
+
+    @Param( { "5", "20", "50" } )
+    private int groupSize;
+
+    @Param( { "1", "3" } )
+    private int groupDepth;
+
+    private BenchmarkContentFixture fixture;
+
+    private DefaultContentManager contentManager;
+
+    private HostedRepository hosted;
+
+    private RemoteRepository remote;
+
+    private Group group;
+
+    @Setup( Level.Trial )
+    public void setup()
+            throws Exception
+    {
+        fixture = new BenchmarkContentFixture();
+
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        contentManager = new DefaultContentManager( fixture.getStoreManager(), fixture.getDownloadManager(),
+                                                    new IndyObjectMapper( true ), new SpecialPathManagerImpl(),
+                                                    fixture.getNotFoundCache(),
+                                                    new DefaultContentDigester( fixture.getContentAccess(),
+                                                                                fixture.getCache(
+                                                                                        "content-metadata" ) ),
+                                                    new ContentGeneratorManager(), config,
+                                                    new GroupRepositoryFilterManager( config,
+                                                                                      Collections.emptyList() ) );
+
+        hosted = new HostedRepository( MAVEN_PKG_KEY, "hosted" );
+        fixture.store( hosted );
+        fixture.writeLocal( hosted, PATH, CONTENT );
+
+        remote = new RemoteRepository( MAVEN_PKG_KEY, "remote", "http://repo.example.com/maven2/" );
+        fixture.store( remote );
+        fixture.registerRemote( remote, PATH, CONTENT );
+
+        final RemoteRepository tail = new RemoteRepository( MAVEN_PKG_KEY, "tail", "http://tail.example.com/maven2/" );
+        fixture.registerRemote( tail, PATH, CONTENT );
+
+        final int width = Math.max( 1, groupSize / groupDepth );
+        group = fixture.storeGroupTree( "group", groupDepth, width, tail );
+    }
+
+    @TearDown( Level.Trial )
+    public void teardown()
+            throws Exception
+    {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Transfer retrieveFromHosted()
+            throws IndyWorkflowException
+    {
+        return contentManager.retrieve( hosted, PATH );
+    }
+
+    @Benchmark
+    public Transfer retrieveFromRemote()
+            throws IndyWorkflowException
+    {
+        return contentManager.retrieve( remote, PATH );
+    }
+
+    @Benchmark
+    public Transfer retrieveFromGroup()
+            throws IndyWorkflowException
+    {
+        return contentManager.retrieve( group, PATH );
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.benchmarks.content;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.content.GroupRepositoryFilter;
+import org.commonjava.indy.core.content.group.GroupRepositoryFilterManager;
+import org.commonjava.indy.core.content.group.ReversePatternNameGroupRepositoryFilter;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+
+/**
+ * Measures {@link GroupRepositoryFilterManager#filter(String, Group, List)} with a chain of reverse-pattern filters
+ * (the kind used to hide "rh-build" style repositories from community paths) over the concrete members of a group.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class GroupRepositoryFilterBenchmark
+{
+    private static final String PATH = "org/foo/bar/1.0/bar-1.0.pom";
+
+    @Param( { "20", "200" } )
+    private int groupSize;
+
+    @Param( { "1", "4", "16" } )
+    private int filterCount;
+
+    private GroupRepositoryFilterManager filterManager;
+
+    private Group group;
+
+    private List<ArtifactStore> members;
+
+    @Setup( Level.Trial )
+    public void setup()
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setRepositoryFilterEnabled( true );
+
+        final List<GroupRepositoryFilter> filters = new ArrayList<>();
+        for ( int i = 0; i < filterCount; i++ )
+        {
+            final int priority = i;
+            filters.add( new ReversePatternNameGroupRepositoryFilter( ".+-redhat-.+", "build-" + i + "-.+", true )
+            {
+                @Override
+                public int getPriority()
+                {
+                    return priority;
+                }
+            } );
+        }
+
+        filterManager = new GroupRepositoryFilterManager( config, filters );
+
+        group = new Group( MAVEN_PKG_KEY, "group" );
+        members = new ArrayList<>();
+        for ( int i = 0; i < groupSize; i++ )
+        {
+            ArtifactStore member = i % 4 == 0 ?
+                    new RemoteRepository( MAVEN_PKG_KEY, "remote-" + i, "http://repo" + i + ".example.com/" ) :
+                    new HostedRepository( MAVEN_PKG_KEY, "build-" + ( i % Math.max( 1, filterCount ) ) + "-" + i );
+            group.addConstituent( member );
+            members.add( member );
+        }
+    }
+
+    @Benchmark
+    public List<ArtifactStore> filter()
+    {
+        return filterManager.filter( PATH, group, members );
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.benchmarks.db;
+
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+
+/**
+ * Measures {@link MemoryStoreDataManager#affectedBy(java.util.Collection)} over a two-level group tree. With the
+ * default parameters the data manager holds 10k stores: 8000 hosted repositories, 1800 leaf groups of 20 repositories
+ * each, and 200 top-level groups of 9 leaf groups each.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class AffectedByBenchmark
+{
+    @Param( "8000" )
+    private int repositories;
+
+    @Param( "1800" )
+    private int leafGroups;
+
+    @Param( "200" )
+    private int topGroups;
+
+    @Param( "20" )
+    private int leafGroupSize;
+
+    private MemoryStoreDataManager dataManager;
+
+    private final List<StoreKey> repoKeys = new ArrayList<>();
+
+    private final List<StoreKey> batch = new ArrayList<>();
+
+    private int next;
+
+    @Setup( Level.Trial )
+    public void setup()
+            throws IndyDataException
+    {
+        final Random random = new Random( 42 );
+        final ChangeSummary summary = new ChangeSummary( ChangeSummary.SYSTEM_USER, "benchmark" );
+
+        dataManager = new MemoryStoreDataManager( true );
+
+        for ( int i = 0; i < repositories; i++ )
+        {
+            HostedRepository repo = new HostedRepository( MAVEN_PKG_KEY, "repo-" + i );
+            dataManager.storeArtifactStore( repo, summary, false, false, new EventMetadata() );
+            repoKeys.add( repo.getKey() );
+        }
+
+        final List<StoreKey> leafKeys = new ArrayList<>();
+        for ( int i = 0; i < leafGroups; i++ )
+        {
+            Group group = new Group( MAVEN_PKG_KEY, "leaf-" + i );
+            for ( int j = 0; j < leafGroupSize; j++ )
+            {
+                group.addConstituent( repoKeys.get( random.nextInt( repoKeys.size() ) ) );
+            }
+            dataManager.storeArtifactStore( group, summary, false, false, new EventMetadata() );
+            leafKeys.add( group.getKey() );
+        }
+
+        final int topGroupSize = Math.max( 1, leafGroups / Math.max( 1, topGroups ) );
+        for ( int i = 0; i < topGroups; i++ )
+        {
+            Group group = new Group( MAVEN_PKG_KEY, "top-" + i );
+            for ( int j = 0; j < topGroupSize; j++ )
+            {
+                group.addConstituent( leafKeys.get( ( i * topGroupSize + j ) % leafKeys.size() ) );
+            }
+            dataManager.storeArtifactStore( group, summary, false, false, new EventMetadata() );
+        }
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            batch.add( repoKeys.get( random.nextInt( repoKeys.size() ) ) );
+        }
+    }
+
+    @Benchmark
+    public Set<Group> affectedBySingleRepository()
+            throws IndyDataException
+    {
+        next = ( next + 1 ) % repoKeys.size();
+        return dataManager.affectedBy( Collections.singletonList( repoKeys.get( next ) ) );
+    }
+
+    @Benchmark
+    public Set<Group> affectedByBatchOfRepositories()
+            throws IndyDataException
+    {
+        return dataManager.affectedBy( batch );
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.benchmarks.db;
+
+import org.commonjava.indy.benchmarks.fixture.BenchmarkContentFixture;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.db.common.DefaultArtifactStoreQuery;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DefaultArtifactStoreQuery#getOrderedConcreteStoresInGroup(String)} over depth nested groups of
+ * width hosted repositories each, both when the flattened membership is served from the data manager's cache and when
+ * it has to be rebuilt by walking the groups.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class GroupOrderingBenchmark
+{
+    @Param( { "5", "20", "100" } )
+    private int width;
+
+    @Param( { "1", "3", "6" } )
+    private int depth;
+
+    private BenchmarkContentFixture fixture;
+
+    private MemoryStoreDataManager dataManager;
+
+    private Group group;
+
+    @Setup( Level.Trial )
+    public void setup()
+            throws Exception
+    {
+        fixture = new BenchmarkContentFixture();
+        dataManager = fixture.getStoreManager();
+        group = fixture.storeGroupTree( "group", depth, width, null );
+    }
+
+    @TearDown( Level.Trial )
+    public void teardown()
+            throws Exception
+    {
+        fixture.close();
+    }
+
+    @Benchmark
+    public List<ArtifactStore> orderedConcreteStoresCached()
+            throws IndyDataException
+    {
+        return dataManager.query().enabledState( true ).getOrderedConcreteStoresInGroup( group.getName() );
+    }
+
+    @Benchmark
+    public List<ArtifactStore> orderedConcreteStoresRebuilt()
+            throws IndyDataException
+    {
+        dataManager.getGroupMembershipCache().clear();
+        return dataManager.query().enabledState( true ).getOrderedConcreteStoresInGroup( group.getName() );
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.benchmarks.fixture;
+
+import org.apache.commons.io.FileUtils;
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.content.DownloadManager;
+import org.commonjava.indy.content.IndyLocationExpander;
+import org.commonjava.indy.core.content.DefaultDirectContentAccess;
+import org.commonjava.indy.core.content.DefaultDownloadManager;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.galley.RepositoryLocation;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.commonjava.indy.test.fixture.core.TestCacheProvider;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.TransferManager;
+import org.commonjava.maven.galley.config.TransportManagerConfig;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.internal.TransferManagerImpl;
+import org.commonjava.maven.galley.internal.xfer.DownloadHandler;
+import org.commonjava.maven.galley.internal.xfer.ExistenceHandler;
+import org.commonjava.maven.galley.internal.xfer.ListingHandler;
+import org.commonjava.maven.galley.internal.xfer.UploadHandler;
+import org.commonjava.maven.galley.io.NoOpTransferDecorator;
+import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+import org.commonjava.maven.galley.testing.core.transport.TestTransport;
+import org.commonjava.maven.galley.testing.core.transport.job.TestDownload;
+import org.commonjava.maven.galley.transport.TransportManagerImpl;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfiguration;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+
+/**
+ * Wires the content retrieval stack the same way the unit tests do, without CDI: a {@link MemoryStoreDataManager},
+ * a {@link TestCacheProvider} on a temporary directory, and a {@link TestTransport} standing in for remote
+ * repositories, so nothing leaves the JVM while benchmarking.
+ */
+public class BenchmarkContentFixture
+{
+    private final File dir;
+
+    private final MemoryStoreDataManager storeManager;
+
+    private final TestCacheProvider cacheProvider;
+
+    private final TestTransport transport;
+
+    private final TransferManager transferManager;
+
+    private final DownloadManager downloadManager;
+
+    private final DefaultDirectContentAccess contentAccess;
+
+    private final NotFoundCache nfc;
+
+    private final DefaultCacheManager cacheManager;
+
+    private final ExecutorService transferExecutor;
+
+    private final ExecutorService batchExecutor;
+
+    private final ChangeSummary summary = new ChangeSummary( ChangeSummary.SYSTEM_USER, "benchmark" );
+
+    public BenchmarkContentFixture()
+            throws IOException
+    {
+        dir = Files.createTempDirectory( "indy-benchmark" ).toFile();
+
+        storeManager = new MemoryStoreDataManager( true );
+
+        cacheProvider = new TestCacheProvider( new File( dir, "cache" ), new NoOpFileEventManager(),
+                                               new TransferDecoratorManager( new NoOpTransferDecorator() ) );
+
+        transport = new TestTransport();
+        nfc = new MemoryNotFoundCache();
+        transferExecutor = Executors.newFixedThreadPool( 4 );
+        batchExecutor = Executors.newFixedThreadPool( 4 );
+
+        TransportManagerConfig transportManagerConfig = new TransportManagerConfig();
+        transferManager = new TransferManagerImpl( new TransportManagerImpl( transport ), cacheProvider, nfc,
+                                                   new NoOpFileEventManager(),
+                                                   new DownloadHandler( nfc, transportManagerConfig, transferExecutor ),
+                                                   new UploadHandler( nfc, transportManagerConfig, transferExecutor ),
+                                                   new ListingHandler( nfc ), new ExistenceHandler( nfc ),
+                                                   new SpecialPathManagerImpl(), batchExecutor );
+
+        downloadManager = new DefaultDownloadManager( storeManager, transferManager,
+                                                      new IndyLocationExpander( storeManager ),
+                                                      newWeftExecutor( "benchmark-rescan" ) );
+
+        contentAccess = new DefaultDirectContentAccess( downloadManager, newWeftExecutor( "benchmark-content-access" ) );
+
+        GlobalConfiguration globalConfiguration =
+                new GlobalConfigurationBuilder().globalJmxStatistics().allowDuplicateDomains( true ).build();
+        cacheManager = new DefaultCacheManager( globalConfiguration, new ConfigurationBuilder().build() );
+    }
+
+    public void store( final ArtifactStore store )
+            throws IndyDataException
+    {
+        storeManager.storeArtifactStore( store, summary, false, false, new EventMetadata() );
+    }
+
+    /**
+     * Build a chain of nested groups, depth levels deep. Each level holds width hosted repositories followed by the
+     * next level; the innermost level ends with the given tail store (if any), so a path found only in the tail makes
+     * a retrieval walk every other member first.
+     *
+     * @return the outermost group
+     */
+    public Group storeGroupTree( final String prefix, final int depth, final int width, final ArtifactStore tail )
+            throws IndyDataException
+    {
+        Group inner = null;
+        for ( int level = depth - 1; level >= 0; level-- )
+        {
+            Group group = new Group( MAVEN_PKG_KEY, prefix + "-" + level );
+            for ( int i = 0; i < width; i++ )
+            {
+                HostedRepository hosted = new HostedRepository( MAVEN_PKG_KEY, prefix + "-" + level + "-hosted-" + i );
+                store( hosted );
+                group.addConstituent( hosted );
+            }
+
+            if ( inner != null )
+            {
+                group.addConstituent( inner );
+            }
+            else if ( tail != null )
+            {
+                store( tail );
+                group.addConstituent( tail );
+            }
+
+            store( group );
+            inner = group;
+        }
+
+        return inner;
+    }
+
+    /**
+     * Write content directly into the local cache of a store, as if it had been uploaded or downloaded before.
+     */
+    public void writeLocal( final ArtifactStore store, final String path, final String content )
+            throws IOException
+    {
+        cacheProvider.writeToCache( new ConcreteResource( LocationUtils.toLocation( store ), path ), content );
+    }
+
+    /**
+     * Make content available from the stand-in transport of a remote repository.
+     */
+    public void registerRemote( final RemoteRepository remote, final String path, final String content )
+    {
+        transport.registerDownload( new ConcreteResource( new RepositoryLocation( remote ), path ),
+                                    new TestDownload( content.getBytes() ) );
+    }
+
+    public <K, V> CacheHandle<K, V> getCache( final String name )
+    {
+        Cache<K, V> cache = cacheManager.getCache( name, true );
+        return new CacheHandle<>( name, cache );
+    }
+
+    public WeftExecutorService newWeftExecutor( final String name )
+    {
+        return new PoolWeftExecutorService( name, (ThreadPoolExecutor) Executors.newCachedThreadPool(), 2, 10f, false,
+                                            null, null );
+    }
+
+    public void close()
+            throws IOException
+    {
+        transferExecutor.shutdownNow();
+        batchExecutor.shutdownNow();
+        cacheManager.stop();
+        FileUtils.deleteDirectory( dir );
+    }
+
+    public MemoryStoreDataManager getStoreManager()
+    {
+        return storeManager;
+    }
+
+    public TestCacheProvider getCacheProvider()
+    {
+        return cacheProvider;
+    }
+
+    public TransferManager getTransferManager()
+    {
+        return transferManager;
+    }
+
+    public DownloadManager getDownloadManager()
+    {
+        return downloadManager;
+    }
+
+    public DefaultDirectContentAccess getContentAccess()
+    {
+        return contentAccess;
+    }
+
+    public NotFoundCache getNotFoundCache()
+    {
+        return nfc;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.benchmarks.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import org.commonjava.indy.metrics.IndyMetricsManager;
+import org.commonjava.indy.metrics.MetricHandle;
+import org.commonjava.indy.metrics.conf.IndyMetricsConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures the overhead {@link IndyMetricsManager#wrapWithStandardMetrics} adds to a trivial call, with the metric
+ * name supplied on each call and with a precompiled {@link MetricHandle}. Run with -prof gc to see the allocations.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class MetricsWrapperBenchmark
+{
+    private static final String METRIC = "indy.benchmark.operation";
+
+    private IndyMetricsManager metricsManager;
+
+    private MetricHandle handle;
+
+    private final Supplier<Integer> operation = () -> 42;
+
+    @Setup( Level.Trial )
+    public void setup()
+    {
+        IndyMetricsConfig config = new IndyMetricsConfig();
+        config.setNodePrefix( "benchmark" );
+
+        metricsManager = new IndyMetricsManager( new MetricRegistry(), config );
+        handle = metricsManager.getHandle( METRIC );
+    }
+
+    @Benchmark
+    public Integer unmeasured()
+    {
+        return operation.get();
+    }
+
+    @Benchmark
+    public Integer measuredByName()
+    {
+        return metricsManager.wrapWithStandardMetrics( operation, () -> METRIC );
+    }
+
+    @Benchmark
+    public Integer measuredByHandle()
+    {
+        return metricsManager.wrapWithStandardMetrics( operation, handle );
+    }
+}
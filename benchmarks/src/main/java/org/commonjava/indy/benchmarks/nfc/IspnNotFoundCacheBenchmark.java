@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.benchmarks.nfc;
+
+import org.commonjava.indy.benchmarks.fixture.BenchmarkContentFixture;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.core.inject.IspnNotFoundCache;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+
+/**
+ * Measures {@link IspnNotFoundCache#isMissing(ConcreteResource)} against a local Infinispan cache holding the given
+ * number of not-found entries, for paths that are recorded as missing and for paths that are not.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class IspnNotFoundCacheBenchmark
+{
+    @Param( { "1000", "100000" } )
+    private int entries;
+
+    private BenchmarkContentFixture fixture;
+
+    private IspnNotFoundCache nfc;
+
+    private final List<ConcreteResource> missing = new ArrayList<>();
+
+    private final List<ConcreteResource> present = new ArrayList<>();
+
+    private int next;
+
+    @Setup( Level.Trial )
+    public void setup()
+            throws Exception
+    {
+        fixture = new BenchmarkContentFixture();
+
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        nfc = new IspnNotFoundCache( config, fixture.getCache( "nfc" ) );
+
+        final Location location =
+                LocationUtils.toLocation( new RemoteRepository( MAVEN_PKG_KEY, "remote", "http://repo.example.com/" ) );
+
+        for ( int i = 0; i < entries; i++ )
+        {
+            ConcreteResource resource = new ConcreteResource( location, "org/foo/missing-" + i + "/1.0/missing.pom" );
+            nfc.addMissing( resource );
+            if ( missing.size() < 1024 )
+            {
+                missing.add( resource );
+            }
+        }
+
+        for ( int i = 0; i < 1024; i++ )
+        {
+            present.add( new ConcreteResource( location, "org/foo/present-" + i + "/1.0/present.pom" ) );
+        }
+    }
+
+    @TearDown( Level.Trial )
+    public void teardown()
+            throws Exception
+    {
+        fixture.close();
+    }
+
+    @Benchmark
+    public boolean isMissingHit()
+    {
+        next = ( next + 1 ) % missing.size();
+        return nfc.isMissing( missing.get( next ) );
+    }
+
+    @Benchmark
+    public boolean isMissingMiss()
+    {
+        next = ( next + 1 ) % present.size();
+        return nfc.isMissing( present.get( next ) );
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.benchmarks.pkg.maven;
+
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.benchmarks.fixture.BenchmarkContentFixture;
+import org.commonjava.indy.core.content.group.GroupMergeHelper;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.pkg.maven.content.MavenMetadataGenerator;
+import org.commonjava.indy.pkg.maven.content.MetadataCacheManager;
+import org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.maven.internal.type.StandardTypeMapper;
+import org.commonjava.maven.galley.maven.parse.XMLInfrastructure;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+
+/**
+ * Measures a full regeneration of a group's maven-metadata.xml by
+ * {@link MavenMetadataGenerator#generateGroupFileContent(Group, List, String, EventMetadata)}: the merged file and its
+ * cache entry are dropped before each invocation, so every call merges the metadata of all hosted members.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class MavenMetadataMergeBenchmark
+{
+    private static final String PATH = "org/foo/bar/maven-metadata.xml";
+
+    @Param( { "5", "20", "50" } )
+    private int groupSize;
+
+    @Param( { "10", "100" } )
+    private int versionsPerMember;
+
+    private BenchmarkContentFixture fixture;
+
+    private MavenMetadataGenerator generator;
+
+    private MetadataCacheManager metadataCacheManager;
+
+    private Group group;
+
+    private final List<ArtifactStore> members = new ArrayList<>();
+
+    private ConcreteResource merged;
+
+    @Setup( Level.Trial )
+    public void setup()
+            throws Exception
+    {
+        fixture = new BenchmarkContentFixture();
+
+        metadataCacheManager = new MetadataCacheManager( fixture.getCache( "maven-metadata-cache" ),
+                                                         fixture.getCache( "maven-metadata-key-cache" ) );
+
+        generator = new MavenMetadataGenerator( fixture.getContentAccess(), fixture.getStoreManager(),
+                                                new XMLInfrastructure(), new StandardTypeMapper(),
+                                                new MavenMetadataMerger(),
+                                                new GroupMergeHelper( fixture.getDownloadManager() ),
+                                                new MemoryNotFoundCache(),
+                                                fixture.newWeftExecutor( "benchmark-metadata-generator" ),
+                                                metadataCacheManager );
+
+        group = new Group( MAVEN_PKG_KEY, "group" );
+        for ( int i = 0; i < groupSize; i++ )
+        {
+            HostedRepository hosted = new HostedRepository( MAVEN_PKG_KEY, "hosted-" + i );
+            fixture.store( hosted );
+            fixture.writeLocal( hosted, PATH, metadata( i ) );
+
+            group.addConstituent( hosted );
+            members.add( hosted );
+        }
+        fixture.store( group );
+
+        merged = new ConcreteResource( LocationUtils.toLocation( group ), PATH );
+    }
+
+    @TearDown( Level.Trial )
+    public void teardown()
+            throws Exception
+    {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Transfer mergeGroupMetadata()
+            throws IndyWorkflowException, IOException
+    {
+        if ( fixture.getCacheProvider().exists( merged ) )
+        {
+            fixture.getCacheProvider().delete( merged );
+        }
+        metadataCacheManager.remove( group.getKey(), PATH );
+
+        return generator.generateGroupFileContent( group, members, PATH, new EventMetadata() );
+    }
+
+    /**
+     * Member i publishes versions i.0 .. i.(versionsPerMember - 1), plus a shared 0.1 to exercise de-duplication.
+     */
+    private String metadata( final int member )
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<metadata>\n" )
+          .append( "  <groupId>org.foo</groupId>\n  <artifactId>bar</artifactId>\n  <versioning>\n" )
+          .append( "    <latest>" ).append( member ).append( '.' ).append( versionsPerMember - 1 ).append( "</latest>\n" )
+          .append( "    <release>" ).append( member ).append( '.' ).append( versionsPerMember - 1 ).append( "</release>\n" )
+          .append( "    <versions>\n      <version>0.1</version>\n" );
+
+        for ( int v = 0; v < versionsPerMember; v++ )
+        {
+            sb.append( "      <version>" ).append( member ).append( '.' ).append( v ).append( "</version>\n" );
+        }
+
+        sb.append( "    </versions>\n    <lastUpdated>20200101000000</lastUpdated>\n  </versioning>\n</metadata>\n" );
+        return sb.toString();
+    }
+}
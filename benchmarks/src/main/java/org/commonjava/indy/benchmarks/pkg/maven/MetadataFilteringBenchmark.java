@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.benchmarks.pkg.maven;
+
+import org.commonjava.indy.pkg.maven.content.MetadataFilteringOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures {@link MetadataFilteringOutputStream} filtering a GA maven-metadata.xml written in 8 KB chunks, the way
+ * remote downloads are. Run with <code>-prof gc</code>: <code>gc.alloc.rate.norm</code> divided by the size of the
+ * generated document (see {@link #metadata(int)}) is the allocation per filtered byte.
+ * <p>
+ * Every fourth version is a snapshot and <code>&lt;latest&gt;</code> is a snapshot too, so filtering snapshots also
+ * exercises the held-back <code>&lt;latest&gt;</code> path.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class MetadataFilteringBenchmark
+{
+    private static final int CHUNK = 8192;
+
+    @Param( { "100", "1000", "10000" } )
+    private int versions;
+
+    @Param( { "snapshots", "releases" } )
+    private String filtered;
+
+    private byte[] metadata;
+
+    private int size;
+
+    @Setup( Level.Trial )
+    public void setup()
+    {
+        metadata = metadata( versions );
+        size = metadata.length;
+    }
+
+    @Benchmark
+    public void filter( final Blackhole bh )
+            throws IOException
+    {
+        final boolean allowsSnapshots = !"snapshots".equals( filtered );
+        try (OutputStream out = new MetadataFilteringOutputStream( new BlackholeOutputStream( bh ), allowsSnapshots,
+                                                                   !allowsSnapshots, null, null ))
+        {
+            for ( int i = 0; i < size; i += CHUNK )
+            {
+                out.write( metadata, i, Math.min( CHUNK, size - i ) );
+            }
+        }
+    }
+
+    private static byte[] metadata( final int versions )
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<metadata>\n" )
+          .append( "  <groupId>org.foo</groupId>\n  <artifactId>bar</artifactId>\n  <versioning>\n" )
+          .append( "    <latest>" ).append( versions ).append( ".0-SNAPSHOT</latest>\n" )
+          .append( "    <release>" ).append( versions - 1 ).append( ".0</release>\n" )
+          .append( "    <versions>\n" );
+
+        for ( int v = 0; v < versions; v++ )
+        {
+            sb.append( "      <version>" ).append( v ).append( v % 4 == 3 ? ".0-SNAPSHOT" : ".0" ).append( "</version>\n" );
+        }
+
+        sb.append( "    </versions>\n    <lastUpdated>20200101000000</lastUpdated>\n  </versioning>\n</metadata>\n" );
+        return sb.toString().getBytes( UTF_8 );
+    }
+
+    private static final class BlackholeOutputStream
+            extends OutputStream
+    {
+        private final Blackhole bh;
+
+        private BlackholeOutputStream( final Blackhole bh )
+        {
+            this.bh = bh;
+        }
+
+        @Override
+        public void write( final int b )
+        {
+            bh.consume( b );
+        }
+
+        @Override
+        public void write( final byte[] b, final int off, final int len )
+        {
+            bh.consume( b );
+            bh.consume( len );
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.benchmarks.pkg.npm;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.pkg.npm.content.DecoratorUtils;
+import org.commonjava.indy.pkg.npm.content.TarballMaskingInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares masking the tarball urls of an npm package.json in memory ({@link DecoratorUtils#updatePackageJson}, the
+ * way the masking decorator used to) with {@link TarballMaskingInputStream}. Run with <code>-prof gc</code> to compare
+ * allocation as well.
+ * <p>
+ * By default a packument with {@link #versions} versions is generated, shaped like the registry's (a readme and a
+ * few KB of metadata per version). Pass <code>-p packument=/path/to/package.json</code> to use a real one instead.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class NpmPackageMaskingBenchmark
+{
+    private static final String CONTEXT_URL = "http://localhost:8080/api/content/npm/group/public";
+
+    @Param( { "" } )
+    private String packument;
+
+    @Param( { "500", "5000" } )
+    private int versions;
+
+    private byte[] raw;
+
+    @Setup( Level.Trial )
+    public void setup()
+            throws IOException
+    {
+        raw = packument.isEmpty() ? generate( versions ) : Files.readAllBytes( Paths.get( packument ) );
+    }
+
+    @Benchmark
+    public void inMemory( final Blackhole bh )
+            throws IOException
+    {
+        String masked = DecoratorUtils.updatePackageJson(
+                IOUtils.toString( new ByteArrayInputStream( raw ), UTF_8 ), CONTEXT_URL );
+        consume( new ByteArrayInputStream( masked.getBytes( UTF_8 ) ), bh );
+    }
+
+    @Benchmark
+    public void streaming( final Blackhole bh )
+            throws IOException
+    {
+        consume( new TarballMaskingInputStream( new ByteArrayInputStream( raw ), CONTEXT_URL, null ), bh );
+    }
+
+    private void consume( final InputStream in, final Blackhole bh )
+            throws IOException
+    {
+        byte[] buf = new byte[8192];
+        try (InputStream stream = in)
+        {
+            int read;
+            while ( ( read = stream.read( buf ) ) > 0 )
+            {
+                bh.consume( buf );
+                bh.consume( read );
+            }
+        }
+    }
+
+    private static byte[] generate( final int versions )
+    {
+        StringBuilder readme = new StringBuilder();
+        for ( int i = 0; i < 40; i++ )
+        {
+            readme.append( "Lorem ipsum dolor sit amet, consectetur adipiscing elit. \\n" );
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append( "{\n  \"_id\": \"bench\",\n  \"name\": \"bench\",\n  \"dist-tags\": {\n    \"latest\": \"1.0." )
+          .append( versions - 1 )
+          .append( "\"\n  },\n  \"versions\": {\n" );
+
+        for ( int v = 0; v < versions; v++ )
+        {
+            sb.append( "    \"1.0." ).append( v ).append( "\": {\n" )
+              .append( "      \"name\": \"bench\",\n      \"version\": \"1.0." ).append( v ).append( "\",\n" )
+              .append( "      \"description\": \"Benchmark package\",\n" )
+              .append( "      \"readme\": \"" ).append( readme ).append( "\",\n" )
+              .append( "      \"dependencies\": {\n        \"lodash\": \"^4.17.15\",\n        \"debug\": \"^4.1.1\"\n      },\n" )
+              .append( "      \"dist\": {\n" )
+              .append( "        \"integrity\": \"sha512-" ).append( Integer.toHexString( v * 31 ) ).append( "\",\n" )
+              .append( "        \"shasum\": \"2ae2d661e906c1a01e044a71bb5b2743942183e5\",\n" )
+              .append( "        \"tarball\": \"https://registry.npmjs.org/bench/-/bench-1.0." ).append( v ).append( ".tgz\"\n" )
+              .append( "      }\n    }" ).append( v < versions - 1 ? ",\n" : "\n" );
+        }
+
+        sb.append( "  }\n}\n" );
+        return sb.toString().getBytes( UTF_8 );
+    }
+}
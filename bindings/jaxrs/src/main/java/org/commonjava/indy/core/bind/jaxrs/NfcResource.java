@@ -25,6 +25,7 @@ import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.bind.jaxrs.IndyResources;
 import org.commonjava.indy.bind.jaxrs.util.REST;
 import org.commonjava.indy.bind.jaxrs.util.ResponseHelper;
+import org.commonjava.indy.core.bind.jaxrs.util.NfcStreamingOutput;
 import org.commonjava.indy.core.ctl.NfcController;
 import org.commonjava.indy.core.model.Page;
 import org.commonjava.indy.model.core.StoreKey;
@@ -166,17 +167,17 @@ public class NfcResource
                     final @ApiParam( name = "pageSize", value = "page size" )
                     @QueryParam( "pageSize" ) Integer pageSize )
     {
-        NotFoundCacheDTO dto;
         Page page = new Page( pageIndex, pageSize);
         if ( page != null && page.allowPaging() )
         {
             Pagination<NotFoundCacheDTO> nfcPagination = controller.getAllMissing( page );
-            dto = nfcPagination.getCurrData();
+            return responseHelper.formatOkResponseWithJsonEntity( nfcPagination.getCurrData() );
         }
-        else {
-            dto = controller.getAllMissing();
-        }
-        return responseHelper.formatOkResponseWithJsonEntity( dto );
+
+        // the full listing can be huge, so write it out as we read it
+        return responseHelper.formatOkResponseWithEntity(
+                        new NfcStreamingOutput( serializer, controller, controller.getMissingLocations(), false ),
+                        ApplicationContent.application_json );
     }
 
     @GET
@@ -215,19 +216,21 @@ public class NfcResource
         final StoreKey key = new StoreKey( type, name );
         try
         {
-            NotFoundCacheDTO dto;
             Page page = new Page(pageIndex, pageSize);
             if ( page != null && page.allowPaging() )
             {
                 Pagination<NotFoundCacheDTO> nfcPagination = controller.getMissing( key, page );
-                dto = nfcPagination.getCurrData();
+                response = responseHelper.formatOkResponseWithJsonEntity( nfcPagination.getCurrData(),
+                                                                          rb -> responseHelper.markDeprecated( rb,
+                                                                                                               altPath ) );
             }
             else
             {
-                dto = controller.getMissing( key );
+                response = responseHelper.formatOkResponseWithEntity( streamMissing( key ),
+                                                                      ApplicationContent.application_json,
+                                                                      rb -> responseHelper.markDeprecated( rb,
+                                                                                                           altPath ) );
             }
-            response = responseHelper.formatOkResponseWithJsonEntity( dto,
-                                                                      rb->responseHelper.markDeprecated( rb, altPath ) );
         }
         catch ( final IndyWorkflowException e )
         {
@@ -289,19 +292,17 @@ public class NfcResource
         final StoreKey key = new StoreKey( packageType, type, name );
         try
         {
-            NotFoundCacheDTO dto;
             Page page = new Page(pageIndex, pageSize);
             if ( page != null && page.allowPaging() )
             {
                 Pagination<NotFoundCacheDTO> nfcPagination = controller.getMissing( key, page );
-                dto = nfcPagination.getCurrData();
-
+                response = responseHelper.formatOkResponseWithJsonEntity( nfcPagination.getCurrData() );
             }
             else
             {
-                dto = controller.getMissing( key );
+                response = responseHelper.formatOkResponseWithEntity( streamMissing( key ),
+                                                                      ApplicationContent.application_json );
             }
-            response = responseHelper.formatOkResponseWithJsonEntity( dto );
         }
         catch ( final IndyWorkflowException e )
         {
@@ -309,4 +310,12 @@ public class NfcResource
         }
         return response;
     }
+
+    private NfcStreamingOutput streamMissing( final StoreKey key )
+            throws IndyWorkflowException
+    {
+        // a group lists only the members with missing paths; a single store always gets its (maybe empty) section
+        return new NfcStreamingOutput( serializer, controller, controller.getMissingLocations( key ),
+                                       key.getType() != StoreType.group );
+    }
 }
@@ -16,6 +16,7 @@
 package org.commonjava.indy.core.bind.jaxrs.admin;
 
 
+import static javax.ws.rs.core.Response.Status.ACCEPTED;
 import static javax.ws.rs.core.Response.Status.CONFLICT;
 import static javax.ws.rs.core.Response.noContent;
 import static javax.ws.rs.core.Response.notModified;
@@ -75,6 +76,7 @@ import org.commonjava.indy.model.core.RemoteRepository;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.model.core.dto.StoreListingDTO;
+import org.commonjava.indy.model.core.dto.StorePurgeStatus;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.util.ApplicationContent;
 import org.slf4j.Logger;
@@ -353,19 +355,23 @@ public class StoreAdminHandler
     }
 
     @ApiOperation("Delete an artifact store")
-    @ApiResponses({@ApiResponse(code = 204, response = ArtifactStore.class, message = "The store was deleted (or didn't exist in the first place)"),})
+    @ApiResponses({@ApiResponse(code = 204, response = ArtifactStore.class, message = "The store was deleted (or didn't exist in the first place)"),
+        @ApiResponse(code = 202, response = StorePurgeStatus.class, message = "The store and its content are being deleted in the background (deleteContent=true&async=true)"),})
     @Path("/{name}")
     @DELETE
     public Response delete(final @PathParam("packageType") String packageType,
                            final @ApiParam(allowableValues = "hosted,group,remote", required = true) @PathParam("type") String type,
                            final @ApiParam(required = true) @PathParam("name") String name,
                            final @QueryParam("deleteContent") boolean deleteContent,
+                           final @ApiParam("Delete the content in the background and track it via /api/admin/purge (only with deleteContent)")
+                           @QueryParam("async") boolean async,
                            @Context final HttpServletRequest request,
-                           final @Context SecurityContext securityContext) {
+                           final @Context SecurityContext securityContext,
+                           final @Context UriInfo uriInfo) {
         final StoreType st = StoreType.get(type);
         final StoreKey key = new StoreKey(packageType, st, name);
 
-        logger.info( "Deleting: {}, deleteContent: {}", key, deleteContent );
+        logger.info( "Deleting: {}, deleteContent: {}, async: {}", key, deleteContent, async );
         Response response;
         try {
             String summary = null;
@@ -387,9 +393,17 @@ public class StoreAdminHandler
 
             String user = securityManager.getUser(securityContext, request);
 
-            adminController.delete( key, user, summary, deleteContent );
+            if (deleteContent && async) {
+                final StorePurgeStatus status = adminController.purge( key, user, summary );
+                final URI uri = uriInfo.getBaseUriBuilder().path("/api/admin/purge").path(status.getId()).build();
+
+                response = responseHelper.formatOkResponseWithJsonEntity(status,
+                                                                         rb -> rb.status(ACCEPTED).location(uri));
+            } else {
+                adminController.delete( key, user, summary, deleteContent );
 
-            response = noContent().build();
+                response = noContent().build();
+            }
         } catch (final IndyWorkflowException e) {
             logger.error(e.getMessage(), e);
             response = responseHelper.formatResponse(e);
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs.admin;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.bind.jaxrs.IndyResources;
+import org.commonjava.indy.bind.jaxrs.util.REST;
+import org.commonjava.indy.bind.jaxrs.util.ResponseHelper;
+import org.commonjava.indy.core.ctl.StorePurgeManager;
+import org.commonjava.indy.model.core.dto.StorePurgeStatus;
+import org.commonjava.indy.util.ApplicationContent;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import java.util.List;
+
+@Api( value = "Store Purges", description = "Track and resume background deletions of stores and their content" )
+@Path( "/api/admin/purge" )
+@Produces( ApplicationContent.application_json )
+@REST
+public class StorePurgeHandler
+        implements IndyResources
+{
+    @Inject
+    private StorePurgeManager purgeManager;
+
+    @Inject
+    private ResponseHelper responseHelper;
+
+    @ApiOperation( "Retrieve the status of all known store purges" )
+    @ApiResponse( code = 200, message = "List of store purges.", response = StorePurgeStatus.class,
+                  responseContainer = "List" )
+    @GET
+    public List<StorePurgeStatus> getAll()
+    {
+        return purgeManager.getAll();
+    }
+
+    @ApiOperation( "Retrieve the status of a store purge" )
+    @ApiResponses( { @ApiResponse( code = 200, message = "Purge status.", response = StorePurgeStatus.class ),
+                           @ApiResponse( code = 404, message = "No such purge." ) } )
+    @Path( "{id}" )
+    @GET
+    public StorePurgeStatus getStatus( @ApiParam( required = true ) @PathParam( "id" ) String id )
+    {
+        StorePurgeStatus status = purgeManager.getStatus( id );
+        if ( status == null )
+        {
+            throw new WebApplicationException( Response.Status.NOT_FOUND );
+        }
+
+        return status;
+    }
+
+    @ApiOperation( "Resume a failed store purge, skipping the directories it already completed" )
+    @ApiResponses( { @ApiResponse( code = 200, message = "Purge resumed.", response = StorePurgeStatus.class ),
+                           @ApiResponse( code = 404, message = "No such purge." ),
+                           @ApiResponse( code = 409, message = "The purge didn't fail." ) } )
+    @Path( "{id}/resume" )
+    @POST
+    public StorePurgeStatus resume( @ApiParam( required = true ) @PathParam( "id" ) String id )
+    {
+        StorePurgeStatus status = null;
+        try
+        {
+            status = purgeManager.resume( id );
+        }
+        catch ( IndyWorkflowException e )
+        {
+            responseHelper.throwError( e );
+        }
+
+        if ( status == null )
+        {
+            throw new WebApplicationException( Response.Status.NOT_FOUND );
+        }
+
+        return status;
+    }
+}
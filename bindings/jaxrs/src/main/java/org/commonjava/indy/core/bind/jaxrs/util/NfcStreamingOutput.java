@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.indy.core.ctl.NfcController;
+import org.commonjava.indy.model.galley.KeyedLocation;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Writes the not-found cache entries of the given locations in the JSON layout of
+ * {@link org.commonjava.indy.model.core.dto.NotFoundCacheDTO}, one path at a time as the cache hands them over, so the
+ * listing is never held in memory as a whole.
+ */
+public class NfcStreamingOutput
+        implements StreamingOutput
+{
+    private final ObjectMapper mapper;
+
+    private final NfcController controller;
+
+    private final List<? extends KeyedLocation> locations;
+
+    private final boolean includeEmpty;
+
+    /**
+     * @param includeEmpty whether to write a section for locations without missing paths
+     */
+    public NfcStreamingOutput( final ObjectMapper mapper, final NfcController controller,
+                               final List<? extends KeyedLocation> locations, final boolean includeEmpty )
+    {
+        this.mapper = mapper;
+        this.controller = controller;
+        this.locations = locations;
+        this.includeEmpty = includeEmpty;
+    }
+
+    @Override
+    public void write( final OutputStream out )
+            throws IOException, WebApplicationException
+    {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator( out ))
+        {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart( "sections" );
+
+            for ( KeyedLocation location : locations )
+            {
+                writeSection( generator, location );
+            }
+
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        catch ( UncheckedIOException e )
+        {
+            throw e.getCause();
+        }
+    }
+
+    private void writeSection( final JsonGenerator generator, final KeyedLocation location )
+            throws IOException
+    {
+        final boolean[] started = { false };
+        if ( includeEmpty )
+        {
+            startSection( generator, location );
+            started[0] = true;
+        }
+
+        controller.streamMissing( location, path -> {
+            try
+            {
+                if ( !started[0] )
+                {
+                    startSection( generator, location );
+                    started[0] = true;
+                }
+                generator.writeString( path );
+            }
+            catch ( IOException e )
+            {
+                throw new UncheckedIOException( e );
+            }
+        } );
+
+        if ( started[0] )
+        {
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
+        }
+    }
+
+    private void startSection( final JsonGenerator generator, final KeyedLocation location )
+            throws IOException
+    {
+        generator.writeStartObject();
+        generator.writeObjectField( "key", location.getKey() );
+        generator.writeArrayFieldStart( "paths" );
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs.util;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.core.ctl.NfcController;
+import org.commonjava.indy.core.inject.ExpiringMemoryNotFoundCache;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.dto.NotFoundCacheDTO;
+import org.commonjava.indy.model.core.dto.NotFoundCacheSectionDTO;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class NfcStreamingOutputTest
+{
+    private final IndyObjectMapper mapper = new IndyObjectMapper( true );
+
+    private final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( new DefaultIndyConfiguration() );
+
+    private final KeyedLocation first = LocationUtils.toLocation( new HostedRepository( MAVEN_PKG_KEY, "first" ) );
+
+    private final KeyedLocation empty = LocationUtils.toLocation( new HostedRepository( MAVEN_PKG_KEY, "empty" ) );
+
+    @Test
+    public void writesNotFoundCacheDTOLayout()
+            throws Exception
+    {
+        nfc.addMissing( new ConcreteResource( first, "/path/one" ) );
+        nfc.addMissing( new ConcreteResource( first, "/path/two" ) );
+
+        NotFoundCacheDTO dto = write( false );
+
+        Map<StoreKey, Set<String>> sections = sections( dto );
+        assertThat( sections.size(), equalTo( 1 ) );
+        assertThat( sections.get( first.getKey() ),
+                    equalTo( new HashSet<>( Arrays.asList( "/path/one", "/path/two" ) ) ) );
+    }
+
+    @Test
+    public void emptyLocationsOnlyWrittenWhenAsked()
+            throws Exception
+    {
+        nfc.addMissing( new ConcreteResource( first, "/path/one" ) );
+
+        assertThat( sections( write( false ) ).containsKey( empty.getKey() ), equalTo( false ) );
+
+        Map<StoreKey, Set<String>> sections = sections( write( true ) );
+        assertThat( sections.size(), equalTo( 2 ) );
+        assertThat( sections.get( empty.getKey() ).isEmpty(), equalTo( true ) );
+    }
+
+    private NotFoundCacheDTO write( final boolean includeEmpty )
+            throws Exception
+    {
+        NfcController controller = new NfcController( nfc, null );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NfcStreamingOutput( mapper, controller, Arrays.asList( first, empty ), includeEmpty ).write( out );
+
+        return mapper.readValue( out.toByteArray(), NotFoundCacheDTO.class );
+    }
+
+    private Map<StoreKey, Set<String>> sections( final NotFoundCacheDTO dto )
+    {
+        Map<StoreKey, Set<String>> result = new HashMap<>();
+        for ( NotFoundCacheSectionDTO section : dto.getSections() )
+        {
+            result.put( section.getKey(), section.getPaths() );
+        }
+        return result;
+    }
+}
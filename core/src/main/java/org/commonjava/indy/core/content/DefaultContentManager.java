@@ -17,6 +17,10 @@ package org.commonjava.indy.core.content;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.ThreadContext;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.content.ContentDigester;
@@ -27,8 +31,10 @@ import org.commonjava.indy.core.content.group.GroupRepositoryFilterManager;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.measure.annotation.Measure;
+import org.commonjava.indy.metrics.IndyMetricsManager;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.RemoteRepository;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.model.galley.KeyedLocation;
@@ -51,15 +57,26 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import static org.commonjava.indy.IndyContentConstants.CASCADE;
 import static org.commonjava.indy.IndyContentConstants.CHECK_CACHE_ONLY;
+import static org.commonjava.indy.conf.DefaultIndyConfiguration.DEFAULT_REQUEST_TIMEOUT_SECONDS;
+import static org.commonjava.indy.conf.IndyConfiguration.SPECULATIVE_RETRIEVAL_WIDTH_METADATA;
 import static org.commonjava.indy.data.StoreDataManager.IGNORE_READONLY;
+import static org.commonjava.indy.metrics.IndyMetricsConstants.getSupername;
 import static org.commonjava.indy.model.core.StoreType.group;
 import static org.commonjava.indy.model.core.StoreType.hosted;
+import static org.commonjava.indy.model.core.StoreType.remote;
 import static org.commonjava.indy.util.ContentUtils.dedupeListing;
 import static org.commonjava.maven.galley.io.SpecialPathConstants.HTTP_METADATA_EXT;
 
@@ -67,6 +84,8 @@ public class DefaultContentManager
         implements ContentManager
 {
 
+    private static final String SPECULATIVE_RETRIEVAL_METRIC = "indy.content.group.speculative";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -96,6 +115,15 @@ public class DefaultContentManager
     @Inject
     private GroupRepositoryFilterManager repositoryFilterManager;
 
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "group-speculative-retrieval", threads = 32, priority = 8, maxLoadFactor = 10,
+                     loadSensitive = ExecutorConfig.BooleanLiteral.TRUE )
+    private WeftExecutorService speculativeRetrievalService;
+
+    @Inject
+    private IndyMetricsManager metricsManager;
+
     protected DefaultContentManager()
     {
     }
@@ -114,6 +142,32 @@ public class DefaultContentManager
         this.contentGeneratorManager = contentGeneratorManager;
     }
 
+    public DefaultContentManager( final StoreDataManager storeManager, final DownloadManager downloadManager,
+                                  final IndyObjectMapper mapper, final SpecialPathManager specialPathManager,
+                                  final NotFoundCache nfc, final ContentDigester contentDigester,
+                                  final ContentGeneratorManager contentGeneratorManager,
+                                  final IndyConfiguration indyConfig,
+                                  final GroupRepositoryFilterManager repositoryFilterManager )
+    {
+        this( storeManager, downloadManager, mapper, specialPathManager, nfc, contentDigester,
+              contentGeneratorManager );
+        this.indyConfig = indyConfig;
+        this.repositoryFilterManager = repositoryFilterManager;
+    }
+
+    public DefaultContentManager( final StoreDataManager storeManager, final DownloadManager downloadManager,
+                                  final IndyObjectMapper mapper, final SpecialPathManager specialPathManager,
+                                  final NotFoundCache nfc, final ContentDigester contentDigester,
+                                  final ContentGeneratorManager contentGeneratorManager,
+                                  final IndyConfiguration indyConfig,
+                                  final GroupRepositoryFilterManager repositoryFilterManager,
+                                  final WeftExecutorService speculativeRetrievalService )
+    {
+        this( storeManager, downloadManager, mapper, specialPathManager, nfc, contentDigester,
+              contentGeneratorManager, indyConfig, repositoryFilterManager );
+        this.speculativeRetrievalService = speculativeRetrievalService;
+    }
+
     @Override
     public Transfer retrieveFirst( final List<? extends ArtifactStore> stores, final String path )
             throws IndyWorkflowException
@@ -220,9 +274,14 @@ public class DefaultContentManager
             item = contentGeneratorManager.generateGroupFileContent( (Group) store, members, path, eventMetadata );
             boolean generated = ( item != null );
 
-            if ( !generated )
+            if ( !generated && PathMaskChecker.checkMask( store, path ) )
             {
-                if ( PathMaskChecker.checkMask( store, path ) )
+                int width = getSpeculativeRetrievalWidth( (Group) store );
+                if ( width > 0 && speculativeRetrievalService != null )
+                {
+                    item = retrieveSpeculatively( (Group) store, members, path, width, eventMetadata );
+                }
+                else
                 {
                     for ( final ArtifactStore member : members )
                     {
@@ -261,6 +320,174 @@ public class DefaultContentManager
         return item;
     }
 
+    private int getSpeculativeRetrievalWidth( final Group group )
+    {
+        String override = group.getMetadata( SPECULATIVE_RETRIEVAL_WIDTH_METADATA );
+        if ( StringUtils.isNotBlank( override ) )
+        {
+            try
+            {
+                return Integer.parseInt( override.trim() );
+            }
+            catch ( NumberFormatException e )
+            {
+                logger.warn( "Invalid {} metadata in {}: '{}'. Using the configured default.",
+                             SPECULATIVE_RETRIEVAL_WIDTH_METADATA, group.getKey(), override );
+            }
+        }
+
+        return indyConfig == null ? 0 : indyConfig.getGroupSpeculativeRetrievalWidth();
+    }
+
+    /**
+     * Retrieve from the group members strictly in order, while probing the existence of the next 'width' remote
+     * members in parallel. A member whose probe came back negative is not retrieved from upstream, only offered to the
+     * content generators. A probe is waited for up to the member's timeout (or the request timeout). Once a
+     * member returns the content, any probes still outstanding are cancelled.
+     */
+    private Transfer retrieveSpeculatively( final Group group, final List<ArtifactStore> members, final String path,
+                                            final int width, final EventMetadata eventMetadata )
+    {
+        // probes run on the pool with the request's context, e.g. for metrics and tracing
+        final ThreadContext context = ThreadContext.getContext( false );
+        final Map<Integer, Probe> probes = new HashMap<>();
+        int nextProbe = 1;
+
+        Transfer item = null;
+        try
+        {
+            for ( int i = 0; i < members.size() && item == null; i++ )
+            {
+                final ArtifactStore member = members.get( i );
+
+                // keep up to 'width' probes in flight ahead of the member we're about to try.
+                nextProbe = Math.max( nextProbe, i + 1 );
+                for ( ; nextProbe < members.size() && nextProbe <= i + width; nextProbe++ )
+                {
+                    final ArtifactStore candidate = members.get( nextProbe );
+                    if ( remote == candidate.getType() && !candidate.isDisabled() )
+                    {
+                        probes.put( nextProbe, new Probe( candidate, path, context ) );
+                    }
+                }
+
+                final Boolean exists = awaitProbe( probes.remove( i ), member, path );
+                try
+                {
+                    if ( Boolean.FALSE.equals( exists ) )
+                    {
+                        // nothing upstream, but the member may still generate the content, as after a doRetrieve() miss
+                        markSpeculative( "skips" );
+                        item = doGenerate( member, path, eventMetadata );
+                    }
+                    else
+                    {
+                        item = doRetrieve( member, path, eventMetadata );
+                    }
+                }
+                catch ( IndyWorkflowException e )
+                {
+                    logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}",
+                                  path, member, group, e.getMessage() );
+                }
+
+                if ( item != null && Boolean.TRUE.equals( exists ) )
+                {
+                    markSpeculative( "wins" );
+                }
+            }
+        }
+        finally
+        {
+            // probes that never left the queue cost nothing; the others made an upstream call for nothing
+            probes.values().forEach( probe -> {
+                probe.future.cancel( true );
+                if ( probe.started.get() )
+                {
+                    markSpeculative( "wastes" );
+                }
+            } );
+        }
+
+        return item;
+    }
+
+    private final class Probe
+    {
+        private final AtomicBoolean started = new AtomicBoolean( false );
+
+        private final Future<Boolean> future;
+
+        private Probe( final ArtifactStore store, final String path, final ThreadContext context )
+        {
+            this.future = speculativeRetrievalService.submit( () -> {
+                started.set( true );
+                final ThreadContext old = ThreadContext.getContext( false );
+                ThreadContext.setContext( context );
+                try
+                {
+                    return downloadManager.exists( store, path );
+                }
+                finally
+                {
+                    ThreadContext.setContext( old );
+                }
+            } );
+        }
+    }
+
+    /**
+     * @return the probe result, or null if there was no probe or it failed (in which case the member is tried anyway)
+     */
+    private Boolean awaitProbe( final Probe probe, final ArtifactStore member, final String path )
+    {
+        if ( probe == null )
+        {
+            return null;
+        }
+
+        int timeout = ( (RemoteRepository) member ).getTimeoutSeconds();
+        if ( timeout < 1 )
+        {
+            timeout = indyConfig == null ? DEFAULT_REQUEST_TIMEOUT_SECONDS : indyConfig.getRequestTimeoutSeconds();
+        }
+
+        try
+        {
+            return probe.future.get( timeout, TimeUnit.SECONDS );
+        }
+        catch ( TimeoutException e )
+        {
+            logger.debug( "Existence probe of {} in {} timed out after {}s", path, member.getKey(), timeout );
+            probe.future.cancel( true );
+            if ( probe.started.get() )
+            {
+                markSpeculative( "wastes" );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            logger.debug( "Interrupted waiting for existence probe of {} in {}", path, member.getKey() );
+        }
+        catch ( ExecutionException e )
+        {
+            logger.debug( "Existence probe of {} in {} failed: {}", path, member.getKey(), e.getMessage() );
+        }
+
+        return null;
+    }
+
+    void markSpeculative( final String outcome )
+    {
+        if ( metricsManager != null )
+        {
+            metricsManager.getMeter(
+                    getSupername( metricsManager.getConfig().getNodePrefix(), SPECULATIVE_RETRIEVAL_METRIC, outcome ) )
+                          .mark();
+        }
+    }
+
     private List<ArtifactStore> getOrderedConcreteStoresAndFilter( Group group, String path ) throws IndyWorkflowException
     {
         List<ArtifactStore> members;
@@ -300,20 +527,7 @@ public class DefaultContentManager
 
             if ( item == null )
             {
-                item = contentGeneratorManager.generateFileContentAnd( store, path, eventMetadata, transfer -> {
-                    logger.debug( "Resource generated for {}, clean NFC and delete obsolete http-metadata.json",
-                                  transfer.getResource() );
-                    nfc.clearMissing( transfer.getResource() );
-                    Transfer httpMeta = transfer.getSiblingMeta( HTTP_METADATA_EXT );
-                    try
-                    {
-                        httpMeta.delete();
-                    }
-                    catch ( IOException e )
-                    {
-                        logger.warn( "Failed to delete {}", httpMeta.getResource() );
-                    }
-                } );
+                item = generate( store, path, eventMetadata );
             }
         }
         catch ( IndyWorkflowException e )
@@ -324,6 +538,45 @@ public class DefaultContentManager
         return item;
     }
 
+    /**
+     * Same as {@link #doRetrieve(ArtifactStore, String, EventMetadata)} for a store known not to have the path, so only
+     * the content generators are tried.
+     */
+    private Transfer doGenerate( final ArtifactStore store, final String path, final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        Transfer item = null;
+        try
+        {
+            item = generate( store, path, eventMetadata );
+        }
+        catch ( IndyWorkflowException e )
+        {
+            e.filterLocationErrors();
+        }
+
+        return item;
+    }
+
+    private Transfer generate( final ArtifactStore store, final String path, final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        return contentGeneratorManager.generateFileContentAnd( store, path, eventMetadata, transfer -> {
+            logger.debug( "Resource generated for {}, clean NFC and delete obsolete http-metadata.json",
+                          transfer.getResource() );
+            nfc.clearMissing( transfer.getResource() );
+            Transfer httpMeta = transfer.getSiblingMeta( HTTP_METADATA_EXT );
+            try
+            {
+                httpMeta.delete();
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Failed to delete {}", httpMeta.getResource() );
+            }
+        } );
+    }
+
     @Override
     public Transfer store( final ArtifactStore store, final String path, final InputStream stream,
                            final TransferOperation op )
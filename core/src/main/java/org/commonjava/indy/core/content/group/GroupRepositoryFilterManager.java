@@ -15,11 +15,19 @@
  */
 package org.commonjava.indy.core.content.group;
 
-import org.apache.commons.lang.StringUtils;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.content.GroupRepositoryFilter;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.subsys.datafile.DataFile;
 import org.commonjava.indy.subsys.datafile.DataFileManager;
 import org.commonjava.indy.subsys.template.ScriptEngine;
@@ -28,22 +36,38 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import static org.commonjava.indy.subsys.template.ScriptEngine.SCRIPTS_SUBDIR;
 
+/**
+ * Runs the group repository filters, highest priority first. Results of filters that provide a
+ * {@link GroupRepositoryFilter#getResultCacheKey(String, Group) result cache key} are cached per group, as long as
+ * every filter before them in the chain was cached too (otherwise their input isn't determined by the key). Cached
+ * results are only used while the group's concrete members are the same as when they were computed, and are dropped
+ * when the group is updated or deleted.
+ */
 @ApplicationScoped
 public class GroupRepositoryFilterManager
+        implements MetricSet
 {
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     public static final String REPO_FILTER = "repofilter"; // groovy scripts are under "data/scripts/repofilter"
 
+    // guards against a filter returning a key per path
+    private static final int MAX_CACHED_RESULTS_PER_GROUP = 1024;
+
     @Inject
     private DataFileManager dataFileManager;
 
@@ -58,10 +82,30 @@ public class GroupRepositoryFilterManager
 
     private List<GroupRepositoryFilter> groupRepositoryFilters = new ArrayList<>();
 
+    private List<FilterStats> filterChain = Collections.emptyList();
+
+    private final Map<StoreKey, GroupFilterResults> resultCache = new ConcurrentHashMap<>();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
     public GroupRepositoryFilterManager()
     {
     }
 
+    public GroupRepositoryFilterManager( final IndyConfiguration indyConfiguration,
+                                         final List<GroupRepositoryFilter> filters )
+    {
+        this.indyConfiguration = indyConfiguration;
+        if ( indyConfiguration.isRepositoryFilterEnabled() )
+        {
+            groupRepositoryFilters.addAll( filters );
+            Collections.sort( groupRepositoryFilters, Collections.reverseOrder() );
+            filterChain = buildChain();
+        }
+    }
+
     @PostConstruct
     void setup()
     {
@@ -77,9 +121,15 @@ public class GroupRepositoryFilterManager
         }
         loadFilterScripts();
         Collections.sort( groupRepositoryFilters, Collections.reverseOrder() ); // priority is important
+        filterChain = buildChain();
         logger.info( "Set up group repository filters: {}", groupRepositoryFilters );
     }
 
+    private List<FilterStats> buildChain()
+    {
+        return groupRepositoryFilters.stream().map( FilterStats::new ).collect( Collectors.toList() );
+    }
+
     private void loadFilterScripts()
     {
         DataFile filtersDir = dataFileManager.getDataFile( SCRIPTS_SUBDIR, REPO_FILTER );
@@ -140,29 +190,118 @@ public class GroupRepositoryFilterManager
                           format( orderedConcreteStores ) );
         }
 
+        final GroupFilterResults cached = getCachedResults( group.getKey(), orderedConcreteStores );
+
         List<ArtifactStore> ret = orderedConcreteStores;
-        for ( GroupRepositoryFilter repositoryFilter : groupRepositoryFilters )
+        StringBuilder chainKey = new StringBuilder();
+        boolean cacheable = true;
+        for ( int i = 0; i < filterChain.size(); i++ )
         {
-            logger.debug( "Try filter: {}", repositoryFilter.getClass().getSimpleName() );
-            long begin = System.currentTimeMillis();
-            if ( repositoryFilter.canProcess( path, group ) )
+            FilterStats stats = filterChain.get( i );
+            String resultKey = cacheable ? stats.filter.getResultCacheKey( path, group ) : null;
+            if ( resultKey == null )
             {
-                ret = repositoryFilter.filter( path, group, ret );
-                if ( logger.isDebugEnabled() )
-                {
-                    logger.debug( "Filter processed, filter: {}, elapse: {}, ret: {}",
-                                  repositoryFilter.getClass().getSimpleName(), ( System.currentTimeMillis() - begin ),
-                                  format( ret ) );
-                }
+                cacheable = false;
+                ret = apply( stats, path, group, ret );
+                continue;
+            }
+
+            String key = chainKey.append( i ).append( ':' ).append( resultKey ).append( '|' ).toString();
+            List<ArtifactStore> hit = cached.results.get( key );
+            if ( hit != null )
+            {
+                cacheHits.increment();
+                logger.debug( "Filter result cached, filter: {}, key: {}", stats.name, key );
+                ret = hit;
             }
             else
             {
-                logger.debug( "Can not process, filter: {}", repositoryFilter.getClass().getSimpleName() );
+                cacheMisses.increment();
+                ret = Collections.unmodifiableList( apply( stats, path, group, ret ) );
+                if ( cached.results.size() < MAX_CACHED_RESULTS_PER_GROUP )
+                {
+                    cached.results.put( key, ret );
+                }
             }
         }
         return ret;
     }
 
+    private List<ArtifactStore> apply( FilterStats stats, String path, Group group, List<ArtifactStore> stores )
+    {
+        GroupRepositoryFilter repositoryFilter = stats.filter;
+        logger.debug( "Try filter: {}", stats.name );
+        if ( !repositoryFilter.canProcess( path, group ) )
+        {
+            logger.debug( "Can not process, filter: {}", stats.name );
+            return stores;
+        }
+
+        long begin = System.nanoTime();
+        List<ArtifactStore> ret = repositoryFilter.filter( path, group, stores );
+        stats.latency.update( System.nanoTime() - begin );
+        if ( !stores.isEmpty() )
+        {
+            stats.elimination.update( ( stores.size() - ret.size() ) * 100 / stores.size() );
+        }
+
+        if ( logger.isDebugEnabled() )
+        {
+            logger.debug( "Filter processed, filter: {}, ret: {}", stats.name, format( ret ) );
+        }
+        return ret;
+    }
+
+    private GroupFilterResults getCachedResults( StoreKey groupKey, List<ArtifactStore> orderedConcreteStores )
+    {
+        GroupFilterResults cached = resultCache.get( groupKey );
+        if ( cached == null || !cached.isFor( orderedConcreteStores ) )
+        {
+            // new group or its membership changed
+            cached = new GroupFilterResults( orderedConcreteStores );
+            resultCache.put( groupKey, cached );
+        }
+        return cached;
+    }
+
+    public void onStoreUpdate( @Observes final ArtifactStorePostUpdateEvent event )
+    {
+        for ( final ArtifactStore store : event )
+        {
+            if ( store.getType() == StoreType.group )
+            {
+                resultCache.remove( store.getKey() );
+            }
+        }
+    }
+
+    public void onStoreDeletion( @Observes final ArtifactStoreDeletePostEvent event )
+    {
+        for ( final ArtifactStore store : event )
+        {
+            resultCache.remove( store.getKey() );
+        }
+    }
+
+    /**
+     * Per filter latency (ns) and elimination ratio (percent of the candidate stores a filter removed) histograms,
+     * plus hit / miss counts of the result cache.
+     */
+    @Override
+    public Map<String, Metric> getMetrics()
+    {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put( "cache-hits", (Gauge<Long>) cacheHits::sum );
+        metrics.put( "cache-misses", (Gauge<Long>) cacheMisses::sum );
+        metrics.put( "cached-groups", (Gauge<Integer>) resultCache::size );
+        for ( FilterStats stats : filterChain )
+        {
+            metrics.putIfAbsent( stats.name + ".latency", stats.latency );
+            metrics.putIfAbsent( stats.name + ".elimination-ratio", stats.elimination );
+        }
+        return metrics;
+    }
+
     private String format( List<ArtifactStore> stores )
     {
         if ( stores == null )
@@ -172,4 +311,39 @@ public class GroupRepositoryFilterManager
         return stores.stream().map( store -> store.getKey().toString() ).collect( Collectors.toList() ).toString();
     }
 
+    private static final class FilterStats
+    {
+        private final GroupRepositoryFilter filter;
+
+        private final String name;
+
+        private final Histogram latency = new Histogram( new ExponentiallyDecayingReservoir() );
+
+        private final Histogram elimination = new Histogram( new ExponentiallyDecayingReservoir() );
+
+        private FilterStats( final GroupRepositoryFilter filter )
+        {
+            this.filter = filter;
+            this.name = filter.getClass().getSimpleName();
+        }
+    }
+
+    private static final class GroupFilterResults
+    {
+        private final List<ArtifactStore> members;
+
+        private final Map<String, List<ArtifactStore>> results = new ConcurrentHashMap<>();
+
+        private GroupFilterResults( final List<ArtifactStore> members )
+        {
+            this.members = members;
+        }
+
+        private boolean isFor( final List<ArtifactStore> orderedConcreteStores )
+        {
+            // the group membership cache hands out the same (read-only) list until the membership changes, so the
+            // element-wise comparison only runs when the membership wasn't served from it
+            return members == orderedConcreteStores || members.equals( orderedConcreteStores );
+        }
+    }
 }
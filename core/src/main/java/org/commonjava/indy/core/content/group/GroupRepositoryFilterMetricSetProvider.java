@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import com.codahale.metrics.MetricRegistry;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.metrics.MetricSetProvider;
+import org.commonjava.indy.metrics.conf.IndyMetricsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Registers the per filter latency / elimination ratio histograms and result cache gauges of the group repository
+ * filters, when they are enabled.
+ */
+@ApplicationScoped
+public class GroupRepositoryFilterMetricSetProvider
+        implements MetricSetProvider
+{
+    private static final String REPO_FILTER = "indy.group.repo-filter";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private GroupRepositoryFilterManager filterManager;
+
+    @Inject
+    private IndyConfiguration indyConfiguration;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
+    @Override
+    public void registerMetricSet( final MetricRegistry registry )
+    {
+        if ( indyConfiguration.isRepositoryFilterEnabled() )
+        {
+            logger.info( "Adding group repository filter metrics to registry: {}", registry );
+            registry.register( name( metricsConfig.getNodePrefix(), REPO_FILTER ), filterManager );
+        }
+    }
+}
@@ -35,10 +35,44 @@ public abstract class ReversePatternNameGroupRepositoryFilter
 
     protected Pattern filterPattern;
 
+    private final boolean cacheByPathMatch;
+
     public ReversePatternNameGroupRepositoryFilter( String pathPattern, String filterPattern )
+    {
+        this( pathPattern, filterPattern, false );
+    }
+
+    /**
+     * @param cacheByPathMatch whether results may be cached by {@link #getResultCacheKey(String, Group)}. Subclasses
+     * may only pass true if their {@link #canProcess(String, Group)} depends on nothing but the path and the group,
+     * and their {@link #filter(String, Group, List)} on nothing but whether the path matches the path pattern and on
+     * the group members.
+     */
+    protected ReversePatternNameGroupRepositoryFilter( String pathPattern, String filterPattern,
+                                                       boolean cacheByPathMatch )
     {
         this.pathPattern = Pattern.compile( pathPattern );
         this.filterPattern = Pattern.compile( filterPattern );
+        this.cacheByPathMatch = cacheByPathMatch;
+    }
+
+    /**
+     * If the subclass opted in, the result only depends on whether this filter processes the path at all and, if it
+     * does, on whether the path matches the path pattern.
+     */
+    @Override
+    public String getResultCacheKey( String path, Group group )
+    {
+        if ( !cacheByPathMatch )
+        {
+            return null;
+        }
+
+        if ( !canProcess( path, group ) )
+        {
+            return "skip";
+        }
+        return pathPattern.matcher( path ).matches() ? "path-match" : "path-mismatch";
     }
 
     @Override
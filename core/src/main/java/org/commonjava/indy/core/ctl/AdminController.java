@@ -35,6 +35,7 @@ import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.RemoteRepository;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.model.core.dto.StorePurgeStatus;
 import org.commonjava.indy.util.ApplicationStatus;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.model.Transfer;
@@ -71,6 +72,9 @@ public class AdminController
     @Inject
     private StoreValidator storeValidator;
 
+    @Inject
+    private StorePurgeManager purgeManager;
+
     protected AdminController()
     {
     }
@@ -172,13 +176,9 @@ public class AdminController
     public void delete( final StoreKey key, final String user, final String changelog, final boolean deleteContent )
         throws IndyWorkflowException
     {
-        // safe check
         if ( deleteContent )
         {
-            if ( !key.getName().matches( indyConfiguration.getDisposableStorePattern() ) )
-            {
-                throw new IndyWorkflowException( ApplicationStatus.FORBIDDEN.code(), "Content deletion not allowed" );
-            }
+            checkContentDeletionAllowed( key );
         }
 
         try
@@ -203,6 +203,27 @@ public class AdminController
         }
     }
 
+    /**
+     * Delete the store and its content in the background.
+     *
+     * @return the status of the purge job, which can be tracked through {@link StorePurgeManager#getStatus(String)}
+     */
+    public StorePurgeStatus purge( final StoreKey key, final String user, final String changelog )
+        throws IndyWorkflowException
+    {
+        checkContentDeletionAllowed( key );
+        return purgeManager.purge( key, user, changelog );
+    }
+
+    private void checkContentDeletionAllowed( final StoreKey key ) throws IndyWorkflowException
+    {
+        // safe check
+        if ( !key.getName().matches( indyConfiguration.getDisposableStorePattern() ) )
+        {
+            throw new IndyWorkflowException( ApplicationStatus.FORBIDDEN.code(), "Content deletion not allowed" );
+        }
+    }
+
     private void deleteContent( final ArtifactStore store ) throws IndyWorkflowException
     {
         downloadManager.delete( store, ROOT_PATH, new EventMetadata().set( IGNORE_READONLY, Boolean.TRUE ) );
@@ -24,10 +24,12 @@ import static org.commonjava.indy.util.LocationUtils.toLocations;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -88,6 +90,40 @@ public class NfcController
         });
     }
 
+    /**
+     * Locations holding missing entries, sorted by store key. Use with {@link #streamMissing(Location, Consumer)} to
+     * walk the whole NFC without building it in memory the way {@link #getAllMissing()} does.
+     */
+    public List<KeyedLocation> getMissingLocations()
+    {
+        return ( (AbstractNotFoundCache) cache ).getMissingLocations()
+                                                .stream()
+                                                .filter( loc -> loc instanceof KeyedLocation )
+                                                .map( loc -> (KeyedLocation) loc )
+                                                .sorted( Comparator.comparing( loc -> loc.getKey().toString() ) )
+                                                .collect( Collectors.toList() );
+    }
+
+    /**
+     * Locations to list for the given store: the concrete members of a group, or the store itself.
+     */
+    public List<? extends KeyedLocation> getMissingLocations( final StoreKey key )
+                    throws IndyWorkflowException
+    {
+        if ( key.getType() == group )
+        {
+            return toLocations( getConcreteStoresForMissing( key ) );
+        }
+
+        final ArtifactStore store = getStoreForMissing( key );
+        return store == null ? Collections.emptyList() : Collections.singletonList( toLocation( store ) );
+    }
+
+    public void streamMissing( final Location location, final Consumer<String> consumer )
+    {
+        ( (AbstractNotFoundCache) cache ).streamMissing( location, consumer );
+    }
+
     private NotFoundCacheDTO getNotFoundCacheDTO( Map<Location, Set<String>> allMissing )
     {
         final NotFoundCacheDTO dto = new NotFoundCacheDTO();
@@ -138,22 +174,7 @@ public class NfcController
         final NotFoundCacheDTO dto = new NotFoundCacheDTO();
         if ( key.getType() == group )
         {
-            List<ArtifactStore> stores;
-            try
-            {
-                stores = storeManager.query().packageType( key.getPackageType() ).getOrderedConcreteStoresInGroup( key.getName() );
-            }
-            catch ( final IndyDataException e )
-            {
-                throw new IndyWorkflowException( "Failed to retrieve concrete constituent for: %s.", e, key );
-            }
-
-            if ( stores.size() >= MAX_GROUP_MEMBER_SIZE_FOR_GET_MISSING )
-            {
-                throw new IndyWorkflowException( SC_UNPROCESSABLE_ENTITY,
-                                                 "Get missing for group failed (too many members), size: " + stores.size() );
-            }
-
+            final List<ArtifactStore> stores = getConcreteStoresForMissing( key );
             final List<? extends KeyedLocation> locations = toLocations( stores );
             for ( final KeyedLocation location : locations )
             {
@@ -179,16 +200,7 @@ public class NfcController
         }
         else
         {
-            ArtifactStore store;
-            try
-            {
-                store = storeManager.getArtifactStore( key );
-            }
-            catch ( final IndyDataException e )
-            {
-                throw new IndyWorkflowException( "Failed to retrieve ArtifactStore: %s.", e, key );
-            }
-
+            final ArtifactStore store = getStoreForMissing( key );
             if ( store != null )
             {
                 Set<String> missing;
@@ -211,6 +223,41 @@ public class NfcController
         return dto;
     }
 
+    private List<ArtifactStore> getConcreteStoresForMissing( final StoreKey key )
+                    throws IndyWorkflowException
+    {
+        List<ArtifactStore> stores;
+        try
+        {
+            stores = storeManager.query().packageType( key.getPackageType() ).getOrderedConcreteStoresInGroup( key.getName() );
+        }
+        catch ( final IndyDataException e )
+        {
+            throw new IndyWorkflowException( "Failed to retrieve concrete constituent for: %s.", e, key );
+        }
+
+        if ( stores.size() >= MAX_GROUP_MEMBER_SIZE_FOR_GET_MISSING )
+        {
+            throw new IndyWorkflowException( SC_UNPROCESSABLE_ENTITY,
+                                             "Get missing for group failed (too many members), size: " + stores.size() );
+        }
+
+        return stores;
+    }
+
+    private ArtifactStore getStoreForMissing( final StoreKey key )
+                    throws IndyWorkflowException
+    {
+        try
+        {
+            return storeManager.getArtifactStore( key );
+        }
+        catch ( final IndyDataException e )
+        {
+            throw new IndyWorkflowException( "Failed to retrieve ArtifactStore: %s.", e, key );
+        }
+    }
+
     public void clear()
     {
         cache.clearAllMissing();
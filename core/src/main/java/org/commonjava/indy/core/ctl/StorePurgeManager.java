@@ -0,0 +1,465 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.ctl;
+
+import org.commonjava.cdi.util.weft.DrainingExecutorCompletionService;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.content.DirectContentAccess;
+import org.commonjava.indy.content.StoreContentAction;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.dto.StorePurgeStatus;
+import org.commonjava.indy.util.ApplicationStatus;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.core.change.StoreChangeUtil.delete;
+import static org.commonjava.indy.model.core.dto.StorePurgeStatus.State.DONE;
+import static org.commonjava.indy.model.core.dto.StorePurgeStatus.State.FAILED;
+import static org.commonjava.indy.model.core.dto.StorePurgeStatus.State.QUEUED;
+import static org.commonjava.indy.model.core.dto.StorePurgeStatus.State.RUNNING;
+import static org.commonjava.maven.galley.util.PathUtils.ROOT;
+
+/**
+ * Deletes a store together with its content in the background. The storage of the store is walked in parallel, one
+ * task per top-level directory, and the paths are cleared in batches from the store, its affected groups and the
+ * {@link StoreContentAction}s (NFC, metadata cache, etc.). The store definition is deleted once all content is gone.
+ * <p>
+ * Job state is kept in memory, and finished (done or failed) jobs are forgotten after a day. A failed job can be
+ * resumed; directories that were completed before the failure are skipped, and the rest are walked again (deletion is
+ * idempotent). When one directory fails, the walkers of the other directories stop too, so a resumed job never runs
+ * alongside leftovers of the failed run.
+ */
+@ApplicationScoped
+public class StorePurgeManager
+{
+    private static final int BATCH_SIZE = 1000;
+
+    private static final long FINISHED_JOB_RETENTION = TimeUnit.HOURS.toMillis( 24 );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private StoreDataManager storeManager;
+
+    @Inject
+    private DirectContentAccess directContentAccess;
+
+    @Inject
+    private Instance<StoreContentAction> storeContentActions;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "store-purge", threads = 2, priority = 4 )
+    private WeftExecutorService purgeExecutor;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "store-purge-walkers", threads = 8, priority = 4 )
+    private WeftExecutorService walkerExecutor;
+
+    private final Map<String, PurgeJob> jobs = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, PurgeJob> activeJobs = new ConcurrentHashMap<>();
+
+    protected StorePurgeManager()
+    {
+    }
+
+    public StorePurgeManager( final StoreDataManager storeManager, final DirectContentAccess directContentAccess,
+                              final Instance<StoreContentAction> storeContentActions,
+                              final WeftExecutorService purgeExecutor, final WeftExecutorService walkerExecutor )
+    {
+        this.storeManager = storeManager;
+        this.directContentAccess = directContentAccess;
+        this.storeContentActions = storeContentActions;
+        this.purgeExecutor = purgeExecutor;
+        this.walkerExecutor = walkerExecutor;
+    }
+
+    /**
+     * Queue the deletion of the store and its content. If a purge of the same store is already in progress, its status
+     * is returned instead of starting another one.
+     */
+    public StorePurgeStatus purge( final StoreKey key, final String user, final String changelog )
+            throws IndyWorkflowException
+    {
+        try
+        {
+            if ( storeManager.getArtifactStore( key ) == null )
+            {
+                throw new IndyWorkflowException( ApplicationStatus.NOT_FOUND.code(), "No such store: {}", key );
+            }
+        }
+        catch ( IndyDataException e )
+        {
+            throw new IndyWorkflowException( "Failed to retrieve store: {}. Reason: {}", e, key, e.getMessage() );
+        }
+
+        expireFinishedJobs();
+
+        PurgeJob job = new PurgeJob( UUID.randomUUID().toString(), key, user, changelog );
+        PurgeJob existing = activeJobs.putIfAbsent( key, job );
+        if ( existing != null )
+        {
+            logger.info( "Purge of {} is already in progress: {}", key, existing.id );
+            return existing.toStatus();
+        }
+
+        jobs.put( job.id, job );
+        submit( job );
+        return job.toStatus();
+    }
+
+    /**
+     * Re-run a failed purge, skipping the top-level directories it already completed.
+     *
+     * @return the status of the job, or null if there is no such job
+     */
+    public StorePurgeStatus resume( final String id )
+            throws IndyWorkflowException
+    {
+        PurgeJob job = jobs.get( id );
+        if ( job == null )
+        {
+            return null;
+        }
+
+        if ( job.state != FAILED )
+        {
+            throw new IndyWorkflowException( ApplicationStatus.CONFLICT.code(), "Purge {} is {}, not {}", id,
+                                             job.state, FAILED );
+        }
+
+        PurgeJob existing = activeJobs.putIfAbsent( job.storeKey, job );
+        if ( existing != null )
+        {
+            logger.info( "Purge of {} is already in progress: {}", job.storeKey, existing.id );
+            return existing.toStatus();
+        }
+
+        job.state = QUEUED;
+        job.error = null;
+        job.endTime = 0;
+        submit( job );
+        return job.toStatus();
+    }
+
+    public StorePurgeStatus getStatus( final String id )
+    {
+        PurgeJob job = jobs.get( id );
+        return job == null ? null : job.toStatus();
+    }
+
+    public List<StorePurgeStatus> getAll()
+    {
+        return jobs.values().stream().map( PurgeJob::toStatus ).collect( Collectors.toList() );
+    }
+
+    private void submit( final PurgeJob job )
+    {
+        logger.info( "Queueing purge {} of: {}", job.id, job.storeKey );
+        purgeExecutor.execute( () -> {
+            try
+            {
+                run( job );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( String.format( "Purge %s of %s failed. Reason: %s", job.id, job.storeKey,
+                                             e.getMessage() ), e );
+                job.fail( e.getMessage() );
+            }
+            finally
+            {
+                activeJobs.remove( job.storeKey, job );
+            }
+        } );
+    }
+
+    private void run( final PurgeJob job )
+    {
+        job.state = RUNNING;
+        if ( job.startTime == 0 )
+        {
+            job.startTime = System.currentTimeMillis();
+        }
+
+        final ArtifactStore store;
+        final Set<Group> affectedGroups;
+        final Transfer root;
+        try
+        {
+            store = storeManager.getArtifactStore( job.storeKey );
+            if ( store == null )
+            {
+                logger.info( "Store {} is already gone. Nothing to purge.", job.storeKey );
+                job.finish();
+                return;
+            }
+
+            affectedGroups = new HashSet<>( storeManager.query()
+                                                        .packageType( job.storeKey.getPackageType() )
+                                                        .getGroupsAffectedBy( job.storeKey ) );
+
+            root = directContentAccess.getTransfer( store, ROOT );
+        }
+        catch ( IndyDataException | IndyWorkflowException e )
+        {
+            job.fail( String.format( "Failed to prepare purge of: %s. Reason: %s", job.storeKey, e.getMessage() ) );
+            return;
+        }
+
+        String[] topLevel = new String[0];
+        try
+        {
+            if ( root != null && root.exists() )
+            {
+                topLevel = root.list();
+            }
+        }
+        catch ( IOException e )
+        {
+            job.fail( String.format( "Failed to list root of: %s. Reason: %s", job.storeKey, e.getMessage() ) );
+            return;
+        }
+
+        job.totalDirectories = topLevel.length;
+        logger.info( "Purging {} top-level entries of: {}, affected groups: {}", topLevel.length, job.storeKey,
+                     affectedGroups );
+
+        final AtomicBoolean aborted = new AtomicBoolean( false );
+        DrainingExecutorCompletionService<Long> walkService = new DrainingExecutorCompletionService<>( walkerExecutor );
+        for ( String name : topLevel )
+        {
+            if ( job.completedDirectories.contains( name ) )
+            {
+                logger.debug( "Skipping completed directory: {} of: {}", name, job.storeKey );
+                continue;
+            }
+
+            walkService.submit( () -> {
+                long purged = purgeDirectory( job, store, affectedGroups, root.getChild( name ), aborted );
+                if ( !aborted.get() )
+                {
+                    job.completedDirectories.add( name );
+                }
+                return purged;
+            } );
+        }
+
+        try
+        {
+            walkService.drain( purged -> logger.debug( "Purged {} paths of: {}", purged, job.storeKey ) );
+        }
+        catch ( InterruptedException | ExecutionException e )
+        {
+            aborted.set( true );
+
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            logger.error( String.format( "Purge %s of %s failed. Reason: %s", job.id, job.storeKey, cause ), cause );
+            job.fail( String.format( "Failed to purge content of: %s. Reason: %s", job.storeKey,
+                                     cause.getMessage() ) );
+            return;
+        }
+
+        delete( root );
+
+        try
+        {
+            storeManager.deleteArtifactStore( job.storeKey, new ChangeSummary( job.user, job.changelog ),
+                                              new EventMetadata() );
+        }
+        catch ( IndyDataException e )
+        {
+            job.fail( String.format( "Failed to delete: %s. Reason: %s", job.storeKey, e.getMessage() ) );
+            return;
+        }
+
+        job.finish();
+        logger.info( "Purge {} of {} done. Purged {} paths in {}ms", job.id, job.storeKey, job.purgedPaths.get(),
+                     job.endTime - job.startTime );
+    }
+
+    /**
+     * Walk the directory (or file) breadth-first, clearing the files found in batches of {@link #BATCH_SIZE}. Stops
+     * early, leaving the directory incomplete, once another directory of the same run failed.
+     */
+    private long purgeDirectory( final PurgeJob job, final ArtifactStore store, final Set<Group> affectedGroups,
+                                 final Transfer top, final AtomicBoolean aborted )
+            throws IOException, IndyWorkflowException
+    {
+        long purged = 0;
+        List<String> batch = new ArrayList<>( BATCH_SIZE );
+
+        Deque<Transfer> toProcess = new ArrayDeque<>();
+        toProcess.add( top );
+        while ( !toProcess.isEmpty() )
+        {
+            if ( aborted.get() )
+            {
+                logger.debug( "Purge {} of {} failed elsewhere, leaving: {}", job.id, job.storeKey, top.getPath() );
+                return purged;
+            }
+
+            Transfer next = toProcess.poll();
+            if ( !next.isDirectory() )
+            {
+                batch.add( next.getPath() );
+            }
+            else
+            {
+                for ( String filename : next.list() )
+                {
+                    toProcess.add( next.getChild( filename ) );
+                }
+            }
+
+            if ( batch.size() >= BATCH_SIZE )
+            {
+                purged += purgeBatch( job, store, affectedGroups, batch );
+                batch = new ArrayList<>( BATCH_SIZE );
+            }
+        }
+
+        if ( !batch.isEmpty() && !aborted.get() )
+        {
+            purged += purgeBatch( job, store, affectedGroups, batch );
+        }
+
+        if ( !aborted.get() && top.isDirectory() )
+        {
+            delete( top );
+        }
+
+        return purged;
+    }
+
+    private int purgeBatch( final PurgeJob job, final ArtifactStore store, final Set<Group> affectedGroups,
+                            final List<String> paths )
+            throws IndyWorkflowException
+    {
+        logger.debug( "Purging {} paths of: {}", paths.size(), store.getKey() );
+        for ( String path : paths )
+        {
+            delete( directContentAccess.getTransfer( store, path ) );
+            for ( Group group : affectedGroups )
+            {
+                delete( directContentAccess.getTransfer( group, path ) );
+            }
+        }
+
+        storeContentActions.forEach( action -> action.clearStoreContent( paths, store, affectedGroups, true ) );
+
+        job.purgedPaths.addAndGet( paths.size() );
+        return paths.size();
+    }
+
+    private void expireFinishedJobs()
+    {
+        long cutoff = System.currentTimeMillis() - FINISHED_JOB_RETENTION;
+        jobs.values().removeIf( job -> ( job.state == DONE || job.state == FAILED ) && job.endTime < cutoff );
+    }
+
+    private static final class PurgeJob
+    {
+        private final String id;
+
+        private final StoreKey storeKey;
+
+        private final String user;
+
+        private final String changelog;
+
+        private final Set<String> completedDirectories = ConcurrentHashMap.newKeySet();
+
+        private final AtomicLong purgedPaths = new AtomicLong();
+
+        private volatile StorePurgeStatus.State state = QUEUED;
+
+        private volatile int totalDirectories;
+
+        private volatile long startTime;
+
+        private volatile long endTime;
+
+        private volatile String error;
+
+        private PurgeJob( final String id, final StoreKey storeKey, final String user, final String changelog )
+        {
+            this.id = id;
+            this.storeKey = storeKey;
+            this.user = user;
+            this.changelog = changelog;
+        }
+
+        private void fail( final String error )
+        {
+            this.error = error;
+            this.endTime = System.currentTimeMillis();
+            this.state = FAILED;
+        }
+
+        private void finish()
+        {
+            this.endTime = System.currentTimeMillis();
+            this.state = DONE;
+        }
+
+        private StorePurgeStatus toStatus()
+        {
+            StorePurgeStatus status = new StorePurgeStatus();
+            status.setId( id );
+            status.setStoreKey( storeKey );
+            status.setState( state );
+            status.setTotalDirectories( totalDirectories );
+            status.setCompletedDirectories( new HashSet<>( completedDirectories ) );
+            status.setPurgedPaths( purgedPaths.get() );
+            status.setStartTime( startTime );
+            status.setEndTime( endTime );
+            status.setError( error );
+            return status;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Created by ruhan on 12/1/17.
@@ -42,6 +43,33 @@ public abstract class AbstractNotFoundCache implements NotFoundCache
         return Collections.emptySet();
     }
 
+    /**
+     * Locations that currently hold missing entries. Together with {@link #streamMissing(Location, Consumer)}, this
+     * lets callers walk the whole NFC one location at a time instead of loading it with {@link #getAllMissing()}.
+     */
+    public Set<Location> getMissingLocations()
+    {
+        return getAllMissing().keySet();
+    }
+
+    /**
+     * Hand every missing path of the location to the consumer. Implementations read the paths in batches, so the
+     * full listing of a location never has to be held in memory.
+     */
+    public void streamMissing( Location location, Consumer<String> consumer )
+    {
+        getMissing( location ).forEach( consumer );
+    }
+
+    /**
+     * Whether every entry of this NFC is added through this instance, i.e. it isn't shared with other nodes. Local
+     * views of the entries (such as {@link BloomFilteredNotFoundCache}) are only accurate for node-local NFCs.
+     */
+    public boolean isNodeLocal()
+    {
+        return false;
+    }
+
     abstract public long getSize( StoreKey storeKey );
 
     abstract public long getSize();
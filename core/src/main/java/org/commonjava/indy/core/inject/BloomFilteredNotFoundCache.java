@@ -0,0 +1,414 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Puts a {@link CountingBloomFilter} per location in front of another NFC. A path the filter has never seen is
+ * definitely not missing, so {@link #isMissing(ConcreteResource)} answers false without touching the backing cache,
+ * which saves a cache (often remote) round trip for every group member that does have the path.
+ * <p>
+ * Filters are built lazily from the backing cache the first time a location is checked, on a background thread; until
+ * a location's filter is ready, its checks go straight to the backing cache. Filters are kept up to date by
+ * {@link #addMissing(ConcreteResource)} and the clear methods. Entries that expire in the backing cache stay in the
+ * filter as false positives; a location whose filter goes over capacity or shows a high false positive rate is rebuilt
+ * from the backing cache.
+ * <p>
+ * The filters only see entries added through this instance, so the backing cache must be
+ * {@link AbstractNotFoundCache#isNodeLocal() node-local}; a shared NFC would get entries from other nodes that the
+ * filters would wrongly report as absent.
+ */
+public class BloomFilteredNotFoundCache
+        extends AbstractNotFoundCache
+        implements MetricSet
+{
+    static final int INITIAL_CAPACITY = 128;
+
+    private static final int FALSE_POSITIVE_SAMPLE = 1000;
+
+    private static final double MAX_FALSE_POSITIVE_RATE = 0.1;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final AbstractNotFoundCache delegate;
+
+    private final Map<String, LocationFilter> filters = new ConcurrentHashMap<>();
+
+    private final ExecutorService rebuildExecutor;
+
+    private final LongAdder checks = new LongAdder();
+
+    private final LongAdder skipped = new LongAdder();
+
+    private final LongAdder positives = new LongAdder();
+
+    private final LongAdder falsePositives = new LongAdder();
+
+    private final LongAdder rebuilds = new LongAdder();
+
+    /**
+     * @param rebuildExecutor runs the filter (re)builds; owned by the caller
+     */
+    public BloomFilteredNotFoundCache( final AbstractNotFoundCache delegate, final ExecutorService rebuildExecutor )
+    {
+        if ( !delegate.isNodeLocal() )
+        {
+            throw new IllegalArgumentException( "Bloom filters can only front a node-local NFC, not: " + delegate );
+        }
+        this.delegate = delegate;
+        this.rebuildExecutor = rebuildExecutor;
+    }
+
+    @Override
+    public boolean isNodeLocal()
+    {
+        return true;
+    }
+
+    @Override
+    public void addMissing( final ConcreteResource resource )
+    {
+        delegate.addMissing( resource );
+        filterFor( resource.getLocation() ).add( resource.getPath() );
+    }
+
+    @Override
+    public boolean isMissing( final ConcreteResource resource )
+    {
+        checks.increment();
+
+        final LocationFilter filter = filterFor( resource.getLocation() );
+        final CountingBloomFilter bloom = filter.current();
+        if ( bloom != null && !bloom.mightContain( resource.getPath() ) )
+        {
+            skipped.increment();
+            return false;
+        }
+
+        final boolean missing = delegate.isMissing( resource );
+        if ( bloom != null )
+        {
+            positives.increment();
+            if ( !missing )
+            {
+                falsePositives.increment();
+            }
+            filter.recordPositive( !missing );
+        }
+
+        return missing;
+    }
+
+    @Override
+    public void clearMissing( final Location location )
+    {
+        delegate.clearMissing( location );
+
+        // Replacing the filter with an empty one would lose a path added concurrently, between the clear above and the
+        // replacement. Stop answering for the location and rebuild it from the backing cache instead; every path added
+        // from now on goes into the rebuild, so the new filter can only err on the side of false positives.
+        LocationFilter filter = filters.get( keyOf( location ) );
+        if ( filter != null )
+        {
+            filter.reset();
+        }
+    }
+
+    @Override
+    public void clearMissing( final ConcreteResource resource )
+    {
+        // A counting filter may only forget what was added to it. Removing a path that merely looks present (a false
+        // positive) would decrement the counters of other paths and hide them, so only remove paths the backing cache
+        // actually held.
+        LocationFilter filter = filters.get( keyOf( resource.getLocation() ) );
+        boolean held = filter != null && delegate.isMissing( resource );
+
+        delegate.clearMissing( resource );
+        if ( held )
+        {
+            filter.remove( resource.getPath() );
+        }
+    }
+
+    @Override
+    public void clearAllMissing()
+    {
+        delegate.clearAllMissing();
+        filters.clear();
+    }
+
+    @Override
+    public Map<Location, Set<String>> getAllMissing()
+    {
+        return delegate.getAllMissing();
+    }
+
+    @Override
+    public Set<String> getMissing( final Location location )
+    {
+        return delegate.getMissing( location );
+    }
+
+    @Override
+    public Map<Location, Set<String>> getAllMissing( final int pageIndex, final int pageSize )
+    {
+        return delegate.getAllMissing( pageIndex, pageSize );
+    }
+
+    @Override
+    public Set<String> getMissing( final Location location, final int pageIndex, final int pageSize )
+    {
+        return delegate.getMissing( location, pageIndex, pageSize );
+    }
+
+    @Override
+    public Set<Location> getMissingLocations()
+    {
+        return delegate.getMissingLocations();
+    }
+
+    @Override
+    public void streamMissing( final Location location, final Consumer<String> consumer )
+    {
+        delegate.streamMissing( location, consumer );
+    }
+
+    @Override
+    public long getSize( final StoreKey storeKey )
+    {
+        return delegate.getSize( storeKey );
+    }
+
+    @Override
+    public long getSize()
+    {
+        return delegate.getSize();
+    }
+
+    @Override
+    protected IndyConfiguration getIndyConfiguration()
+    {
+        return delegate.getIndyConfiguration();
+    }
+
+    public AbstractNotFoundCache getDelegate()
+    {
+        return delegate;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics()
+    {
+        Map<String, Metric> gauges = new HashMap<>();
+        gauges.put( "locations", (Gauge<Integer>) filters::size );
+        gauges.put( "memory-bytes", (Gauge<Long>) this::getMemoryBytes );
+        gauges.put( "checks", (Gauge<Long>) checks::sum );
+        gauges.put( "skipped", (Gauge<Long>) skipped::sum );
+        gauges.put( "false-positives", (Gauge<Long>) falsePositives::sum );
+        gauges.put( "false-positive-rate", (Gauge<Double>) () -> {
+            long p = positives.sum();
+            return p == 0 ? 0.0 : (double) falsePositives.sum() / p;
+        } );
+        gauges.put( "rebuilds", (Gauge<Long>) rebuilds::sum );
+        return gauges;
+    }
+
+    private long getMemoryBytes()
+    {
+        return filters.values().stream().map( LocationFilter::current ).filter( f -> f != null )
+                      .mapToLong( CountingBloomFilter::getMemoryBytes ).sum();
+    }
+
+    private LocationFilter filterFor( final Location location )
+    {
+        return filters.computeIfAbsent( keyOf( location ), k -> {
+            LocationFilter filter = new LocationFilter( location, null );
+            filter.scheduleRebuild( INITIAL_CAPACITY );
+            return filter;
+        } );
+    }
+
+    private static String keyOf( final Location location )
+    {
+        return location.getName() != null ? location.getName() : location.getUri();
+    }
+
+    private Set<String> loadMissing( final Location location )
+    {
+        final Set<String> paths = new HashSet<>();
+        delegate.streamMissing( location, paths::add );
+        return paths;
+    }
+
+    private final class LocationFilter
+    {
+        private final Location location;
+
+        private volatile CountingBloomFilter bloom;
+
+        // paths added while a rebuild is running, replayed into the new filter; guarded by this
+        private Set<String> pending;
+
+        private final LongAdder filterPositives = new LongAdder();
+
+        private final LongAdder filterFalsePositives = new LongAdder();
+
+        private LocationFilter( final Location location, final CountingBloomFilter bloom )
+        {
+            this.location = location;
+            this.bloom = bloom;
+        }
+
+        CountingBloomFilter current()
+        {
+            return bloom;
+        }
+
+        synchronized void add( final String path )
+        {
+            if ( pending != null )
+            {
+                pending.add( path );
+            }
+
+            if ( bloom != null )
+            {
+                bloom.add( path );
+                if ( bloom.isOverCapacity() )
+                {
+                    scheduleRebuild( bloom.getCapacity() * 2 );
+                }
+            }
+        }
+
+        synchronized void remove( final String path )
+        {
+            if ( pending != null )
+            {
+                pending.remove( path );
+            }
+
+            if ( bloom != null )
+            {
+                bloom.remove( path );
+            }
+        }
+
+        void recordPositive( final boolean falsePositive )
+        {
+            filterPositives.increment();
+            if ( !falsePositive )
+            {
+                return;
+            }
+
+            filterFalsePositives.increment();
+
+            long sampled = filterPositives.sum();
+            if ( sampled >= FALSE_POSITIVE_SAMPLE
+                    && (double) filterFalsePositives.sum() / sampled > MAX_FALSE_POSITIVE_RATE )
+            {
+                CountingBloomFilter current = bloom;
+                scheduleRebuild( current == null ? INITIAL_CAPACITY : current.getCapacity() );
+            }
+        }
+
+        synchronized void reset()
+        {
+            bloom = null;
+            scheduleRebuild( INITIAL_CAPACITY );
+        }
+
+        synchronized void scheduleRebuild( final int capacity )
+        {
+            if ( pending != null )
+            {
+                return; // already rebuilding
+            }
+
+            pending = new HashSet<>();
+            try
+            {
+                rebuildExecutor.execute( () -> rebuild( capacity ) );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                logger.warn( "Cannot rebuild NFC bloom filter for: {}. Reason: {}", location, e.getMessage() );
+                pending = null;
+            }
+        }
+
+        private void rebuild( final int capacity )
+        {
+            CountingBloomFilter next = null;
+            try
+            {
+                Set<String> paths = loadMissing( location );
+                int size = capacity;
+                while ( size < paths.size() * 2 )
+                {
+                    size *= 2;
+                }
+
+                next = new CountingBloomFilter( size );
+                paths.forEach( next::add );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( "Failed to rebuild NFC bloom filter for: " + location, e );
+            }
+
+            synchronized ( this )
+            {
+                if ( next != null )
+                {
+                    pending.forEach( next::add );
+                    bloom = next;
+                    filterPositives.reset();
+                    filterFalsePositives.reset();
+                    rebuilds.increment();
+                    logger.debug( "Rebuilt NFC bloom filter for {}, entries: {}, capacity: {}", location,
+                                  next.size(), next.getCapacity() );
+                }
+                else
+                {
+                    // we can't vouch for this location, so stop answering for it
+                    bloom = null;
+                }
+                pending = null;
+            }
+        }
+    }
+}
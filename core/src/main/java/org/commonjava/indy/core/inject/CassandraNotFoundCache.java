@@ -42,9 +42,13 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+import static org.commonjava.indy.conf.DefaultIndyConfiguration.DEFAULT_NFC_MAX_RESULT_SET_SIZE;
 import static org.commonjava.indy.conf.DefaultIndyConfiguration.DEFAULT_NOT_FOUND_CACHE_TIMEOUT_SECONDS;
+import static org.commonjava.indy.model.core.StoreKey.fromString;
 import static org.commonjava.indy.subsys.cassandra.util.SchemaUtils.getSchemaCreateKeyspace;
 
 @ApplicationScoped
@@ -56,6 +60,8 @@ public class CassandraNotFoundCache
 
     private static final String TIMEOUT_FORMAT = "yyyy-MM-dd HH:mm:ss z";
 
+    private static final long COUNT_CACHE_MILLIS = TimeUnit.SECONDS.toMillis( 60 );
+
     private PreparedStatement preparedInsert;
 
     private PreparedStatement preparedExistQuery;
@@ -68,6 +74,8 @@ public class CassandraNotFoundCache
 
     private PreparedStatement preparedQueryByStore;
 
+    private PreparedStatement preparedQueryStores;
+
     // @formatter:off
     private static String getSchemaCreateTable( String keyspace )
     {
@@ -100,6 +108,10 @@ public class CassandraNotFoundCache
 
     private Session session;
 
+    // rows expire through TTLs without telling us, so per-store counts can't be maintained incrementally. Cache them
+    // for a short while instead of scanning the partition on every request.
+    private final Map<StoreKey, StoreCount> counts = new ConcurrentHashMap<>();
+
     protected CassandraNotFoundCache()
     {
     }
@@ -138,6 +150,8 @@ public class CassandraNotFoundCache
 
         preparedQueryByStore = session.prepare( "SELECT * FROM " + keyspace + ".nfc WHERE storekey=?;" );
 
+        preparedQueryStores = session.prepare( "SELECT DISTINCT storekey FROM " + keyspace + ".nfc;" );
+
         preparedDeleteByStore = session.prepare( "DELETE FROM " + keyspace + ".nfc WHERE storekey=?;" );
 
         preparedDelete = session.prepare( "DELETE FROM " + keyspace + ".nfc WHERE storekey=? AND path=?;" );
@@ -213,6 +227,7 @@ public class CassandraNotFoundCache
         StoreKey key = ( (KeyedLocation) location ).getKey();
         BoundStatement bound = preparedDeleteByStore.bind( key.toString() );
         session.execute( bound );
+        counts.remove( key );
         clearInMemoryCache( location );
     }
 
@@ -250,6 +265,7 @@ public class CassandraNotFoundCache
     public void clearAllMissing()
     {
         session.execute( "TRUNCATE " + keyspace + ".nfc;" );
+        counts.clear();
         clearInMemoryCache();
     }
 
@@ -284,6 +300,37 @@ public class CassandraNotFoundCache
         return matches;
     }
 
+    @Override
+    @Measure
+    public Set<Location> getMissingLocations()
+    {
+        ResultSet result = session.execute( preparedQueryStores.bind() );
+        Set<Location> locations = new HashSet<>();
+        for ( Row row : result )
+        {
+            locations.add( new NfcKeyedLocation( fromString( row.get( "storekey", String.class ) ) ) );
+        }
+        return locations;
+    }
+
+    /**
+     * The driver fetches the partition page by page as the rows are consumed, so no page size limit is needed here.
+     */
+    @Override
+    @Measure
+    public void streamMissing( final Location location, final Consumer<String> consumer )
+    {
+        StoreKey key = ( (KeyedLocation) location ).getKey();
+        BoundStatement bound = preparedQueryByStore.bind( key.toString() );
+        bound.setFetchSize( maxResultSetSize > 0 ? maxResultSetSize : DEFAULT_NFC_MAX_RESULT_SET_SIZE );
+
+        ResultSet result = session.execute( bound );
+        for ( Row row : result )
+        {
+            consumer.accept( row.get( "path", String.class ) );
+        }
+    }
+
     @Override
     @Measure
     public Map<Location, Set<String>> getAllMissing( int pageIndex, int pageSize )
@@ -309,9 +356,15 @@ public class CassandraNotFoundCache
     @Measure
     public long getSize( StoreKey storeKey )
     {
-        BoundStatement bound = preparedCountByStore.bind( storeKey.toString() );
-        ResultSet result = session.execute( bound );
-        return result.one().get( 0, Long.class );
+        StoreCount count = counts.get( storeKey );
+        if ( count == null || count.isExpired() )
+        {
+            BoundStatement bound = preparedCountByStore.bind( storeKey.toString() );
+            ResultSet result = session.execute( bound );
+            count = new StoreCount( result.one().get( 0, Long.class ) );
+            counts.put( storeKey, count );
+        }
+        return count.count;
     }
 
     @Override
@@ -326,4 +379,22 @@ public class CassandraNotFoundCache
         KeyedLocation location = (KeyedLocation) resource.getLocation();
         return location.getKey();
     }
+
+    private static final class StoreCount
+    {
+        private final long count;
+
+        private final long expires;
+
+        private StoreCount( final long count )
+        {
+            this.count = count;
+            this.expires = System.currentTimeMillis() + COUNT_CACHE_MILLIS;
+        }
+
+        private boolean isExpired()
+        {
+            return System.currentTimeMillis() > expires;
+        }
+    }
 }
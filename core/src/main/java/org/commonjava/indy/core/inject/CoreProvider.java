@@ -16,6 +16,8 @@
 package org.commonjava.indy.core.inject;
 
 import com.fasterxml.jackson.databind.Module;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.model.core.io.ModuleSet;
@@ -32,6 +34,7 @@ import javax.enterprise.inject.Default;
 import javax.enterprise.inject.Instance;
 import javax.enterprise.inject.Produces;
 import javax.inject.Inject;
+import java.util.concurrent.ExecutorService;
 
 import static org.commonjava.indy.conf.DefaultIndyConfiguration.CASSANDRA_NFC_PROVIDER;
 import static org.commonjava.indy.conf.DefaultIndyConfiguration.ISPN_NFC_PROVIDER;
@@ -54,6 +57,11 @@ public class CoreProvider
     @NfcCache
     private CacheHandle<String, NfcConcreteResourceWrapper> nfcCache;
 
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "nfc-bloom-filter-rebuild", threads = 1, priority = 2 )
+    private ExecutorService nfcBloomFilterRebuildExecutor;
+
     @Inject
     private Instance<Module> objectMapperModules;
 
@@ -90,15 +98,31 @@ public class CoreProvider
         {
             String nfcProvider = indyConfiguration.getNfcProvider();
             logger.info( "Apply nfc provider: {}", nfcProvider );
+            AbstractNotFoundCache nfc;
             if ( CASSANDRA_NFC_PROVIDER.equals( nfcProvider ) )
             {
-                notFoundCache = new CassandraNotFoundCache( indyConfiguration, cacheProducer,
-                                                            cassandraClient );
+                nfc = new CassandraNotFoundCache( indyConfiguration, cacheProducer, cassandraClient );
             }
             else
             {
-                notFoundCache = new IspnNotFoundCache( indyConfiguration, nfcCache ); // default
+                nfc = new IspnNotFoundCache( indyConfiguration, nfcCache ); // default
+            }
+
+            if ( indyConfiguration.isNfcBloomFilterEnabled() )
+            {
+                if ( nfc.isNodeLocal() )
+                {
+                    logger.info( "Apply bloom filter in front of nfc provider: {}", nfcProvider );
+                    nfc = new BloomFilteredNotFoundCache( nfc, nfcBloomFilterRebuildExecutor );
+                }
+                else
+                {
+                    logger.warn( "NFC bloom filter is enabled, but nfc provider: {} is shared with other nodes. Not "
+                                         + "applying it.", nfcProvider );
+                }
             }
+
+            notFoundCache = nfc;
         }
         return notFoundCache;
     }
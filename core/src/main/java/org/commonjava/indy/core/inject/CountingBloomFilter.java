@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counting Bloom filter over strings, with 4-bit counters packed sixteen to a long. It is sized for a fixed
+ * number of entries at about 1% false positives; past that capacity the false positive rate grows and the owner is
+ * expected to rebuild it bigger (see {@link #isOverCapacity()}).
+ * <p>
+ * A counter that reaches 15 sticks there, so heavily shared slots can never be decremented into a false negative.
+ * Removing a value that was never added can still decrement counters of other values; callers should only remove what
+ * they added.
+ */
+public final class CountingBloomFilter
+{
+    private static final int COUNTERS_PER_ENTRY = 10;
+
+    private static final int HASHES = 7;
+
+    private static final int COUNTERS_PER_WORD = 16;
+
+    private static final long MAX_COUNT = 0xFL;
+
+    private final AtomicLongArray words;
+
+    private final int counters;
+
+    private final int capacity;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    public CountingBloomFilter( final int capacity )
+    {
+        this.capacity = Math.max( 1, capacity );
+        this.counters = this.capacity * COUNTERS_PER_ENTRY;
+        this.words = new AtomicLongArray( ( counters + COUNTERS_PER_WORD - 1 ) / COUNTERS_PER_WORD );
+    }
+
+    public void add( final String value )
+    {
+        final long hash = hash( value );
+        for ( int i = 0; i < HASHES; i++ )
+        {
+            increment( index( hash, i ) );
+        }
+        size.incrementAndGet();
+    }
+
+    public void remove( final String value )
+    {
+        if ( !mightContain( value ) )
+        {
+            return;
+        }
+
+        final long hash = hash( value );
+        for ( int i = 0; i < HASHES; i++ )
+        {
+            decrement( index( hash, i ) );
+        }
+        size.decrementAndGet();
+    }
+
+    /**
+     * @return false if the value was definitely never added (or has been removed), true if it may have been.
+     */
+    public boolean mightContain( final String value )
+    {
+        final long hash = hash( value );
+        for ( int i = 0; i < HASHES; i++ )
+        {
+            if ( count( index( hash, i ) ) == 0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public int size()
+    {
+        return size.get();
+    }
+
+    public boolean isOverCapacity()
+    {
+        return size.get() > capacity;
+    }
+
+    public long getMemoryBytes()
+    {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    private int index( final long hash, final int i )
+    {
+        // Kirsch-Mitzenmacher double hashing: h1 + i * h2
+        int combined = (int) hash + i * (int) ( hash >>> 32 );
+        if ( combined < 0 )
+        {
+            combined = ~combined;
+        }
+        return combined % counters;
+    }
+
+    private long count( final int index )
+    {
+        return ( words.get( index / COUNTERS_PER_WORD ) >>> shift( index ) ) & MAX_COUNT;
+    }
+
+    private void increment( final int index )
+    {
+        final int word = index / COUNTERS_PER_WORD;
+        final int shift = shift( index );
+        while ( true )
+        {
+            long current = words.get( word );
+            if ( ( ( current >>> shift ) & MAX_COUNT ) == MAX_COUNT )
+            {
+                return;
+            }
+            if ( words.compareAndSet( word, current, current + ( 1L << shift ) ) )
+            {
+                return;
+            }
+        }
+    }
+
+    private void decrement( final int index )
+    {
+        final int word = index / COUNTERS_PER_WORD;
+        final int shift = shift( index );
+        while ( true )
+        {
+            long current = words.get( word );
+            long count = ( current >>> shift ) & MAX_COUNT;
+            if ( count == 0 || count == MAX_COUNT )
+            {
+                return;
+            }
+            if ( words.compareAndSet( word, current, current - ( 1L << shift ) ) )
+            {
+                return;
+            }
+        }
+    }
+
+    private static int shift( final int index )
+    {
+        return ( index % COUNTERS_PER_WORD ) * 4;
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters, finished with the MurmurHash3 fmix64 avalanche so both halves are usable.
+     */
+    private static long hash( final String value )
+    {
+        long h = 0xcbf29ce484222325L;
+        for ( int i = 0; i < value.length(); i++ )
+        {
+            h ^= value.charAt( i );
+            h *= 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
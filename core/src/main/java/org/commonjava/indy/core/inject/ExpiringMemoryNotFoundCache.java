@@ -22,27 +22,44 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
 import javax.inject.Inject;
 
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.model.galley.RepositoryLocation;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * In-memory NFC partitioned by location (location -> path -> entry), so clearing or listing one store only touches
+ * that store's entries.
+ * <p>
+ * Expiration is driven by a hashed timing wheel with one-second ticks: each entry with a timeout sits in the bucket of
+ * its expiry tick, and every tick only visits the bucket that is due. Entries whose timeout is more than one wheel
+ * revolution away are simply put back when visited early.
+ * <p>
+ * The number of entries is capped by {@link IndyConfiguration#getNfcMemoryMaxEntries()}. Past the cap, entries are
+ * evicted in approximate LRU order using the CLOCK (second chance) algorithm, which lets {@link #isMissing} record
+ * an access with a single volatile write instead of reordering a shared list.
+ */
 @ApplicationScoped
 @Alternative
 public class ExpiringMemoryNotFoundCache
@@ -51,15 +68,38 @@ public class ExpiringMemoryNotFoundCache
 
     private static final String TIMEOUT_FORMAT = "yyyy-MM-dd hh:mm:ss z";
 
+    private static final String EXPIRATION_THREAD_NAME = "nfc-memory-expiration";
+
+    private static final long TICK_MILLIS = TimeUnit.SECONDS.toMillis( 1 );
+
+    private static final int WHEEL_SIZE = 512;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
     protected IndyConfiguration config;
 
-    // TODO: Now using a simple hashmap, need to take attention here to see if need ISPN instead if it is a mem eater.
-    protected final Map<ConcreteResource, Long> missingWithTimeout = new ConcurrentHashMap<>();
+    private final Map<Location, Map<String, Entry>> missing = new ConcurrentHashMap<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    // entries per store, kept along with size; a store can have several locations (e.g. cache-only ones)
+    private final Map<StoreKey, Integer> storeSizes = new ConcurrentHashMap<>();
 
-    private final ScheduledExecutorService evictionService = Executors.newScheduledThreadPool( 1 );
+    @SuppressWarnings( "unchecked" )
+    private final Queue<Entry>[] wheel = new Queue[WHEEL_SIZE];
+
+    private long lastTick;
+
+    // CLOCK ring for eviction; may hold entries that were already removed, which are dropped when the hand reaches them
+    private final Queue<Entry> clock = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger clockQueued = new AtomicInteger();
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final ScheduledExecutorService evictionService = Executors.newScheduledThreadPool( 1,
+            new NamedThreadFactory( EXPIRATION_THREAD_NAME, new ThreadGroup( EXPIRATION_THREAD_NAME ), true, 2 ) );
 
     protected ExpiringMemoryNotFoundCache()
     {
@@ -74,9 +114,18 @@ public class ExpiringMemoryNotFoundCache
     @PostConstruct
     public void start()
     {
-        // schedule an expiration reaper thread to run according to some offset (in minutes) from the configuration
+        for ( int i = 0; i < WHEEL_SIZE; i++ )
+        {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        lastTick = currentTick();
+
+        evictionService.scheduleAtFixedRate( this::advanceWheel, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS );
+
+        // the CLOCK ring only drops removed entries when the hand passes them; compact it once in a while in case
+        // nothing is being evicted
         final int sweepMins = config.getNfcExpirationSweepMinutes();
-        evictionService.scheduleAtFixedRate( () -> clearAllExpiredMissing(), sweepMins, sweepMins, TimeUnit.MINUTES );
+        evictionService.scheduleAtFixedRate( this::compactClock, sweepMins, sweepMins, TimeUnit.MINUTES );
     }
 
     @Override
@@ -112,17 +161,50 @@ public class ExpiringMemoryNotFoundCache
             }
         } );
 
-        missingWithTimeout.put( resource, timeout );
+        final Entry entry = new Entry( loc, resource.getPath(), timeout );
+        missing.compute( loc, ( l, paths ) -> {
+            Map<String, Entry> result = paths == null ? new ConcurrentHashMap<>() : paths;
+            Entry old = result.put( entry.path, entry );
+            if ( old != null )
+            {
+                old.removed = true;
+            }
+            else
+            {
+                counted( l, 1 );
+            }
+            return result;
+        } );
+
+        if ( timeout != Long.MAX_VALUE )
+        {
+            wheel[(int) ( tickOf( timeout ) % WHEEL_SIZE )].offer( entry );
+        }
+
+        clock.offer( entry );
+        clockQueued.incrementAndGet();
+
+        evictOverflow();
     }
 
     @Override
     public boolean isMissing( final ConcreteResource resource )
     {
-        final Long timeout = missingWithTimeout.get( resource );
         boolean result = false;
-        if ( timeout != null && System.currentTimeMillis() < timeout )
+
+        final Map<String, Entry> paths = missing.get( resource.getLocation() );
+        final Entry entry = paths == null ? null : paths.get( resource.getPath() );
+        if ( entry != null )
         {
-            result = true;
+            if ( entry.isExpired( System.currentTimeMillis() ) )
+            {
+                remove( entry );
+            }
+            else
+            {
+                entry.referenced = true;
+                result = true;
+            }
         }
 
         logger.debug( "NFC check: {} result is: {}", resource, result );
@@ -132,40 +214,47 @@ public class ExpiringMemoryNotFoundCache
     @Override
     public void clearMissing( final Location location )
     {
-        Set<ConcreteResource> paths = keys().stream()
-                    .filter( r -> r != null && r.getLocation().equals( location ) )
-                    .collect( Collectors.toSet() );
-
-        if ( !paths.isEmpty() )
+        final Map<String, Entry> paths = missing.remove( location );
+        if ( paths != null )
         {
-            paths.forEach( r -> missingWithTimeout.remove( r ) );
+            // remove one by one, so we can't race with remove() over who accounts for an entry
+            paths.forEach( ( path, e ) -> {
+                if ( paths.remove( path, e ) )
+                {
+                    e.removed = true;
+                    counted( location, -1 );
+                }
+            } );
         }
     }
 
     @Override
     public void clearMissing( final ConcreteResource resource )
     {
-        missingWithTimeout.remove( resource );
+        final Map<String, Entry> paths = missing.get( resource.getLocation() );
+        final Entry entry = paths == null ? null : paths.get( resource.getPath() );
+        if ( entry != null )
+        {
+            remove( entry );
+        }
     }
 
     @Override
     public void clearAllMissing()
     {
-        this.missingWithTimeout.clear();
+        new HashSet<>( missing.keySet() ).forEach( this::clearMissing );
     }
 
     @Override
     public Map<Location, Set<String>> getAllMissing()
     {
-        clearAllExpiredMissing();
-        Set<ConcreteResource> paths = keys();
-
         final Map<Location, Set<String>> result = new HashMap<>();
-        paths.forEach( resource->{
-            final Location loc = resource.getLocation();
-            Set<String> locationPaths = result.computeIfAbsent( loc, k -> new HashSet<>() );
-
-            locationPaths.add( resource.getPath() );
+        missing.keySet().forEach( loc -> {
+            Set<String> paths = getMissing( loc );
+            if ( !paths.isEmpty() )
+            {
+                result.put( loc, paths );
+            }
         } );
 
         return result;
@@ -174,64 +263,243 @@ public class ExpiringMemoryNotFoundCache
     @Override
     public Set<String> getMissing( final Location location )
     {
-        clearAllExpiredMissing();
-        return keys().stream()
-                    .filter( r -> r != null && r.getLocation().equals( location ) )
-                    .map( r -> r.getPath() )
-                    .collect( Collectors.toSet() );
+        final Set<String> result = new HashSet<>();
+        streamMissing( location, result::add );
+        return result;
     }
 
-    private Set<ConcreteResource> keys()
+    @Override
+    public Set<Location> getMissingLocations()
     {
-        Set<ConcreteResource> paths;
-        paths = new HashSet<>(missingWithTimeout.keySet());
+        return new HashSet<>( missing.keySet() );
+    }
 
-        return paths;
+    @Override
+    public void streamMissing( final Location location, final Consumer<String> consumer )
+    {
+        final Map<String, Entry> paths = missing.get( location );
+        if ( paths != null )
+        {
+            final long now = System.currentTimeMillis();
+            paths.values().forEach( e -> {
+                if ( e.isExpired( now ) )
+                {
+                    remove( e );
+                }
+                else
+                {
+                    consumer.accept( e.path );
+                }
+            } );
+        }
     }
 
-    private synchronized void clearAllExpiredMissing()
+    @Override
+    public boolean isNodeLocal()
     {
-        try
+        return true;
+    }
+
+    @Override
+    public long getSize( StoreKey storeKey )
+    {
+        return storeSizes.getOrDefault( storeKey, 0 );
+    }
+
+    @Override
+    public long getSize()
+    {
+        return size.get();
+    }
+
+    @Override
+    protected IndyConfiguration getIndyConfiguration()
+    {
+        return config;
+    }
+
+    private void remove( final Entry entry )
+    {
+        final Map<String, Entry> paths = missing.get( entry.location );
+        if ( paths != null && paths.remove( entry.path, entry ) )
         {
-            long tstamp = System.currentTimeMillis();
-            Set<ConcreteResource> paths = keys().stream().filter( r ->
-                                   {
-                                       if ( r == null )
-                                       {
-                                           return false;
-                                       }
+            entry.removed = true;
+            counted( entry.location, -1 );
 
-                                       Long timeout = missingWithTimeout.get( r );
-                                       return timeout != null && timeout < tstamp;
-                                   } ).collect( Collectors.toSet() );
+            missing.computeIfPresent( entry.location, ( l, p ) -> p.isEmpty() ? null : p );
+        }
+    }
 
-            if ( !paths.isEmpty() )
+    private void counted( final Location location, final int delta )
+    {
+        size.addAndGet( delta );
+        if ( location instanceof KeyedLocation )
+        {
+            storeSizes.merge( ( (KeyedLocation) location ).getKey(), delta,
+                              ( count, d ) -> count + d == 0 ? null : count + d );
+        }
+    }
+
+    /**
+     * Expire the entries in every bucket that came due since the last tick.
+     */
+    private synchronized void advanceWheel()
+    {
+        try
+        {
+            final long now = System.currentTimeMillis();
+            final long nowTick = currentTick();
+
+            // after a long pause there is no point in visiting the same buckets more than once
+            final long from = Math.max( lastTick + 1, nowTick - WHEEL_SIZE + 1 );
+            for ( long tick = from; tick <= nowTick; tick++ )
             {
-                paths.forEach( r -> missingWithTimeout.remove( r ) );
+                final Queue<Entry> bucket = wheel[(int) ( tick % WHEEL_SIZE )];
+                final int due = bucket.size();
+                for ( int i = 0; i < due; i++ )
+                {
+                    Entry entry = bucket.poll();
+                    if ( entry == null )
+                    {
+                        break;
+                    }
+                    if ( entry.removed )
+                    {
+                        continue;
+                    }
+
+                    if ( entry.isExpired( now ) )
+                    {
+                        remove( entry );
+                    }
+                    else
+                    {
+                        bucket.offer( entry ); // due in a later revolution
+                    }
+                }
             }
+
+            lastTick = nowTick;
         }
         catch ( Throwable error )
         {
-            Logger logger = LoggerFactory.getLogger( getClass() );
             logger.error( "Failed to clear expired entries from NFC", error );
         }
     }
 
-    @Override
-    public long getSize( StoreKey storeKey )
+    /**
+     * Evict entries in approximate LRU order until we're back under the configured cap.
+     */
+    private void evictOverflow()
     {
-        return 0; // Not support
+        final int max = config.getNfcMemoryMaxEntries();
+        if ( max <= 0 || size.get() <= max )
+        {
+            return;
+        }
+
+        evictionLock.lock();
+        try
+        {
+            int evicted = 0;
+            while ( size.get() > max )
+            {
+                Entry entry = clock.poll();
+                if ( entry == null )
+                {
+                    break;
+                }
+                clockQueued.decrementAndGet();
+
+                if ( entry.removed )
+                {
+                    continue;
+                }
+
+                if ( entry.referenced )
+                {
+                    // second chance
+                    entry.referenced = false;
+                    clock.offer( entry );
+                    clockQueued.incrementAndGet();
+                }
+                else
+                {
+                    remove( entry );
+                    evicted++;
+                }
+            }
+
+            logger.debug( "[NFC] Evicted {} entries to stay within {} entries", evicted, max );
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
     }
 
-    @Override
-    public long getSize()
+    private void compactClock()
     {
-        return missingWithTimeout.size();
+        if ( clockQueued.get() <= size.get() * 2 )
+        {
+            return;
+        }
+
+        evictionLock.lock();
+        try
+        {
+            clock.removeIf( e -> {
+                if ( e.removed )
+                {
+                    clockQueued.decrementAndGet();
+                    return true;
+                }
+                return false;
+            } );
+        }
+        catch ( Throwable error )
+        {
+            logger.error( "Failed to compact NFC eviction queue", error );
+        }
+        finally
+        {
+            evictionLock.unlock();
+        }
     }
 
-    @Override
-    protected IndyConfiguration getIndyConfiguration()
+    private static long currentTick()
     {
-        return config;
+        return System.currentTimeMillis() / TICK_MILLIS;
+    }
+
+    private static long tickOf( final long timestamp )
+    {
+        // round up, so a bucket is only visited once its entries are really due
+        return ( timestamp + TICK_MILLIS - 1 ) / TICK_MILLIS;
+    }
+
+    private static final class Entry
+    {
+        private final Location location;
+
+        private final String path;
+
+        private final long timeout;
+
+        private volatile boolean referenced;
+
+        private volatile boolean removed;
+
+        private Entry( final Location location, final String path, final long timeout )
+        {
+            this.location = location;
+            this.path = path;
+            this.timeout = timeout;
+        }
+
+        private boolean isExpired( final long now )
+        {
+            return timeout <= now;
+        }
     }
 }
@@ -23,9 +23,20 @@ import org.commonjava.indy.model.galley.RepositoryLocation;
 import org.commonjava.indy.subsys.infinispan.CacheHandle;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
-import org.infinispan.Cache;
+import org.infinispan.configuration.cache.Configuration;
+import org.infinispan.configuration.cache.StoreConfiguration;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryExpired;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryExpiredEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
 import org.infinispan.query.Search;
 import org.infinispan.query.dsl.Expression;
+import org.infinispan.query.dsl.FilterConditionContextQueryBuilder;
 import org.infinispan.query.dsl.Query;
 import org.infinispan.query.dsl.QueryFactory;
 import org.slf4j.Logger;
@@ -34,7 +45,6 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
-import javax.enterprise.inject.Default;
 import javax.inject.Inject;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -43,7 +53,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
 import static org.commonjava.indy.model.core.StoreKey.fromString;
@@ -69,6 +81,12 @@ public class IspnNotFoundCache
 
     // limit the max size for REST endpoint getMissing to avoid OOM
 
+    // per-store entry counts if the NFC is node-local: seeded by one count query when the cache is started and kept up
+    // to date by NfcCountListener after that. Stores without entries have no count.
+    private final Map<String, Long> counts = new ConcurrentHashMap<>();
+
+    private volatile boolean countsMaintained;
+
     @Inject
     protected IndyConfiguration config;
 
@@ -91,6 +109,34 @@ public class IspnNotFoundCache
             maxResultSetSize = config.getNfcMaxResultSetSize();
             return null;
         } );
+
+        // entries written by other nodes (or kept in a shared store) never reach our listener, so counts would drift
+        if ( isNodeLocal() )
+        {
+            // listen before seeding, so nothing written while the seed query runs is missed
+            nfcCache.executeCache( (cache) -> {
+                cache.addListener( new NfcCountListener() );
+                if ( cache.getCacheConfiguration().persistence().stores().isEmpty() )
+                {
+                    // without a store, evicted entries are gone for good
+                    cache.addListener( new NfcEvictionListener() );
+                }
+                return null;
+            } );
+            seedCounts();
+            countsMaintained = true;
+        }
+    }
+
+    private void seedCounts()
+    {
+        Query query = queryFactory.from( NfcConcreteResourceWrapper.class )
+                                  .select( Expression.property( "location" ), Expression.count( "path" ) )
+                                  .groupBy( "location" )
+                                  .build();
+
+        List<Object[]> rows = query.list();
+        rows.forEach( row -> updateCount( (String) row[0], (Long) row[1] ) );
     }
 
     @Override
@@ -126,13 +172,13 @@ public class IspnNotFoundCache
                           new SimpleDateFormat( TIMEOUT_FORMAT ).format( new Date( timeout ) ) );
 
             final long f_timeout = timeout;
-            nfcCache.execute( cache -> cache.put( key, new NfcConcreteResourceWrapper( resource, f_timeout ),
-                                                  timeoutInSeconds, TimeUnit.SECONDS ) );
+            nfcCache.put( key, new NfcConcreteResourceWrapper( resource, f_timeout ), timeoutInSeconds,
+                          TimeUnit.SECONDS );
         }
         else
         {
             logger.debug( "[NFC] {} will not be checked again", resource );
-            nfcCache.execute( cache -> cache.put( key, new NfcConcreteResourceWrapper( resource, Long.MAX_VALUE ) ) );
+            nfcCache.put( key, new NfcConcreteResourceWrapper( resource, Long.MAX_VALUE ) );
         }
     }
 
@@ -157,8 +203,7 @@ public class IspnNotFoundCache
     public void clearMissing( final Location location )
     {
         nfcCache.execute( (cache) -> {
-            Set<String> paths = getMissing( location );
-            paths.forEach( path -> cache.remove( getResourceKey( new ConcreteResource( location, path ) ) ) );
+            streamMissing( location, path -> cache.remove( getResourceKey( new ConcreteResource( location, path ) ) ) );
             return null;
         } );
     }
@@ -168,14 +213,15 @@ public class IspnNotFoundCache
     public void clearMissing( final ConcreteResource resource )
     {
         String key = getResourceKey( resource );
-        nfcCache.execute( cache -> cache.remove( key ) );
+        nfcCache.remove( key );
     }
 
     @Override
     @Measure
     public void clearAllMissing()
     {
-        nfcCache.execute( (cache) -> { cache.clear(); return null; } );
+        nfcCache.clear();
+        counts.clear(); // clear() doesn't notify listeners
     }
 
     @Override
@@ -286,14 +332,106 @@ public class IspnNotFoundCache
         return paths;
     }
 
+    /**
+     * Read the distinct locations from the index, which is bounded by the number of stores rather than entries.
+     */
+    @Override
+    @Measure
+    public Set<Location> getMissingLocations()
+    {
+        Query query = queryFactory.from( NfcConcreteResourceWrapper.class )
+                                  .select( "location" )
+                                  .groupBy( "location" )
+                                  .build();
+
+        List<Object[]> rows = query.list();
+
+        Set<Location> result = new HashSet<>();
+        rows.forEach( row -> result.add( new NfcKeyedLocation( fromString( (String) row[0] ) ) ) );
+        return result;
+    }
+
+    /**
+     * Page through the paths of the location in path order. Each page starts after the last path of the previous one
+     * rather than at an offset, so entries removed in the meantime (e.g. by {@link #clearMissing(Location)}) don't
+     * shift the pages, and deep pages are as cheap as the first one.
+     */
+    @Override
+    @Measure
+    public void streamMissing( final Location location, final Consumer<String> consumer )
+    {
+        final String loc = ( (KeyedLocation) location ).getKey().toString();
+        final int batchSize = getProperPageSize( 0 );
+
+        String last = null;
+        int count = 0;
+        while ( true )
+        {
+            FilterConditionContextQueryBuilder condition = queryFactory.from( NfcConcreteResourceWrapper.class )
+                                                                       .maxResults( batchSize )
+                                                                       .orderBy( "path" )
+                                                                       .having( "location" )
+                                                                       .eq( loc );
+            if ( last != null )
+            {
+                condition = condition.and().having( "path" ).gt( last );
+            }
+
+            List<NfcConcreteResourceWrapper> matches = condition.toBuilder().build().list();
+            for ( NfcConcreteResourceWrapper entry : matches )
+            {
+                consumer.accept( entry.getPath() );
+                last = entry.getPath();
+            }
+
+            count += matches.size();
+            if ( matches.size() < batchSize )
+            {
+                break;
+            }
+        }
+
+        logger.debug( "[NFC] streamMissing for {} complete, count: {}", location, count );
+    }
+
+    /**
+     * Node-local unless the NFC cache is clustered or backed by a shared store.
+     */
+    @Override
+    public boolean isNodeLocal()
+    {
+        Boolean local = nfcCache.executeCache( cache -> {
+            Configuration conf = cache.getCacheConfiguration();
+            return !conf.clustering().cacheMode().isClustered()
+                    && conf.persistence().stores().stream().noneMatch( StoreConfiguration::shared );
+        } );
+        return Boolean.TRUE.equals( local );
+    }
+
+    /**
+     * If the NFC is {@link #isNodeLocal() node-local}, counts are seeded once when it is started (before it serves
+     * requests) and maintained from cache events after that. Otherwise every call runs a count query.
+     */
     @Override
     @Measure
     public long getSize( StoreKey storeKey )
+    {
+        final String loc = storeKey.toString();
+        if ( !countsMaintained )
+        {
+            return countMissing( loc );
+        }
+
+        Long count = counts.get( loc );
+        return count == null ? 0 : Math.max( 0, count );
+    }
+
+    private long countMissing( final String loc )
     {
         Query query = queryFactory.from( NfcConcreteResourceWrapper.class )
                                   .select( Expression.count( "path" ) )
                                   .having( "location" )
-                                  .eq( storeKey.toString() )
+                                  .eq( loc )
                                   .toBuilder()
                                   .build();
 
@@ -319,6 +457,51 @@ public class IspnNotFoundCache
         return pageSize;
     }
 
+    private void updateCount( final NfcConcreteResourceWrapper entry, final long delta )
+    {
+        if ( entry != null )
+        {
+            updateCount( entry.getLocation(), delta );
+        }
+    }
+
+    private void updateCount( final String location, final long delta )
+    {
+        counts.merge( location, delta, ( count, d ) -> count + d == 0 ? null : count + d );
+    }
+
+    @Listener( clustered = true )
+    public class NfcCountListener
+    {
+        @CacheEntryCreated
+        public void onCreated( CacheEntryCreatedEvent<String, NfcConcreteResourceWrapper> event )
+        {
+            updateCount( event.getValue(), 1 );
+        }
+
+        @CacheEntryRemoved
+        public void onRemoved( CacheEntryRemovedEvent<String, NfcConcreteResourceWrapper> event )
+        {
+            updateCount( event.getOldValue(), -1 );
+        }
+
+        @CacheEntryExpired
+        public void onExpired( CacheEntryExpiredEvent<String, NfcConcreteResourceWrapper> event )
+        {
+            updateCount( event.getValue(), -1 );
+        }
+    }
+
+    @Listener
+    public class NfcEvictionListener
+    {
+        @CacheEntriesEvicted
+        public void onEvicted( CacheEntriesEvictedEvent<String, NfcConcreteResourceWrapper> event )
+        {
+            event.getEntries().values().forEach( entry -> updateCount( entry, -1 ) );
+        }
+    }
+
     private String getResourceKey( ConcreteResource resource )
     {
         KeyedLocation location = (KeyedLocation) resource.getLocation();
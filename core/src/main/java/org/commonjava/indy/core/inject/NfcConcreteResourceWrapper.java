@@ -21,6 +21,7 @@ import org.hibernate.search.annotations.Analyze;
 import org.hibernate.search.annotations.Field;
 import org.hibernate.search.annotations.Index;
 import org.hibernate.search.annotations.Indexed;
+import org.hibernate.search.annotations.SortableField;
 
 /**
  * Created by ruhan on 11/29/17.
@@ -29,9 +30,11 @@ import org.hibernate.search.annotations.Indexed;
 public class NfcConcreteResourceWrapper
 {
     @Field( index = Index.YES, analyze = Analyze.NO )
+    @SortableField
     private String location;
 
     @Field ( index = Index.YES, analyze = Analyze.NO )
+    @SortableField
     private String path;
 
     @Field
@@ -15,10 +15,88 @@
  */
 package org.commonjava.indy.core.content;
 
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.cdi.util.weft.ThreadContext;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.content.IndyLocationExpander;
+import org.commonjava.indy.core.content.group.GroupRepositoryFilterManager;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.GalleyCore;
+import org.commonjava.maven.galley.GalleyCoreBuilder;
+import org.commonjava.maven.galley.cache.FileCacheProviderFactory;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.io.SpecialPathManagerImpl;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.nfc.MemoryNotFoundCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static org.commonjava.indy.conf.IndyConfiguration.SPECULATIVE_RETRIEVAL_WIDTH_METADATA;
+import static org.commonjava.indy.model.core.StoreType.remote;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
 
 public class DefaultContentManagerTest
 {
+    private static final String PATH = "org/foo/bar/1/bar-1.pom";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private MemoryStoreDataManager storeManager;
+
+    private GalleyCore core;
+
+    private final List<String> outcomes = Collections.synchronizedList( new ArrayList<>() );
+
+    private final List<String> retrieved = Collections.synchronizedList( new ArrayList<>() );
+
+    private final Map<String, Object> probeContexts = Collections.synchronizedMap( new HashMap<>() );
+
+    private final List<ExecutorService> probePools = new ArrayList<>();
+
+    private Predicate<String> generates = name -> false;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        storeManager = new MemoryStoreDataManager( true );
+        core = new GalleyCoreBuilder( new FileCacheProviderFactory( temp.newFolder( "cache" ) ) ).build();
+    }
+
+    @After
+    public void tearDown()
+    {
+        ThreadContext.clearContext();
+        probePools.forEach( ExecutorService::shutdownNow );
+    }
 
     @Test
     public void hexOfZero()
@@ -26,4 +104,227 @@ public class DefaultContentManagerTest
         System.out.println( Integer.toHexString( 0x00 & 0xff ) );
     }
 
+    @Test
+    public void speculative_NegativeProbeSkipsToNextMember()
+            throws Exception
+    {
+        Group group = group( 2, "r0", "r1", "r2" );
+        // r1 would have the content too, but its probe says it doesn't
+        DefaultContentManager contentManager =
+                contentManager( 2, name -> !name.equals( "r0" ), name -> name.equals( "r2" ), null, null );
+
+        Transfer item = contentManager.retrieve( group, PATH, new EventMetadata() );
+
+        assertThat( LocationUtils.getKey( item ).getName(), equalTo( "r2" ) );
+        assertThat( retrieved, equalTo( Arrays.asList( "r0", "r2" ) ) );
+        assertThat( outcomes, equalTo( Arrays.asList( "skips", "wins" ) ) );
+    }
+
+    @Test
+    public void speculative_OnlyStartedProbesAreWasted()
+            throws Exception
+    {
+        // a single probe thread: r1 is in flight when r0 returns the content, r2 and r3 are still queued
+        CountDownLatch r1Started = new CountDownLatch( 1 );
+        CountDownLatch release = new CountDownLatch( 1 );
+
+        Group group = group( 3, "r0", "r1", "r2", "r3" );
+        DefaultContentManager contentManager = contentManager( 1, name -> true, name -> true, r1Started, release );
+
+        try
+        {
+            Transfer item = contentManager.retrieve( group, PATH, new EventMetadata() );
+            assertThat( LocationUtils.getKey( item ).getName(), equalTo( "r0" ) );
+        }
+        finally
+        {
+            release.countDown();
+        }
+
+        assertThat( retrieved, equalTo( Collections.singletonList( "r0" ) ) );
+        assertThat( outcomes, equalTo( Collections.singletonList( "wastes" ) ) );
+    }
+
+    @Test
+    public void speculative_NegativeProbeStillTriesGenerators()
+            throws Exception
+    {
+        Group group = group( 2, "r0", "r1", "r2" );
+        generates = name -> name.equals( "r1" );
+        DefaultContentManager contentManager =
+                contentManager( 2, name -> false, name -> !name.equals( "r1" ), null, null );
+
+        Transfer item = contentManager.retrieve( group, PATH, new EventMetadata() );
+
+        assertThat( LocationUtils.getKey( item ).getName(), equalTo( "r1" ) );
+        assertThat( retrieved, equalTo( Collections.singletonList( "r0" ) ) );
+        assertThat( outcomes.get( 0 ), equalTo( "skips" ) );
+    }
+
+    @Test
+    public void speculative_ProbeWaitIsBoundedByMemberTimeout()
+            throws Exception
+    {
+        CountDownLatch r1Started = new CountDownLatch( 1 );
+        CountDownLatch release = new CountDownLatch( 1 );
+
+        Group group = group( 1, "r0", "r1" );
+        RemoteRepository r1 =
+                (RemoteRepository) storeManager.getArtifactStore( new StoreKey( MAVEN_PKG_KEY, remote, "r1" ) );
+        r1.setTimeoutSeconds( 1 );
+        storeManager.storeArtifactStore( r1, new ChangeSummary( ChangeSummary.SYSTEM_USER, "test setup" ), false,
+                                         true, new EventMetadata() );
+
+        DefaultContentManager contentManager =
+                contentManager( 1, name -> name.equals( "r1" ), name -> true, r1Started, release );
+
+        try
+        {
+            // the probe of r1 hangs, so r1 is retrieved once the wait times out
+            Transfer item = contentManager.retrieve( group, PATH, new EventMetadata() );
+            assertThat( LocationUtils.getKey( item ).getName(), equalTo( "r1" ) );
+        }
+        finally
+        {
+            release.countDown();
+        }
+
+        assertThat( retrieved, equalTo( Arrays.asList( "r0", "r1" ) ) );
+        assertThat( outcomes, equalTo( Collections.singletonList( "wastes" ) ) );
+    }
+
+    @Test
+    public void speculative_ProbesRunWithRequestContext()
+            throws Exception
+    {
+        ThreadContext.getContext( true ).put( "request", "test-request" );
+
+        Group group = group( 2, "r0", "r1", "r2" );
+        DefaultContentManager contentManager = contentManager( 2, name -> false, name -> false, null, null );
+
+        assertThat( contentManager.retrieve( group, PATH, new EventMetadata() ), nullValue() );
+
+        assertThat( probeContexts.get( "r1" ), equalTo( "test-request" ) );
+        assertThat( probeContexts.get( "r2" ), equalTo( "test-request" ) );
+    }
+
+    private Group group( final int width, final String... remotes )
+            throws Exception
+    {
+        ChangeSummary summary = new ChangeSummary( ChangeSummary.SYSTEM_USER, "test setup" );
+        Group group = new Group( MAVEN_PKG_KEY, "group" );
+        group.setMetadata( SPECULATIVE_RETRIEVAL_WIDTH_METADATA, Integer.toString( width ) );
+        for ( String name : remotes )
+        {
+            RemoteRepository remote = new RemoteRepository( MAVEN_PKG_KEY, name, "http://" + name + ".test/" );
+            storeManager.storeArtifactStore( remote, summary, false, true, new EventMetadata() );
+            group.addConstituent( remote );
+        }
+        storeManager.storeArtifactStore( group, summary, false, true, new EventMetadata() );
+        return group;
+    }
+
+    /**
+     * @param hasContent which remotes return the content when retrieved
+     * @param probedExists what the existence probe reports for each remote
+     * @param started counted down when the probe of r1 starts, if set
+     * @param release the probe of r1 waits for this (ignoring interrupts), if set
+     */
+    private DefaultContentManager contentManager( final int probeThreads, final Predicate<String> hasContent,
+                                                  final Predicate<String> probedExists,
+                                                  final CountDownLatch started, final CountDownLatch release )
+    {
+        DefaultDownloadManager downloadManager =
+                new DefaultDownloadManager( storeManager, core.getTransferManager(),
+                                            new IndyLocationExpander( storeManager ), null, new MemoryNotFoundCache(),
+                                            null )
+                {
+                    @Override
+                    public boolean exists( final ArtifactStore store, final String path )
+                    {
+                        ThreadContext context = ThreadContext.getContext( false );
+                        probeContexts.put( store.getName(), context == null ? null : context.get( "request" ) );
+                        if ( started != null && store.getName().equals( "r1" ) )
+                        {
+                            started.countDown();
+                            awaitUninterruptibly( release );
+                        }
+                        return probedExists.test( store.getName() );
+                    }
+
+                    @Override
+                    public Transfer retrieve( final ArtifactStore store, final String path,
+                                              final EventMetadata eventMetadata )
+                    {
+                        retrieved.add( store.getName() );
+                        if ( started != null )
+                        {
+                            // make sure the probe of r1 is in flight before the content is found
+                            awaitUninterruptibly( started );
+                        }
+                        return hasContent.test( store.getName() ) ? getStorageReference( store, path ) : null;
+                    }
+                };
+
+        ContentGeneratorManager generatorManager = new ContentGeneratorManager()
+        {
+            @Override
+            public Transfer generateFileContentAnd( final ArtifactStore store, final String path,
+                                                    final EventMetadata eventMetadata,
+                                                    final Consumer<Transfer> consumer )
+            {
+                return generates.test( store.getName() ) ? downloadManager.getStorageReference( store, path ) : null;
+            }
+
+            @Override
+            public Transfer generateGroupFileContent( final Group group, final List<ArtifactStore> members,
+                                                      final String path, final EventMetadata eventMetadata )
+            {
+                return null;
+            }
+        };
+
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+
+        ThreadPoolExecutor probePool = (ThreadPoolExecutor) Executors.newFixedThreadPool( probeThreads );
+        probePools.add( probePool );
+        WeftExecutorService probeService =
+                new PoolWeftExecutorService( "test-speculative-retrieval", probePool, probeThreads, 10f, false, null,
+                                             null );
+
+        return new DefaultContentManager( storeManager, downloadManager, new IndyObjectMapper( true ),
+                                          new SpecialPathManagerImpl(), new MemoryNotFoundCache(), null,
+                                          generatorManager, config,
+                                          new GroupRepositoryFilterManager( config, Collections.emptyList() ),
+                                          probeService )
+        {
+            @Override
+            void markSpeculative( final String outcome )
+            {
+                outcomes.add( outcome );
+            }
+        };
+    }
+
+    private static void awaitUninterruptibly( final CountDownLatch latch )
+    {
+        boolean interrupted = false;
+        while ( true )
+        {
+            try
+            {
+                latch.await();
+                break;
+            }
+            catch ( InterruptedException e )
+            {
+                interrupted = true;
+            }
+        }
+
+        if ( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import com.codahale.metrics.Gauge;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.content.GroupRepositoryFilter;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.subsys.template.ScriptEngine;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class GroupRepositoryFilterManagerTest
+{
+    @Test
+    public void reuseFilterResultsUntilMembershipChanges()
+    {
+        final AtomicInteger filtered = new AtomicInteger();
+        ReversePatternNameGroupRepositoryFilter filter =
+                new ReversePatternNameGroupRepositoryFilter( ".+-rh.+", "rh-.+", true )
+                {
+                    @Override
+                    public int getPriority()
+                    {
+                        return 10;
+                    }
+
+                    @Override
+                    public List<ArtifactStore> filter( String path, Group group, List<ArtifactStore> concreteStores )
+                    {
+                        filtered.incrementAndGet();
+                        return super.filter( path, group, concreteStores );
+                    }
+                };
+
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setRepositoryFilterEnabled( true );
+        GroupRepositoryFilterManager manager =
+                new GroupRepositoryFilterManager( config, Collections.singletonList( filter ) );
+
+        HostedRepository build = new HostedRepository( "rh-build" );
+        HostedRepository local = new HostedRepository( "local" );
+        Group group = new Group( "public", build.getKey(), local.getKey() );
+        List<ArtifactStore> members = Arrays.asList( build, local );
+
+        assertThat( manager.filter( "org/foo/1.0/foo-1.0.pom", group, members ),
+                    equalTo( Collections.singletonList( local ) ) );
+        assertThat( manager.filter( "org/bar/2.0/bar-2.0.pom", group, members ),
+                    equalTo( Collections.singletonList( local ) ) );
+        assertThat( filtered.get(), equalTo( 1 ) );
+
+        // a path matching the pattern is a different class of path
+        assertThat( manager.filter( "org/foo/1.0-rh1/foo-1.0-rh1.pom", group, members ), equalTo( members ) );
+        assertThat( filtered.get(), equalTo( 2 ) );
+
+        HostedRepository other = new HostedRepository( "other" );
+        List<ArtifactStore> changed = new ArrayList<>( members );
+        changed.add( other );
+
+        assertThat( manager.filter( "org/foo/1.0/foo-1.0.pom", group, changed ),
+                    equalTo( Arrays.asList( local, other ) ) );
+        assertThat( filtered.get(), equalTo( 3 ) );
+    }
+
+    @Test
+    public void doNotCacheSubclassesThatDidNotOptIn()
+    {
+        final AtomicInteger filtered = new AtomicInteger();
+        ReversePatternNameGroupRepositoryFilter filter =
+                new ReversePatternNameGroupRepositoryFilter( ".+-rh.+", "rh-.+" )
+                {
+                    @Override
+                    public int getPriority()
+                    {
+                        return 10;
+                    }
+
+                    @Override
+                    public List<ArtifactStore> filter( String path, Group group, List<ArtifactStore> concreteStores )
+                    {
+                        filtered.incrementAndGet();
+                        return super.filter( path, group, concreteStores );
+                    }
+                };
+
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setRepositoryFilterEnabled( true );
+        GroupRepositoryFilterManager manager =
+                new GroupRepositoryFilterManager( config, Collections.singletonList( filter ) );
+
+        HostedRepository build = new HostedRepository( "rh-build" );
+        HostedRepository local = new HostedRepository( "local" );
+        Group group = new Group( "public", build.getKey(), local.getKey() );
+        List<ArtifactStore> members = Arrays.asList( build, local );
+
+        assertThat( filter.getResultCacheKey( "org/foo/1.0/foo-1.0.pom", group ), nullValue() );
+
+        manager.filter( "org/foo/1.0/foo-1.0.pom", group, members );
+        manager.filter( "org/bar/2.0/bar-2.0.pom", group, members );
+        assertThat( filtered.get(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void cacheResultsOfScriptedFilter()
+            throws Exception
+    {
+        String script;
+        try (InputStream in = Thread.currentThread()
+                                    .getContextClassLoader()
+                                    .getResourceAsStream( "repofilter/rh-pattern-repofilter.groovy" ))
+        {
+            script = IOUtils.toString( in );
+        }
+        GroupRepositoryFilter filter =
+                new ScriptEngine( null ).parseScriptInstance( script, GroupRepositoryFilter.class );
+
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setRepositoryFilterEnabled( true );
+        GroupRepositoryFilterManager manager =
+                new GroupRepositoryFilterManager( config, Collections.singletonList( filter ) );
+
+        HostedRepository build = new HostedRepository( "build-1" );
+        HostedRepository local = new HostedRepository( "local" );
+        Group group = new Group( "public", build.getKey(), local.getKey() );
+        List<ArtifactStore> members = Arrays.asList( build, local );
+
+        assertThat( manager.filter( "org/foo/1.0/foo-1.0.pom", group, members ),
+                    equalTo( Collections.singletonList( local ) ) );
+        assertThat( manager.filter( "org/bar/2.0/bar-2.0.jar", group, members ),
+                    equalTo( Collections.singletonList( local ) ) );
+        assertThat( manager.filter( "org/foo/1.0-rh1/foo-1.0-rh1.pom", group, members ), equalTo( members ) );
+
+        // paths the filter doesn't process are cached apart from the ones it does
+        assertThat( manager.filter( "org/foo/maven-metadata.xml", group, members ), equalTo( members ) );
+        assertThat( manager.filter( "org/bar/maven-metadata.xml", group, members ), equalTo( members ) );
+
+        assertThat( gauge( manager, "cache-hits" ), equalTo( 2L ) );
+        assertThat( gauge( manager, "cache-misses" ), equalTo( 3L ) );
+    }
+
+    private Object gauge( GroupRepositoryFilterManager manager, String name )
+    {
+        return ( (Gauge<?>) manager.getMetrics().get( name ) ).getValue();
+    }
+}
@@ -0,0 +1,385 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.ctl;
+
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.content.DirectContentAccess;
+import org.commonjava.indy.content.StoreContentAction;
+import org.commonjava.indy.content.StoreResource;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.dto.StorePurgeStatus;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.commonjava.maven.galley.testing.core.CoreFixture;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.enterprise.inject.Instance;
+import javax.enterprise.util.TypeLiteral;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.indy.model.core.dto.StorePurgeStatus.State.DONE;
+import static org.commonjava.indy.model.core.dto.StorePurgeStatus.State.FAILED;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class StorePurgeManagerTest
+{
+    private static final List<String> PATHS =
+            Arrays.asList( "org/foo/1.0/foo-1.0.pom", "org/bar/1.0/bar-1.0.pom", "com/baz/1.0/baz-1.0.pom",
+                           "net/qux/1.0/qux-1.0.pom" );
+
+    @Rule
+    public CoreFixture fixture = new CoreFixture();
+
+    private StoreDataManager storeManager;
+
+    private FakeDirectContentAccess contentAccess;
+
+    private Set<String> clearedPaths;
+
+    private HostedRepository hosted;
+
+    private Group group;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        fixture.initMissingComponents();
+
+        storeManager = new MemoryStoreDataManager( true );
+        contentAccess = new FakeDirectContentAccess();
+        clearedPaths = ConcurrentHashMap.newKeySet();
+
+        ChangeSummary summary = new ChangeSummary( ChangeSummary.SYSTEM_USER, "test setup" );
+        hosted = new HostedRepository( MAVEN_PKG_KEY, "test" );
+        group = new Group( MAVEN_PKG_KEY, "group", hosted.getKey() );
+        storeManager.storeArtifactStore( hosted, summary, false, true, new EventMetadata() );
+        storeManager.storeArtifactStore( group, summary, false, true, new EventMetadata() );
+
+        for ( String path : PATHS )
+        {
+            write( hosted, path );
+        }
+        write( group, PATHS.get( 0 ) );
+    }
+
+    @Test
+    public void purgeContentThenStore()
+            throws Exception
+    {
+        StorePurgeManager manager = newManager( 4 );
+
+        StorePurgeStatus status = await( manager, manager.purge( hosted.getKey(), "user", "purge" ).getId() );
+
+        assertThat( status.getError(), nullValue() );
+        assertThat( status.getState(), equalTo( DONE ) );
+        assertThat( status.getPurgedPaths(), equalTo( (long) PATHS.size() ) );
+        assertThat( status.getTotalDirectories(), equalTo( 3 ) );
+        assertThat( status.getCompletedDirectories(), equalTo( new HashSet<>( Arrays.asList( "org", "com", "net" ) ) ) );
+
+        for ( String path : PATHS )
+        {
+            assertFalse( path, transfer( hosted, path ).exists() );
+            assertTrue( path, clearedPaths.contains( path ) );
+        }
+        assertFalse( transfer( group, PATHS.get( 0 ) ).exists() );
+        assertThat( storeManager.getArtifactStore( hosted.getKey() ), nullValue() );
+    }
+
+    @Test
+    public void resumeSkipsDirectoriesCompletedBeforeFailure()
+            throws Exception
+    {
+        // one walker, so the first directory is done before the failing second one starts
+        StorePurgeManager manager = newManager( 1 );
+        contentAccess.failSecondDirectory = true;
+
+        String id = manager.purge( hosted.getKey(), "user", "purge" ).getId();
+        StorePurgeStatus failed = await( manager, id );
+
+        assertThat( failed.getState(), equalTo( FAILED ) );
+        assertThat( failed.getError(), notNullValue() );
+        assertThat( failed.getCompletedDirectories().size(), equalTo( 1 ) );
+        assertThat( storeManager.getArtifactStore( hosted.getKey() ), notNullValue() );
+
+        String completed = failed.getCompletedDirectories().iterator().next();
+        int completedCalls = contentAccess.calls( completed );
+
+        contentAccess.failSecondDirectory = false;
+        manager.resume( id );
+        StorePurgeStatus resumed = await( manager, id );
+
+        assertThat( resumed.getError(), nullValue() );
+        assertThat( resumed.getState(), equalTo( DONE ) );
+        assertThat( resumed.getCompletedDirectories().size(), equalTo( 3 ) );
+        assertThat( contentAccess.calls( completed ), equalTo( completedCalls ) );
+
+        for ( String path : PATHS )
+        {
+            assertFalse( path, transfer( hosted, path ).exists() );
+        }
+        assertThat( storeManager.getArtifactStore( hosted.getKey() ), nullValue() );
+    }
+
+    @Test( expected = IndyWorkflowException.class )
+    public void onlyFailedPurgeCanBeResumed()
+            throws Exception
+    {
+        StorePurgeManager manager = newManager( 1 );
+        String id = manager.purge( hosted.getKey(), "user", "purge" ).getId();
+        assertThat( await( manager, id ).getState(), equalTo( DONE ) );
+
+        manager.resume( id );
+    }
+
+    private StorePurgeManager newManager( int walkers )
+    {
+        StoreContentAction action = new StoreContentAction()
+        {
+            @Override
+            public void clearStoreContent( String path, ArtifactStore store, Set<Group> affectedGroups,
+                                           boolean clearOriginPath )
+            {
+                clearedPaths.add( path.startsWith( "/" ) ? path.substring( 1 ) : path );
+            }
+        };
+
+        return new StorePurgeManager( storeManager, contentAccess, new ListInstance<>( action ),
+                                      executor( "test-purge", 1 ), executor( "test-purge-walkers", walkers ) );
+    }
+
+    private static WeftExecutorService executor( String name, int threads )
+    {
+        return new PoolWeftExecutorService( name, (ThreadPoolExecutor) Executors.newFixedThreadPool( threads ),
+                                            threads, 10f, false, null, null );
+    }
+
+    private static StorePurgeStatus await( StorePurgeManager manager, String id )
+            throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000;
+        StorePurgeStatus status = manager.getStatus( id );
+        while ( status.getState() != DONE && status.getState() != FAILED && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 20 );
+            status = manager.getStatus( id );
+        }
+
+        return status;
+    }
+
+    private void write( ArtifactStore store, String path )
+            throws IOException
+    {
+        try (OutputStream out = transfer( store, path ).openOutputStream( TransferOperation.UPLOAD ))
+        {
+            out.write( path.getBytes() );
+        }
+    }
+
+    private Transfer transfer( ArtifactStore store, String path )
+    {
+        return fixture.getCache().getTransfer( new ConcreteResource( LocationUtils.toLocation( store ), path ) );
+    }
+
+    /**
+     * Hands out cache transfers, counting the calls per top-level directory. Can fail every path of the second
+     * top-level directory it is asked about.
+     */
+    private final class FakeDirectContentAccess
+            implements DirectContentAccess
+    {
+        private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+        private volatile boolean failSecondDirectory;
+
+        private volatile String firstDirectory;
+
+        int calls( String directory )
+        {
+            AtomicInteger count = calls.get( directory );
+            return count == null ? 0 : count.get();
+        }
+
+        @Override
+        public Transfer getTransfer( ArtifactStore store, String path )
+                throws IndyWorkflowException
+        {
+            String trimmed = path.startsWith( "/" ) ? path.substring( 1 ) : path;
+            if ( !trimmed.isEmpty() && store.getKey().equals( hosted.getKey() ) )
+            {
+                String directory = trimmed.split( "/" )[0];
+                calls.computeIfAbsent( directory, d -> new AtomicInteger() ).incrementAndGet();
+
+                synchronized ( this )
+                {
+                    if ( firstDirectory == null )
+                    {
+                        firstDirectory = directory;
+                    }
+                }
+
+                if ( failSecondDirectory && !directory.equals( firstDirectory ) )
+                {
+                    throw new IndyWorkflowException( "Failing: {}", path );
+                }
+            }
+
+            return transfer( store, path );
+        }
+
+        @Override
+        public Transfer retrieveRaw( ArtifactStore store, String path, EventMetadata eventMetadata )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Transfer> retrieveAllRaw( List<? extends ArtifactStore> stores, String path,
+                                              EventMetadata eventMetadata )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Transfer getTransfer( StoreKey storeKey, String path )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean exists( ArtifactStore store, String path )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<StoreResource> listRaw( ArtifactStore store, String parentPath )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<StoreResource> listRaw( ArtifactStore store, String parentPath, EventMetadata eventMetadata )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, List<StoreResource>> listRaw( ArtifactStore store, List<String> parentPathList )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, List<StoreResource>> listRaw( ArtifactStore store, List<String> parentPathList,
+                                                         EventMetadata eventMetadata )
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class ListInstance<T>
+            implements Instance<T>
+    {
+        private final Collection<T> elems;
+
+        @SafeVarargs
+        private ListInstance( T... elems )
+        {
+            this.elems = Arrays.asList( elems );
+        }
+
+        @Override
+        public Instance<T> select( Annotation... qualifiers )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <U extends T> Instance<U> select( Class<U> subtype, Annotation... qualifiers )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <U extends T> Instance<U> select( TypeLiteral<U> subtype, Annotation... qualifiers )
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isUnsatisfied()
+        {
+            return elems.isEmpty();
+        }
+
+        @Override
+        public boolean isAmbiguous()
+        {
+            return elems.size() > 1;
+        }
+
+        @Override
+        public void destroy( T instance )
+        {
+        }
+
+        @Override
+        public Iterator<T> iterator()
+        {
+            return elems.iterator();
+        }
+
+        @Override
+        public T get()
+        {
+            return elems.iterator().next();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import com.codahale.metrics.Gauge;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.commonjava.maven.galley.model.SimpleLocation;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class BloomFilteredNotFoundCacheTest
+{
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void shutdown()
+    {
+        rebuildExecutor.shutdownNow();
+    }
+
+    @Test
+    public void definiteAbsentSkipsBackingCacheAndFollowsUpdates()
+        throws Exception
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        final ExpiringMemoryNotFoundCache backing = new ExpiringMemoryNotFoundCache( config );
+
+        final Location loc = new SimpleLocation( "test:uri" );
+        final ConcreteResource persisted = new ConcreteResource( loc, "/path/to/persisted" );
+        final ConcreteResource added = new ConcreteResource( loc, "/path/to/added" );
+        final ConcreteResource present = new ConcreteResource( loc, "/path/to/present" );
+
+        // entries recorded before the filter exists, as if loaded from a persistent NFC
+        backing.addMissing( persisted );
+
+        final BloomFilteredNotFoundCache nfc = new BloomFilteredNotFoundCache( backing, rebuildExecutor );
+
+        assertThat( nfc.isMissing( persisted ), equalTo( true ) );
+        waitForRebuilds( nfc, 1 );
+
+        assertThat( nfc.isMissing( persisted ), equalTo( true ) );
+        assertThat( nfc.isMissing( present ), equalTo( false ) );
+        assertThat( gauge( nfc, "skipped" ), equalTo( 1L ) );
+
+        nfc.addMissing( added );
+        assertThat( nfc.isMissing( added ), equalTo( true ) );
+
+        nfc.clearMissing( added );
+        assertThat( nfc.isMissing( added ), equalTo( false ) );
+
+        nfc.clearMissing( loc );
+        assertThat( nfc.isMissing( persisted ), equalTo( false ) );
+        assertThat( backing.isMissing( persisted ), equalTo( false ) );
+    }
+
+    @Test
+    public void clearingLocationNeverHidesConcurrentlyAddedPaths()
+        throws Exception
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        final ExpiringMemoryNotFoundCache backing = new ExpiringMemoryNotFoundCache( config );
+        final BloomFilteredNotFoundCache nfc = new BloomFilteredNotFoundCache( backing, rebuildExecutor );
+
+        final Location loc = new SimpleLocation( "test:uri" );
+        nfc.isMissing( new ConcreteResource( loc, "/init" ) );
+        waitForRebuilds( nfc, 1 );
+
+        final int threads = 4;
+        final int perThread = 2000;
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger falseNegatives = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool( threads + 1 );
+
+        Future<?> clearer = executor.submit( () -> {
+            while ( !done.get() )
+            {
+                nfc.clearMissing( loc );
+            }
+        } );
+
+        List<Future<?>> adders = new ArrayList<>();
+        for ( int t = 0; t < threads; t++ )
+        {
+            final int thread = t;
+            adders.add( executor.submit( () -> {
+                for ( int i = 0; i < perThread; i++ )
+                {
+                    ConcreteResource resource = new ConcreteResource( loc, "/path/" + thread + "/" + i );
+                    nfc.addMissing( resource );
+
+                    // a clear may remove the path again, but as long as the backing cache has it, so must the filter
+                    if ( !nfc.isMissing( resource ) && backing.isMissing( resource ) )
+                    {
+                        falseNegatives.incrementAndGet();
+                    }
+                }
+            } ) );
+        }
+
+        for ( Future<?> adder : adders )
+        {
+            adder.get();
+        }
+        done.set( true );
+        clearer.get();
+        executor.shutdown();
+
+        assertThat( falseNegatives.get(), equalTo( 0 ) );
+
+        // whatever survived the clears in the backing cache must still be reported as missing
+        for ( String path : backing.getMissing( loc ) )
+        {
+            assertThat( path, nfc.isMissing( new ConcreteResource( loc, path ) ), equalTo( true ) );
+        }
+    }
+
+    @Test
+    public void clearingPathsNeverRecordedKeepsRecordedOnes()
+        throws Exception
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        final ExpiringMemoryNotFoundCache backing = new ExpiringMemoryNotFoundCache( config );
+        final BloomFilteredNotFoundCache nfc = new BloomFilteredNotFoundCache( backing, rebuildExecutor );
+
+        final Location loc = new SimpleLocation( "test:uri" );
+        nfc.isMissing( new ConcreteResource( loc, "/init" ) );
+        waitForRebuilds( nfc, 1 );
+
+        final int recorded = 100;
+        for ( int i = 0; i < recorded; i++ )
+        {
+            nfc.addMissing( new ConcreteResource( loc, "/recorded/" + i ) );
+        }
+
+        // some of these are false positives of the filter; clearing them must not touch its counters
+        for ( int i = 0; i < 10000; i++ )
+        {
+            nfc.clearMissing( new ConcreteResource( loc, "/unknown/" + i ) );
+        }
+
+        for ( int i = 0; i < recorded; i++ )
+        {
+            ConcreteResource resource = new ConcreteResource( loc, "/recorded/" + i );
+            assertThat( resource.getPath(), nfc.isMissing( resource ), equalTo( true ) );
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void refuseSharedBackingCache()
+    {
+        new BloomFilteredNotFoundCache( new ExpiringMemoryNotFoundCache( new DefaultIndyConfiguration() )
+        {
+            @Override
+            public boolean isNodeLocal()
+            {
+                return false;
+            }
+        }, rebuildExecutor );
+    }
+
+    @Test
+    public void countingFilterForgetsRemovedValues()
+    {
+        final CountingBloomFilter filter = new CountingBloomFilter( 100 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            filter.add( "/path/" + i );
+        }
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertThat( filter.mightContain( "/path/" + i ), equalTo( true ) );
+        }
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            filter.remove( "/path/" + i );
+        }
+
+        assertThat( filter.size(), equalTo( 0 ) );
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertThat( filter.mightContain( "/path/" + i ), equalTo( false ) );
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private long gauge( final BloomFilteredNotFoundCache nfc, final String name )
+    {
+        return ( (Gauge<Long>) nfc.getMetrics().get( name ) ).getValue();
+    }
+
+    private void waitForRebuilds( final BloomFilteredNotFoundCache nfc, final long expected )
+        throws InterruptedException
+    {
+        for ( int i = 0; i < 50 && gauge( nfc, "rebuilds" ) < expected; i++ )
+        {
+            Thread.sleep( 100 );
+        }
+        assertThat( gauge( nfc, "rebuilds" ), equalTo( expected ) );
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.commonjava.indy.core.inject;
 
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
 
@@ -23,6 +24,8 @@ import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.galley.RepositoryLocation;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.commonjava.maven.galley.model.SimpleLocation;
@@ -88,4 +91,81 @@ public class ExpiringMemoryNotFoundCacheTest
         assertThat( allMissing == null || allMissing.isEmpty(), equalTo( true ) );
     }
 
+    @Test
+    public void clearLocationLeavesOtherLocations()
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( config );
+
+        final ConcreteResource first = new ConcreteResource( new SimpleLocation( "test:first" ), "/path/to/object" );
+        final ConcreteResource second = new ConcreteResource( new SimpleLocation( "test:second" ), "/path/to/object" );
+
+        nfc.addMissing( first );
+        nfc.addMissing( second );
+        assertThat( nfc.getSize(), equalTo( 2L ) );
+
+        nfc.clearMissing( first.getLocation() );
+
+        assertThat( nfc.isMissing( first ), equalTo( false ) );
+        assertThat( nfc.isMissing( second ), equalTo( true ) );
+        assertThat( nfc.getSize(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedPastMaxEntries()
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setNfcMemoryMaxEntries( 2 );
+
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( config );
+
+        final Location loc = new SimpleLocation( "test:uri" );
+        final ConcreteResource first = new ConcreteResource( loc, "/first" );
+        final ConcreteResource second = new ConcreteResource( loc, "/second" );
+        final ConcreteResource third = new ConcreteResource( loc, "/third" );
+
+        nfc.addMissing( first );
+        nfc.addMissing( second );
+        assertThat( nfc.isMissing( first ), equalTo( true ) );
+
+        nfc.addMissing( third );
+
+        assertThat( nfc.getSize(), equalTo( 2L ) );
+        assertThat( nfc.isMissing( first ), equalTo( true ) );
+        assertThat( nfc.isMissing( second ), equalTo( false ) );
+        assertThat( nfc.isMissing( third ), equalTo( true ) );
+    }
+
+    @Test
+    public void storeSizeFollowsExpiryAndClears()
+        throws Exception
+    {
+        final DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        final ExpiringMemoryNotFoundCache nfc = new ExpiringMemoryNotFoundCache( config );
+
+        final RemoteRepository expiring = new RemoteRepository( MAVEN_PKG_KEY, "expiring", "http://expiring.test/" );
+        expiring.setNfcTimeoutSeconds( 1 );
+        final RemoteRepository kept = new RemoteRepository( MAVEN_PKG_KEY, "kept", "http://kept.test/" );
+
+        final Location expiringLoc = new RepositoryLocation( expiring );
+        final Location keptLoc = new RepositoryLocation( kept );
+        nfc.addMissing( new ConcreteResource( expiringLoc, "/first" ) );
+        nfc.addMissing( new ConcreteResource( expiringLoc, "/second" ) );
+        nfc.addMissing( new ConcreteResource( keptLoc, "/first" ) );
+        nfc.addMissing( new ConcreteResource( keptLoc, "/first" ) );
+
+        assertThat( nfc.getSize( expiring.getKey() ), equalTo( 2L ) );
+        assertThat( nfc.getSize( kept.getKey() ), equalTo( 1L ) );
+
+        // expired by the wheel, without any read of the entries
+        Thread.sleep( TimeUnit.SECONDS.toMillis( 4 ) );
+
+        assertThat( nfc.getSize( expiring.getKey() ), equalTo( 0L ) );
+        assertThat( nfc.getSize( kept.getKey() ), equalTo( 1L ) );
+        assertThat( nfc.getSize(), equalTo( 1L ) );
+
+        nfc.clearMissing( keptLoc );
+        assertThat( nfc.getSize( kept.getKey() ), equalTo( 0L ) );
+    }
+
 }
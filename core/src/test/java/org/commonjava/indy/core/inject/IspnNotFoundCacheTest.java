@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class IspnNotFoundCacheTest
+{
+    // small enough for a handful of entries to span several pages
+    private static final int PAGE_SIZE = 3;
+
+    private DefaultCacheManager cacheManager;
+
+    private IspnNotFoundCache nfc;
+
+    private final KeyedLocation first = location( "first" );
+
+    private final KeyedLocation second = location( "second" );
+
+    @Before
+    public void setup()
+    {
+        cacheManager = new DefaultCacheManager( new ConfigurationBuilder().build() );
+
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setDefaultNfcMaxResultSetSize( PAGE_SIZE );
+
+        nfc = new IspnNotFoundCache( config, new CacheHandle<>( "nfc", cacheManager.getCache( "nfc" ) ) );
+    }
+
+    @After
+    public void tearDown()
+    {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void streamMissingPagesAcrossBoundaries()
+    {
+        // one partial last page, then exactly full pages, then a single page
+        for ( int count : new int[] { 7, 6, 1 } )
+        {
+            nfc.clearAllMissing();
+            Set<String> expected = addMissing( first, count );
+            addMissing( second, 2 );
+
+            List<String> streamed = new ArrayList<>();
+            nfc.streamMissing( first, streamed::add );
+
+            assertThat( "count: " + count, streamed, equalTo( new ArrayList<>( new TreeSet<>( expected ) ) ) );
+        }
+    }
+
+    @Test
+    public void streamMissingWhileClearingDoesNotSkipPaths()
+    {
+        Set<String> expected = addMissing( first, 8 );
+
+        // removing what was handed over must not shift the following pages
+        List<String> streamed = new ArrayList<>();
+        nfc.streamMissing( first, path -> {
+            streamed.add( path );
+            nfc.clearMissing( new ConcreteResource( first, path ) );
+        } );
+
+        assertThat( new HashSet<>( streamed ), equalTo( expected ) );
+        assertThat( nfc.getSize( first.getKey() ), equalTo( 0L ) );
+    }
+
+    @Test
+    public void missingLocations()
+    {
+        addMissing( first, 4 );
+        addMissing( second, 1 );
+
+        Set<StoreKey> keys = nfc.getMissingLocations()
+                                .stream()
+                                .map( l -> ( (KeyedLocation) l ).getKey() )
+                                .collect( Collectors.toSet() );
+
+        assertThat( keys, equalTo( new HashSet<>( Arrays.asList( first.getKey(), second.getKey() ) ) ) );
+    }
+
+    @Test
+    public void countsFollowAddsAndClears()
+    {
+        addMissing( first, 5 );
+        addMissing( second, 2 );
+
+        // maintained by the listener
+        assertThat( nfc.getSize( first.getKey() ), equalTo( 5L ) );
+
+        ConcreteResource added = new ConcreteResource( first, "/added" );
+        nfc.addMissing( added );
+        assertThat( nfc.getSize( first.getKey() ), equalTo( 6L ) );
+
+        // overwriting an entry doesn't count it twice
+        nfc.addMissing( added );
+        assertThat( nfc.getSize( first.getKey() ), equalTo( 6L ) );
+
+        nfc.clearMissing( added );
+        assertThat( nfc.getSize( first.getKey() ), equalTo( 5L ) );
+
+        nfc.clearMissing( new ConcreteResource( first, "/never/added" ) );
+        assertThat( nfc.getSize( first.getKey() ), equalTo( 5L ) );
+
+        nfc.clearMissing( first );
+        assertThat( nfc.getSize( first.getKey() ), equalTo( 0L ) );
+        assertThat( nfc.getSize( second.getKey() ), equalTo( 2L ) );
+
+        nfc.clearAllMissing();
+        assertThat( nfc.getSize( second.getKey() ), equalTo( 0L ) );
+
+        addMissing( second, 3 );
+        assertThat( nfc.getSize( second.getKey() ), equalTo( 3L ) );
+    }
+
+    @Test
+    public void countsAreSeededWithEntriesAddedBeforeStart()
+    {
+        addMissing( first, 4 );
+
+        IspnNotFoundCache restarted = new IspnNotFoundCache( new DefaultIndyConfiguration(),
+                                                             new CacheHandle<>( "nfc", cacheManager.getCache( "nfc" ) ) );
+        assertThat( restarted.getSize( first.getKey() ), equalTo( 4L ) );
+        assertThat( restarted.getSize( second.getKey() ), equalTo( 0L ) );
+
+        restarted.addMissing( new ConcreteResource( first, "/added" ) );
+        assertThat( restarted.getSize( first.getKey() ), equalTo( 5L ) );
+    }
+
+    private Set<String> addMissing( final Location location, final int count )
+    {
+        Set<String> paths = new HashSet<>();
+        for ( int i = 0; i < count; i++ )
+        {
+            String path = "/org/foo/bar/" + i + "/bar-" + i + ".pom";
+            nfc.addMissing( new ConcreteResource( location, path ) );
+            paths.add( path );
+        }
+        return paths;
+    }
+
+    private static KeyedLocation location( final String name )
+    {
+        return LocationUtils.toLocation( new HostedRepository( MAVEN_PKG_KEY, name ) );
+    }
+}
@@ -21,6 +21,7 @@ import org.commonjava.cdi.util.weft.Locker;
 import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.audit.ChangeSummary;
 import org.commonjava.indy.change.event.ArtifactStoreUpdateType;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.conf.InternalFeatureConfig;
 import org.commonjava.indy.conf.SslValidationConfig;
@@ -44,13 +45,11 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 import javax.inject.Inject;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedList;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicReference;
@@ -101,6 +100,19 @@ public abstract class AbstractStoreDataManager
     @ExecutorConfig( named = AFFECTED_BY_ASYNC_RUNNER_NAME, priority = 4, threads = 32 )
     protected ExecutorService affectedByAsyncRunner;
 
+    protected static final String HOST_ADDRESS_RESOLVER_NAME = "host-address-resolver";
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = HOST_ADDRESS_RESOLVER_NAME, priority = 2, threads = 1 )
+    private ExecutorService hostAddressResolver;
+
+    private final ConcreteGroupMembershipCache groupMembershipCache = new ConcreteGroupMembershipCache();
+
+    private final StoreMembershipIndex membershipIndex = new StoreMembershipIndex();
+
+    private volatile RemoteRepositoryUrlIndex remoteUrlIndex;
+
     protected AbstractStoreDataManager()
     {
     }
@@ -160,6 +172,10 @@ public abstract class AbstractStoreDataManager
                               final boolean exists, final boolean fireEvents, final EventMetadata eventMetadata )
             throws IndyDataException
     {
+        // Any store change (membership, enablement, definition) can change the concrete membership of the groups
+        // containing it. Invalidate before post-update listeners run, and whether or not events are fired.
+        groupMembershipCache.invalidate( store.getKey() );
+
         StoreEventDispatcher dispatcher = getStoreEventDispatcher();
         if ( dispatcher != null && isStarted() && fireEvents )
         {
@@ -202,6 +218,8 @@ public abstract class AbstractStoreDataManager
                                final EventMetadata eventMetadata )
             throws IndyDataException
     {
+        groupMembershipCache.invalidate( store.getKey() );
+
         StoreEventDispatcher dispatcher = getStoreEventDispatcher();
         if ( dispatcher != null && isStarted() && fireEvents )
         {
@@ -219,6 +237,132 @@ public abstract class AbstractStoreDataManager
 
     protected abstract ArtifactStore removeArtifactStoreInternal( StoreKey key );
 
+    /**
+     * Bring the node-local views derived from the stores (the group membership cache, the remote URL index) up to date
+     * with a store change this instance didn't make itself, such as a write by another node to a shared store cache.
+     * @param store the new state of the store, or null if it was removed
+     */
+    protected void onExternalStoreChange( final StoreKey key, final ArtifactStore store )
+    {
+        groupMembershipCache.invalidate( key );
+
+        RemoteRepositoryUrlIndex index = remoteUrlIndex;
+        if ( index != null )
+        {
+            synchronized ( index )
+            {
+                if ( store == null )
+                {
+                    index.remove( key );
+                }
+                else
+                {
+                    index.update( null, store );
+                }
+            }
+        }
+    }
+
+    /**
+     * Materialized concrete membership of groups, maintained by {@link #postStore} and {@link #postDelete}. Managers
+     * whose stores can be written by other nodes must also call {@link #onExternalStoreChange(StoreKey, ArtifactStore)}
+     * from their own change notifications.
+     */
+    public ConcreteGroupMembershipCache getGroupMembershipCache()
+    {
+        return groupMembershipCache;
+    }
+
+    /**
+     * Reverse (member -> containing groups) index, maintained as stores are put and removed.
+     */
+    protected StoreMembershipIndex getMembershipIndex()
+    {
+        return membershipIndex;
+    }
+
+    /**
+     * URL index of remote repositories, maintained as stores are put and removed. It is populated from all remote
+     * repositories on first use, which covers stores loaded from persistence without going through {@link #store}, and
+     * follows {@link #onExternalStoreChange(StoreKey, ArtifactStore)} for stores written elsewhere.
+     */
+    public RemoteRepositoryUrlIndex getRemoteUrlIndex()
+    {
+        RemoteRepositoryUrlIndex index = getOrCreateRemoteUrlIndex();
+        if ( !index.isInitialized() )
+        {
+            synchronized ( index )
+            {
+                if ( !index.isInitialized() )
+                {
+                    try
+                    {
+                        getAllArtifactStores().stream()
+                                              .filter( s -> s.getType() == StoreType.remote )
+                                              .forEach( s -> index.update( null, s ) );
+                        index.setInitialized();
+                        logger.debug( "Remote repository URL index initialized" );
+                    }
+                    catch ( IndyDataException e )
+                    {
+                        logger.error( "Failed to initialize remote repository URL index: " + e.getMessage(), e );
+                    }
+                }
+            }
+        }
+
+        return index;
+    }
+
+    private RemoteRepositoryUrlIndex getOrCreateRemoteUrlIndex()
+    {
+        if ( remoteUrlIndex == null )
+        {
+            synchronized ( this )
+            {
+                if ( remoteUrlIndex == null )
+                {
+                    int ttl = indyConfiguration == null ?
+                            DefaultIndyConfiguration.DEFAULT_REMOTE_URL_ADDRESS_CACHE_SECONDS :
+                            indyConfiguration.getRemoteUrlAddressCacheSeconds();
+
+                    // without a managed resolver (outside the container) the index matches by host name only
+                    remoteUrlIndex = new RemoteRepositoryUrlIndex( ttl > 0 && hostAddressResolver != null ?
+                                                                           new HostAddressCache( ttl,
+                                                                                                 hostAddressResolver ) :
+                                                                           null );
+                }
+            }
+        }
+
+        return remoteUrlIndex;
+    }
+
+    protected void clearRemoteUrlIndex()
+    {
+        RemoteRepositoryUrlIndex index = remoteUrlIndex;
+        if ( index != null )
+        {
+            synchronized ( index )
+            {
+                index.clear();
+            }
+        }
+    }
+
+    /**
+     * Apply a store change to the URL index. Synchronized with the initial population so a store written while the
+     * index is being populated can't be overwritten by the stale snapshot.
+     */
+    private void updateRemoteUrlIndex( final ArtifactStore original, final ArtifactStore store )
+    {
+        RemoteRepositoryUrlIndex index = getOrCreateRemoteUrlIndex();
+        synchronized ( index )
+        {
+            index.update( original, store );
+        }
+    }
+
     @Override
     @Measure
     public void deleteArtifactStore( final StoreKey key, final ChangeSummary summary,
@@ -246,6 +390,8 @@ public abstract class AbstractStoreDataManager
                 preDelete( store, summary, true, eventMetadata );
 
                 ArtifactStore removed = removeArtifactStoreInternal( k );
+                membershipIndex.remove( store );
+                updateRemoteUrlIndex( store, null );
                 logger.info( "REMOVED store: {}", removed );
 
                 postDelete( store, summary, true, eventMetadata );
@@ -423,6 +569,8 @@ public abstract class AbstractStoreDataManager
 
         logger.debug( "Put {} to stores map", k );
         final ArtifactStore old = putArtifactStoreInternal( store.getKey(), store );
+        membershipIndex.update( original, store );
+        updateRemoteUrlIndex( original, store );
 
         try
         {
@@ -436,6 +584,9 @@ public abstract class AbstractStoreDataManager
             {
                 logger.error( "postStore() failed for {}. Rollback to old value: {}", store, old );
                 putArtifactStoreInternal( old.getKey(), old );
+                membershipIndex.update( store, old );
+                updateRemoteUrlIndex( store, old );
+                groupMembershipCache.invalidate( old.getKey() );
             }
             error.set( e );
             return false;
@@ -517,48 +668,39 @@ public abstract class AbstractStoreDataManager
         Logger logger = LoggerFactory.getLogger( getClass() );
         logger.debug( "Getting groups affected by: {}", keys );
 
-        List<StoreKey> toProcess = new ArrayList<>( new HashSet<>( keys ) );
-
         Set<Group> groups = new HashSet<>();
-        if ( toProcess.isEmpty() )
+        if ( keys == null || keys.isEmpty() )
         {
             return groups;
         }
 
+        // breadth-first walk up the reverse membership index
+        LinkedList<StoreKey> toProcess = new LinkedList<>( new HashSet<>( keys ) );
         Set<StoreKey> processed = new HashSet<>();
-        final String packageType = toProcess.get( 0 ).getPackageType();
-
-        Set<ArtifactStore> all = this.getStoreKeysByPkgAndType( packageType, group )
-                                     .stream()
-                                     .map( this::getArtifactStoreInternal )
-                                     .filter( Objects::nonNull )
-                                     .collect( Collectors.toSet() );
 
         while ( !toProcess.isEmpty() )
         {
-            // as long as we have another key to process, pop it off the list (remove it) and process it.
-            StoreKey next = toProcess.remove( 0 );
-            if ( processed.contains( next ) )
+            StoreKey next = toProcess.removeFirst();
+            if ( next == null || !processed.add( next ) )
             {
                 // if we've already handled this group (via another branch in the group membership tree, etc. then don't bother.
                 continue;
             }
 
-            // use this to avoid reprocessing groups we've already encountered.
-            processed.add( next );
-
-            for ( ArtifactStore store : all )
+            for ( StoreKey groupKey : membershipIndex.getGroupsContaining( next ) )
             {
-                if ( ( store instanceof Group ) && !processed.contains( store.getKey() )  )
+                if ( processed.contains( groupKey ) )
                 {
-                    Group g = (Group) store;
-                    if ( g.getConstituents() != null && g.getConstituents().contains( next ) )
-                    {
-                        groups.add( g );
+                    continue;
+                }
 
-                        // add this group as another one to process for groups that contain it...and recurse upwards
-                        toProcess.add( g.getKey() );
-                    }
+                ArtifactStore store = getArtifactStoreInternal( groupKey );
+                if ( store instanceof Group )
+                {
+                    groups.add( (Group) store );
+
+                    // add this group as another one to process for groups that contain it...and recurse upwards
+                    toProcess.addLast( groupKey );
                 }
             }
         }
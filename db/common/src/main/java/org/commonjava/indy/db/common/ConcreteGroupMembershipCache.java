@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Materialized view of the flattened, ordered concrete membership of groups. Entries are keyed by group
+ * {@link StoreKey} plus the enabled-only flag of the query that built them.
+ * <p>
+ * Each entry remembers every store key visited while it was built (nested groups and members alike). That reverse
+ * dependency map is what lets {@link #invalidate(StoreKey)} drop exactly the entries a store update or deletion can
+ * affect, without walking the whole group graph again. When an entry is dropped or rebuilt, it is unregistered from
+ * the dependency sets of everything it visited, so the map only ever references live entries.
+ * <p>
+ * Reads are lock-free. A rebuild runs inside a {@link Build}, which records the keys it visits as it goes; an
+ * invalidation of one of those keys while the build is in flight keeps its result out of the cache. Invalidations of
+ * unrelated stores don't affect it.
+ */
+public class ConcreteGroupMembershipCache
+        implements MetricSet
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<MembershipKey, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, Set<MembershipKey>> dependents = new ConcurrentHashMap<>();
+
+    private final Set<Build> building = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder rebuilds = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Retrieve the cached concrete membership, or null if it has to be (re)built using {@link #begin(StoreKey, boolean)}.
+     */
+    public List<ArtifactStore> get( final StoreKey groupKey, final boolean enabledOnly )
+    {
+        Entry entry = entries.get( new MembershipKey( groupKey, enabledOnly ) );
+        if ( entry == null )
+        {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return entry.members;
+    }
+
+    /**
+     * Start rebuilding the membership of a group. The walk must add each store key to {@link Build#getVisited()}
+     * BEFORE it reads that store, and the build must be closed whether or not {@link #put(Build, List)} is reached.
+     */
+    public Build begin( final StoreKey groupKey, final boolean enabledOnly )
+    {
+        Build build = new Build( new MembershipKey( groupKey, enabledOnly ) );
+        building.add( build );
+        return build;
+    }
+
+    /**
+     * @return the read-only copy of the members that was cached (or would have been, if a store it visited changed
+     * meanwhile)
+     */
+    public List<ArtifactStore> put( final Build build, final List<ArtifactStore> members )
+    {
+        rebuilds.increment();
+
+        final MembershipKey key = build.key;
+        final Set<StoreKey> visited = new HashSet<>( build.visited );
+        visited.add( key.groupKey );
+
+        visited.forEach( k -> dependents.compute( k, ( d, keys ) -> {
+            Set<MembershipKey> result = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+            result.add( key );
+            return result;
+        } ) );
+
+        final Entry entry = new Entry( Collections.unmodifiableList( new ArrayList<>( members ) ), visited );
+        Entry old = entries.put( key, entry );
+        if ( old != null )
+        {
+            old.visited.stream().filter( k -> !visited.contains( k ) ).forEach( k -> unregister( k, key ) );
+        }
+
+        // Once the build is out of the in-flight set, invalidations find the entry through the dependency map instead.
+        // If one of the visited stores changed while we were walking the group, our view may be stale. Drop it and let
+        // the next reader rebuild.
+        building.remove( build );
+        if ( build.stale )
+        {
+            logger.debug( "Membership of {} changed while it was being built. Not caching.", key.groupKey );
+            remove( key, entry );
+        }
+
+        return entry.members;
+    }
+
+    /**
+     * Drop every cached membership that depends on the given store, i.e. the store itself (if it's a group) and every
+     * group that contains it directly or transitively.
+     */
+    public void invalidate( final StoreKey key )
+    {
+        building.forEach( b -> {
+            if ( b.visited.contains( key ) || b.key.groupKey.equals( key ) )
+            {
+                b.stale = true;
+            }
+        } );
+
+        Set<MembershipKey> affected = dependents.remove( key );
+        if ( affected != null )
+        {
+            logger.debug( "Invalidating {} cached group memberships affected by: {}", affected.size(), key );
+            affected.forEach( k -> {
+                Entry entry = entries.get( k );
+                if ( entry != null )
+                {
+                    remove( k, entry );
+                }
+            } );
+            invalidations.add( affected.size() );
+        }
+    }
+
+    public void clear()
+    {
+        building.forEach( b -> b.stale = true );
+        entries.clear();
+        dependents.clear();
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics()
+    {
+        Map<String, Metric> gauges = new HashMap<>();
+        gauges.put( "hits", (Gauge<Long>) hits::sum );
+        gauges.put( "misses", (Gauge<Long>) misses::sum );
+        gauges.put( "rebuilds", (Gauge<Long>) rebuilds::sum );
+        gauges.put( "invalidations", (Gauge<Long>) invalidations::sum );
+        gauges.put( "size", (Gauge<Integer>) this::size );
+        gauges.put( "dependencies", (Gauge<Integer>) dependents::size );
+        return gauges;
+    }
+
+    private void remove( final MembershipKey key, final Entry entry )
+    {
+        if ( entries.remove( key, entry ) )
+        {
+            entry.visited.forEach( k -> unregister( k, key ) );
+        }
+    }
+
+    private void unregister( final StoreKey storeKey, final MembershipKey key )
+    {
+        dependents.computeIfPresent( storeKey, ( d, keys ) -> {
+            keys.remove( key );
+            return keys.isEmpty() ? null : keys;
+        } );
+    }
+
+    /**
+     * An in-flight rebuild of one group membership. See {@link #begin(StoreKey, boolean)}.
+     */
+    public final class Build
+            implements AutoCloseable
+    {
+        private final MembershipKey key;
+
+        private final Set<StoreKey> visited = ConcurrentHashMap.newKeySet();
+
+        private volatile boolean stale;
+
+        private Build( final MembershipKey key )
+        {
+            this.key = key;
+        }
+
+        public Set<StoreKey> getVisited()
+        {
+            return visited;
+        }
+
+        @Override
+        public void close()
+        {
+            building.remove( this );
+        }
+    }
+
+    private static final class Entry
+    {
+        private final List<ArtifactStore> members;
+
+        private final Set<StoreKey> visited;
+
+        private Entry( final List<ArtifactStore> members, final Set<StoreKey> visited )
+        {
+            this.members = members;
+            this.visited = visited;
+        }
+    }
+
+    private static final class MembershipKey
+    {
+        private final StoreKey groupKey;
+
+        private final boolean enabledOnly;
+
+        private MembershipKey( final StoreKey groupKey, final boolean enabledOnly )
+        {
+            this.groupKey = groupKey;
+            this.enabledOnly = enabledOnly;
+        }
+
+        @Override
+        public boolean equals( final Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+            MembershipKey that = (MembershipKey) o;
+            return enabledOnly == that.enabledOnly && Objects.equals( groupKey, that.groupKey );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( groupKey, enabledOnly );
+        }
+    }
+}
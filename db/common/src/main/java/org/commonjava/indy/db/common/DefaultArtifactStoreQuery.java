@@ -271,9 +271,11 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
             throws IndyDataException
     {
         /*
-           This filter does these things:
-             * First compare ip, if ip same, and the path(without last slash) same too, the repo is found
-             * If ip not same, then compare the url without scheme and last slash (if has) to find the repo
+           This lookup does these things:
+             * First compare the url without scheme and last slash (if has) to find the repo
+             * If not found, compare ip; if ip same, and the port and path(without last slash) same too, the repo is found
+           When the data manager maintains a RemoteRepositoryUrlIndex both steps are index lookups, and the ip step only
+           uses addresses already resolved in the background.
          */
         UrlInfo temp = null;
         try
@@ -287,6 +289,31 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
 
         final UrlInfo urlInfo = temp;
 
+        if ( urlInfo != null && dataManager instanceof AbstractStoreDataManager )
+        {
+            final Set<StoreKey> keys = ( (AbstractStoreDataManager) dataManager ).getRemoteUrlIndex().lookup( urlInfo );
+
+            final List<RemoteRepository> result = new ArrayList<>();
+            for ( StoreKey key : keys )
+            {
+                final ArtifactStore store = dataManager.getArtifactStore( key );
+                if ( store instanceof RemoteRepository && ( enabled == null || enabled != store.isDisabled() )
+                        && ( packageType == null || packageType.equals( store.getPackageType() ) ) )
+                {
+                    logger.debug( "Repository found by URL index, url is {}, store key is {}", url, key );
+                    result.add( (RemoteRepository) store );
+                }
+            }
+
+            return result;
+        }
+
+        return scanRemoteRepositoriesByUrl( url, urlInfo );
+    }
+
+    private List<RemoteRepository> scanRemoteRepositoriesByUrl( final String url, final UrlInfo urlInfo )
+            throws IndyDataException
+    {
         List<RemoteRepository> result;
 
         // first try to find the remote repo by urlWithNoSchemeAndLastSlash
@@ -386,7 +413,30 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
         logger.trace( "START: default store-query ordered-concrete-stores-in-group" );
         try
         {
-            return getGroupOrdering( groupName, false, true );
+            if ( packageType == null || !( dataManager instanceof AbstractStoreDataManager ) )
+            {
+                return getGroupOrdering( groupName, false, true, null );
+            }
+
+            final ConcreteGroupMembershipCache cache =
+                    ( (AbstractStoreDataManager) dataManager ).getGroupMembershipCache();
+
+            final StoreKey groupKey = new StoreKey( packageType, group, groupName );
+            final boolean enabledOnly = Boolean.TRUE.equals( enabled );
+
+            // the cached list is shared (and read-only), so consumers such as the repository filter manager can tell
+            // an unchanged membership by identity
+            List<ArtifactStore> cached = cache.get( groupKey, enabledOnly );
+            if ( cached != null )
+            {
+                return cached;
+            }
+
+            try ( ConcreteGroupMembershipCache.Build build = cache.begin( groupKey, enabledOnly ) )
+            {
+                final List<ArtifactStore> result = getGroupOrdering( groupName, false, true, build.getVisited() );
+                return cache.put( build, result );
+            }
         }
         finally
         {
@@ -399,7 +449,7 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     public List<ArtifactStore> getOrderedStoresInGroup( final String groupName )
             throws IndyDataException
     {
-        return getGroupOrdering( groupName, true, false );
+        return getGroupOrdering( groupName, true, false, null );
     }
 
     @Override
@@ -517,8 +567,12 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
         return this;
     }
 
-    private List<ArtifactStore> getGroupOrdering( final String groupName,
-                                                  final boolean includeGroups, final boolean recurseGroups )
+    /**
+     * @param visited if not null, collects the keys of every store referenced while walking the membership tree. Each
+     * key is added before the store is read.
+     */
+    private List<ArtifactStore> getGroupOrdering( final String groupName, final boolean includeGroups,
+                                                  final boolean recurseGroups, final Set<StoreKey> visited )
             throws IndyDataException
     {
         if ( packageType == null )
@@ -526,7 +580,13 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
             throw new IndyDataException( "packageType must be set on the query before calling this method!" );
         }
 
-        final Group master = (Group) dataManager.getArtifactStore( new StoreKey( packageType, group, groupName ) );
+        final StoreKey masterKey = new StoreKey( packageType, group, groupName );
+        if ( visited != null )
+        {
+            visited.add( masterKey );
+        }
+
+        final Group master = (Group) dataManager.getArtifactStore( masterKey );
         if ( master == null )
         {
             return Collections.emptyList();
@@ -559,6 +619,10 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
                                  if ( !seen.contains( key ) )
                                  {
                                      seen.add( key );
+                                     if ( visited != null )
+                                     {
+                                         visited.add( key );
+                                     }
                                      final StoreType type = key.getType();
                                      try
                                      {
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Host name -> IP address cache with a TTL. Resolution never happens on the calling thread: a lookup for a host that
+ * isn't resolved yet (or whose entry expired) schedules a background resolution and returns whatever is cached, which
+ * may be null or stale.
+ * <p>
+ * Hosts are kept in two places. {@link #track(String) Tracked} hosts (those of indexed remote repositories) are kept
+ * until they are untracked, and only they are in the reverse IP -> host names mapping, so callers can find every
+ * tracked host sharing an address. Any other host looked up is kept in a least-recently-used map of at most
+ * {@code maxHosts} entries, so hosts seen once (e.g. through the HTTP proxy) can't grow the cache without bound.
+ */
+public class HostAddressCache
+{
+    public static final int DEFAULT_MAX_HOSTS = 4096;
+
+    private static final ResolvedAddress UNRESOLVED = new ResolvedAddress( null, -1 );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<String, ResolvedAddress> tracked = new ConcurrentHashMap<>();
+
+    // guarded by itself
+    private final Map<String, ResolvedAddress> lookedUp;
+
+    private final Map<String, Set<String>> hostsByAddress = new ConcurrentHashMap<>();
+
+    private final Set<String> resolving = ConcurrentHashMap.newKeySet();
+
+    private final long ttlMillis;
+
+    private final ExecutorService resolver;
+
+    public HostAddressCache( final long ttlSeconds, final ExecutorService resolver )
+    {
+        this( ttlSeconds, DEFAULT_MAX_HOSTS, resolver );
+    }
+
+    public HostAddressCache( final long ttlSeconds, final int maxHosts, final ExecutorService resolver )
+    {
+        this.ttlMillis = TimeUnit.SECONDS.toMillis( ttlSeconds );
+        this.resolver = resolver;
+        this.lookedUp = new LinkedHashMap<String, ResolvedAddress>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<String, ResolvedAddress> eldest )
+            {
+                return size() > maxHosts;
+            }
+        };
+    }
+
+    /**
+     * @return the cached address of the host (possibly stale), or null if it hasn't been resolved yet.
+     */
+    public String getAddress( final String host )
+    {
+        ResolvedAddress resolved = tracked.get( host );
+        if ( resolved == null )
+        {
+            synchronized ( lookedUp )
+            {
+                resolved = lookedUp.get( host );
+            }
+        }
+
+        if ( resolved == null || resolved.isExpired() )
+        {
+            prefetch( host );
+        }
+
+        return resolved == null ? null : resolved.address;
+    }
+
+    /**
+     * @return the tracked hosts known to resolve to the address
+     */
+    public Set<String> getHostsWithAddress( final String address )
+    {
+        Set<String> hosts = hostsByAddress.get( address );
+        return hosts == null ? Collections.emptySet() : hosts;
+    }
+
+    /**
+     * Keep the host resolved, and in the reverse mapping, until {@link #untrack(String)}.
+     */
+    public void track( final String host )
+    {
+        if ( host != null && tracked.putIfAbsent( host, UNRESOLVED ) == null )
+        {
+            prefetch( host );
+        }
+    }
+
+    public void untrack( final String host )
+    {
+        if ( host != null )
+        {
+            tracked.computeIfPresent( host, ( h, resolved ) -> {
+                removeReverse( h, resolved.address );
+                return null;
+            } );
+        }
+    }
+
+    /**
+     * Schedule a background resolution of the host, unless one is already in flight.
+     */
+    public void prefetch( final String host )
+    {
+        if ( host == null || !resolving.add( host ) )
+        {
+            return;
+        }
+
+        try
+        {
+            resolver.execute( () -> {
+                try
+                {
+                    resolve( host );
+                }
+                finally
+                {
+                    resolving.remove( host );
+                }
+            } );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            logger.debug( "Resolution of host: {} rejected, will retry on next lookup", host );
+            resolving.remove( host );
+        }
+    }
+
+    public void clear()
+    {
+        tracked.clear();
+        hostsByAddress.clear();
+        synchronized ( lookedUp )
+        {
+            lookedUp.clear();
+        }
+    }
+
+    public int size()
+    {
+        synchronized ( lookedUp )
+        {
+            return tracked.size() + lookedUp.size();
+        }
+    }
+
+    private void resolve( final String host )
+    {
+        String address = null;
+        try
+        {
+            InetAddress inet = InetAddress.getByName( host );
+            if ( inet != null )
+            {
+                address = inet.getHostAddress();
+            }
+        }
+        catch ( UnknownHostException e )
+        {
+            logger.debug( "Failed to resolve host: {}. Reason: {}", host, e.getMessage() );
+        }
+
+        final ResolvedAddress next = new ResolvedAddress( address, ttlMillis );
+        ResolvedAddress updated = tracked.computeIfPresent( host, ( h, previous ) -> {
+            if ( previous.address != null && !previous.address.equals( next.address ) )
+            {
+                removeReverse( h, previous.address );
+            }
+
+            if ( next.address != null )
+            {
+                hostsByAddress.compute( next.address, ( a, hosts ) -> {
+                    Set<String> result = hosts == null ? ConcurrentHashMap.newKeySet() : hosts;
+                    result.add( h );
+                    return result;
+                } );
+            }
+            return next;
+        } );
+
+        if ( updated == null )
+        {
+            synchronized ( lookedUp )
+            {
+                lookedUp.put( host, next );
+            }
+        }
+    }
+
+    private void removeReverse( final String host, final String address )
+    {
+        if ( address != null )
+        {
+            hostsByAddress.computeIfPresent( address, ( a, hosts ) -> {
+                hosts.remove( host );
+                return hosts.isEmpty() ? null : hosts;
+            } );
+        }
+    }
+
+    private static final class ResolvedAddress
+    {
+        private final String address;
+
+        private final long expires;
+
+        private ResolvedAddress( final String address, final long ttlMillis )
+        {
+            this.address = address;
+            this.expires = System.currentTimeMillis() + ttlMillis;
+        }
+
+        private boolean isExpired()
+        {
+            return System.currentTimeMillis() > expires;
+        }
+    }
+}
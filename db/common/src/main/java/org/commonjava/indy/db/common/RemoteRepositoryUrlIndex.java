@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.util.UrlInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory index of remote repositories by normalized URL (protocol + host + port + path without the trailing slash),
+ * so resolving a URL to its remote repositories doesn't have to parse the URL of every remote repository.
+ * <p>
+ * If a {@link HostAddressCache} is given, repositories are also indexed by host so a URL using a different host name
+ * for the same IP address can still be matched. The hosts of indexed repositories are tracked by the cache for as long
+ * as they are indexed. Only cached addresses are used for that; a lookup never waits on DNS.
+ * <p>
+ * Updates must be serialized by the caller.
+ */
+public class RemoteRepositoryUrlIndex
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<String, Set<StoreKey>> byUrl = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<StoreKey>> byHost = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, UrlInfo> indexed = new ConcurrentHashMap<>();
+
+    private final HostAddressCache addressCache;
+
+    private volatile boolean initialized;
+
+    /**
+     * @param addressCache resolver cache backing the IP lookups, or null to match on the normalized URL only
+     */
+    public RemoteRepositoryUrlIndex( final HostAddressCache addressCache )
+    {
+        this.addressCache = addressCache;
+    }
+
+    /**
+     * Update the index for a store that replaced original (either may be null, and neither has to be a remote repository).
+     */
+    public void update( final ArtifactStore original, final ArtifactStore store )
+    {
+        if ( original instanceof RemoteRepository )
+        {
+            unindex( original.getKey() );
+        }
+
+        if ( store instanceof RemoteRepository )
+        {
+            if ( !( original instanceof RemoteRepository ) )
+            {
+                unindex( store.getKey() );
+            }
+
+            final UrlInfo info = parse( ( (RemoteRepository) store ).getUrl() );
+            if ( info != null )
+            {
+                indexed.put( store.getKey(), info );
+                add( byUrl, normalize( info ), store.getKey() );
+                if ( add( byHost, info.getHost(), store.getKey() ) && addressCache != null )
+                {
+                    addressCache.track( info.getHost() );
+                }
+            }
+        }
+    }
+
+    public void remove( final ArtifactStore store )
+    {
+        update( store, null );
+    }
+
+    /**
+     * Drop whatever is indexed for the key, for when the removed store itself isn't known.
+     */
+    public void remove( final StoreKey key )
+    {
+        unindex( key );
+    }
+
+    /**
+     * @return keys of the remote repositories with the same normalized URL, or if there are none, the keys of those
+     * whose host is known to resolve to the same IP address and which have the same port and path.
+     */
+    public Set<StoreKey> lookup( final UrlInfo urlInfo )
+    {
+        final Set<StoreKey> keys = byUrl.get( normalize( urlInfo ) );
+        if ( keys != null && !keys.isEmpty() )
+        {
+            return keys;
+        }
+
+        if ( addressCache == null )
+        {
+            return Collections.emptySet();
+        }
+
+        final String address = addressCache.getAddress( urlInfo.getHost() );
+        if ( address == null )
+        {
+            logger.debug( "No cached address for: {}. Skipping IP lookup.", urlInfo.getHost() );
+            return Collections.emptySet();
+        }
+
+        final Set<StoreKey> result = new HashSet<>();
+        for ( String host : addressCache.getHostsWithAddress( address ) )
+        {
+            for ( StoreKey key : byHost.getOrDefault( host, Collections.emptySet() ) )
+            {
+                UrlInfo target = indexed.get( key );
+                if ( target != null && target.getPort() == urlInfo.getPort()
+                        && target.getFileWithNoLastSlash().equals( urlInfo.getFileWithNoLastSlash() ) )
+                {
+                    result.add( key );
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public boolean isInitialized()
+    {
+        return initialized;
+    }
+
+    public void setInitialized()
+    {
+        this.initialized = true;
+    }
+
+    public void clear()
+    {
+        byUrl.clear();
+        byHost.clear();
+        indexed.clear();
+        if ( addressCache != null )
+        {
+            addressCache.clear();
+        }
+    }
+
+    private void unindex( final StoreKey key )
+    {
+        final UrlInfo info = indexed.remove( key );
+        if ( info != null )
+        {
+            remove( byUrl, normalize( info ), key );
+            if ( remove( byHost, info.getHost(), key ) && addressCache != null )
+            {
+                addressCache.untrack( info.getHost() );
+            }
+        }
+    }
+
+    private UrlInfo parse( final String url )
+    {
+        if ( url == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            return new UrlInfo( url );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            logger.warn( "Cannot index remote repository URL: '{}'. Reason: {}", url, e.getMessage() );
+            return null;
+        }
+    }
+
+    private static String normalize( final UrlInfo info )
+    {
+        return info.getProtocol() + "://" + info.getUrlWithNoSchemeAndLastSlash();
+    }
+
+    /**
+     * @return true if the index had no values for the key before
+     */
+    private static boolean add( final Map<String, Set<StoreKey>> index, final String key, final StoreKey value )
+    {
+        final AtomicBoolean created = new AtomicBoolean();
+        index.compute( key, ( k, values ) -> {
+            Set<StoreKey> result = values;
+            if ( result == null )
+            {
+                result = ConcurrentHashMap.newKeySet();
+                created.set( true );
+            }
+            result.add( value );
+            return result;
+        } );
+        return created.get();
+    }
+
+    /**
+     * @return true if the index has no values left for the key
+     */
+    private static boolean remove( final Map<String, Set<StoreKey>> index, final String key, final StoreKey value )
+    {
+        return index.computeIfPresent( key, ( k, values ) -> {
+            values.remove( value );
+            return values.isEmpty() ? null : values;
+        } ) == null;
+    }
+}
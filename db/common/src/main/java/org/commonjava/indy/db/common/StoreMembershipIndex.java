@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory inverted index of group membership: member {@link StoreKey} -> keys of the groups listing it as a direct
+ * constituent. It is updated incrementally as stores are put and removed, so answering "which groups contain X" no
+ * longer requires loading and scanning every group.
+ * <p>
+ * The index reflects group constituent lists only. Deleting a member store does not remove its entry; the groups still
+ * list it until they are updated themselves.
+ */
+public class StoreMembershipIndex
+{
+    private final Map<StoreKey, Set<StoreKey>> containingGroups = new ConcurrentHashMap<>();
+
+    /**
+     * Update the index for a store that replaced original (either may be null, and neither has to be a group).
+     */
+    public void update( final ArtifactStore original, final ArtifactStore store )
+    {
+        final StoreKey groupKey = store != null ? store.getKey() : original != null ? original.getKey() : null;
+        if ( groupKey == null )
+        {
+            return;
+        }
+
+        final Set<StoreKey> before = constituentsOf( original );
+        final Set<StoreKey> after = constituentsOf( store );
+
+        before.stream().filter( k -> !after.contains( k ) ).forEach( k -> removeMembership( k, groupKey ) );
+        after.stream().filter( k -> !before.contains( k ) ).forEach( k -> addMembership( k, groupKey ) );
+    }
+
+    public void remove( final ArtifactStore store )
+    {
+        update( store, null );
+    }
+
+    /**
+     * @return keys of the groups listing the given store as a direct constituent.
+     */
+    public Set<StoreKey> getGroupsContaining( final StoreKey key )
+    {
+        final Set<StoreKey> groups = containingGroups.get( key );
+        return groups == null ? Collections.emptySet() : groups;
+    }
+
+    public void clear()
+    {
+        containingGroups.clear();
+    }
+
+    private void addMembership( final StoreKey member, final StoreKey groupKey )
+    {
+        // compute() rather than computeIfAbsent().add() so we can't race with removeMembership() dropping the set
+        containingGroups.compute( member, ( k, groups ) -> {
+            Set<StoreKey> result = groups == null ? ConcurrentHashMap.newKeySet() : groups;
+            result.add( groupKey );
+            return result;
+        } );
+    }
+
+    private void removeMembership( final StoreKey member, final StoreKey groupKey )
+    {
+        containingGroups.computeIfPresent( member, ( k, groups ) -> {
+            groups.remove( groupKey );
+            return groups.isEmpty() ? null : groups;
+        } );
+    }
+
+    private Set<StoreKey> constituentsOf( final ArtifactStore store )
+    {
+        if ( store instanceof Group )
+        {
+            final List<StoreKey> constituents = ( (Group) store ).getConstituents();
+            if ( constituents != null )
+            {
+                return new HashSet<>( constituents );
+            }
+        }
+
+        return Collections.emptySet();
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import com.codahale.metrics.Gauge;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.commonjava.indy.model.core.StoreType.group;
+import static org.commonjava.indy.model.core.StoreType.remote;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ConcreteGroupMembershipCacheTest
+{
+    private final ConcreteGroupMembershipCache cache = new ConcreteGroupMembershipCache();
+
+    private final StoreKey groupA = new StoreKey( MAVEN_PKG_KEY, group, "a" );
+
+    private final StoreKey groupB = new StoreKey( MAVEN_PKG_KEY, group, "b" );
+
+    private final StoreKey central = new StoreKey( MAVEN_PKG_KEY, remote, "central" );
+
+    private final StoreKey repo2 = new StoreKey( MAVEN_PKG_KEY, remote, "repo2" );
+
+    private final StoreKey repo3 = new StoreKey( MAVEN_PKG_KEY, remote, "repo3" );
+
+    @Test
+    public void invalidationOnlyDropsDependentGroups()
+    {
+        build( groupA, central );
+        build( groupB, repo2 );
+
+        cache.invalidate( repo2 );
+
+        assertThat( cache.get( groupA, true ), notNullValue() );
+        assertThat( cache.get( groupB, true ), nullValue() );
+    }
+
+    @Test
+    public void invalidationDuringBuildOfDependentGroupIsNotCached()
+    {
+        try ( ConcreteGroupMembershipCache.Build build = cache.begin( groupA, true ) )
+        {
+            build.getVisited().add( groupA );
+            build.getVisited().add( central );
+            cache.invalidate( central );
+            cache.put( build, members( central ) );
+        }
+
+        assertThat( cache.get( groupA, true ), nullValue() );
+        assertThat( dependencies(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void invalidationDuringBuildOfUnrelatedGroupIsCached()
+    {
+        try ( ConcreteGroupMembershipCache.Build build = cache.begin( groupA, true ) )
+        {
+            build.getVisited().add( groupA );
+            build.getVisited().add( central );
+            cache.invalidate( repo2 );
+            cache.put( build, members( central ) );
+        }
+
+        assertThat( cache.get( groupA, true ), notNullValue() );
+    }
+
+    @Test
+    public void dependenciesAreDroppedWithTheirEntries()
+    {
+        build( groupA, central, repo2 );
+        assertThat( dependencies(), equalTo( 3 ) );
+
+        cache.invalidate( central );
+
+        assertThat( cache.get( groupA, true ), nullValue() );
+        assertThat( dependencies(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void deletedGroupDropsItsDependencies()
+    {
+        build( groupA, central );
+        build( groupB, central );
+
+        cache.invalidate( groupA );
+
+        assertThat( cache.get( groupB, true ), notNullValue() );
+        assertThat( dependencies(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void rebuildDropsDependenciesNoLongerVisited()
+    {
+        build( groupA, central, repo2 );
+        build( groupA, central, repo3 );
+
+        assertThat( dependencies(), equalTo( 3 ) );
+
+        cache.invalidate( repo2 );
+        assertThat( cache.get( groupA, true ), notNullValue() );
+
+        cache.invalidate( repo3 );
+        assertThat( cache.get( groupA, true ), nullValue() );
+    }
+
+    private void build( final StoreKey groupKey, final StoreKey... memberKeys )
+    {
+        try ( ConcreteGroupMembershipCache.Build build = cache.begin( groupKey, true ) )
+        {
+            build.getVisited().add( groupKey );
+            Collections.addAll( build.getVisited(), memberKeys );
+            cache.put( build, members( memberKeys ) );
+        }
+    }
+
+    private List<ArtifactStore> members( final StoreKey... keys )
+    {
+        List<ArtifactStore> result = new ArrayList<>();
+        for ( StoreKey key : keys )
+        {
+            result.add( new RemoteRepository( MAVEN_PKG_KEY, key.getName(), "http://" + key.getName() + "/" ) );
+        }
+        return result;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private int dependencies()
+    {
+        return ( (Gauge<Integer>) cache.getMetrics().get( "dependencies" ) ).getValue();
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class HostAddressCacheTest
+{
+    // IP literals resolve without DNS
+    private static final String HOST_1 = "10.0.0.1";
+
+    private static final String HOST_2 = "10.0.0.2";
+
+    private static final String HOST_3 = "10.0.0.3";
+
+    private final ExecutorService resolver = Executors.newSingleThreadExecutor();
+
+    @After
+    public void shutdown()
+    {
+        resolver.shutdownNow();
+    }
+
+    @Test
+    public void lookedUpHostsAreBoundedByLeastRecentUse()
+            throws Exception
+    {
+        HostAddressCache cache = new HostAddressCache( 60, 2, resolver );
+
+        for ( String host : new String[] { HOST_1, HOST_2, HOST_3 } )
+        {
+            assertThat( cache.getAddress( host ), nullValue() );
+            awaitResolutions();
+        }
+
+        assertThat( cache.size(), equalTo( 2 ) );
+        assertThat( cache.getAddress( HOST_3 ), equalTo( HOST_3 ) );
+        assertThat( cache.getAddress( HOST_1 ), nullValue() );
+    }
+
+    @Test
+    public void trackedHostsOutliveLookedUpHostsUntilUntracked()
+            throws Exception
+    {
+        HostAddressCache cache = new HostAddressCache( 60, 1, resolver );
+
+        cache.track( HOST_1 );
+        awaitResolutions();
+
+        cache.getAddress( HOST_2 );
+        cache.getAddress( HOST_3 );
+        awaitResolutions();
+
+        assertThat( cache.size(), equalTo( 2 ) );
+        assertThat( cache.getAddress( HOST_1 ), equalTo( HOST_1 ) );
+        assertThat( cache.getHostsWithAddress( HOST_1 ), equalTo( Collections.singleton( HOST_1 ) ) );
+
+        // looked-up hosts never show up in the reverse mapping
+        assertThat( cache.getHostsWithAddress( HOST_3 ).isEmpty(), equalTo( true ) );
+
+        cache.untrack( HOST_1 );
+        assertThat( cache.getHostsWithAddress( HOST_1 ).isEmpty(), equalTo( true ) );
+        assertThat( cache.size(), equalTo( 1 ) );
+    }
+
+    private void awaitResolutions()
+            throws Exception
+    {
+        // the resolver is single-threaded, so this runs after everything scheduled before it
+        resolver.submit( () -> {
+        } ).get();
+    }
+}
@@ -27,9 +27,16 @@ import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.subsys.infinispan.CacheHandle;
 import org.infinispan.Cache;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryExpired;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
 import javax.inject.Inject;
@@ -49,6 +56,8 @@ import static org.commonjava.indy.infinispan.data.StoreDataCacheProducer.AFFECTE
 import static org.commonjava.indy.infinispan.data.StoreDataCacheProducer.STORE_BY_PKG_CACHE;
 import static org.commonjava.indy.infinispan.data.StoreDataCacheProducer.STORE_DATA_CACHE;
 import static org.commonjava.indy.model.core.StoreType.group;
+import static org.infinispan.notifications.cachelistener.event.Event.Type.CACHE_ENTRY_EXPIRED;
+import static org.infinispan.notifications.cachelistener.event.Event.Type.CACHE_ENTRY_REMOVED;
 
 @ApplicationScoped
 @Alternative
@@ -91,9 +100,29 @@ public class InfinispanStoreDataManager
         this.stores = new CacheHandle( STORE_DATA_CACHE, cache );
         this.storesByPkg = new CacheHandle( STORE_BY_PKG_CACHE, storesByPkg );
         this.affectedByStores = new CacheHandle( AFFECTED_BY_STORE_CACHE, affectedByStoresCache );
+        registerStoreChangeListener();
         logger.warn( "Constructor init: STARTUP ACTIONS MAY NOT RUN." );
     }
 
+    @PostConstruct
+    public void init()
+    {
+        registerStoreChangeListener();
+    }
+
+    /**
+     * Stores written through another node (or another manager sharing the cache) never reach {@link #postStore} or
+     * {@link #postDelete} here, so node-local views derived from the stores are also kept up to date from the cache's
+     * own entry events. See {@link #onExternalStoreChange(StoreKey, ArtifactStore)}.
+     */
+    private void registerStoreChangeListener()
+    {
+        stores.executeCache( c -> {
+            c.addListener( new StoreChangeListener() );
+            return null;
+        } );
+    }
+
     @Override
     protected ArtifactStore getArtifactStoreInternal( StoreKey key )
     {
@@ -124,6 +153,8 @@ public class InfinispanStoreDataManager
         storesByPkg.clear();
         affectedByStores.clear();
         storesByPkg.clear();
+        getGroupMembershipCache().clear();
+        clearRemoteUrlIndex();
     }
 
     @Override
@@ -388,4 +419,25 @@ public class InfinispanStoreDataManager
             keys.add( store.getKey() );
         }
     }
+
+    @Listener( clustered = true )
+    public class StoreChangeListener
+    {
+        @CacheEntryCreated
+        @CacheEntryModified
+        @CacheEntryRemoved
+        @CacheEntryExpired
+        public void onStoreChanged( final CacheEntryEvent<StoreKey, ArtifactStore> event )
+        {
+            if ( event.isPre() )
+            {
+                return;
+            }
+
+            logger.trace( "Store {} changed in cache {}: {}", event.getKey(), event.getCache().getName(),
+                          event.getType() );
+            onExternalStoreChange( event.getKey(), event.getType() == CACHE_ENTRY_REMOVED
+                    || event.getType() == CACHE_ENTRY_EXPIRED ? null : event.getValue() );
+        }
+    }
 }
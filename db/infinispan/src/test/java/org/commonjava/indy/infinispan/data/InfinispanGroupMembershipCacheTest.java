@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.infinispan.data;
+
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.commonjava.indy.infinispan.data.StoreDataCacheProducer.AFFECTED_BY_STORE_CACHE;
+import static org.commonjava.indy.infinispan.data.StoreDataCacheProducer.STORE_BY_PKG_CACHE;
+import static org.commonjava.indy.infinispan.data.StoreDataCacheProducer.STORE_DATA_CACHE;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * The store data cache may be written by other nodes, so the concrete group membership cache has to follow the
+ * cache's own entry events rather than only the writes made through this manager.
+ */
+public class InfinispanGroupMembershipCacheTest
+{
+    private final ChangeSummary summary = new ChangeSummary( "test-user", "test" );
+
+    private DefaultCacheManager cacheManager;
+
+    private Cache<StoreKey, ArtifactStore> storeCache;
+
+    private InfinispanStoreDataManager dataManager;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cacheManager = new DefaultCacheManager( new ConfigurationBuilder().build() );
+        storeCache = cacheManager.getCache( STORE_DATA_CACHE, true );
+        Cache<String, Map<StoreType, Set<StoreKey>>> storesByPkg = cacheManager.getCache( STORE_BY_PKG_CACHE, true );
+        Cache<StoreKey, Set<StoreKey>> affectedBy = cacheManager.getCache( AFFECTED_BY_STORE_CACHE, true );
+        dataManager = new InfinispanStoreDataManager( storeCache, storesByPkg, affectedBy );
+
+        RemoteRepository central = new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo.maven.apache.org/maven2/" );
+        RemoteRepository repo2 = new RemoteRepository( MAVEN_PKG_KEY, "repo2", "http://repo2.example.com/" );
+        Group group = new Group( MAVEN_PKG_KEY, "public", central.getKey(), repo2.getKey() );
+
+        for ( ArtifactStore store : asList( central, repo2, group ) )
+        {
+            dataManager.storeArtifactStore( store, summary, false, false, new EventMetadata() );
+        }
+    }
+
+    @After
+    public void shutdown()
+    {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void membershipIsCachedAndFollowsWritesThroughTheManager()
+            throws Exception
+    {
+        assertConcreteMembers( "central", "repo2" );
+        assertThat( dataManager.getGroupMembershipCache().size(), equalTo( 1 ) );
+
+        ArtifactStore repo2 = dataManager.getArtifactStore( new StoreKey( MAVEN_PKG_KEY, StoreType.remote, "repo2" ) )
+                                         .copyOf();
+        repo2.setDisabled( true );
+        dataManager.storeArtifactStore( repo2, summary, false, false, new EventMetadata() );
+
+        assertConcreteMembers( "central" );
+    }
+
+    @Test
+    public void membershipFollowsWritesMadeDirectlyToTheStoreCache()
+            throws Exception
+    {
+        assertConcreteMembers( "central", "repo2" );
+
+        // simulates a write from another node, which never goes through this manager
+        StoreKey groupKey = new StoreKey( MAVEN_PKG_KEY, StoreType.group, "public" );
+        Group group = (Group) storeCache.get( groupKey ).copyOf();
+        group.removeConstituent( new StoreKey( MAVEN_PKG_KEY, StoreType.remote, "central" ) );
+        storeCache.put( groupKey, group );
+
+        assertConcreteMembers( "repo2" );
+
+        StoreKey repo2 = new StoreKey( MAVEN_PKG_KEY, StoreType.remote, "repo2" );
+        storeCache.remove( repo2 );
+
+        assertConcreteMembers();
+        assertThat( dataManager.getGroupMembershipCache().size(), equalTo( 1 ) );
+    }
+
+    private void assertConcreteMembers( final String... names )
+            throws Exception
+    {
+        final List<String> result = dataManager.query()
+                                               .packageType( MAVEN_PKG_KEY )
+                                               .enabledState( true )
+                                               .getOrderedConcreteStoresInGroup( "public" )
+                                               .stream()
+                                               .map( ArtifactStore::getName )
+                                               .collect( Collectors.toList() );
+
+        assertThat( result, equalTo( asList( names ) ) );
+    }
+}
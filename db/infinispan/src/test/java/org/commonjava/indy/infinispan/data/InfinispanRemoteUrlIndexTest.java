@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.infinispan.data;
+
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.commonjava.indy.infinispan.data.StoreDataCacheProducer.AFFECTED_BY_STORE_CACHE;
+import static org.commonjava.indy.infinispan.data.StoreDataCacheProducer.STORE_BY_PKG_CACHE;
+import static org.commonjava.indy.infinispan.data.StoreDataCacheProducer.STORE_DATA_CACHE;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * The remote URL index is node-local, so it has to follow remote repositories written to the store data cache by other
+ * nodes as well as those written through this manager.
+ */
+public class InfinispanRemoteUrlIndexTest
+{
+    private static final String CENTRAL_URL = "http://repo.maven.apache.org/maven2/";
+
+    private static final String OTHER_URL = "http://repo.example.com/maven2/";
+
+    private DefaultCacheManager cacheManager;
+
+    private Cache<StoreKey, ArtifactStore> storeCache;
+
+    private InfinispanStoreDataManager dataManager;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        cacheManager = new DefaultCacheManager( new ConfigurationBuilder().build() );
+        storeCache = cacheManager.getCache( STORE_DATA_CACHE, true );
+        Cache<String, Map<StoreType, Set<StoreKey>>> storesByPkg = cacheManager.getCache( STORE_BY_PKG_CACHE, true );
+        Cache<StoreKey, Set<StoreKey>> affectedBy = cacheManager.getCache( AFFECTED_BY_STORE_CACHE, true );
+        dataManager = new InfinispanStoreDataManager( storeCache, storesByPkg, affectedBy );
+
+        dataManager.storeArtifactStore( new RemoteRepository( MAVEN_PKG_KEY, "central", CENTRAL_URL ),
+                                        new ChangeSummary( "test-user", "test" ), false, false, new EventMetadata() );
+    }
+
+    @After
+    public void shutdown()
+    {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void indexFollowsRemotesWrittenDirectlyToTheStoreCache()
+            throws Exception
+    {
+        assertThat( findByUrl( CENTRAL_URL ), equalTo( singletonList( "central" ) ) );
+
+        // simulates writes from another node, which never go through this manager
+        RemoteRepository other = new RemoteRepository( MAVEN_PKG_KEY, "other", OTHER_URL );
+        storeCache.put( other.getKey(), other );
+        assertThat( findByUrl( OTHER_URL ), equalTo( singletonList( "other" ) ) );
+
+        RemoteRepository moved = (RemoteRepository) storeCache.get( new StoreKey( MAVEN_PKG_KEY, StoreType.remote,
+                                                                                  "central" ) ).copyOf();
+        moved.setUrl( OTHER_URL );
+        storeCache.put( moved.getKey(), moved );
+        assertThat( findByUrl( CENTRAL_URL ), equalTo( emptyList() ) );
+        assertThat( findByUrl( OTHER_URL ).size(), equalTo( 2 ) );
+
+        storeCache.remove( other.getKey() );
+        assertThat( findByUrl( OTHER_URL ), equalTo( singletonList( "central" ) ) );
+    }
+
+    private List<String> findByUrl( final String url )
+            throws Exception
+    {
+        return dataManager.query()
+                          .getRemoteRepositoryByUrl( url )
+                          .stream()
+                          .map( ArtifactStore::getName )
+                          .collect( Collectors.toList() );
+    }
+}
@@ -98,6 +98,9 @@ public class MemoryStoreDataManager
             throws IndyDataException
     {
         stores.clear();
+        getMembershipIndex().clear();
+        getGroupMembershipCache().clear();
+        clearRemoteUrlIndex();
     }
 
     @Override
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.metered;
+
+import com.codahale.metrics.MetricRegistry;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.db.common.AbstractStoreDataManager;
+import org.commonjava.indy.metrics.MetricSetProvider;
+import org.commonjava.indy.metrics.conf.IndyMetricsConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Registers hit / miss / rebuild gauges of the concrete group membership cache held by the store data manager.
+ */
+@ApplicationScoped
+public class GroupMembershipCacheMetricSetProvider
+        implements MetricSetProvider
+{
+    private static final String GROUP_MEMBERSHIP = "indy.store.group-membership";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private StoreDataManager storeDataManager;
+
+    @Inject
+    private IndyMetricsConfig metricsConfig;
+
+    @Override
+    public void registerMetricSet( final MetricRegistry registry )
+    {
+        if ( storeDataManager instanceof AbstractStoreDataManager )
+        {
+            logger.info( "Adding group membership cache metrics to registry: {}", registry );
+            registry.register( name( metricsConfig.getNodePrefix(), GROUP_MEMBERSHIP ),
+                               ( (AbstractStoreDataManager) storeDataManager ).getGroupMembershipCache() );
+        }
+    }
+}
@@ -12,7 +12,8 @@ class RHPatternNameGroupRepositoryFilter extends ReversePatternNameGroupReposito
     }
 
     RHPatternNameGroupRepositoryFilter() {
-        super(".+-rh.+", "^build-\\d+")
+        // canProcess only looks at the path and group, so results can be cached per group by path match
+        super(".+-rh.+", "^build-\\d+", true)
     }
 
     @Override
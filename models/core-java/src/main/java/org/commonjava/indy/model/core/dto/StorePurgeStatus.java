@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.model.core.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import org.commonjava.indy.model.core.StoreKey;
+
+import java.util.Set;
+
+@ApiModel( description = "Progress of an asynchronous store purge (content deletion followed by the store deletion)",
+           value = "store purge status" )
+public class StorePurgeStatus
+{
+    public enum State
+    {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    @ApiModelProperty( required = true, value = "Purge job id" )
+    private String id;
+
+    @ApiModelProperty( required = true, value = "Store being purged" )
+    private StoreKey storeKey;
+
+    @ApiModelProperty( required = true, value = "Job state" )
+    private State state;
+
+    @ApiModelProperty( "Number of top-level directories (or files) of the store" )
+    private int totalDirectories;
+
+    @ApiModelProperty( "Top-level directories (or files) already purged. A resumed job skips them." )
+    private Set<String> completedDirectories;
+
+    @ApiModelProperty( "Number of paths deleted so far" )
+    private long purgedPaths;
+
+    @ApiModelProperty( "Start time, in milliseconds since the epoch" )
+    private long startTime;
+
+    @ApiModelProperty( "End time, in milliseconds since the epoch. 0 while the job is queued or running" )
+    private long endTime;
+
+    @ApiModelProperty( "Error of a failed job" )
+    private String error;
+
+    public String getId()
+    {
+        return id;
+    }
+
+    public void setId( final String id )
+    {
+        this.id = id;
+    }
+
+    public StoreKey getStoreKey()
+    {
+        return storeKey;
+    }
+
+    public void setStoreKey( final StoreKey storeKey )
+    {
+        this.storeKey = storeKey;
+    }
+
+    public State getState()
+    {
+        return state;
+    }
+
+    public void setState( final State state )
+    {
+        this.state = state;
+    }
+
+    public int getTotalDirectories()
+    {
+        return totalDirectories;
+    }
+
+    public void setTotalDirectories( final int totalDirectories )
+    {
+        this.totalDirectories = totalDirectories;
+    }
+
+    public Set<String> getCompletedDirectories()
+    {
+        return completedDirectories;
+    }
+
+    public void setCompletedDirectories( final Set<String> completedDirectories )
+    {
+        this.completedDirectories = completedDirectories;
+    }
+
+    public long getPurgedPaths()
+    {
+        return purgedPaths;
+    }
+
+    public void setPurgedPaths( final long purgedPaths )
+    {
+        this.purgedPaths = purgedPaths;
+    }
+
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+    public void setStartTime( final long startTime )
+    {
+        this.startTime = startTime;
+    }
+
+    public long getEndTime()
+    {
+        return endTime;
+    }
+
+    public void setEndTime( final long endTime )
+    {
+        this.endTime = endTime;
+    }
+
+    public String getError()
+    {
+        return error;
+    }
+
+    public void setError( final String error )
+    {
+        this.error = error;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "StorePurgeStatus{" + "id='" + id + '\'' + ", storeKey=" + storeKey + ", state=" + state
+                + ", totalDirectories=" + totalDirectories + ", completedDirectories=" + ( completedDirectories == null ?
+                0 :
+                completedDirectories.size() ) + ", purgedPaths=" + purgedPaths + ", error='" + error + '\'' + '}';
+    }
+}
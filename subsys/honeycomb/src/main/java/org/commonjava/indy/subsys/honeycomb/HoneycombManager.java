@@ -28,6 +28,7 @@ import io.honeycomb.libhoney.LibHoney;
 import io.honeycomb.libhoney.responses.ResponseObservable;
 import io.honeycomb.libhoney.transport.impl.ConsoleTransport;
 import org.commonjava.cdi.util.weft.ThreadContext;
+import org.commonjava.indy.metrics.CumulativeTimings;
 import org.commonjava.indy.metrics.RequestContextHelper;
 import org.commonjava.indy.subsys.honeycomb.config.HoneycombConfiguration;
 import org.slf4j.Logger;
@@ -37,8 +38,6 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
-import java.util.Map;
-
 import static org.commonjava.indy.metrics.RequestContextHelper.CUMULATIVE_COUNTS;
 import static org.commonjava.indy.metrics.RequestContextHelper.CUMULATIVE_TIMINGS;
 import static org.commonjava.indy.metrics.RequestContextHelper.REQUEST_PARENT_SPAN;
@@ -195,16 +194,13 @@ public class HoneycombManager
                     }
                 } );
 
-                Map<String, Double> cumulativeTimings = (Map<String, Double>) ctx.get( CUMULATIVE_TIMINGS );
+                CumulativeTimings cumulativeTimings = (CumulativeTimings) ctx.get( CUMULATIVE_TIMINGS );
                 if ( cumulativeTimings != null )
                 {
-                    cumulativeTimings.forEach( ( k, v ) -> span.addField( CUMULATIVE_TIMINGS + "." + k, v ) );
-                }
-
-                Map<String, Integer> cumulativeCounts = (Map<String, Integer>) ctx.get( CUMULATIVE_COUNTS );
-                if ( cumulativeCounts != null )
-                {
-                    cumulativeCounts.forEach( ( k, v ) -> span.addField( CUMULATIVE_COUNTS + "." + k, v ) );
+                    cumulativeTimings.forEach( ( k, timing, count ) -> {
+                        span.addField( CUMULATIVE_TIMINGS + "." + k, timing );
+                        span.addField( CUMULATIVE_COUNTS + "." + k, count );
+                    } );
                 }
             }
         }
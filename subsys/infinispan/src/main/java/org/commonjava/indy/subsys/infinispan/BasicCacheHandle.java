@@ -16,10 +16,13 @@
 package org.commonjava.indy.subsys.infinispan;
 
 import org.commonjava.indy.metrics.IndyMetricsManager;
+import org.commonjava.indy.metrics.MetricHandle;
 import org.infinispan.commons.api.BasicCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -36,6 +39,8 @@ public class BasicCacheHandle<K,V>
 
     private String metricPrefix;
 
+    private final Map<String, MetricHandle> metricHandles = new ConcurrentHashMap<>();
+
     public String getMetricPrefix()
     {
         return metricPrefix;
@@ -80,7 +85,7 @@ public class BasicCacheHandle<K,V>
         Supplier<R> execution = executionFor ( operation);
         if ( metricsManager != null )
         {
-            return metricsManager.wrapWithStandardMetrics( execution, () -> getMetricName( metricName ) );
+            return metricsManager.wrapWithStandardMetrics( execution, getMetricHandle( metricName ) );
         }
 
         return execution.get();
@@ -170,6 +175,17 @@ public class BasicCacheHandle<K,V>
         return name( metricPrefix, opName );
     }
 
+    protected MetricHandle getMetricHandle( String opName )
+    {
+        MetricHandle handle = metricHandles.get( opName );
+        if ( handle == null )
+        {
+            handle = metricHandles.computeIfAbsent( opName, op -> metricsManager.getHandle( getMetricName( op ) ) );
+        }
+
+        return handle;
+    }
+
 //    public Set<K> cacheKeySetByFilter( Predicate<K> filter )
 //    {
 //        return this.cache.keySet().stream().filter( filter ).collect( Collectors.toSet() );
@@ -76,7 +76,7 @@ public class CacheHandle<K,V> extends BasicCacheHandle<K,V>
         Supplier<R> execution = executionFor( operation );
         if ( metricsManager != null )
         {
-            return metricsManager.wrapWithStandardMetrics( execution, () -> getMetricName( metricName ) );
+            return metricsManager.wrapWithStandardMetrics( execution, getMetricHandle( metricName ) );
         }
 
         return execution.get();
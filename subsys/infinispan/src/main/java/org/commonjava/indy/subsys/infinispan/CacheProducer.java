@@ -57,6 +57,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static org.commonjava.indy.metrics.IndyMetricsConstants.getSupername;
 import static org.commonjava.indy.subsys.infinispan.metrics.IspnCheckRegistrySet.INDY_METRIC_ISPN;
 
@@ -237,7 +238,8 @@ public class CacheProducer
                     return null;
                 }
                 logger.info( "Get remote cache, name: {}", k );
-                return new RemoteCacheHandle( k, cache, metricsManager, getCacheMetricPrefix( k ) );
+                return new RemoteCacheHandle( k, cache, metricsManager, getCacheMetricPrefix( k ),
+                                              createNearCache( k ) );
             }
             return null;
         } );
@@ -292,6 +294,26 @@ public class CacheProducer
         } );
     }
 
+    private <K, V> NearCache<K, V> createNearCache( String named )
+    {
+        if ( !remoteConfiguration.isNearCache( named ) )
+        {
+            return null;
+        }
+
+        int maxEntries = remoteConfiguration.getNearCacheMaxEntries( named );
+        long ttlSeconds = remoteConfiguration.getNearCacheTtlSeconds( named );
+        logger.info( "Near cache for remote cache: {}, max entries: {}, TTL: {}s", named, maxEntries, ttlSeconds );
+
+        NearCache<K, V> nearCache = new NearCache<>( maxEntries, ttlSeconds );
+        if ( metricsManager != null )
+        {
+            metricsManager.getMetricRegistry().register( name( getCacheMetricPrefix( named ), "near" ), nearCache );
+        }
+
+        return nearCache;
+    }
+
     private String getCacheMetricPrefix( String named )
     {
         return metricsManager == null ? null : getSupername( metricsConfig.getNodePrefix(), INDY_METRIC_ISPN, named );
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.subsys.infinispan;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.RatioGauge;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, local (L1) copy of the entries read from a remote cache. Entries are evicted least-recently-used first
+ * once maxEntries is reached, and ignored once they are older than the TTL.
+ * <p>
+ * Invalidation is driven by the owner (see {@link RemoteCacheHandle}), from local writes and from the Hot Rod client
+ * listener events. Each invalidation leaves a tombstone for its key, stamped from a clock that readers sample before
+ * their remote read; a value read while its own key was invalidated is returned to the caller but not cached.
+ * Invalidations of other keys don't affect it. Tombstones are kept in a separate LRU map of the same size, so they
+ * never push values out; if a tombstone is evicted, reads started before it was written aren't cached for any key
+ * without a tombstone.
+ * <p>
+ * Values are shared between readers, so they must not be mutated by callers.
+ */
+public class NearCache<K, V>
+        implements MetricSet
+{
+    private final Map<K, Entry<V>> entries;
+
+    private final long ttlMillis;
+
+    // guarded by entries, like everything below
+    private final Map<K, Long> tombstones;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    // newest tombstone that is no longer in tombstones (evicted or cleared)
+    private long forgotten;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    public NearCache( final int maxEntries, final long ttlSeconds )
+    {
+        this.ttlMillis = TimeUnit.SECONDS.toMillis( ttlSeconds );
+        this.entries = new LinkedHashMap<K, Entry<V>>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<K, Entry<V>> eldest )
+            {
+                return size() > maxEntries;
+            }
+        };
+        this.tombstones = new LinkedHashMap<K, Long>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<K, Long> eldest )
+            {
+                if ( size() > maxEntries )
+                {
+                    forgotten = Math.max( forgotten, eldest.getValue() );
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Retrieve the cached value, or null if it has to be read from the remote cache. Callers reading the remote cache
+     * must capture {@link #readStamp()} BEFORE the remote read and pass it to {@link #put(Object, Object, long)}.
+     */
+    public V get( final K key )
+    {
+        Entry<V> entry;
+        synchronized ( entries )
+        {
+            entry = entries.get( key );
+            if ( entry != null && entry.isExpired() )
+            {
+                entries.remove( key );
+                entry = null;
+            }
+        }
+
+        if ( entry == null )
+        {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return entry.value;
+    }
+
+    public long readStamp()
+    {
+        return clock.get();
+    }
+
+    public void put( final K key, final V value, final long readStamp )
+    {
+        synchronized ( entries )
+        {
+            // if the key was invalidated since the remote read started, the value may be stale. Let the next reader
+            // fetch it again.
+            Long tombstone = tombstones.get( key );
+            long invalidated = tombstone == null ? forgotten : tombstone;
+            if ( invalidated <= readStamp )
+            {
+                entries.put( key, new Entry<>( value, System.currentTimeMillis() + ttlMillis ) );
+            }
+        }
+    }
+
+    public void invalidate( final K key )
+    {
+        synchronized ( entries )
+        {
+            tombstones.put( key, clock.incrementAndGet() );
+            if ( entries.remove( key ) != null )
+            {
+                invalidations.increment();
+            }
+        }
+    }
+
+    public void clear()
+    {
+        synchronized ( entries )
+        {
+            forgotten = clock.incrementAndGet();
+            tombstones.clear();
+            invalidations.add( entries.size() );
+            entries.clear();
+        }
+    }
+
+    public int size()
+    {
+        synchronized ( entries )
+        {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics()
+    {
+        Map<String, Metric> gauges = new HashMap<>();
+        gauges.put( "hits", (Gauge<Long>) hits::sum );
+        gauges.put( "misses", (Gauge<Long>) misses::sum );
+        gauges.put( "invalidations", (Gauge<Long>) invalidations::sum );
+        gauges.put( "size", (Gauge<Integer>) this::size );
+        gauges.put( "tombstones", (Gauge<Integer>) () -> {
+            synchronized ( entries )
+            {
+                return tombstones.size();
+            }
+        } );
+        gauges.put( "hit-ratio", new RatioGauge()
+        {
+            @Override
+            protected Ratio getRatio()
+            {
+                long h = hits.sum();
+                return Ratio.of( h, h + misses.sum() );
+            }
+        } );
+        return gauges;
+    }
+
+    private static final class Entry<V>
+    {
+        private final V value;
+
+        private final long expires;
+
+        private Entry( final V value, final long expires )
+        {
+            this.value = value;
+            this.expires = expires;
+        }
+
+        private boolean isExpired()
+        {
+            return System.currentTimeMillis() > expires;
+        }
+    }
+}
@@ -17,15 +17,60 @@ package org.commonjava.indy.subsys.infinispan;
 
 import org.commonjava.indy.metrics.IndyMetricsManager;
 import org.infinispan.client.hotrod.RemoteCache;
+import org.infinispan.client.hotrod.annotation.ClientCacheEntryExpired;
+import org.infinispan.client.hotrod.annotation.ClientCacheEntryModified;
+import org.infinispan.client.hotrod.annotation.ClientCacheEntryRemoved;
+import org.infinispan.client.hotrod.annotation.ClientCacheFailover;
+import org.infinispan.client.hotrod.annotation.ClientListener;
+import org.infinispan.client.hotrod.event.ClientCacheEntryExpiredEvent;
+import org.infinispan.client.hotrod.event.ClientCacheEntryModifiedEvent;
+import org.infinispan.client.hotrod.event.ClientCacheEntryRemovedEvent;
+import org.infinispan.client.hotrod.event.ClientCacheFailoverEvent;
+import org.infinispan.commons.api.BasicCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
+/**
+ * Handle of a remote (Hot Rod) cache. If a {@link NearCache} is given, reads are served from it when possible. It is
+ * invalidated by writes through this handle and by the Hot Rod client events for entries changed by other clients.
+ * Operations passed to {@link #execute(Function)} can't be told apart from writes, so they clear the whole near cache;
+ * prefer the keyed methods where possible.
+ * <p>
+ * Only caches obtained through {@link CacheProducer#getBasicCache(String)} that are configured as remote get such a
+ * handle (currently content-metadata). Caches obtained as embedded {@link CacheHandle}s (store data, NFC, content
+ * index, ...) are local to the node and never have a near cache.
+ */
 public class RemoteCacheHandle<K,V> extends BasicCacheHandle<K, V>
 {
 
-    public RemoteCacheHandle( String named, RemoteCache<K, V> cache, IndyMetricsManager metricsManager, String metricPrefix )
+    private final NearCache<K, V> nearCache;
+
+    private final NearCacheInvalidator<K> invalidator;
+
+    public RemoteCacheHandle( String named, RemoteCache<K, V> cache, IndyMetricsManager metricsManager,
+                              String metricPrefix, NearCache<K, V> nearCache )
     {
         super( named, cache, metricsManager, metricPrefix );
+        this.nearCache = nearCache;
+        if ( nearCache != null )
+        {
+            invalidator = new NearCacheInvalidator<>( nearCache );
+            cache.addClientListener( invalidator );
+        }
+        else
+        {
+            invalidator = null;
+        }
+    }
+
+    public RemoteCacheHandle( String named, RemoteCache<K, V> cache, IndyMetricsManager metricsManager, String metricPrefix )
+    {
+        this( named, cache, metricsManager, metricPrefix, null );
     }
 
     public RemoteCacheHandle( String named, RemoteCache<K, V> cache )
@@ -33,10 +78,173 @@ public class RemoteCacheHandle<K,V> extends BasicCacheHandle<K, V>
         this( named, cache, null, null );
     }
 
+    public NearCache<K, V> getNearCache()
+    {
+        return nearCache;
+    }
+
+    @Override
+    public <R> R execute( Function<BasicCache<K, V>, R> operation )
+    {
+        try
+        {
+            return super.execute( operation );
+        }
+        finally
+        {
+            // the clear happens after the operation, so a concurrent read started before it is not cached either
+            if ( nearCache != null )
+            {
+                nearCache.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return doExecute( "isEmpty", BasicCache::isEmpty );
+    }
+
+    @Override
+    public V get( K key )
+    {
+        if ( nearCache == null )
+        {
+            return super.get( key );
+        }
+
+        V value = nearCache.get( key );
+        if ( value == null )
+        {
+            long stamp = nearCache.readStamp();
+            value = super.get( key );
+            if ( value != null )
+            {
+                nearCache.put( key, value, stamp );
+            }
+        }
+
+        return value;
+    }
+
+    @Override
+    public boolean containsKey( K key )
+    {
+        if ( nearCache != null && nearCache.get( key ) != null )
+        {
+            return true;
+        }
+
+        return super.containsKey( key );
+    }
+
+    @Override
+    public V put( K key, V value )
+    {
+        return invalidateAfter( key, super.put( key, value ) );
+    }
+
+    @Override
+    public V put( K key, V value, int expiration, TimeUnit timeUnit )
+    {
+        return invalidateAfter( key, super.put( key, value, expiration, timeUnit ) );
+    }
+
+    @Override
+    public V putIfAbsent( K key, V value )
+    {
+        return invalidateAfter( key, super.putIfAbsent( key, value ) );
+    }
+
+    @Override
+    public V computeIfAbsent( K key, Function<? super K, ? extends V> mappingFunction )
+    {
+        return invalidateAfter( key, super.computeIfAbsent( key, mappingFunction ) );
+    }
+
+    @Override
+    public V remove( K key )
+    {
+        return invalidateAfter( key, super.remove( key ) );
+    }
+
+    @Override
+    public void clear()
+    {
+        super.clear();
+        if ( nearCache != null )
+        {
+            nearCache.clear();
+        }
+    }
+
+    @Override
+    public void stop()
+    {
+        super.stop();
+        if ( invalidator != null )
+        {
+            ( (RemoteCache<K, V>) cache ).removeClientListener( invalidator );
+            nearCache.clear();
+        }
+    }
+
     @Override
     protected String getMetricName( String opName )
     {
         return name( getMetricPrefix(), cache.getName(), "remote", opName );
     }
 
+    private V invalidateAfter( K key, V result )
+    {
+        if ( nearCache != null )
+        {
+            nearCache.invalidate( key );
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops near-cached entries changed by any client. After a failover events may have been missed, so everything is
+     * dropped.
+     */
+    @ClientListener
+    public static final class NearCacheInvalidator<K>
+    {
+        private final NearCache<K, ?> nearCache;
+
+        private NearCacheInvalidator( NearCache<K, ?> nearCache )
+        {
+            this.nearCache = nearCache;
+        }
+
+        @ClientCacheEntryModified
+        public void modified( ClientCacheEntryModifiedEvent<K> event )
+        {
+            nearCache.invalidate( event.getKey() );
+        }
+
+        @ClientCacheEntryRemoved
+        public void removed( ClientCacheEntryRemovedEvent<K> event )
+        {
+            nearCache.invalidate( event.getKey() );
+        }
+
+        @ClientCacheEntryExpired
+        public void expired( ClientCacheEntryExpiredEvent<K> event )
+        {
+            nearCache.invalidate( event.getKey() );
+        }
+
+        @ClientCacheFailover
+        public void failover( ClientCacheFailoverEvent event )
+        {
+            Logger logger = LoggerFactory.getLogger( getClass() );
+            logger.info( "Hot Rod client failover, clearing near cache" );
+            nearCache.clear();
+        }
+    }
+
 }
@@ -35,6 +35,12 @@ public class ISPNRemoteConfiguration
 
     private static final Boolean DEFAULT_ENABLED = Boolean.FALSE;
 
+    private static final Boolean DEFAULT_NEAR_CACHE_ENABLED = Boolean.FALSE;
+
+    private static final Integer DEFAULT_NEAR_CACHE_MAX_ENTRIES = 10000;
+
+    private static final Long DEFAULT_NEAR_CACHE_TTL_SECONDS = 300L;
+
     private Boolean enabled;
 
     private String remoteServer;
@@ -43,6 +49,16 @@ public class ISPNRemoteConfiguration
 
     private String remotePatterns;
 
+    private Boolean nearCacheEnabled;
+
+    private String nearCachePatterns;
+
+    private Integer nearCacheMaxEntries;
+
+    private Long nearCacheTtlSeconds;
+
+    private String nearCacheOverrides;
+
     public ISPNRemoteConfiguration()
     {
     }
@@ -91,8 +107,110 @@ public class ISPNRemoteConfiguration
         this.remotePatterns = remotePatterns;
     }
 
+    public Boolean isNearCacheEnabled()
+    {
+        return nearCacheEnabled == null ? DEFAULT_NEAR_CACHE_ENABLED : nearCacheEnabled;
+    }
+
+    @ConfigName( "near.cache.enabled" )
+    public void setNearCacheEnabled( Boolean nearCacheEnabled )
+    {
+        this.nearCacheEnabled = nearCacheEnabled;
+    }
+
+    public String getNearCachePatterns()
+    {
+        return nearCachePatterns;
+    }
+
+    @ConfigName( "near.cache.patterns" )
+    public void setNearCachePatterns( String nearCachePatterns )
+    {
+        this.nearCachePatterns = nearCachePatterns;
+    }
+
+    public Integer getNearCacheMaxEntries()
+    {
+        return nearCacheMaxEntries == null ? DEFAULT_NEAR_CACHE_MAX_ENTRIES : nearCacheMaxEntries;
+    }
+
+    @ConfigName( "near.cache.max.entries" )
+    public void setNearCacheMaxEntries( Integer nearCacheMaxEntries )
+    {
+        this.nearCacheMaxEntries = nearCacheMaxEntries;
+    }
+
+    public Long getNearCacheTtlSeconds()
+    {
+        return nearCacheTtlSeconds == null ? DEFAULT_NEAR_CACHE_TTL_SECONDS : nearCacheTtlSeconds;
+    }
+
+    @ConfigName( "near.cache.ttl.seconds" )
+    public void setNearCacheTtlSeconds( Long nearCacheTtlSeconds )
+    {
+        this.nearCacheTtlSeconds = nearCacheTtlSeconds;
+    }
+
+    public String getNearCacheOverrides()
+    {
+        return nearCacheOverrides;
+    }
+
+    /**
+     * Per-cache settings overriding the defaults above, as comma-separated &lt;cache&gt;:&lt;max-entries&gt;:&lt;ttl-seconds&gt;.
+     */
+    @ConfigName( "near.cache.overrides" )
+    public void setNearCacheOverrides( String nearCacheOverrides )
+    {
+        this.nearCacheOverrides = nearCacheOverrides;
+    }
+
     // utils
 
+    /**
+     * Remote caches get a near cache if it's enabled and they match near.cache.patterns (all of them if not set).
+     */
+    public boolean isNearCache( String cacheName )
+    {
+        if ( !isNearCacheEnabled() )
+        {
+            return false;
+        }
+
+        return nearCachePatterns == null || matches( nearCachePatterns, cacheName );
+    }
+
+    public int getNearCacheMaxEntries( String cacheName )
+    {
+        String[] override = getNearCacheOverride( cacheName );
+        return override == null ? getNearCacheMaxEntries() : Integer.parseInt( override[1].trim() );
+    }
+
+    public long getNearCacheTtlSeconds( String cacheName )
+    {
+        String[] override = getNearCacheOverride( cacheName );
+        return override == null ? getNearCacheTtlSeconds() : Long.parseLong( override[2].trim() );
+    }
+
+    private String[] getNearCacheOverride( String cacheName )
+    {
+        if ( nearCacheOverrides == null )
+        {
+            return null;
+        }
+
+        for ( String override : nearCacheOverrides.split( "," ) )
+        {
+            String[] parts = override.trim().split( ":" );
+            if ( parts.length == 3 && parts[0].equals( cacheName ) )
+            {
+                return parts;
+            }
+        }
+
+        return null;
+    }
+
     public boolean isRemoteCache( String cacheName )
     {
         if ( remotePatterns == null )
@@ -100,7 +218,12 @@ public class ISPNRemoteConfiguration
             return false;
         }
 
-        String[] patterns = remotePatterns.split( "," );
+        return matches( remotePatterns, cacheName );
+    }
+
+    private boolean matches( String patternList, String cacheName )
+    {
+        String[] patterns = patternList.split( "," );
         for ( String pattern : patterns )
         {
             if ( isNotBlank( pattern ) )
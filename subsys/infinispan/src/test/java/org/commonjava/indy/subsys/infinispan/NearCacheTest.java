@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.subsys.infinispan;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class NearCacheTest
+{
+    @Test
+    public void evictsLeastRecentlyUsedEntry()
+    {
+        NearCache<String, String> cache = new NearCache<>( 2, 60 );
+        cache.put( "a", "A", cache.readStamp() );
+        cache.put( "b", "B", cache.readStamp() );
+
+        // touch a, so b is the eldest
+        assertThat( cache.get( "a" ), equalTo( "A" ) );
+
+        cache.put( "c", "C", cache.readStamp() );
+        assertThat( cache.size(), equalTo( 2 ) );
+        assertThat( cache.get( "b" ), nullValue() );
+        assertThat( cache.get( "a" ), equalTo( "A" ) );
+        assertThat( cache.get( "c" ), equalTo( "C" ) );
+    }
+
+    @Test
+    public void ignoresExpiredEntry()
+            throws Exception
+    {
+        NearCache<String, String> cache = new NearCache<>( 10, 0 );
+        cache.put( "a", "A", cache.readStamp() );
+
+        Thread.sleep( 5 );
+
+        assertThat( cache.get( "a" ), nullValue() );
+        assertThat( cache.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void doesNotCacheValueReadAcrossAnInvalidation()
+    {
+        NearCache<String, String> cache = new NearCache<>( 10, 60 );
+
+        // a reader misses and starts its remote read
+        long stamp = cache.readStamp();
+
+        // meanwhile the entry is changed and invalidated
+        cache.invalidate( "a" );
+
+        // the (possibly stale) value the reader got must not be cached
+        cache.put( "a", "stale", stamp );
+        assertThat( cache.get( "a" ), nullValue() );
+
+        cache.put( "a", "fresh", cache.readStamp() );
+        assertThat( cache.get( "a" ), equalTo( "fresh" ) );
+    }
+
+    @Test
+    public void doesNotCacheValueReadAcrossAClear()
+    {
+        NearCache<String, String> cache = new NearCache<>( 10, 60 );
+        cache.put( "a", "A", cache.readStamp() );
+
+        long stamp = cache.readStamp();
+        cache.clear();
+        cache.put( "b", "stale", stamp );
+
+        assertThat( cache.get( "a" ), nullValue() );
+        assertThat( cache.get( "b" ), nullValue() );
+        assertThat( cache.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void invalidateRemovesOnlyTheKey()
+    {
+        NearCache<String, String> cache = new NearCache<>( 10, 60 );
+        cache.put( "a", "A", cache.readStamp() );
+        cache.put( "b", "B", cache.readStamp() );
+
+        cache.invalidate( "a" );
+
+        assertThat( cache.get( "a" ), nullValue() );
+        assertThat( cache.get( "b" ), equalTo( "B" ) );
+    }
+
+    @Test
+    public void cachesValueReadAcrossAnInvalidationOfAnotherKey()
+    {
+        NearCache<String, String> cache = new NearCache<>( 10, 60 );
+
+        long stamp = cache.readStamp();
+        cache.invalidate( "b" );
+        cache.put( "a", "A", stamp );
+
+        assertThat( cache.get( "a" ), equalTo( "A" ) );
+    }
+
+    @Test
+    public void evictedTombstoneStillBlocksOlderReads()
+    {
+        NearCache<String, String> cache = new NearCache<>( 1, 60 );
+
+        long stamp = cache.readStamp();
+        cache.invalidate( "a" );
+        // pushes the tombstone of a out
+        cache.invalidate( "b" );
+        cache.put( "a", "stale", stamp );
+        assertThat( cache.get( "a" ), nullValue() );
+
+        cache.put( "a", "fresh", cache.readStamp() );
+        assertThat( cache.get( "a" ), equalTo( "fresh" ) );
+    }
+}
@@ -17,6 +17,7 @@ package org.commonjava.indy.bind.jaxrs;
 
 import org.commonjava.cdi.util.weft.ThreadContext;
 import org.commonjava.indy.measure.annotation.Measure;
+import org.commonjava.indy.metrics.CumulativeTimings;
 import org.commonjava.indy.metrics.IndyMetricsConstants;
 import org.commonjava.indy.metrics.IndyMetricsManager;
 import org.commonjava.indy.metrics.RequestContextHelper;
@@ -37,7 +38,6 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
@@ -184,18 +184,13 @@ public class ResourceManagementFilter
             ThreadContext ctx = ThreadContext.getContext( false );
             if ( ctx != null )
             {
-                Map<String, Double> cumulativeTimings = (Map<String, Double>) ctx.get( CUMULATIVE_TIMINGS );
+                CumulativeTimings cumulativeTimings = (CumulativeTimings) ctx.get( CUMULATIVE_TIMINGS );
                 if ( cumulativeTimings != null )
                 {
-                    cumulativeTimings.forEach(
-                            ( k, v ) -> RequestContextHelper.setContext( CUMULATIVE_TIMINGS + "." + k, String.format( "%.3f", v ) ) );
-                }
-
-                Map<String, Integer> cumulativeCounts = (Map<String, Integer>) ctx.get( CUMULATIVE_COUNTS );
-                if ( cumulativeCounts != null )
-                {
-                    cumulativeCounts.forEach(
-                            ( k, v ) -> RequestContextHelper.setContext( CUMULATIVE_COUNTS + "." + k, String.format( "%d", v ) ) );
+                    cumulativeTimings.forEach( ( k, timing, count ) -> {
+                        RequestContextHelper.setContext( CUMULATIVE_TIMINGS + "." + k, String.format( "%.3f", timing ) );
+                        RequestContextHelper.setContext( CUMULATIVE_COUNTS + "." + k, String.format( "%d", count ) );
+                    } );
                 }
             }
 
@@ -41,24 +41,18 @@ import javax.enterprise.inject.Instance;
 import javax.enterprise.inject.Produces;
 import javax.inject.Inject;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Supplier;
 
-import static com.codahale.metrics.MetricRegistry.name;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 import static org.commonjava.indy.IndyContentConstants.NANOS_PER_MILLISECOND;
 import static org.commonjava.indy.metrics.IndyMetricsConstants.DEFAULT;
-import static org.commonjava.indy.metrics.IndyMetricsConstants.EXCEPTION;
-import static org.commonjava.indy.metrics.IndyMetricsConstants.SKIP_METRIC;
 import static org.commonjava.indy.metrics.IndyMetricsConstants.TIMER;
 import static org.commonjava.indy.metrics.IndyMetricsConstants.getDefaultName;
-import static org.commonjava.indy.metrics.RequestContextHelper.CUMULATIVE_COUNTS;
 import static org.commonjava.indy.metrics.RequestContextHelper.CUMULATIVE_TIMINGS;
 import static org.commonjava.indy.metrics.RequestContextHelper.IS_METERED;
 import static org.commonjava.indy.metrics.jvm.IndyJVMInstrumentation.registerJvmMetric;
@@ -99,7 +93,17 @@ public class IndyMetricsManager
 
     private TransportMetricConfig transportMetricConfig;
 
-    private Random random = new Random();
+    private final Map<String, MetricHandle> handles = new ConcurrentHashMap<>();
+
+    protected IndyMetricsManager()
+    {
+    }
+
+    public IndyMetricsManager( final MetricRegistry metricRegistry, final IndyMetricsConfig config )
+    {
+        this.metricRegistry = metricRegistry;
+        this.config = config;
+    }
 
     @Produces
     public TransportMetricConfig getTransportMetricConfig()
@@ -221,7 +225,7 @@ public class IndyMetricsManager
     public boolean isMetered( Supplier<Boolean> meteringOverride )
     {
         int meterRatio = config.getMeterRatio();
-        if ( meterRatio <= 1 || random.nextInt() % meterRatio == 0 )
+        if ( meterRatio <= 1 || ThreadLocalRandom.current().nextInt( meterRatio ) == 0 )
         {
             return true;
         }
@@ -267,6 +271,11 @@ public class IndyMetricsManager
     }
 
     public void accumulate( String name, final double elapsed )
+    {
+        accumulate( CumulativeTimings.slot( name ), elapsed );
+    }
+
+    private void accumulate( final int slot, final double elapsed )
     {
         ThreadContext ctx = ThreadContext.getContext( true );
         if ( ctx != null )
@@ -276,17 +285,30 @@ public class IndyMetricsManager
                 return;
             }
 
-            ctx.putIfAbsent( CUMULATIVE_TIMINGS, new ConcurrentHashMap<>() );
-            Map<String, Double> timingMap = (Map<String, Double>) ctx.get( CUMULATIVE_TIMINGS );
-
-            timingMap.merge( name, elapsed, ( existingVal, newVal ) -> existingVal + newVal );
+            CumulativeTimings timings = (CumulativeTimings) ctx.get( CUMULATIVE_TIMINGS );
+            if ( timings == null )
+            {
+                ctx.putIfAbsent( CUMULATIVE_TIMINGS, new CumulativeTimings() );
+                timings = (CumulativeTimings) ctx.get( CUMULATIVE_TIMINGS );
+            }
 
-            ctx.putIfAbsent( CUMULATIVE_COUNTS, new ConcurrentHashMap<>() );
-            Map<String, Integer> countMap =
-                    (Map<String, Integer>) ctx.get( CUMULATIVE_COUNTS );
+            timings.add( slot, elapsed );
+        }
+    }
 
-            countMap.merge( name, 1, ( existingVal, newVal ) -> existingVal + 1 );
+    /**
+     * @return the metrics of the named operation, resolved once and cached. Callers measuring the same operation
+     * repeatedly should keep the handle and use {@link #wrapWithStandardMetrics(Supplier, MetricHandle)}.
+     */
+    public MetricHandle getHandle( final String name )
+    {
+        MetricHandle handle = handles.get( name );
+        if ( handle == null )
+        {
+            handle = handles.computeIfAbsent( name, n -> new MetricHandle( metricRegistry, config.getNodePrefix(), n ) );
         }
+
+        return handle;
     }
 
     @MetricWrapper
@@ -298,45 +320,44 @@ public class IndyMetricsManager
 //            logger.info( "Wrapping with standard metrics at the following location:", t );
 //        }
 
-        String name = classifier.get();
-        if ( !checkMetered() || SKIP_METRIC.equals( name ) )
+        return wrapWithStandardMetrics( method, getHandle( classifier.get() ) );
+    }
+
+    /**
+     * Same as {@link #wrapWithStandardMetrics(Supplier, Supplier)}, but uses the precompiled metrics of the handle
+     * instead of building the metric names and looking them up on each call.
+     */
+    public <T> T wrapWithStandardMetrics( final Supplier<T> method, final MetricHandle handle )
+    {
+        if ( handle.isSkipped() || !checkMetered() )
         {
             return method.get();
         }
 
-        String nodePrefix = config.getNodePrefix();
-
-        String metricName = name( nodePrefix, name );
-        String startName = name( metricName, "starts"  );
-
-        String timerName = name( metricName, TIMER );
-        String errorName = name( name, EXCEPTION );
-        String eClassName = null;
-
-        Timer.Context timer = startTimer( timerName );
-        logger.trace( "START: {} ({})", metricName, timer );
+        Timer.Context timer = handle.getTimer().time();
+        logger.trace( "START: {} ({})", handle.getName(), timer );
 
         long start = System.nanoTime();
         try
         {
-            mark( Arrays.asList( startName ) );
+            handle.getStarts().mark();
 
             return method.get();
         }
         catch ( Throwable e )
         {
-            eClassName = name( name, EXCEPTION, e.getClass().getSimpleName() );
-            mark( Arrays.asList( errorName, eClassName ) );
+            handle.getErrors().mark();
+            handle.getErrors( e.getClass() ).mark();
 
             throw e;
         }
         finally
         {
-            stopTimers( Collections.singletonMap( timerName, timer ) );
-            mark( Arrays.asList( metricName ) );
+            timer.stop();
+            handle.getCalls().mark();
 
             double elapsed = (System.nanoTime() - start) / NANOS_PER_MILLISECOND;
-            accumulate( metricName, elapsed );
+            accumulate( handle.getSlot(), elapsed );
         }
     }
 
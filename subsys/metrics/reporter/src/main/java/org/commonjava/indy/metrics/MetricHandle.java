@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2011-2020 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.metrics;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.commonjava.indy.metrics.IndyMetricsConstants.EXCEPTION;
+import static org.commonjava.indy.metrics.IndyMetricsConstants.SKIP_METRIC;
+import static org.commonjava.indy.metrics.IndyMetricsConstants.TIMER;
+
+/**
+ * Metrics of one measured operation, resolved once from its name so measuring a call doesn't build metric names or
+ * look them up in the registry. Get it from {@link IndyMetricsManager#getHandle(String)} and keep it at the call site.
+ */
+public final class MetricHandle
+{
+    private final MetricRegistry registry;
+
+    private final String name;
+
+    private final boolean skipped;
+
+    private final Timer timer;
+
+    private final Meter starts;
+
+    private final Meter calls;
+
+    private final Meter errors;
+
+    private final Map<Class<?>, Meter> errorsByType = new ConcurrentHashMap<>();
+
+    private final int slot;
+
+    MetricHandle( final MetricRegistry registry, final String nodePrefix, final String name )
+    {
+        this.registry = registry;
+        this.name = name;
+        this.skipped = SKIP_METRIC.equals( name );
+
+        String metricName = name( nodePrefix, name );
+        if ( skipped )
+        {
+            timer = null;
+            starts = null;
+            calls = null;
+            errors = null;
+        }
+        else
+        {
+            timer = registry.timer( name( metricName, TIMER ) );
+            starts = registry.meter( name( metricName, "starts" ) );
+            calls = registry.meter( metricName );
+            errors = registry.meter( name( name, EXCEPTION ) );
+        }
+
+        slot = CumulativeTimings.slot( metricName );
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public boolean isSkipped()
+    {
+        return skipped;
+    }
+
+    Timer getTimer()
+    {
+        return timer;
+    }
+
+    Meter getStarts()
+    {
+        return starts;
+    }
+
+    Meter getCalls()
+    {
+        return calls;
+    }
+
+    Meter getErrors()
+    {
+        return errors;
+    }
+
+    Meter getErrors( final Class<?> type )
+    {
+        Meter meter = errorsByType.get( type );
+        if ( meter == null )
+        {
+            meter = errorsByType.computeIfAbsent( type,
+                                                  t -> registry.meter( name( name, EXCEPTION, t.getSimpleName() ) ) );
+        }
+
+        return meter;
+    }
+
+    int getSlot()
+    {
+        return slot;
+    }
+}
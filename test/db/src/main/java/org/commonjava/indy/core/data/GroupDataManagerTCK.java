@@ -187,6 +187,59 @@ public abstract class GroupDataManagerTCK
                          .getName(), equalTo( "central" ) );
     }
 
+    @Test
+    public void orderedConcreteStoresReflectNestedMembershipChanges()
+        throws Exception
+    {
+        final StoreDataManager manager = getFixtureProvider().getDataManager();
+
+        final StoreKey central = new StoreKey( remote, "central" );
+        final StoreKey repo2 = new StoreKey( remote, "repo2" );
+        final HostedRepository hosted = new HostedRepository( MAVEN_PKG_KEY, "hosted" );
+
+        final Group inner = new Group( "inner", central );
+        final Group outer = new Group( "outer", hosted.getKey(), inner.getKey() );
+
+        store( inner, outer );
+
+        // hosted doesn't exist yet, so only central is visible (and the result is now materialized)
+        assertConcreteMembers( manager, outer, "central" );
+        assertConcreteMembers( manager, outer, "central" );
+
+        // creating a store that was referenced but missing must show up
+        store( hosted );
+        assertConcreteMembers( manager, outer, "hosted", "central" );
+
+        // membership change in a nested group must show up in the outer group
+        final Group innerCopy = inner.copyOf();
+        innerCopy.addConstituent( repo2 );
+        store( innerCopy );
+        assertConcreteMembers( manager, outer, "hosted", "central", "repo2" );
+
+        // disabling a member must show up for enabled-only queries
+        final ArtifactStore disabled = manager.getArtifactStore( repo2 ).copyOf();
+        disabled.setDisabled( true );
+        store( disabled );
+        assertConcreteMembers( manager, outer, "hosted", "central" );
+
+        removeStore( hosted );
+        assertConcreteMembers( manager, outer, "central" );
+    }
+
+    private void assertConcreteMembers( final StoreDataManager manager, final Group group, final String... names )
+            throws Exception
+    {
+        final List<String> result = manager.query()
+                                           .packageType( MAVEN_PKG_KEY )
+                                           .enabledState( true )
+                                           .getOrderedConcreteStoresInGroup( group.getName() )
+                                           .stream()
+                                           .map( ArtifactStore::getName )
+                                           .collect( Collectors.toList() );
+
+        assertThat( result, equalTo( asList( names ) ) );
+    }
+
     @Test
     public void createGroupAndRetrieveRepositoryConstituents()
         throws Exception
@@ -377,6 +430,33 @@ public abstract class GroupDataManagerTCK
         assertAffectedBy( hosted2.getKey(), groupF, groupC, groupA );
     }
 
+    @Test
+    public void affectedByFollowsGroupRemovalAndRecreation()
+            throws Exception
+    {
+        final StoreKey central = new StoreKey( remote, "central" );
+        final Group g1 = new Group( "g1", central );
+        final Group g2 = new Group( "g2", g1.getKey() );
+
+        store( g1, g2 );
+        assertAffectedBy( central, g1, g2 );
+        assertAffectedBy( g1.getKey(), g2 );
+
+        removeStore( g2 );
+        assertAffectedBy( central, g1 );
+        assertAffectedBy( g1.getKey() );
+
+        final Group g1Copy = g1.copyOf();
+        g1Copy.removeConstituent( central );
+        store( g1Copy );
+        assertAffectedBy( central );
+
+        final Group g2Recreated = new Group( "g2", central, g1.getKey() );
+        store( g2Recreated );
+        assertAffectedBy( central, g2Recreated );
+        assertAffectedBy( g1.getKey(), g2Recreated );
+    }
+
     private void assertAffectedBy( StoreKey affectedByKey, ArtifactStore... expectedStores )
             throws Exception
     {
@@ -151,6 +151,35 @@ public abstract class RepositoryDataManagerTCK
         assertThat( r.getName(), equalTo( repo2.getName() ) );
     }
 
+    @Test
+    public void lookupRemoteRepositoryByUrlFollowsUpdatesAndDeletion()
+            throws Exception
+    {
+        final StoreDataManager manager = getFixtureProvider().getDataManager();
+
+        final RemoteRepository repo = new RemoteRepository( "central", "http://repo1.maven.apache.org/maven2/" );
+        storeRemoteRepository( repo );
+
+        List<RemoteRepository> result =
+                manager.query().getRemoteRepositoryByUrl( "http://repo1.maven.apache.org:80/maven2" );
+        assertThat( result.size(), equalTo( 1 ) );
+        assertThat( result.get( 0 ).getName(), equalTo( repo.getName() ) );
+
+        final RemoteRepository moved = new RemoteRepository( "central", "https://repo.maven.apache.org/maven2/" );
+        storeRemoteRepository( moved );
+
+        result = manager.query().getRemoteRepositoryByUrl( "http://repo1.maven.apache.org/maven2/" );
+        assertThat( result.isEmpty(), equalTo( true ) );
+
+        result = manager.query().getRemoteRepositoryByUrl( "https://repo.maven.apache.org/maven2" );
+        assertThat( result.size(), equalTo( 1 ) );
+
+        manager.deleteArtifactStore( moved.getKey(), summary, new EventMetadata() );
+
+        result = manager.query().getRemoteRepositoryByUrl( "https://repo.maven.apache.org/maven2" );
+        assertThat( result.isEmpty(), equalTo( true ) );
+    }
+
     private void storeRemoteRepository( final RemoteRepository repo )
             throws Exception
     {